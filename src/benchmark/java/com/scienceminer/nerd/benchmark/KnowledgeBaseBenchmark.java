@@ -0,0 +1,43 @@
+package com.scienceminer.nerd.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.scienceminer.nerd.kb.LowerKnowledgeBase.Direction;
+import com.scienceminer.nerd.kb.model.Label;
+
+/**
+ * Benchmark of the basic KB accesses used by the disambiguation: link lists and 
+ * label resolution. 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class KnowledgeBaseBenchmark {
+
+	private int cursor = 0;
+
+	@Benchmark
+	public List<Integer> linksIn(KnowledgeBaseState kb) {
+		int id = kb.articles[cursor++ % kb.articles.length].getId();
+		return kb.wikipedia.getLinks(id, Direction.In);
+	}
+
+	@Benchmark
+	public List<Integer> linksOut(KnowledgeBaseState kb) {
+		int id = kb.articles[cursor++ % kb.articles.length].getId();
+		return kb.wikipedia.getLinks(id, Direction.Out);
+	}
+
+	@Benchmark
+	public Label.Sense[] labelResolution(KnowledgeBaseState kb) {
+		// a new Label object is created so that the senses are really resolved
+		Label label = kb.wikipedia.getLabel(kb.labels[cursor++ % kb.labels.length]);
+		return label.getSenses();
+	}
+}
@@ -0,0 +1,67 @@
+package com.scienceminer.nerd.benchmark;
+
+import java.util.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.scienceminer.nerd.exceptions.NerdResourceException;
+import com.scienceminer.nerd.kb.LowerKnowledgeBase;
+import com.scienceminer.nerd.kb.UpperKnowledgeBase;
+import com.scienceminer.nerd.kb.db.LabelIterator;
+import com.scienceminer.nerd.kb.db.PageIterator;
+import com.scienceminer.nerd.kb.model.Article;
+import com.scienceminer.nerd.kb.model.Label;
+import com.scienceminer.nerd.kb.model.Page.PageType;
+
+/**
+ * Shared benchmark state giving access to the KB and to a fixed sample of its 
+ * articles and labels. 
+ *
+ * The KB used is the one configured in the directory given by the system property 
+ * com.scienceminer.nerd.kb.config (data/wikipedia by default), so the benchmarks can 
+ * be run against a small test KB. The sample is simply the first articles and labels 
+ * in database order, so that two runs on the same KB use the same inputs.
+ */
+@State(Scope.Benchmark)
+public class KnowledgeBaseState {
+
+	// number of articles and labels sampled from the KB
+	public static final int SAMPLE_SIZE = 500;
+
+	@Param({"en"})
+	public String lang;
+
+	public LowerKnowledgeBase wikipedia = null;
+
+	public Article[] articles = null;
+	public String[] labels = null;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		wikipedia = UpperKnowledgeBase.getInstance().getWikipediaConf(lang);
+		if (wikipedia == null)
+			throw new NerdResourceException("No KB loaded for language " + lang);
+
+		List<Article> sampleArticles = new ArrayList<Article>();
+		PageIterator pageIterator = wikipedia.getPageIterator(PageType.article);
+		while (pageIterator.hasNext() && (sampleArticles.size() < SAMPLE_SIZE)) {
+			sampleArticles.add((Article)pageIterator.next());
+		}
+		pageIterator.close();
+
+		List<String> sampleLabels = new ArrayList<String>();
+		LabelIterator labelIterator = wikipedia.getLabelIterator();
+		while (labelIterator.hasNext() && (sampleLabels.size() < SAMPLE_SIZE)) {
+			Label label = labelIterator.next();
+			if (label != null)
+				sampleLabels.add(label.getText());
+		}
+		labelIterator.close();
+
+		if (sampleArticles.size() == 0 || sampleLabels.size() == 0)
+			throw new NerdResourceException("The KB for language " + lang + " is empty");
+
+		articles = sampleArticles.toArray(new Article[sampleArticles.size()]);
+		labels = sampleLabels.toArray(new String[sampleLabels.size()]);
+	}
+}
@@ -0,0 +1,85 @@
+package com.scienceminer.nerd.benchmark;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+
+import com.scienceminer.nerd.kb.db.KBEnvironment;
+import com.scienceminer.nerd.kb.db.KBLowerEnvironment;
+import com.scienceminer.nerd.kb.db.MarkupCodec;
+import com.scienceminer.nerd.kb.db.MarkupDatabase;
+import com.scienceminer.nerd.kb.model.Article;
+
+/**
+ * Benchmark of the decoding of the markup of the pages, serialized with FST as in the KBs
+ * built by previous versions, stored as UTF-8 text or compressed with a Deflate dictionary
+ * (see MarkupCodec). The dictionary is trained on the markup of the sample of articles of
+ * the KB, and the total size of the encoded markup is printed for each format at the start
+ * of the trial.
+ */
+@BenchmarkMode({Mode.AverageTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class MarkupBenchmark {
+
+	private int cursor = 0;
+
+	@Param({"markup", "markupFull"})
+	public String db;
+
+	@Param({"fst", "none", "deflate"})
+	public String format;
+
+	private MarkupCodec codec = null;
+	private byte[][] encoded = null;
+
+	@Setup(Level.Trial)
+	public void setUp(KnowledgeBaseState kb) throws Exception {
+		KBLowerEnvironment env = kb.wikipedia.getEnvironment();
+		MarkupDatabase database = env.getDbMarkup();
+		if (db.equals("markupFull")) {
+			kb.wikipedia.loadFullContentDB();
+			database = env.getDbMarkupFull();
+		}
+		List<String> markups = new ArrayList<String>();
+		for (Article article : kb.articles) {
+			String markup = database.retrieve(article.getId());
+			if (markup != null)
+				markups.add(markup);
+		}
+		if (markups.size() == 0)
+			throw new IllegalStateException("No " + db + " record in the KB sample");
+
+		File dictionaryDir = Files.createTempDirectory("markup").toFile();
+		try {
+			codec = new MarkupCodec(new File(dictionaryDir, MarkupCodec.DICTIONARY_FILE), format.equals("deflate"));
+			if (codec.needsDictionary())
+				codec.train(markups);
+		} finally {
+			FileUtils.deleteQuietly(dictionaryDir);
+		}
+
+		encoded = new byte[markups.size()][];
+		long size = 0;
+		for (int i = 0; i < encoded.length; i++) {
+			encoded[i] = format.equals("fst") ? KBEnvironment.serialize(markups.get(i)) : codec.encode(markups.get(i));
+			size += encoded[i].length;
+		}
+		System.out.println(markups.size() + " " + db + " records, " + format + ": " + size + " bytes");
+	}
+
+	@Benchmark
+	public Object decode() throws Exception {
+		byte[] data = encoded[cursor++ % encoded.length];
+		if (format.equals("fst"))
+			return KBEnvironment.deserialize(data);
+		return codec.decode(data);
+	}
+}
@@ -0,0 +1,71 @@
+package com.scienceminer.nerd.benchmark;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.scienceminer.nerd.kb.db.KBDatabase.DatabaseType;
+import com.scienceminer.nerd.kb.model.Article;
+import com.scienceminer.nerd.utilities.mediaWiki.MediaWikiParser;
+
+/**
+ * Throughput of the conversion of the markup of the sample of articles of the KB, page by
+ * page (run with several threads, e.g. -t 4, for the scaling of the concurrent conversions)
+ * and by batch of the whole sample with the parallel batch conversion (an operation being
+ * then the conversion of the whole sample). The full markup of the articles is used when the
+ * full markup database has been built, otherwise their first paragraph.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MediaWikiBenchmark {
+
+	private final AtomicInteger cursor = new AtomicInteger();
+
+	@Param({"FIRST_PARAGRAPH", "INTERNAL_LINKS_ARTICLES", "TEXT_ONLY"})
+	public MediaWikiParser.Format format;
+
+	private String lang = null;
+	private List<String> wikiTexts = null;
+
+	@Setup(Level.Trial)
+	public void setUp(KnowledgeBaseState kb) throws Exception {
+		lang = kb.lang;
+		wikiTexts = new ArrayList<String>();
+		File markupFull = new File(kb.wikipedia.getConfig().getDbDirectory(), DatabaseType.markupFull.toString());
+		if (markupFull.isDirectory()) {
+			kb.wikipedia.loadFullContentDB();
+			for (Article article : kb.articles) {
+				String wikiText = article.getFullWikiText();
+				if (wikiText != null)
+					wikiTexts.add(wikiText);
+			}
+		}
+		if (wikiTexts.size() == 0) {
+			for (Article article : kb.articles) {
+				String wikiText = article.getFirstParagraphWikiText();
+				if (wikiText != null)
+					wikiTexts.add(wikiText);
+			}
+		}
+		if (wikiTexts.size() == 0)
+			throw new IllegalStateException("No markup in the KB sample");
+	}
+
+	@Benchmark
+	public String convert() {
+		String wikiText = wikiTexts.get(Math.abs(cursor.getAndIncrement() % wikiTexts.size()));
+		return MediaWikiParser.getInstance().convert(wikiText, lang, format);
+	}
+
+	@Benchmark
+	public List<String> convertBatch() throws Exception {
+		return MediaWikiParser.getInstance().convert(wikiTexts, lang, format);
+	}
+}
@@ -0,0 +1,74 @@
+package com.scienceminer.nerd.benchmark;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import org.grobid.core.data.Entity;
+
+import com.scienceminer.nerd.disambiguation.*;
+import com.scienceminer.nerd.service.NerdQuery;
+
+/**
+ * Benchmark of the candidate generation and of the complete disambiguation of texts 
+ * of different sizes. 
+ *
+ * The end-to-end benchmark follows the same steps as the text query service (NER, 
+ * ngram mentions, acronyms and disambiguation), except the JSON serialization. The 
+ * relatedness cache is not reset between invocations, as for a running service. 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class NerdEngineBenchmark {
+
+	// mentions of the input text, computed once
+	private List<Entity> mentions = null;
+
+	@Setup(Level.Trial)
+	public void setUp(TextState input) {
+		mentions = ProcessText.getInstance().processBrutal(input.text, input.language);
+		if (mentions == null)
+			mentions = new ArrayList<Entity>();
+		// make sure the engine and the KB are loaded before measuring
+		NerdEngine.getInstance();
+	}
+
+	@Benchmark
+	public Map<NerdEntity, List<NerdCandidate>> generateCandidates(TextState input) {
+		List<NerdEntity> entities = new ArrayList<NerdEntity>();
+		for(Entity mention : mentions) {
+			entities.add(new NerdEntity(mention));
+		}
+		return NerdEngine.getInstance().generateCandidates(entities, input.language.getLang());
+	}
+
+	@Benchmark
+	public List<NerdEntity> disambiguate(TextState input) throws Exception {
+		NerdQuery nerdQuery = new NerdQuery();
+		nerdQuery.setText(input.text);
+		nerdQuery.setLanguage(input.language);
+		nerdQuery.setContext(new NerdContext());
+
+		ProcessText processText = ProcessText.getInstance();
+		List<Entity> entities = processText.process(nerdQuery);
+		if (entities == null)
+			entities = new ArrayList<Entity>();
+		List<Entity> entities2 = processText.processBrutal(nerdQuery);
+		if (entities2 != null) {
+			for(Entity entity : entities2) {
+				if (!entities.contains(entity))
+					entities.add(entity);
+			}
+		}
+		entities = ProcessText.acronymCandidates(nerdQuery, entities);
+		nerdQuery.setAllEntities(entities);
+		Collections.sort(nerdQuery.getEntities());
+
+		return NerdEngine.getInstance().disambiguate(nerdQuery);
+	}
+}
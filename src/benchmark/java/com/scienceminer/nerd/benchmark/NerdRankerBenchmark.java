@@ -0,0 +1,51 @@
+package com.scienceminer.nerd.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.scienceminer.nerd.disambiguation.NerdRanker;
+
+/**
+ * Benchmark of a single prediction of the ranker model, i.e. the model inference 
+ * cost paid for every candidate. 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class NerdRankerBenchmark {
+
+	private static final int NB_FEATURE_VECTORS = 1024;
+
+	private NerdRanker ranker = null;
+
+	// pre-generated feature values, with a fixed seed so that runs are comparable
+	private double[] commonness = new double[NB_FEATURE_VECTORS];
+	private double[] relatedness = new double[NB_FEATURE_VECTORS];
+	private double[] quality = new double[NB_FEATURE_VECTORS];
+
+	private int cursor = 0;
+
+	@Setup(Level.Trial)
+	public void setUp(KnowledgeBaseState kb) throws Exception {
+		ranker = new NerdRanker(kb.wikipedia);
+		Random random = new Random(42);
+		for(int i=0; i<NB_FEATURE_VECTORS; i++) {
+			commonness[i] = random.nextDouble();
+			relatedness[i] = random.nextDouble();
+			quality[i] = random.nextDouble();
+		}
+		// first call loads the model
+		ranker.getProbability(commonness[0], relatedness[0], quality[0], true);
+	}
+
+	@Benchmark
+	public double getProbability() throws Exception {
+		int i = cursor++ % NB_FEATURE_VECTORS;
+		return ranker.getProbability(commonness[i], relatedness[i], quality[i], (i % 2) == 0);
+	}
+}
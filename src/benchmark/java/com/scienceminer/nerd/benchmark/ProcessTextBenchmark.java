@@ -0,0 +1,26 @@
+package com.scienceminer.nerd.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import org.grobid.core.data.Entity;
+
+import com.scienceminer.nerd.disambiguation.ProcessText;
+
+/**
+ * Benchmark of the extraction of all the non-trivial ngram mentions of a text.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProcessTextBenchmark {
+
+	@Benchmark
+	public List<Entity> processBrutal(TextState input) {
+		return ProcessText.getInstance().processBrutal(input.text, input.language);
+	}
+}
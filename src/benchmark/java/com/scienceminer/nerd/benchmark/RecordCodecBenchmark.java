@@ -0,0 +1,86 @@
+package com.scienceminer.nerd.benchmark;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.scienceminer.nerd.kb.db.KBEnvironment;
+import com.scienceminer.nerd.kb.db.KBLowerEnvironment;
+import com.scienceminer.nerd.kb.db.RecordCodec;
+import com.scienceminer.nerd.kb.db.RecordCodecs;
+import com.scienceminer.nerd.kb.model.Article;
+
+/**
+ * Benchmark of the decoding of the records of the lower KB, serialized with FST as in the
+ * KBs built by previous versions or encoded with the compact codecs of RecordCodecs. The
+ * records are the ones of the sample of articles and labels of the KB, and the total size
+ * of the encoded records is printed for each format at the start of the trial.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class RecordCodecBenchmark {
+
+	private int cursor = 0;
+
+	@Param({"page", "label", "links", "translations", "linkCounts"})
+	public String record;
+
+	@Param({"fst", "compact"})
+	public String format;
+
+	private RecordCodec<Object> codec = null;
+	private byte[][] encoded = null;
+
+	@Setup(Level.Trial)
+	@SuppressWarnings("unchecked")
+	public void setUp(KnowledgeBaseState kb) throws Exception {
+		KBLowerEnvironment env = kb.wikipedia.getEnvironment();
+		List<Object> records = new ArrayList<Object>();
+		if (record.equals("label")) {
+			codec = (RecordCodec<Object>)(RecordCodec<?>)RecordCodecs.LABEL;
+			for (String label : kb.labels)
+				records.add(env.getDbLabel().retrieve(label));
+		} else {
+			for (Article article : kb.articles) {
+				int id = article.getId();
+				if (record.equals("page")) {
+					codec = (RecordCodec<Object>)(RecordCodec<?>)RecordCodecs.PAGE;
+					records.add(env.getDbPage().retrieve(id));
+				} else if (record.equals("links")) {
+					codec = (RecordCodec<Object>)(RecordCodec<?>)RecordCodecs.INT_LIST;
+					records.add(env.getDbPageLinkInNoSentences().retrieve(id));
+				} else if (record.equals("translations")) {
+					codec = (RecordCodec<Object>)(RecordCodec<?>)RecordCodecs.TRANSLATIONS;
+					records.add(env.getDbTranslations().retrieve(id));
+				} else {
+					codec = (RecordCodec<Object>)(RecordCodec<?>)RecordCodecs.PAGE_LINK_COUNTS;
+					records.add(env.getDbPageLinkCounts().retrieve(id));
+				}
+			}
+		}
+		records.removeAll(Collections.singleton(null));
+		if (records.size() == 0)
+			throw new IllegalStateException("No " + record + " record in the KB sample");
+
+		encoded = new byte[records.size()][];
+		long size = 0;
+		for (int i = 0; i < encoded.length; i++) {
+			encoded[i] = format.equals("fst") ? KBEnvironment.serialize(records.get(i)) : codec.encode(records.get(i));
+			size += encoded[i].length;
+		}
+		System.out.println(records.size() + " " + record + " records, " + format + ": " + size + " bytes");
+	}
+
+	@Benchmark
+	public Object decode() throws Exception {
+		byte[] data = encoded[cursor++ % encoded.length];
+		if (format.equals("fst"))
+			return KBEnvironment.deserialize(data);
+		return codec.decode(data);
+	}
+}
@@ -0,0 +1,45 @@
+package com.scienceminer.nerd.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.scienceminer.nerd.disambiguation.Relatedness;
+import com.scienceminer.nerd.kb.model.Article;
+
+/**
+ * Benchmark of the uncached relatedness measure between two articles, which is the 
+ * cost paid for every pair missing from the relatedness cache, with the exact measure 
+ * and with the approximation based on MinHash sketches of the links.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class RelatednessBenchmark {
+
+	private int cursor = 0;
+
+	// approximate the relatedness with the link sketches
+	@Param({"false", "true"})
+	public boolean sketches;
+
+	@Setup(Level.Trial)
+	public void setUp(KnowledgeBaseState kb) throws Exception {
+		kb.wikipedia.getConfig().setUseRelatednessSketches(sketches);
+		if (sketches)
+			kb.wikipedia.getEnvironment().buildLinkSketches(false);
+	}
+
+	@Benchmark
+	public double relatednessWithoutCache(KnowledgeBaseState kb) throws Exception {
+		int n = kb.articles.length;
+		Article artA = kb.articles[cursor % n];
+		// a stride co-prime with most sample sizes gives a good spread of pairs
+		Article artB = kb.articles[(cursor * 7 + 1) % n];
+		cursor++;
+		return Relatedness.getInstance().getRelatednessWithoutCache(artA, artB, kb.lang);
+	}
+}
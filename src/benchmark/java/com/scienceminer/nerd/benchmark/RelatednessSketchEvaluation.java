@@ -0,0 +1,87 @@
+package com.scienceminer.nerd.benchmark;
+
+import java.util.*;
+
+import com.scienceminer.nerd.disambiguation.Relatedness;
+import com.scienceminer.nerd.evaluation.NEDCorpusEvaluation;
+import com.scienceminer.nerd.kb.LowerKnowledgeBase;
+import com.scienceminer.nerd.kb.UpperKnowledgeBase;
+import com.scienceminer.nerd.kb.model.Article;
+
+/**
+ * Comparison of the relatedness approximated with the MinHash sketches of the links
+ * against the exact relatedness, in terms of quality and speed:
+ * - pairwise, on the sample of articles of the benchmark state: error of the approximated
+ *   relatedness and time per pair,
+ * - end-to-end, on the NED corpora: disambiguation scores and evaluation time.
+ *
+ * Usage:
+ * mvn test-compile exec:java -Pbenchmark -Dexec.classpathScope=test
+ *     -Dexec.mainClass=com.scienceminer.nerd.benchmark.RelatednessSketchEvaluation [-Dexec.args="lang corpus1 corpus2..."]
+ */
+public class RelatednessSketchEvaluation {
+
+	public static void main(String[] args) throws Exception {
+		String lang = (args.length > 0) ? args[0] : "en";
+		List<String> corpora = (args.length > 1) ?
+			Arrays.asList(Arrays.copyOfRange(args, 1, args.length)) : NEDCorpusEvaluation.corpora;
+
+		LowerKnowledgeBase wikipedia = UpperKnowledgeBase.getInstance().getWikipediaConf(lang);
+		boolean sketchesConfigured = wikipedia.getConfig().getUseRelatednessSketches();
+		wikipedia.getEnvironment().buildLinkSketches(false);
+
+		KnowledgeBaseState kb = new KnowledgeBaseState();
+		kb.lang = lang;
+		kb.setUp();
+		comparePairs(kb);
+
+		for(String corpus : corpora) {
+			for(boolean sketches : new boolean[]{false, true}) {
+				wikipedia.getConfig().setUseRelatednessSketches(sketches);
+				Relatedness.getInstance().resetCache(lang);
+				long start = System.currentTimeMillis();
+				String report = new NEDCorpusEvaluation().eval(corpus);
+				long runtime = System.currentTimeMillis() - start;
+				System.out.println("\n" + corpus + ", " + (sketches ? "approximated" : "exact") +
+					" relatedness, " + runtime + " ms");
+				System.out.println(report);
+			}
+		}
+
+		wikipedia.getConfig().setUseRelatednessSketches(sketchesConfigured);
+	}
+
+	private static void comparePairs(KnowledgeBaseState kb) throws Exception {
+		Relatedness relatedness = Relatedness.getInstance();
+		Article[] articles = kb.articles;
+		int nbPairs = 0;
+		double totalError = 0.0;
+		double maxError = 0.0;
+		long exactTime = 0;
+		long sketchTime = 0;
+		for(int i=0; i<articles.length; i++) {
+			for(int j=i+1; j<articles.length; j+=7) {
+				kb.wikipedia.getConfig().setUseRelatednessSketches(false);
+				long start = System.nanoTime();
+				double exact = relatedness.getRelatednessWithoutCache(articles[i], articles[j], kb.lang);
+				exactTime += System.nanoTime() - start;
+
+				kb.wikipedia.getConfig().setUseRelatednessSketches(true);
+				start = System.nanoTime();
+				double approximated = relatedness.getRelatednessWithoutCache(articles[i], articles[j], kb.lang);
+				sketchTime += System.nanoTime() - start;
+
+				double error = Math.abs(exact - approximated);
+				totalError += error;
+				maxError = Math.max(maxError, error);
+				nbPairs++;
+			}
+		}
+		if (nbPairs == 0)
+			return;
+		System.out.println(nbPairs + " pairs");
+		System.out.println("mean absolute error: " + (totalError / nbPairs) + ", max error: " + maxError);
+		System.out.println("exact: " + (exactTime / 1000 / nbPairs) + " µs/pair, approximated: " +
+			(sketchTime / 1000 / nbPairs) + " µs/pair (including exact fallbacks)");
+	}
+}
@@ -0,0 +1,37 @@
+package com.scienceminer.nerd.benchmark;
+
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.*;
+
+import org.grobid.core.lang.Language;
+
+import com.scienceminer.nerd.exceptions.NerdResourceException;
+
+/**
+ * Benchmark state holding an input text of a given size. The texts are read from 
+ * the resources texts/short.txt, texts/medium.txt and texts/long.txt.
+ */
+@State(Scope.Benchmark)
+public class TextState {
+
+	@Param({"short", "medium", "long"})
+	public String size;
+
+	public String text = null;
+	public Language language = null;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		InputStream is = TextState.class.getResourceAsStream("/texts/" + size + ".txt");
+		if (is == null)
+			throw new NerdResourceException("No benchmark text for size " + size);
+		try {
+			text = IOUtils.toString(is, "UTF-8").trim();
+		} finally {
+			IOUtils.closeQuietly(is);
+		}
+		language = new Language(Language.EN, 1.0);
+	}
+}
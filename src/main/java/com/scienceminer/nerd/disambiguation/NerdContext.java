@@ -145,16 +145,14 @@ public class NerdContext {
 		if (totalWeight != 0.0)
 			return totalWeight;
 
+		// link lists loaded once for all the pairs of context articles
+		Map<Long,int[]> links = new HashMap<Long,int[]>();
 		for (Article art : contextArticles) {
 			double avgRelatedness = 0.0;
-			for (Article art2 : contextArticles) {
-				if (art.getId() != art2.getId()) {
-					try {
-						avgRelatedness += relatedness.getRelatedness(art, art2, lang);
-					} catch(Exception e) {
-						e.printStackTrace();
-					}
-				}
+			double[] relatednesses = relatedness.getRelatedness(art, contextArticles, lang, links);
+			for (int i=0; i<contextArticles.size(); i++) {
+				if (art.getId() != contextArticles.get(i).getId()) 
+					avgRelatedness += relatednesses[i];
 			}
 			
 			avgRelatedness = avgRelatedness / (contextArticles.size() - 1);
@@ -174,9 +172,9 @@ public class NerdContext {
 			return 0.0;
 
 		double relatednessScore = 0.0;
-		for (Article contextArt: contextArticles) { 
-			double r = relatedness.getRelatedness(art, contextArt, lang);
-			r = r * contextArt.getWeight();
+		double[] relatednesses = relatedness.getRelatedness(art, contextArticles, lang);
+		for (int i=0; i<contextArticles.size(); i++) { 
+			double r = relatednesses[i] * contextArticles.get(i).getWeight();
 			relatednessScore = relatednessScore + r;
 		}
 		
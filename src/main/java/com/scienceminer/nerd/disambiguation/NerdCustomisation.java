@@ -2,6 +2,7 @@ package com.scienceminer.nerd.disambiguation;
 
 import com.scienceminer.nerd.exceptions.NerdException;
 import com.scienceminer.nerd.utilities.NerdProperties;
+import com.scienceminer.nerd.utilities.JsonUtils;
 import com.scienceminer.nerd.kb.Customisations;
 import com.scienceminer.nerd.kb.model.Page.PageType;
 import com.scienceminer.nerd.kb.model.Page;
@@ -52,9 +53,7 @@ public class NerdCustomisation extends NerdContext {
  				throw new NerdException("Customization not known: " + customisationName);
 			}
 			// parse the JSON
-			JsonFactory jsonFactory = new JsonFactory(); 
-			ObjectMapper mapper = new ObjectMapper();
-			JsonNode jsonRoot = mapper.readTree(json);
+			JsonNode jsonRoot = JsonUtils.getMapper().readTree(json);
 
 			String lang = null;
 			JsonNode langNode = jsonRoot.findPath("lang");
@@ -1,6 +1,9 @@
 package com.scienceminer.nerd.disambiguation;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
 import java.io.*;
 
 import org.grobid.core.data.Entity;
@@ -22,10 +25,15 @@ import org.grobid.core.lexicon.NERLexicon.NER_Type;
 
 import com.scienceminer.nerd.kb.*;
 import com.scienceminer.nerd.kb.db.WikipediaDomainMap;
+import com.scienceminer.nerd.kb.db.CandidateDatabase;
+import com.scienceminer.nerd.kb.db.CandidateRecord;
 import com.scienceminer.nerd.utilities.NerdProperties;
+import com.scienceminer.nerd.utilities.NerdMetrics;
+import com.scienceminer.nerd.utilities.NerdMetrics.Stage;
 import com.scienceminer.nerd.exceptions.*;
 import com.scienceminer.nerd.service.NerdQuery;
 import com.scienceminer.nerd.disambiguation.ProcessText.CaseContext;
+import com.scienceminer.nerd.disambiguation.TimeBudget.Degradation;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,6 +41,7 @@ import org.slf4j.LoggerFactory;
 import com.scienceminer.nerd.kb.model.*;
 import com.scienceminer.nerd.kb.model.Page.PageType;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.text.WordUtils;
 
 import static org.apache.commons.lang3.StringUtils.isEmpty;
@@ -57,11 +66,36 @@ public class NerdEngine {
 	
 	private EngineParsers parsers = null;
 	
-	private Map<String, LowerKnowledgeBase> wikipedias = null;
-	private Map<String, NerdRanker> rankers = null;
-	private Map<String, NerdSelector> selectors = null;
+	// models per Wikipedia, a new KB version having its own models
+	private ConcurrentMap<LowerKnowledgeBase, NerdRanker> rankers = null;
+	private ConcurrentMap<LowerKnowledgeBase, NerdSelector> selectors = null;
+
+	// loading of the models of a Wikipedia, giving null if they cannot be loaded
+	private static final Function<LowerKnowledgeBase, NerdRanker> RANKER_LOADER = 
+		new Function<LowerKnowledgeBase, NerdRanker>() {
+			@Override
+			public NerdRanker apply(LowerKnowledgeBase wikipedia) {
+				try {
+					return new NerdRanker(wikipedia);
+				} catch(Exception e) {
+					e.printStackTrace();
+					return null;
+				}
+			}
+		};
+	private static final Function<LowerKnowledgeBase, NerdSelector> SELECTOR_LOADER = 
+		new Function<LowerKnowledgeBase, NerdSelector>() {
+			@Override
+			public NerdSelector apply(LowerKnowledgeBase wikipedia) {
+				try {
+					return new NerdSelector(wikipedia);
+				} catch(Exception e) {
+					e.printStackTrace();
+					return null;
+				}
+			}
+		};
 	private Relatedness relatedness = null;
-	private Map<String, WikipediaDomainMap> wikipediaDomainMaps = null;
 	
 	static public int maxContextSize = 30;	
 	static public int maxLabelLength = 50;
@@ -69,6 +103,10 @@ public class NerdEngine {
 	static public double minSenseProbability = 0.05;
 	static public int MAX_SENSES = 5; // maximum level of ambiguity for an entity
 
+	// reduced sizes when the processing is degraded to respect a time budget
+	static public int degradedMaxSenses = 3;
+	static public int degradedContextSize = 10;
+
 	public static NerdEngine getInstance() {
 	    if (instance == null) {
 			getNewInstance();	        
@@ -95,19 +133,90 @@ public class NerdEngine {
 			throw new NerdResourceException("Error instanciating the (N)ERD knowledge base. ", e);
 		}
 
-		wikipedias = UpperKnowledgeBase.getInstance().getWikipediaConfs();
 		try {
 			relatedness = Relatedness.getInstance();
-			rankers = new HashMap<String, NerdRanker>();
-			selectors = new HashMap<String, NerdSelector>();
-			wikipediaDomainMaps = UpperKnowledgeBase.getInstance().getWikipediaDomainMaps();
-
-			
+			rankers = new ConcurrentHashMap<LowerKnowledgeBase, NerdRanker>();
+			selectors = new ConcurrentHashMap<LowerKnowledgeBase, NerdSelector>();
 		} catch(Exception e) {
 			throw new NerdResourceException("Error when opening the relatedness model", e);
 		}
 	}
-	
+
+	/**
+	 * @return the Wikipedia instances of the KB version used by the current request
+	 */
+	private Map<String, LowerKnowledgeBase> getWikipedias() {
+		return UpperKnowledgeBase.getInstance().getWikipediaConfs();
+	}
+
+	/**
+	 * @return the ranker for the language in the KB version used by the current request,
+	 * loaded if needed, or null if it cannot be loaded
+	 */
+	private NerdRanker getRanker(String lang) {
+		LowerKnowledgeBase wikipedia = getWikipedias().get(lang);
+		if (wikipedia == null)
+			return null;
+		// loaded once, the other requests needing it waiting for the loading
+		return rankers.computeIfAbsent(wikipedia, RANKER_LOADER);
+	}
+
+	/**
+	 * @return the selector for the language in the KB version used by the current request,
+	 * loaded if needed, or null if it cannot be loaded
+	 */
+	private NerdSelector getSelector(String lang) {
+		LowerKnowledgeBase wikipedia = getWikipedias().get(lang);
+		if (wikipedia == null)
+			return null;
+		return selectors.computeIfAbsent(wikipedia, SELECTOR_LOADER);
+	}
+
+	/**
+	 * @return the languages for which the ranker or the selector model is loaded in the 
+	 * current KB version, without creating the engine if it does not exist yet
+	 */
+	public static Set<String> getModelLanguages() {
+		Set<String> languages = new TreeSet<String>();
+		NerdEngine engine = instance;
+		if (engine != null) {
+			for (Map.Entry<String, LowerKnowledgeBase> entry : engine.getWikipedias().entrySet()) {
+				if (engine.rankers.containsKey(entry.getValue()) || engine.selectors.containsKey(entry.getValue()))
+					languages.add(entry.getKey());
+			}
+		}
+		return languages;
+	}
+
+	/**
+	 * Load the ranker and selector models of a language, if not already loaded, so that 
+	 * the first queries in this language do not wait for them (e.g. at warm-start or when
+	 * warming a new KB version).
+	 */
+	public void loadModels(LowerKnowledgeBase wikipedia) throws Exception {
+		String lang = wikipedia.getConfig().getLangCode();
+		if (rankers.computeIfAbsent(wikipedia, RANKER_LOADER) == null)
+			throw new NerdResourceException("Cannot load the ranker model for " + lang);
+		if (selectors.computeIfAbsent(wikipedia, SELECTOR_LOADER) == null)
+			throw new NerdResourceException("Cannot load the selector model for " + lang);
+	}
+
+	/**
+	 * Remove the models of a KB version no longer used
+	 */
+	public void releaseModels(UpperKnowledgeBase kb) {
+		for (LowerKnowledgeBase wikipedia : kb.getWikipediaConfs().values())
+			releaseModels(wikipedia);
+	}
+
+	/**
+	 * Remove the models of a lower KB which has been closed
+	 */
+	public void releaseModels(LowerKnowledgeBase wikipedia) {
+		rankers.remove(wikipedia);
+		selectors.remove(wikipedia);
+	}
+
 	/**
 	 * Disambiguate a structured query and return the corresponding normalised 
      * enriched and disambiguated query object.
@@ -188,7 +297,13 @@ public class NerdEngine {
 System.out.println("Surface: " + entity.getRawName() + " / normalised: " + entity.getNormalisedName());	
 }*/
 
-		Map<NerdEntity, List<NerdCandidate>> candidates = generateCandidates(entities, lang);
+		// time budget of the query, if any, for degrading the following stages
+		TimeBudget budget = nerdQuery.getBudget();
+
+		long start = NerdMetrics.start();
+		int maxSenses = TimeBudget.degrade(budget, Degradation.candidates) ? degradedMaxSenses : MAX_SENSES;
+		Map<NerdEntity, List<NerdCandidate>> candidates = generateCandidates(entities, lang, maxSenses);
+		NerdMetrics.stop(Stage.candidateGeneration, start);
 
 /*for (Map.Entry<NerdEntity, List<NerdCandidate>> entry : candidates.entrySet()) {
 	List<NerdCandidate> cands = entry.getValue();
@@ -215,10 +330,12 @@ System.out.println(cand.toString());
 }
 System.out.println("--");*/
 	}
-System.out.println("total number of entities: " + nbEntities);
-System.out.println("total number of candidates: " + nbCandidates);
+		LOGGER.debug("total number of entities: " + nbEntities);
+		LOGGER.debug("total number of candidates: " + nbCandidates);
 
-		NerdContext localContext = rank(candidates, lang, context, shortTextVal);
+		start = NerdMetrics.start();
+		NerdContext localContext = rank(candidates, lang, context, shortTextVal, budget);
+		NerdMetrics.stop(Stage.ranking, start);
 
 /*for (Map.Entry<NerdEntity, List<NerdCandidate>> entry : candidates.entrySet()) {
 	List<NerdCandidate> cands = entry.getValue();
@@ -240,7 +357,10 @@ System.out.println("--");
 		if (nerdQuery.getMinSelectorScore() != 0.0)
 			minSelectorScore = nerdQuery.getMinSelectorScore();
 
-		pruneWithSelector(candidates, lang, nerdQuery.getNbest(), shortTextVal, minSelectorScore, localContext, text);
+		start = NerdMetrics.start();
+		pruneWithSelector(candidates, lang, nerdQuery.getNbest(), shortTextVal, minSelectorScore, localContext, text, budget, 
+			nerdQuery.getTokenArena());
+		NerdMetrics.stop(Stage.selection, start);
 /*for (Map.Entry<NerdEntity, List<NerdCandidate>> entry : candidates.entrySet()) {
 	List<NerdCandidate> cands = entry.getValue();
 	NerdEntity entity = entry.getKey();
@@ -276,7 +396,8 @@ for(NerdCandidate cand : cands) {
 			reconciliateAcronyms(nerdQuery);
 		}
 
-		WikipediaDomainMap wikipediaDomainMap = wikipediaDomainMaps.get(lang);
+		start = NerdMetrics.start();
+		WikipediaDomainMap wikipediaDomainMap = UpperKnowledgeBase.getInstance().getWikipediaDomainMap(lang);
 		List<NerdEntity> result = new ArrayList<NerdEntity>();
 		for (Map.Entry<NerdEntity, List<NerdCandidate>> entry : candidates.entrySet()) {
 			List<NerdCandidate> cands = entry.getValue();
@@ -293,9 +414,9 @@ for(NerdCandidate cand : cands) {
 			} else {
 				for(NerdCandidate candidate : cands) {
 					NerdEntity nerdEntity = new NerdEntity(entity);
-					nerdEntity.populateFromCandidate(candidate, lang);
+					nerdEntity.populateFromCandidate(candidate, lang, nerdQuery.getStatementProperties());
 					nerdEntity.setWikipediaMultilingualRef(
-						candidate.getWikiSense().getTranslations(), targetLanguages, wikipedias);
+						candidate.getWikiSense().getTranslations(), targetLanguages, getWikipedias());
 					//nerdEntity.setDomains(freeBaseTypeMap.getTypes(nerdEntity.getWikipediaExternalRef()));
 					// note: for the moment we use English categories via translingual informations
 					if (lang.equals("en")) {
@@ -308,7 +429,7 @@ for(NerdCandidate cand : cands) {
 						int pageId = nerdEntity.getWikipediaExternalRef();
 						Map<String,String> translations = candidate.getWikiSense().getTranslations();
 						String translationEN = translations.get("en");
-						Article article = wikipedias.get("en").getArticleByTitle(translationEN);
+						Article article = getWikipedias().get("en").getArticleByTitle(translationEN);
 						if (article != null) {
 							nerdEntity.setDomains(wikipediaDomainMap.getDomains(article.getId()));
 						}
@@ -320,7 +441,9 @@ for(NerdCandidate cand : cands) {
 			}
 		}
 		Collections.sort(result);
+		NerdMetrics.stop(Stage.enrichment, start);
 
+		start = NerdMetrics.start();
 		if (!shortTextVal && !nerdQuery.getNbest()) {
 		//if (!nerdQuery.getNbest()) {
 			result = pruneOverlap(result, shortTextVal);
@@ -332,6 +455,7 @@ for(NerdCandidate cand : cands) {
 			minRankerScore = nerdQuery.getMinRankerScore();
 		if ( (!shortTextVal) && (!nerdQuery.getNbest()) )
 			prune(result, minRankerScore);
+		NerdMetrics.stop(Stage.pruning, start);
 
 		return result;
 	}
@@ -339,8 +463,18 @@ for(NerdCandidate cand : cands) {
 
 	public Map<NerdEntity, List<NerdCandidate>> generateCandidates(List<NerdEntity> entities,
 															String lang) {
+		return generateCandidates(entities, lang, MAX_SENSES);
+	}
+
+	/**
+	 * Candidate generation with a maximum level of ambiguity, lower than MAX_SENSES when 
+	 * the processing is degraded.
+	 */
+	public Map<NerdEntity, List<NerdCandidate>> generateCandidates(List<NerdEntity> entities,
+															String lang,
+															int maxSenses) {
 		Map<NerdEntity, List<NerdCandidate>> result = new HashMap<NerdEntity, List<NerdCandidate>>();
-		LowerKnowledgeBase wikipedia = wikipedias.get(lang);
+		LowerKnowledgeBase wikipedia = getWikipedias().get(lang);
 		if (wikipedia == null) {
 			throw new NerdException("Wikipedia environment is not loaded for language " + lang);
 		}
@@ -381,10 +515,22 @@ for(NerdCandidate cand : cands) {
 				else {
 //if (entity.getIsAcronym()) 
 //System.out.println("Concept(s) found for '" + normalisedString + "' " + " / " + entity.getRawName());
-					entity.setLinkProbability(bestLabel.getLinkProbability());
+					CandidateDatabase candidateIndex = wikipedia.getEnvironment().getDbCandidates();
+					boolean indexed = wikipedia.getConfig().getUseCandidateIndex() && candidateIndex.isLoaded() && 
+						(maxSenses-1 <= CandidateDatabase.MAX_CANDIDATES);
+					// the senses are only needed when the candidates are not indexed
+					Label.Sense[] senses = indexed ? null : bestLabel.getSenses();
+					CandidateRecord record = indexed ? candidateIndex.retrieve(bestLabel.getText()) : null;
+					if (record != null)
+						entity.setLinkProbability(record.getLinkProbability());
+					else
+						entity.setLinkProbability(bestLabel.getLinkProbability());
 //System.out.println("LinkProbability for the string '" + normalisedString + "': " + entity.getLinkProbability());
-					Label.Sense[] senses = bestLabel.getSenses();
-					if ((senses != null) && (senses.length > 0)) {				
+					if (record != null) {
+						// candidates already filtered when building the KB
+						addIndexedCandidates(entity, bestLabel, record, candidates, wikipedia, lang, maxSenses);
+					}
+					else if ((senses != null) && (senses.length > 0)) {				
 						int s = 0;
 						for(int i=0; i<senses.length; i++) {
 							Label.Sense sense = senses[i];	
@@ -437,7 +583,7 @@ for(NerdCandidate cand : cands) {
 							candidate.setWikidataId(sense.getWikidataId());
 							candidates.add(candidate);
 							s++;
-							if (s == MAX_SENSES-1) {
+							if (s == maxSenses-1) {
 								// max. sense alternative has been reach
 								break;
 							}
@@ -454,6 +600,49 @@ for(NerdCandidate cand : cands) {
 		return result;
 	}
 
+	/**
+	 * Create the candidates of a mention from the record of the candidate index, which gives 
+	 * the same candidates as the filtering of the senses of the label in generateCandidates(), 
+	 * without accessing the senses of the label and the categories of the senses. 
+	 */
+	private void addIndexedCandidates(NerdEntity entity, 
+									Label label, 
+									CandidateRecord record, 
+									List<NerdCandidate> candidates, 
+									LowerKnowledgeBase wikipedia, 
+									String lang,
+									int maxSenses) {
+		int s = 0;
+		for(int i=0; i<record.getCandidateCount(); i++) {
+			double prior = record.getPriorProbability(i);
+			if (prior < minSenseProbability)
+				continue;
+
+			NerdCandidate candidate = new NerdCandidate(entity);
+			// category titles are only read if the categories are used
+			for(int categoryId : record.getCategoryIds(i)) {
+				com.scienceminer.nerd.kb.model.Category theCategory = 
+					new com.scienceminer.nerd.kb.model.Category(wikipedia.getEnvironment(), categoryId);
+				candidate.addWikipediaCategories(new com.scienceminer.nerd.kb.Category(null, theCategory, categoryId));
+			}
+
+			Label.Sense sense = label.createSense(record.getPageId(i), prior);
+			candidate.setWikiSense(sense);
+			candidate.setWikipediaExternalRef(sense.getId());
+			candidate.setProb_c(prior);
+			candidate.setPreferredTerm(sense.getTitle());
+			candidate.setLang(lang);
+			candidate.setLabel(label);
+			candidate.setWikidataId(record.getWikidataId(i));
+			candidates.add(candidate);
+			s++;
+			if (s == maxSenses-1) {
+				// max. sense alternative has been reach
+				break;
+			}
+		}
+	}
+
 	/**
 	 * Ranking of the candidates passed in a map as parameter for a set of mentions based on an external context.
 	 * 
@@ -461,6 +650,18 @@ for(NerdCandidate cand : cands) {
 	 * 
 	 */
 	public NerdContext rank(Map<NerdEntity, List<NerdCandidate>> candidates, String lang, NerdContext context, boolean shortText) {
+		return rank(candidates, lang, context, shortText, null);
+	}
+
+	/**
+	 * Same as above, degraded according to the time budget if not null: smaller context or,
+	 * when most of the budget has been consumed, ranking by commonness only.
+	 */
+	public NerdContext rank(Map<NerdEntity, List<NerdCandidate>> candidates, 
+							String lang, 
+							NerdContext context, 
+							boolean shortText,
+							TimeBudget budget) {
 		// we rank candidates for each entity mention
 //relatedness.resetCache(lang);
 
@@ -475,33 +676,32 @@ for(NerdCandidate cand : cands) {
 
 		// we create/augment the context for the disambiguation
 		NerdContext localContext = null;
+		long start = NerdMetrics.start();
+		boolean commonnessOnly = TimeBudget.degrade(budget, Degradation.commonnessRanking);
 		try {
-			 localContext = relatedness.getContext(candidates, userEntities, lang, shortText);
-			 // merge context
-			 if (context != null) {
-			 	context.merge(localContext);
-			 } 
+			if (commonnessOnly) {
+				// no relatedness computed, so no need for a context
+				localContext = new NerdContext(new ArrayList<Label.Sense>(), new ArrayList<Article>(), lang);
+			} else {
+				int contextSize = TimeBudget.degrade(budget, Degradation.context) ? degradedContextSize : maxContextSize;
+				localContext = relatedness.getContext(candidates, userEntities, lang, shortText, contextSize);
+				// merge context
+				if (context != null) {
+					context.merge(localContext);
+				} 
+			}
 //System.out.println("size of context: " + context.getSenseNumber());
 //System.out.println(context.toString());
 		} catch(Exception e) {
 			e.printStackTrace();
 		}
+		NerdMetrics.stop(Stage.context, start);
 		double quality = 0.0;
 
 		if (localContext != null)
 			quality = localContext.getQuality();
 
-		NerdRanker disambiguator = rankers.get(lang);
-		if (disambiguator == null) {
-			LowerKnowledgeBase wikipedia = wikipedias.get(lang);
-			try {
-				disambiguator = new NerdRanker(wikipedia);
-				rankers.put(lang, disambiguator);
-			}
-			catch(Exception e) {
-				e.printStackTrace();
-			} 
-		}
+		NerdRanker disambiguator = getRanker(lang);
 
 		// second pass for producing the ranking score
 		for (Map.Entry<NerdEntity, List<NerdCandidate>> entry : candidates.entrySet()) {
@@ -510,25 +710,33 @@ for(NerdCandidate cand : cands) {
 			
 			if (cands == null)
 				continue;
+
+			// budget checked for each mention, all the candidates of a mention are ranked the same way
+			if (!commonnessOnly)
+				commonnessOnly = TimeBudget.degrade(budget, Degradation.commonnessRanking);
 			
 			for(NerdCandidate candidate : cands) {			
 				double score = 0.0;
 				try {
 					double commonness = candidate.getProb_c(); 
-					double related = relatedness.getRelatednessTo(candidate, localContext, lang);
-					boolean bestCaseContext = true;
-					// actual label used
-					Label bestLabel = candidate.getLabel();
-					if (!entity.getNormalisedName().equals(bestLabel.getText())) {
-						bestCaseContext = false;
-					}
+					if (commonnessOnly) {
+						score = commonness;
+					} else {
+						double related = relatedness.getRelatednessTo(candidate, localContext, lang);
+						boolean bestCaseContext = true;
+						// actual label used
+						Label bestLabel = candidate.getLabel();
+						if (!entity.getNormalisedName().equals(bestLabel.getText())) {
+							bestCaseContext = false;
+						}
 
-					candidate.setRelatednessScore(related);
-					if (disambiguator == null) {
-						System.out.println("Cannot rank candidates: disambiguator for the language " + 
-							lang + " is invalid");
+						candidate.setRelatednessScore(related);
+						if (disambiguator == null) {
+							System.out.println("Cannot rank candidates: disambiguator for the language " + 
+								lang + " is invalid");
+						}
+						score = disambiguator.getProbability(commonness, related, quality, bestCaseContext);
 					}
-					score = disambiguator.getProbability(commonness, related, quality, bestCaseContext);
 					
 					//System.out.println(candidate.getWikiSense().getTitle() + " " + candidate.getNerdScore() +  " " + entity.toString());
 					//System.out.println("\t\t" + "commonness: " + commonness + ", relatedness: " + related);
@@ -543,8 +751,8 @@ for(NerdCandidate cand : cands) {
 		}
 
 //System.out.println("relatedness - Comparisons requested: " + relatedness.getComparisonsRequested());
-System.out.println("relatedness - comparisons: " + relatedness.getComparisonsCalculated() 
-		+ " - cache proportion: " + relatedness.getCachedProportion());
+		LOGGER.debug("relatedness - comparisons: " + relatedness.getComparisonsCalculated() 
+			+ " - cache proportion: " + relatedness.getCachedProportion());
 
 		return localContext;
 	}
@@ -559,17 +767,7 @@ System.out.println("relatedness - comparisons: " + relatedness.getComparisonsCal
 			return;
 
 		// get the disambiguator for this language
-		NerdRanker disambiguator = rankers.get(lang);
-		if (disambiguator == null) {
-			LowerKnowledgeBase wikipedia = wikipedias.get(lang);
-			try {
-				disambiguator = new NerdRanker(wikipedia);
-				rankers.put(lang, disambiguator);
-			}
-			catch(Exception e) {
-				e.printStackTrace();
-			} 
-		}
+		NerdRanker disambiguator = getRanker(lang);
 		
 		// if we have extra textual information, we can try to get the different local contexts
 		List<NerdContext> localContexts = null;
@@ -774,155 +972,112 @@ System.out.println("relatedness - comparisons: " + relatedness.getComparisonsCal
 	 *  validated... 
 	 */
 	public List<NerdEntity> pruneOverlap(List<NerdEntity> entities, boolean shortText) {
-//System.out.println("pruning overlaps - we have " + entities.size() + " entities");		
-		List<Integer> toRemove = new ArrayList<Integer>();
-		for (int pos1=0; pos1<entities.size(); pos1++) {
-			if (toRemove.contains(new Integer(pos1)))
+		return removeOverlaps(entities, shortText);
+	}
+
+	/**
+	 * Overlap pruning of pruneOverlap(), which does not depend on the KB. Instead of comparing
+	 * each entity with all the others, the overlapping entities are found by a sweep over the 
+	 * entities sorted by start offset, bounded by the longest entity span. They are then 
+	 * visited in the order of the list, so that the decisions are exactly the ones of the 
+	 * comparison of all the pairs.
+	 */
+	static List<NerdEntity> removeOverlaps(List<NerdEntity> entities, boolean shortText) {
+		int size = entities.size();
+		BitSet toRemove = new BitSet(size);
+
+		// start offset in the high bits, position in the low bits: sorted by start offset
+		long[] sorted = new long[size];
+		long maxSpan = 0;
+		for (int pos=0; pos<size; pos++) {
+			NerdEntity entity = entities.get(pos);
+			sorted[pos] = (((long)entity.getOffsetStart()) << 32) | pos;
+			maxSpan = Math.max(maxSpan, (long)entity.getOffsetEnd() - entity.getOffsetStart());
+		}
+		Arrays.sort(sorted);
+
+		// arity of the entities, computed when first needed
+		int[] arities = new int[size];
+		Arrays.fill(arities, -1);
+
+		BitSet overlapping = new BitSet(size);
+		for (int pos1=0; pos1<size; pos1++) {
+			if (toRemove.get(pos1))
 				continue; 
 			NerdEntity entity1 = entities.get(pos1);
 
 			if (entity1.getRawName() == null)  {
-				if (!toRemove.contains(new Integer(pos1))) {
-					toRemove.add(new Integer(pos1));
-				}
-//System.out.println("Removing " + pos1 + " - " + entity1.getNormalisedName());
+				toRemove.set(pos1);
 				continue;
 			}
 
-			// the arity measure below does not need to be precise
-			int arity1 = entity1.getNormalisedName().length() - entity1.getNormalisedName().replaceAll("\\s", "").length() + 1;
-//System.out.println("Position1 " + pos1 + " / arity1 : " + entity1.getNormalisedName() + ": " + arity1);
-			
-			// find all sub term of this entity and entirely or partially overlapping entities
-			for (int pos2=0; pos2<entities.size(); pos2++) {
-				if (pos1 == pos2)
-					continue;
+			int arity1 = getArity(entities, arities, pos1);
+
+			// find all sub term of this entity and entirely or partially overlapping entities, 
+			// offset end being inclusive: an overlapping entity starts at the latest at the end
+			// of this entity and at the earliest one maximum span before its start
+			overlapping.clear();
+			long lowest = (long)entity1.getOffsetStart() - maxSpan;
+			for (int k=firstStartingFrom(sorted, lowest); k<size; k++) {
+				if ((sorted[k] >> 32) > entity1.getOffsetEnd())
+					break;
+				int pos2 = (int)sorted[k];
+				if ( (pos2 != pos1) && (entities.get(pos2).getOffsetEnd() >= entity1.getOffsetStart()) )
+					overlapping.set(pos2);
+			}
 
-				NerdEntity entity2 = entities.get(pos2);
-				if (entity2.getOffsetEnd() < entity1.getOffsetStart())
+			for (int pos2=overlapping.nextSetBit(0); pos2>=0; pos2=overlapping.nextSetBit(pos2+1)) {
+				if (toRemove.get(pos2))
 					continue;
-				
-				if (entity1.getOffsetEnd() < entity2.getOffsetStart())
-					continue;
-				
-				if (toRemove.contains(new Integer(pos2)))
+				NerdEntity entity2 = entities.get(pos2);
+
+				if (entity2.getRawName() == null) {
+					toRemove.set(pos2);
 					continue;
-				
-				/*if ( 
-					( (entity2.getOffsetStart() >= entity1.getOffsetStart()) &&
-						(entity2.getOffsetStart() < entity1.getOffsetEnd()) ) 
-					||  
-					( (entity1.getOffsetStart() >= entity2.getOffsetStart()) &&
-						(entity1.getOffsetStart() < entity2.getOffsetEnd()) ) 
-				   )*/ 
-				{
+				}
 
-//System.out.println("Position2 " + pos2 + " / overlap: " + entity1.toJson() + " /////////////// " + entity2.toJson()); 
-					// overlap
-					//int arity2 = entity2.getOffsetEnd() - entity2.getOffsetStart();  
-					if (entity2.getRawName() == null) {
-						if (!toRemove.contains(new Integer(pos2))) {
-							toRemove.add(new Integer(pos2));
-						}
-//System.out.println("Removing " + pos2 + " - " + entity2.getRawNormalisedName());
+				if ((entity2.getType() != null) && (entity2.getWikipediaExternalRef() == -1)) {
+					// we have a NER not disambiguated
+					// check if the other entity has been disambiguated
+					if ( (entity1.getWikipediaExternalRef() != -1) && (entity1.getNerdScore() > 0.2) ) {
+						toRemove.set(pos2);
 						continue;
-					}
-
-					if ((entity2.getType() != null) && (entity2.getWikipediaExternalRef() == -1)) {
-						// we have a NER not disambiguated
-						// check if the other entity has been disambiguated
-						if ( (entity1.getWikipediaExternalRef() != -1) && (entity1.getNerdScore() > 0.2) ) {
-							if (!toRemove.contains(new Integer(pos2))) {
-								toRemove.add(new Integer(pos2));
-							}
-//System.out.println("Removing " + pos2 + " - " + entity2.getNormalisedName());
-							continue;
-						} 
 					} 
+				} 
 
-					if ((entity1.getType() != null) && (entity1.getWikipediaExternalRef() == -1)) {
-						// we have a NER not disambiguated
-						// check if the other entity has been disambiguated
-						if ( (entity2.getWikipediaExternalRef() != -1) && (entity2.getNerdScore() > 0.2) ) {
-							if (!toRemove.contains(new Integer(pos1))) {
-								toRemove.add(new Integer(pos1));
-							}
-//System.out.println("Removing " + pos1 + " - " + entity1.getNormalisedName());
-							break;
-						} 
+				if ((entity1.getType() != null) && (entity1.getWikipediaExternalRef() == -1)) {
+					// we have a NER not disambiguated
+					// check if the other entity has been disambiguated
+					if ( (entity2.getWikipediaExternalRef() != -1) && (entity2.getNerdScore() > 0.2) ) {
+						toRemove.set(pos1);
+						break;
 					} 
+				} 
 
-					/*if ((entity1.getType() != null) && (entity1.getWikipediaExternalRef() == -1) &&
-						 (entity2.getWikipediaExternalRef() != -1)) {
-						// we don't apply arity based pruning
+				if (entity1.getWikipediaExternalRef() == entity2.getWikipediaExternalRef()) {
+					if ( (entity1.getType() != null) && (entity2.getType() == null) ) {
+						toRemove.set(pos2);
 						continue;
-					}*/
-
-					if (entity1.getWikipediaExternalRef() == entity2.getWikipediaExternalRef()) {
-						if ( (entity1.getType() != null) && (entity2.getType() == null) ) {
-							if (!toRemove.contains(new Integer(pos2)))
-								toRemove.add(new Integer(pos2));
-//System.out.println("Removing " + pos2 + " - " + entity2.getNormalisedName());
-							continue;
-						}
 					}
+				}
 
-					int arity2 = entity2.getNormalisedName().length() - entity2.getNormalisedName().replaceAll("\\s", "").length() + 1;
-//System.out.println("arity2 : " + entity2.getNormalisedName() + ": " + arity2);
-					if (arity2 < arity1) {
-						// longest match wins
-						if (!toRemove.contains(new Integer(pos2)))
-							toRemove.add(new Integer(pos2));
-//System.out.println("Removing " + pos2 + " - " + entity2.getNormalisedName());
-						continue;
-					}
-					else if (arity2 == arity1) {
-						// we check the nerd scores of the top candiate for the two entities
-						double conf1 = entity1.getNerdScore();
-						double conf2 = entity2.getNerdScore();
-						//double conf1 = entity1.getSelectionScore();
-						//double conf2 = entity2.getSelectionScore();
-						if (conf2 < conf1) {
-							if (!toRemove.contains(new Integer(pos2))) {
-								toRemove.add(new Integer(pos2));
-							}
-//System.out.println("Removing " + pos2 + " - " + entity2.getNormalisedName());
-							continue;
-						} /*else {
-							// if equal we check the selection scores of the top candiate for the two entities
-							conf1 = entity1.getSelectionScore();
-							conf2 = entity2.getSelectionScore();
-							if (conf2 < conf1) {
-								if (!toRemove.contains(new Integer(pos2))) {
-									toRemove.add(new Integer(pos2));
-								}
-							} else {
-								// if still equal we check the prob_c 
-								conf1 = entity1.getProb_c();
-								conf2 = entity2.getProb_c();
-								if (conf2 < conf1) {
-									if (!toRemove.contains(new Integer(pos2))) {
-										toRemove.add(new Integer(pos2));
-									}
-								} else {
-									// too uncertain we remove all
-									if (!toRemove.contains(new Integer(pos2))) {
-										toRemove.add(new Integer(pos2));
-									}
-									if (!toRemove.contains(new Integer(pos1))) {
-										toRemove.add(new Integer(pos1));
-									}
-								}
-							}
-						}*/
+				int arity2 = getArity(entities, arities, pos2);
+				if (arity2 < arity1) {
+					// longest match wins
+					toRemove.set(pos2);
+				}
+				else if (arity2 == arity1) {
+					// we check the nerd scores of the top candiate for the two entities
+					if (entity2.getNerdScore() < entity1.getNerdScore()) {
+						toRemove.set(pos2);
 					}
 				}
-			 }	
+			}
 		}
 
 		List<NerdEntity> newEntities = new ArrayList<NerdEntity>();
-		for(int i=0; i<entities.size(); i++) {
-			if (!toRemove.contains(new Integer(i))) {
+		for(int i=0; i<size; i++) {
+			if (!toRemove.get(i)) {
 				newEntities.add(entities.get(i));
 			} else {
 				if (shortText) {
@@ -936,6 +1091,32 @@ System.out.println("relatedness - comparisons: " + relatedness.getComparisonsCal
 		return newEntities;
 	}
 
+	/**
+	 * @return the index of the first element of the sorted array with a start offset 
+	 * higher or equal to the given offset
+	 */
+	private static int firstStartingFrom(long[] sorted, long offset) {
+		int low = 0;
+		int high = sorted.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if ((sorted[middle] >> 32) < offset)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	private static int getArity(List<NerdEntity> entities, int[] arities, int pos) {
+		if (arities[pos] == -1) {
+			// the arity measure does not need to be precise
+			String name = entities.get(pos).getNormalisedName();
+			arities[pos] = name.length() - name.replaceAll("\\s", "").length() + 1;
+		}
+		return arities[pos];
+	}
+
 	public List<NerdCandidate> annotateShort(String runID, String textID, String text) {
 		System.out.println("runID=" + runID + " textID="+textID+ " text="+text);
 			
@@ -1109,7 +1290,9 @@ System.out.println("Merging...");
 		if ( (candidates == null) || (candidates.size() == 0) ) 
 			return null;
 
-		List<Integer> toRemove = new ArrayList<Integer>();
+		BitSet toRemove = new BitSet(candidates.size());
+		// normalised surfaces, retrieved when first needed
+		String[] surfaces = new String[candidates.size()];
 		for(int i=0; i<candidates.size(); i++) {
 			NerdCandidate term1 = candidates.get(i);
 			
@@ -1118,7 +1301,7 @@ System.out.println("Merging...");
 			}
 			
 			if (term1.getMethod() == NerdCandidate.NERD) {
-				String surface1 = term1.getEntity().getNormalisedName();
+				String surface1 = getSurface(candidates, surfaces, i);
 				
 				// we check if the raw string is a substring of another NerdCandidate from the ERD method
 				for(int j=0; j<candidates.size(); j++) {
@@ -1161,9 +1344,9 @@ System.out.println("Merging...");
 							//}
 						//}
 					}
-					String surface2 = term2.getEntity().getNormalisedName();
+					String surface2 = getSurface(candidates, surfaces, j);
 					if ((surface2.length() > surface1.length()) && (surface2.indexOf(surface1) != -1)) {
-						toRemove.add(new Integer(i));
+						toRemove.set(i);
 						break;
 					}
 				}
@@ -1172,7 +1355,7 @@ System.out.println("Merging...");
 		
 		List<NerdCandidate> result = new ArrayList<NerdCandidate>();
 		for(int i=0; i<candidates.size(); i++) {
-			if (toRemove.contains(new Integer(i))) {
+			if (toRemove.get(i)) {
 				continue;
 			}
 			else if (candidates.get(i).getNerdScore() > threshold) {
@@ -1182,6 +1365,12 @@ System.out.println("Merging...");
 		
 		return result;
 	}
+
+	private static String getSurface(List<NerdCandidate> candidates, String[] surfaces, int i) {
+		if (surfaces[i] == null)
+			surfaces[i] = candidates.get(i).getEntity().getNormalisedName();
+		return surfaces[i];
+	}
 	
 	/**	 
 	 * 	Pruning using a NERD selector model.
@@ -1193,17 +1382,40 @@ System.out.println("Merging...");
 			double threshold,
 			NerdContext context,
 			String text) {
-		NerdSelector selector = selectors.get(lang);
-		LowerKnowledgeBase wikipedia = wikipedias.get(lang);
-		if (selector == null) {
-			try {
-				selector = new NerdSelector(wikipedia);
-				selectors.put(lang, selector);
-			}
-			catch(Exception e) {
-				e.printStackTrace();
-			} 
-		}
+		pruneWithSelector(cands, lang, nbest, shortText, threshold, context, text, null);
+	}
+
+	/**
+	 * Same as above, the features requiring a scan of the full text being approximated when 
+	 * the time budget, if not null, is getting exhausted.
+	 */
+	public void pruneWithSelector(Map<NerdEntity, List<NerdCandidate>> cands, 
+			String lang, 
+			boolean nbest, 
+			boolean shortText, 
+			double threshold,
+			NerdContext context,
+			String text,
+			TimeBudget budget) {
+		pruneWithSelector(cands, lang, nbest, shortText, threshold, context, text, budget, null);
+	}
+
+	/**
+	 * Same as above, the mentions and the text being looked up in the token arena of the text, 
+	 * if not null, instead of being tokenised and scanned again.
+	 */
+	public void pruneWithSelector(Map<NerdEntity, List<NerdCandidate>> cands, 
+			String lang, 
+			boolean nbest, 
+			boolean shortText, 
+			double threshold,
+			NerdContext context,
+			String text,
+			TimeBudget budget,
+			TokenArena arena) {
+		boolean textFeatures = !TimeBudget.degrade(budget, Degradation.selectorFeatures);
+		NerdSelector selector = getSelector(lang);
+		LowerKnowledgeBase wikipedia = getWikipedias().get(lang);
 
 		List<NerdEntity> toRemove = new ArrayList<NerdEntity>();
 
@@ -1215,17 +1427,35 @@ System.out.println("Merging...");
 			boolean isNe = false;
 			if (entity.getType() != null)
 				isNe = true;
+			// the features of the mention are the same for all its candidates
+			List<String> words = null;
+			Double dice = null;
 			for(NerdCandidate candidate : candidates) {			
 				//if (candidate.getMethod() == NerdCandidate.NERD) 
 				{
 					try {
-						GrobidAnalyzer analyzer = GrobidAnalyzer.getInstance();
-						List<String> words = analyzer.tokenize(entity.getRawName(), 
-							new Language(wikipedia.getConfig().getLangCode(), 1.0));
+						if (dice == null) {
+							// the tokens of the mention are taken from the text when possible
+							if (arena != null)
+								words = arena.getTokens(entity.getOffsetStart(), entity.getOffsetEnd(), entity.getRawName());
+							if (words == null) {
+								GrobidAnalyzer analyzer = GrobidAnalyzer.getInstance();
+								words = analyzer.tokenize(entity.getRawName(), 
+									new Language(wikipedia.getConfig().getLangCode(), 1.0));
+							}
+							if ((arena != null) && StringUtils.equals(entity.getNormalisedName(), entity.getRawName()))
+								dice = ProcessText.getDICECoefficient(entity.getNormalisedName(), words, lang);
+							else
+								dice = ProcessText.getDICECoefficient(entity.getNormalisedName(), lang);
+						}
 
-						double tf = (double)TextUtilities.getOccCount(candidate.getLabel().getText(), text);
+						// without scanning the text, the mention is the only known occurrence
+						double tf = 1.0;
+						if (textFeatures) {
+							tf = (arena != null) ? arena.getOccCount(candidate.getLabel().getText()) :
+								TextUtilities.getOccCount(candidate.getLabel().getText(), text);
+						}
 						double idf = ((double)wikipedia.getArticleCount()) / candidate.getLabel().getDocCount();
-						double dice = ProcessText.getDICECoefficient(entity.getNormalisedName(), lang);
 
 						double prob = selector.getProbability(candidate.getNerdScore(), 
 							candidate.getLabel().getLinkProbability(), 
@@ -1396,9 +1626,9 @@ System.out.println("--");*/
 
 						NerdEntity nerdEntity = new NerdEntity();
 						nerdEntity.setRawName(term.getTerm());
-						nerdEntity.populateFromCandidate(candidate, lang);
+						nerdEntity.populateFromCandidate(candidate, lang, nerdQuery.getStatementProperties());
 						nerdEntity.setWikipediaMultilingualRef(
-							candidate.getWikiSense().getTranslations(), targetLanguages, wikipedias);
+							candidate.getWikiSense().getTranslations(), targetLanguages, getWikipedias());
 						result.add(nerdEntity);
 						if (!nerdQuery.getNbest())
 							break;
@@ -1416,7 +1646,7 @@ System.out.println("--");*/
 	private List<List<NerdCandidate>> generateCandidatesTerms(List<WeightedTerm> terms, String lang) {
 		List<List<NerdCandidate>> result = new ArrayList<List<NerdCandidate>>();
 		int n = 0;
-		LowerKnowledgeBase wikipedia = wikipedias.get(lang);
+		LowerKnowledgeBase wikipedia = getWikipedias().get(lang);
 		for(WeightedTerm term : terms) {
 			List<NerdCandidate> candidates = null;
 			List<NerdEntity> entities = term.getNerdEntities();
@@ -1,10 +1,10 @@
 package com.scienceminer.nerd.disambiguation;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.core.io.JsonStringEncoder;
 import com.scienceminer.nerd.kb.*;
 import com.scienceminer.nerd.kb.model.Article;
 import com.scienceminer.nerd.kb.model.Page;
+import com.scienceminer.nerd.utilities.JsonUtils;
 import org.grobid.core.data.Entity;
 import org.grobid.core.data.Sense;
 import org.grobid.core.layout.BoundingBox;
@@ -14,6 +14,9 @@ import org.grobid.core.utilities.TextUtilities;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.*;
 
 /**
@@ -662,6 +665,16 @@ public class NerdEntity implements Comparable<NerdEntity> {
      *  Copy the result of a disambiguation corresponding to a candidate in the current NERD entity
 	 */
 	public void populateFromCandidate(NerdCandidate candidate, String lang) {
+		populateFromCandidate(candidate, lang, null);
+	}
+
+	/**
+     *  Copy the result of a disambiguation corresponding to a candidate in the current NERD entity,
+     *  with the statements of some properties only
+     *
+     *  @param propertyIds the ids of the properties of the statements, null for all the properties
+	 */
+	public void populateFromCandidate(NerdCandidate candidate, String lang, Collection<String> propertyIds) {
 		wikipediaExternalRef = candidate.getWikipediaExternalRef();
 		wikidataId = candidate.getWikidataId();
 
@@ -685,7 +698,7 @@ public class NerdEntity implements Comparable<NerdEntity> {
 		selectionScore = candidate.getSelectionScore();
 		//freeBaseExternalRef = candidate.getFreeBaseExternalRef();
 		categories = candidate.getWikipediaCategories();
-		statements = UpperKnowledgeBase.getInstance().getStatements(wikidataId); 
+		statements = UpperKnowledgeBase.getInstance().getStatements(wikidataId, propertyIds); 
 
 		preferredTerm = candidate.getPreferredTerm();
 		this.lang = lang;
@@ -758,138 +771,100 @@ public class NerdEntity implements Comparable<NerdEntity> {
 	 * KB data related to the disambiguated sense. 
 	 */
 	public String toJsonFull() {
-		JsonStringEncoder encoder = JsonStringEncoder.getInstance();
-		StringBuilder buffer = new StringBuilder();
-		buffer.append("{ ");
-		byte[] encodedRawName = encoder.quoteAsUTF8(normalisedRawName);
-		String outputRawName = new String(encodedRawName); 
-		buffer.append("\"rawName\" : \"" + outputRawName + "\"");
-		if (preferredTerm != null) {
-			byte[] encodedPreferredTerm = encoder.quoteAsUTF8(preferredTerm);
-			String outputPreferredTerm  = new String(encodedPreferredTerm); 
-			buffer.append(", \"preferredTerm\" : \"" + outputPreferredTerm + "\"");
-		}
-		if (type != null)
-			buffer.append(", \"type\" : \"" + type.getName() + "\"");	
-		
-		if (subTypes != null) {
-			buffer.append(", \"subtype\" : [ ");
-			boolean begin = true;
-			for(String subtype : subTypes) {
-				if (begin) {
-					buffer.append("\"" + subtype + "\"");
-					begin = false;
-				}
-				else {
-					buffer.append(", \"" + subtype + "\"");
-				}
-			}
-			buffer.append(" ] \"");
+		StringWriter writer = new StringWriter();
+		try {
+			writeJsonFull(writer);
+		} catch(IOException e) {
+			// not expected with a StringWriter
+			LOGGER.error("Cannot serialize entity " + rawName, e);
 		}
-			
-		if (getOffsetStart() != -1)	
-			buffer.append(", \"offsetStart\" : " + getOffsetStart());
-		if (getOffsetEnd() != -1)	
-			buffer.append(", \"offsetEnd\" : " + getOffsetEnd());	
-		
-		if ( (boundingBoxes != null) && (boundingBoxes.size() > 0) ) {
-			buffer.append(", \"pos\" : [");
-			boolean start = true; 
-			for(BoundingBox box : boundingBoxes) {
-				if (start) {
-					buffer.append("{").append(box.toJson()).append("}");
-					start = false;
-				} else {
-					buffer.append(", {").append(box.toJson()).append("}");
-				}
-			}
-			buffer.append("]");
+		return writer.toString();
+	}
+
+	/**
+	 * Same as toJsonFull(), but writing directly the JSON in a writer
+	 */
+	public void writeJsonFull(Writer writer) throws IOException {
+		writer.write("{ ");
+		writer.write("\"rawName\" : \"");
+		JsonUtils.writeEscaped(writer, normalisedRawName);
+		writer.write("\"");
+		if (preferredTerm != null) {
+			writer.write(", \"preferredTerm\" : \"");
+			JsonUtils.writeEscaped(writer, preferredTerm);
+			writer.write("\"");
 		}
+		writeJsonTypeAndPosition(writer);
 
 		/*buffer.append(", \"nerd_score\" : \"" + nerdScore + "\"");
 		buffer.append(", \"nerd_selection_score\" : \"" + selectionScore + "\"");*/
 
-		buffer.append(", \"nerd_score\":" + TextUtilities.formatFourDecimals(nerdScore));
-		buffer.append(", \"nerd_selection_score\":" + TextUtilities.formatFourDecimals(selectionScore));
+		writer.write(", \"nerd_score\":");
+		writer.write(TextUtilities.formatFourDecimals(nerdScore));
+		writer.write(", \"nerd_selection_score\":");
+		writer.write(TextUtilities.formatFourDecimals(selectionScore));
 
 		/*if (ner_conf != -1.0)
 			buffer.append(", \"ner_conf\" : \"" + ner_conf + "\"");*/
 		//buffer.append(", \"prob\" : \"" + prob + "\"");
 		
-		sense = correctSense(sense);
-		if (sense != null) {
-			buffer.append(", \"sense\" : { "); 
-			if (sense.getFineSense() != null) {
-				buffer.append("\"fineSense\" : \"" + sense.getFineSense() + "\"");
-				//buffer.append(", \"fineSenseConfidence\" : \"" + sense.getFineSenseConfidence() + "\"");
-			}
-		
-			if (sense.getCoarseSense() != null) {
-				if ( (sense.getFineSense() == null) ||
-				     ( (sense.getFineSense() != null) && !sense.getCoarseSense().equals(sense.getFineSense())) ) {
-					buffer.append(", \"coarseSense\" : \"" + sense.getCoarseSense() + "\"");
-				}
-			}
-			buffer.append(" }");
-		}
+		writeJsonSense(writer);
 
-		if (wikipediaExternalRef != -1)
-			buffer.append(", \"wikipediaExternalRef\":" + wikipediaExternalRef);
+		if (wikipediaExternalRef != -1) {
+			writer.write(", \"wikipediaExternalRef\":");
+			writer.write(Integer.toString(wikipediaExternalRef));
+		}
 
-		if (wikidataId != null)
-			buffer.append(", \"wikidataId\" : \"" + wikidataId + "\"");
+		if (wikidataId != null) {
+			writer.write(", \"wikidataId\" : \"");
+			writer.write(wikidataId);
+			writer.write("\"");
+		}
 
 		/*if (freeBaseExternalRef != null)
 			buffer.append(", \"freeBaseExternalRef\" : \"" + freeBaseExternalRef + "\"" );*/
 
 		if ( (definitions != null) && (definitions.size() > 0) ) {
-			buffer.append(", \"definitions\" : [ ");
+			writer.write(", \"definitions\" : [ ");
 			for(Definition definition : definitions) {
 				if ((definition.getDefinition() == null) || (definition.getDefinition().length() == 0) )
 					continue;
-				byte[] encoded = encoder.quoteAsUTF8(definition.getDefinition());
-				String output = new String(encoded); 
-				buffer.append("{ \"definition\" : \"" + output + "\", \"source\" : \"" + 
-					definition.getSource() + "\", \"lang\" : \"" + definition.getLang() + "\" }");
+				writer.write("{ \"definition\" : \"");
+				JsonUtils.writeEscaped(writer, definition.getDefinition());
+				writer.write("\", \"source\" : \"");
+				writer.write(String.valueOf(definition.getSource()));
+				writer.write("\", \"lang\" : \"");
+				writer.write(String.valueOf(definition.getLang()));
+				writer.write("\" }");
 			}
-			buffer.append(" ] ");
+			writer.write(" ] ");
 		}
 
-		if (domains != null) {
-			buffer.append(", \"domains\" : [ ");
-			boolean first = true;
-			for(String domain : domains) {
-				byte[] encoded = encoder.quoteAsUTF8(domain);
-				String output = new String(encoded);
-				if (first) {
-					buffer.append("\"" + output + "\"");
-					first = false;
-				}
-				else
-					buffer.append(", \"" + output + "\"");
-			}
-			buffer.append(" ] ");
-		}
+		writeJsonDomains(writer);
 
 		if (categories != null) {
-			buffer.append(", \"categories\" : [ ");
+			writer.write(", \"categories\" : [ ");
 			boolean first = true;
 			for(com.scienceminer.nerd.kb.Category category : categories) {				
-				byte[] encoded = encoder.quoteAsUTF8(category.getName());
-				String output = new String(encoded);
 				if (first) {
 					first = false;
 				}
 				else
-					buffer.append(", ");
-				buffer.append("{\"source\" : \"wikipedia-"+lang+"\", \"category\" : \"" + output + "\", ");
-				buffer.append("\"page_id\" : " + category.getWikiPageID() + "}");
+					writer.write(", ");
+				writer.write("{\"source\" : \"wikipedia-");
+				writer.write(String.valueOf(lang));
+				writer.write("\", \"category\" : \"");
+				JsonUtils.writeEscaped(writer, category.getName());
+				writer.write("\", ");
+				writer.write("\"page_id\" : ");
+				writer.write(Integer.toString(category.getWikiPageID()));
+				writer.write("}");
 			}
-			buffer.append(" ] ");
+			writer.write(" ] ");
 		}
 		
 		if ( (wikipediaMultilingualRef != null) && (wikipediaMultilingualRef.size() != 0) ) {
-			buffer.append(", \"multilingual\" : [ ");
+			writer.write(", \"multilingual\" : [ ");
 			boolean first = true;
 		    Iterator it = wikipediaMultilingualRef.entrySet().iterator();
 			while (it.hasNext()) {
@@ -903,32 +878,37 @@ public class NerdEntity implements Comparable<NerdEntity> {
    					first = false;
    				}
    				else
-   					buffer.append(", ");
-				buffer.append("{\"lang\" : \"" + l + "\", \"term\" : \"" + t + "\"");
-				if (wikipediaMultilingualArticle.get(l) != null)
-					buffer.append(", \"page_id\" : " + wikipediaMultilingualArticle.get(l));
-				buffer.append("}");
+   					writer.write(", ");
+				writer.write("{\"lang\" : \"");
+				writer.write(String.valueOf(l));
+				writer.write("\", \"term\" : \"");
+				writer.write(String.valueOf(t));
+				writer.write("\"");
+				if (wikipediaMultilingualArticle.get(l) != null) {
+					writer.write(", \"page_id\" : ");
+					writer.write(String.valueOf(wikipediaMultilingualArticle.get(l)));
+				}
+				writer.write("}");
 				it.remove(); // avoids a ConcurrentModificationException
 	       }
-			buffer.append(" ] ");
+			writer.write(" ] ");
 		}
 		
 		// statements
 		if (statements != null) {
-			buffer.append(", \"statements\": [");
+			writer.write(", \"statements\": [");
 			boolean start = true;
 			for(Statement statement : statements) {
 				if (start)
 					start = false;
 				else 
-					buffer.append(", ");
-				buffer.append(statement.toJson());
+					writer.write(", ");
+				writer.write(statement.toJson());
 			}
-			buffer.append("]");
+			writer.write("]");
 		}
 
-		buffer.append(" }");
-		return buffer.toString();
+		writer.write(" }");
 	}
 
 	/**
@@ -936,159 +916,145 @@ public class NerdEntity implements Comparable<NerdEntity> {
 	 * by an additional call to the KB concept information.
 	 */
 	public String toJsonCompact() {
-		JsonStringEncoder encoder = JsonStringEncoder.getInstance();
-		StringBuilder buffer = new StringBuilder();
-		buffer.append("{ ");
-		byte[] encodedRawName = encoder.quoteAsUTF8(normalisedRawName);
-		String outputRawName = new String(encodedRawName); 
-		buffer.append("\"rawName\" : \"" + outputRawName + "\"");
-		/*if (preferredTerm != null) {
-			byte[] encodedPreferredTerm = encoder.quoteAsUTF8(preferredTerm);
-			String outputPreferredTerm  = new String(encodedPreferredTerm); 
-			buffer.append(", \"preferredTerm\" : \"" + outputPreferredTerm + "\"");
-		}*/
-		if (type != null)
-			buffer.append(", \"type\" : \"" + type.getName() + "\"");	
+		StringWriter writer = new StringWriter();
+		try {
+			writeJsonCompact(writer);
+		} catch(IOException e) {
+			// not expected with a StringWriter
+			LOGGER.error("Cannot serialize entity " + rawName, e);
+		}
+		return writer.toString();
+	}
+
+	/**
+	 * Same as toJsonCompact(), but writing directly the JSON in a writer
+	 */
+	public void writeJsonCompact(Writer writer) throws IOException {
+		writer.write("{ ");
+		writer.write("\"rawName\" : \"");
+		JsonUtils.writeEscaped(writer, normalisedRawName);
+		writer.write("\"");
+		writeJsonTypeAndPosition(writer);
+
+		writer.write(", \"nerd_score\": ");
+		writer.write(TextUtilities.formatFourDecimals(nerdScore));
+		writer.write(", \"nerd_selection_score\": ");
+		writer.write(TextUtilities.formatFourDecimals(selectionScore));
+		/*if (ner_conf != -1.0)
+			buffer.append(", \"ner_conf\" : \"" + ner_conf + "\"");*/
+		//buffer.append(", \"prob\" : \"" + prob + "\"");
+		
+		writeJsonSense(writer);
+
+		if (wikipediaExternalRef != -1) {
+			writer.write(", \"wikipediaExternalRef\": ");
+			writer.write(Integer.toString(wikipediaExternalRef));
+		}
+
+		if (wikidataId != null) {
+			writer.write(", \"wikidataId\" : \"");
+			writer.write(wikidataId);
+			writer.write("\"");
+		}
+
+		writeJsonDomains(writer);
+
+		writer.write(" }");
+	}
+
+	/**
+	 * JSON fields common to the full and compact serializations: NER type, offsets
+	 * and PDF coordinates
+	 */
+	private void writeJsonTypeAndPosition(Writer writer) throws IOException {
+		if (type != null) {
+			writer.write(", \"type\" : \"");
+			writer.write(type.getName());
+			writer.write("\"");
+		}
 		
 		if (subTypes != null) {
-			buffer.append(", \"subtype\" : [ ");
+			writer.write(", \"subtype\" : [ ");
 			boolean begin = true;
 			for(String subtype : subTypes) {
 				if (begin) {
-					buffer.append("\"" + subtype + "\"");
 					begin = false;
 				}
 				else {
-					buffer.append(", \"" + subtype + "\"");
+					writer.write(", ");
 				}
+				writer.write("\"");
+				writer.write(String.valueOf(subtype));
+				writer.write("\"");
 			}
-			buffer.append(" ] \"");
+			writer.write(" ] \"");
 		}
-
-		if (getOffsetStart() != -1)	
-			buffer.append(", \"offsetStart\" : " + getOffsetStart());
-		if (getOffsetEnd() != -1)	
-			buffer.append(", \"offsetEnd\" : " + getOffsetEnd());	
-
+			
+		if (getOffsetStart() != -1)	{
+			writer.write(", \"offsetStart\" : ");
+			writer.write(Integer.toString(getOffsetStart()));
+		}
+		if (getOffsetEnd() != -1) {
+			writer.write(", \"offsetEnd\" : ");
+			writer.write(Integer.toString(getOffsetEnd()));
+		}
+		
 		if ( (boundingBoxes != null) && (boundingBoxes.size() > 0) ) {
-			buffer.append(", \"pos\" : [");
+			writer.write(", \"pos\" : [");
 			boolean start = true; 
 			for(BoundingBox box : boundingBoxes) {
 				if (start) {
-					buffer.append("{").append(box.toJson()).append("}");
 					start = false;
 				} else {
-					buffer.append(", {").append(box.toJson()).append("}");
+					writer.write(", ");
 				}
+				writer.write("{");
+				writer.write(box.toJson());
+				writer.write("}");
 			}
-			buffer.append("]");
+			writer.write("]");
 		}
+	}
 
-		buffer.append(", \"nerd_score\": " + TextUtilities.formatFourDecimals(nerdScore));
-		buffer.append(", \"nerd_selection_score\": " + TextUtilities.formatFourDecimals(selectionScore));
-		/*if (ner_conf != -1.0)
-			buffer.append(", \"ner_conf\" : \"" + ner_conf + "\"");*/
-		//buffer.append(", \"prob\" : \"" + prob + "\"");
-		
+	private void writeJsonSense(Writer writer) throws IOException {
 		sense = correctSense(sense);
 		if (sense != null) {
-			buffer.append(", \"sense\" : { "); 
+			writer.write(", \"sense\" : { "); 
 			if (sense.getFineSense() != null) {
-				buffer.append("\"fineSense\" : \"" + sense.getFineSense() + "\"");
+				writer.write("\"fineSense\" : \"");
+				writer.write(sense.getFineSense());
+				writer.write("\"");
 				//buffer.append(", \"fineSenseConfidence\" : \"" + sense.getFineSenseConfidence() + "\"");
 			}
 		
 			if (sense.getCoarseSense() != null) {
 				if ( (sense.getFineSense() == null) ||
 				     ( (sense.getFineSense() != null) && !sense.getCoarseSense().equals(sense.getFineSense())) ) {
-					buffer.append(", \"coarseSense\" : \"" + sense.getCoarseSense() + "\"");
+					writer.write(", \"coarseSense\" : \"");
+					writer.write(sense.getCoarseSense());
+					writer.write("\"");
 				}
 			}
-			buffer.append(" }");
+			writer.write(" }");
 		}
+	}
 
-		if (wikipediaExternalRef != -1)
-			buffer.append(", \"wikipediaExternalRef\": " + wikipediaExternalRef);
-
-		if (wikidataId != null)
-			buffer.append(", \"wikidataId\" : \"" + wikidataId + "\"");
-
-		/*if (freeBaseExternalRef != null)
-			buffer.append(", \"freeBaseExternalRef\" : \"" + freeBaseExternalRef + "\"" );*/
-
-		/*if ( (definitions != null) && (definitions.size() > 0) ) {
-			buffer.append(", \"definitions\" : [ ");
-			for(Definition definition : definitions) {
-				if ((definition.getDefinition() == null) || (definition.getDefinition().length() == 0) )
-					continue;
-				byte[] encoded = encoder.quoteAsUTF8(definition.getDefinition());
-				String output = new String(encoded); 
-				buffer.append("{ \"definition\" : \"" + output + "\", \"source\" : \"" + 
-					definition.getSource() + "\", \"lang\" : \"" + definition.getLang() + "\" }");
-			}
-			buffer.append(" ] ");
-		}*/
-
+	private void writeJsonDomains(Writer writer) throws IOException {
 		if (domains != null) {
-			buffer.append(", \"domains\" : [ ");
+			writer.write(", \"domains\" : [ ");
 			boolean first = true;
 			for(String domain : domains) {
-				byte[] encoded = encoder.quoteAsUTF8(domain);
-				String output = new String(encoded);
 				if (first) {
-					buffer.append("\"" + output + "\"");
 					first = false;
 				}
 				else
-					buffer.append(", \"" + output + "\"");
+					writer.write(", ");
+				writer.write("\"");
+				JsonUtils.writeEscaped(writer, domain);
+				writer.write("\"");
 			}
-			buffer.append(" ] ");
+			writer.write(" ] ");
 		}
-
-		/*if (categories != null) {
-			buffer.append(", \"categories\" : [ ");
-			boolean first = true;
-			for(com.scienceminer.nerd.kb.Category category : categories) {				
-				byte[] encoded = encoder.quoteAsUTF8(category.getName());
-				String output = new String(encoded);
-				if (first) {
-					first = false;
-				}
-				else
-					buffer.append(", ");
-				buffer.append("{\"source\" : \"wikipedia-"+lang+"\", \"category\" : \"" + output + "\", ");
-				buffer.append("\"page_id\" : " + category.getWikiPageID() + "}");
-			}
-			buffer.append(" ] ");
-		}*/
-		
-		/*if ( (wikipediaMultilingualRef != null) && (wikipediaMultilingualRef.size() != 0) ) {
-			buffer.append(", \"multilingual\" : [ ");
-			boolean first = true;
-		    Iterator it = wikipediaMultilingualRef.entrySet().iterator();
-			while (it.hasNext()) {
-				Map.Entry pair = (Map.Entry)it.next();
-				String l = (String)pair.getKey();
-				String t = (String)pair.getValue();
-				//if (t != null)
-				//	t = t.replace("#", " ");
-				// with #, this is an anchor to the first element page, however the page_id seems then not available	
-   				if (first) {
-   					first = false;
-   				}
-   				else
-   					buffer.append(", ");
-				buffer.append("{\"lang\" : \"" + l + "\", \"term\" : \"" + t + "\"");
-				if (wikipediaMultilingualArticle.get(l) != null)
-					buffer.append(", \"page_id\" : " + wikipediaMultilingualArticle.get(l));
-				buffer.append("}");
-				it.remove(); // avoids a ConcurrentModificationException
-	       }
-			buffer.append(" ] ");
-		}*/
-
-		buffer.append(" }");
-		return buffer.toString();
 	}
 
 	private Sense correctSense(Sense theSense) {
@@ -73,6 +73,9 @@ public class NerdModel {
 	// for sample < 1.0, positive increases correspondingly
 	protected double sampling = 1.0;
 
+	// number of training articles whose markup is converted at once
+	protected static final int CONVERSION_BATCH_SIZE = 100;
+
 	public NerdModel() {
 		xstream = new XStream();
 		XStream.setupDefaultSecurity(xstream);
@@ -94,6 +97,17 @@ public class NerdModel {
 		System.out.println("Training data loaded from file " + file.getPath());
 	}
 	
+	/**
+	 * @return the full markup of the articles with internal links to articles only, the 
+	 * articles being converted in parallel
+	 */
+	protected static List<String> convertArticles(List<Article> articles, String lang) throws InterruptedException {
+		List<String> wikiTexts = new ArrayList<String>(articles.size());
+		for (Article article : articles)
+			wikiTexts.add(article.getFullWikiText());
+		return MediaWikiParser.getInstance().convert(wikiTexts, lang, MediaWikiParser.Format.INTERNAL_LINKS_ARTICLES);
+	}
+
 	public void clearTrainingData() {
 		//dataset = null;
 		arffDataset = null;
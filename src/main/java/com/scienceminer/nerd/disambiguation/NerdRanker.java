@@ -9,6 +9,7 @@ import com.scienceminer.nerd.kb.*;
 import com.scienceminer.nerd.disambiguation.NerdCandidate;
 import com.scienceminer.nerd.utilities.NerdProperties;
 import com.scienceminer.nerd.utilities.NerdConfig;
+import com.scienceminer.nerd.utilities.NerdMetrics;
 import com.scienceminer.nerd.exceptions.*;
 import com.scienceminer.nerd.evaluation.*;
 
@@ -105,7 +106,10 @@ public class NerdRanker extends NerdModel {
 		feature.bestCaseContext = bestCaseContext;
 		//feature.bestCaseContext = false;
 		double[] features = feature.toVector(attributes);
-		return forest.predict(features);
+		long start = NerdMetrics.start();
+		double prob = forest.predict(features);
+		NerdMetrics.stop(NerdMetrics.Stage.rankerModel, start);
+		return prob;
 	}
 
 	public void saveModel() throws IOException, Exception {
@@ -165,22 +169,30 @@ public class NerdRanker extends NerdModel {
 		int nbArticle = 0;
 		this.positives = 1;
 		this.negatives = 0;
-		for (Article article : articles.getSample()) {
-			arffBuilder = trainArticle(article, arffBuilder);	
-			nbArticle++;
+		String lang = wikipedia.getConfig().getLangCode();
+		List<Article> sample = articles.getSample();
+		for (int start = 0; start < sample.size(); start += CONVERSION_BATCH_SIZE) {
+			// the markup of a batch of articles is converted in parallel
+			List<Article> batch = sample.subList(start, Math.min(start + CONVERSION_BATCH_SIZE, sample.size()));
+			List<String> contents = convertArticles(batch, lang);
+			for (int i = 0; i < batch.size(); i++) {
+				arffBuilder = trainArticle(batch.get(i), contents.get(i), arffBuilder);	
+				nbArticle++;
 System.out.println("nb article processed: " + nbArticle);
+			}
 		}
 //System.out.println(arffBuilder.toString());
 		arffDataset = arffBuilder.toString();
 		attributeDataset = arffParser.parse(IOUtils.toInputStream(arffDataset, "UTF-8"));
 	}
 
-	private StringBuilder trainArticle(Article article, StringBuilder arffBuilder) throws Exception {
+	/**
+	 * @param content the markup of the article with internal links to articles only
+	 */
+	private StringBuilder trainArticle(Article article, String content, StringBuilder arffBuilder) throws Exception {
 		List<NerdEntity> refs = new ArrayList<NerdEntity>();
 		String lang = wikipedia.getConfig().getLangCode();
 
-		String content = MediaWikiParser.getInstance().
-			toTextWithInternalLinksArticlesOnly(article.getFullWikiText(), lang);
 		content = content.replace("''", "");
 		StringBuilder contentText = new StringBuilder(); 
 //System.out.println("Content: " + content);
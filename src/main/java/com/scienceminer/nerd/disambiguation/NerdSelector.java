@@ -8,6 +8,7 @@ import com.scienceminer.nerd.kb.*;
 import com.scienceminer.nerd.disambiguation.NerdCandidate;
 import com.scienceminer.nerd.utilities.NerdProperties;
 import com.scienceminer.nerd.utilities.NerdConfig;
+import com.scienceminer.nerd.utilities.NerdMetrics;
 
 import org.grobid.core.utilities.OffsetPosition;
 import org.grobid.core.data.Entity;
@@ -119,7 +120,10 @@ public class NerdSelector extends NerdModel {
 		feature.tf_idf = tf_idf;
 		feature.dice = dice;
 		double[] features = feature.toVector(attributes);
-		return forest.predict(features);
+		long start = NerdMetrics.start();
+		double prob = forest.predict(features);
+		NerdMetrics.stop(NerdMetrics.Stage.selectorModel, start);
+		return prob;
 	}
 
 	public void saveModel() throws IOException, Exception {
@@ -177,10 +181,16 @@ public class NerdSelector extends NerdModel {
 		arffBuilder.append(feat.getArffHeader()).append("\n");
 		int nbArticle = 0;
 		NerdRanker ranker = new NerdRanker(wikipedia);
-		for (Article article : articles.getSample()) {
-			arffBuilder = trainArticle(article, arffBuilder, ranker);	
+		String lang = wikipedia.getConfig().getLangCode();
+		List<Article> sample = articles.getSample();
+		for (int start = 0; start < sample.size(); start += CONVERSION_BATCH_SIZE) {
+			List<Article> batch = sample.subList(start, Math.min(start + CONVERSION_BATCH_SIZE, sample.size()));
+			List<String> contents = convertArticles(batch, lang);
+			for (int i = 0; i < batch.size(); i++) {
+				arffBuilder = trainArticle(batch.get(i), contents.get(i), arffBuilder, ranker);	
 System.out.println("nb article processed: " + nbArticle);
-			nbArticle++;
+				nbArticle++;
+			}
 		}
 		arffDataset = arffBuilder.toString();
 //System.out.println(arffDataset);
@@ -199,12 +209,19 @@ System.out.println("nb article processed: " + nbArticle);
 		positives = 1;
 		negatives = 0;
 		NerdRanker ranker = new NerdRanker(wikipedia);
-		for (Article article : articles.getSample()) {
-			arffBuilder = new StringBuilder();
-			arffBuilder = trainArticle(article, arffBuilder, ranker);	
+		String lang = wikipedia.getConfig().getLangCode();
+		List<Article> sample = articles.getSample();
+		for (int start = 0; start < sample.size(); start += CONVERSION_BATCH_SIZE) {
+			// the markup of a batch of articles is converted in parallel
+			List<Article> batch = sample.subList(start, Math.min(start + CONVERSION_BATCH_SIZE, sample.size()));
+			List<String> contents = convertArticles(batch, lang);
+			for (int i = 0; i < batch.size(); i++) {
+				arffBuilder = new StringBuilder();
+				arffBuilder = trainArticle(batch.get(i), contents.get(i), arffBuilder, ranker);	
 System.out.println("nb article processed: " + nbArticle);
-			FileUtils.writeStringToFile(file, arffBuilder.toString(), true);
-			nbArticle++;
+				FileUtils.writeStringToFile(file, arffBuilder.toString(), true);
+				nbArticle++;
+			}
 		}
 		//arffDataset = arffBuilder.toString();
 		arffDataset = FileUtils.readFileToString(file, "UTF-8");
@@ -213,13 +230,16 @@ System.out.println("nb article processed: " + nbArticle);
 		System.out.println("Training data saved under " + file.getPath());
 	}
 
+	/**
+	 * @param content the markup of the article with internal links to articles only
+	 */
 	private StringBuilder trainArticle(Article article, 
+									String content,
 									StringBuilder arffBuilder, 
 									NerdRanker ranker) throws Exception {
 System.out.println(" - training " + article);
 		List<NerdEntity> refs = new ArrayList<NerdEntity>();
 		String lang = wikipedia.getConfig().getLangCode();
-		String content = MediaWikiParser.getInstance().toTextWithInternalLinksArticlesOnly(article.getFullWikiText(), lang);
 		content = content.replace("''", "");
 		StringBuilder contentText = new StringBuilder(); 
 //System.out.println(content);
@@ -359,76 +359,8 @@ public class ProcessText {
 			return null;
 		}
 		
-		List<Entity> results = new ArrayList<Entity>();
-		try {
-			List<StringPos> pool = ngrams(text, NGRAM_LENGTH, lang);
-
-			// candidates which start and end with a stop word are removed. 
-			// beware not to be too aggressive.
-			List<Integer> toRemove = new ArrayList<Integer>();
-			
-			for(int i=0; i<pool.size(); i++) {
-				StringPos termPosition = pool.get(i);
-				String termValue = termPosition.string;
-				String termValueLowercase = termValue.toLowerCase();
-
-				/*if (termValueLowercase.indexOf("\n") != -1) {
-					toRemove.add(new Integer(i));
-					continue;
-				}*/
-
-				// remove term starting or ending with a stopword, and term starting with a separator (conservative
-				// it should never be the case)
-				if (stopwords != null) {
-					if ( (delimiters.indexOf(termValueLowercase.charAt(0)) != -1) ||
-						 stopwords.startsWithStopword(termValueLowercase, lang.getLang()) ||
-						 stopwords.endsWithStopword(termValueLowercase, lang.getLang())
-					) {
-						toRemove.add(new Integer(i));
-						continue;
-					} 
-				}
-
-				// remove term ending with a separator (conservative it should never be the case)
-				while (delimiters.indexOf(termValueLowercase.charAt(termValueLowercase.length()-1)) != -1) {
-					termPosition.string = termPosition.string.substring(0,termPosition.string.length()-1);
-					termValueLowercase = termValueLowercase.substring(0,termValueLowercase.length()-1);
-					if (termValueLowercase.length() == 0) {
-						toRemove.add(new Integer(i));
-						continue;
-					}
-				}
-			}
-
-			List<StringPos> subPool = new ArrayList<StringPos>();
-			for(int i=0; i<pool.size(); i++) {
-				if (toRemove.contains(new Integer(i))) {
-					continue;
-				}
-				else {
-					subPool.add(pool.get(i));
-				}
-			}
-
-			// Calculating the positions
-			for(StringPos candidate : subPool) {
-				Entity entity = new Entity(candidate.string);
-				
-				org.grobid.core.utilities.OffsetPosition pos = 
-					new org.grobid.core.utilities.OffsetPosition();
-				pos.start = candidate.pos;
-				pos.end = pos.start + candidate.string.length();
-				entity.setOffsets(pos);
-				// we have an additional check of validy based on language
-				if (validEntity(entity, lang.getLang())) {
-					if (!results.contains(entity))
-						results.add(entity);
-				}
-			}
-		} catch(Exception e) {
-			throw new NerdException("NERD error when processing text.", e);
-		}
-		return results;
+		TokenArena arena = TokenArena.fromText(text, lang);
+		return processBrutal(arena, 0, arena.size(), lang);
 	}
 	
 	/**
@@ -446,111 +378,86 @@ public class ProcessText {
 			LOGGER.error("Content to be processed is empty.");
 			return null;
 		}
-		String text = LayoutTokensUtil.toText(tokens);
+		TokenArena arena = TokenArena.fromLayoutTokens(tokens, lang);
+		return processBrutal(arena, 0, arena.size(), lang);
+	}
+
+	/**
+	 * Extraction of all the non-trivial ngrams of a slice of a token arena, from the token
+	 * index from (included) to the token index to (excluded). The offsets of the mentions are 
+	 * the ones of the text of the arena. When the arena comes from layout tokens, the mentions 
+	 * are sorted by position and get the bounding boxes of their layout tokens.
+	 */
+	private List<Entity> processBrutal(TokenArena arena, int from, int to, Language lang) throws NerdException { 
+		String text = arena.getText();
+		boolean layout = arena.hasLayoutTokens();
+		int actualNgram = (NGRAM_LENGTH * 2) - 1; // for taking into account separators
 		List<Entity> results = new ArrayList<Entity>();
 		try {
-			List<StringPos> pool = ngrams(text, NGRAM_LENGTH, lang);
-		
-			// candidates which start and end with a stop word are removed. 
-			// beware not to be too agressive. 
-			List<Integer> toRemove = new ArrayList<Integer>();
-			
-			for(int i=0; i<pool.size(); i++) {
-				StringPos term1 = pool.get(i);
-				String term = term1.string;
-				term = term.replace("\n", " ");
-				String termLow = term.toLowerCase();
-
-				/*if (termLow.indexOf("\n") != -1) {
-					toRemove.add(new Integer(i));
-					continue;
-				} */
-
-				if (stopwords != null) {
-					if ( (delimiters.indexOf(termLow.charAt(0)) != -1) ||
-						 stopwords.startsWithStopword(termLow, lang.getLang()) ||
-						 stopwords.endsWithStopword(termLow, lang.getLang()) 
-					) {
-						toRemove.add(new Integer(i));
+			List<Entity> pool = new ArrayList<Entity>();
+			for (int n = 1; n <= actualNgram; n++) {
+				for (int i = from; i < to - n + 1; i++) {
+					if (arena.isEmpty(i))
 						continue;
-					} 
-				}
+					int start = arena.getStart(i);
+					int end = arena.getEnd(i + n - 1);
+					String termValueLowercase = arena.getNormalised(start, end);
+
+					// remove term starting or ending with a stopword, and term starting with a separator 
+					// (conservative it should never be the case) - beware not to be too aggressive
+					if (stopwords != null) {
+						if ( (delimiters.indexOf(termValueLowercase.charAt(0)) != -1) ||
+							 stopwords.startsWithStopword(termValueLowercase, lang.getLang()) ||
+							 stopwords.endsWithStopword(termValueLowercase, lang.getLang())
+						) {
+							continue;
+						} 
+					}
 
-				while (delimiters.indexOf(termLow.charAt(termLow.length()-1)) != -1) {
-					term1.string = term1.string.substring(0,term1.string.length()-1);
-					termLow = termLow.substring(0,termLow.length()-1);
-					if (termLow.length() == 0) {
-						toRemove.add(new Integer(i));
+					// remove the separators ending the term
+					while ( (end > start) && (delimiters.indexOf(text.charAt(end-1)) != -1) )
+						end--;
+					if (end == start)
 						continue;
-					}
-				}
-			}
 
-			List<StringPos> subPool = new ArrayList<StringPos>();
-			for(int i=0; i<pool.size(); i++) {
-				if (toRemove.contains(new Integer(i))) {
-					continue;
-				}
-				else {
-					subPool.add(pool.get(i));
+					Entity entity = new Entity(text.substring(start, end));
+					org.grobid.core.utilities.OffsetPosition pos = 
+						new org.grobid.core.utilities.OffsetPosition();
+					pos.start = start;
+					pos.end = end;
+					entity.setOffsets(pos);
+					pool.add(entity);
 				}
 			}
 
-			int tokenPos = 0;
-			int lastTokenIndex = 0;
-			int lastTokenPos = 0;
-
-			Collections.sort(subPool);
-			for(StringPos candidate : subPool) {
-				Entity entity = new Entity(candidate.string);				
-				org.grobid.core.utilities.OffsetPosition pos = 
-					new org.grobid.core.utilities.OffsetPosition();
-				pos.start = candidate.pos;
-				pos.end = pos.start + candidate.string.length();
-				entity.setOffsets(pos);
-				// synchronize layout token with the selected ngrams
-				List<LayoutToken> entityTokens = null;
-				tokenPos = lastTokenPos;
-				for(int j=lastTokenIndex; j<tokens.size(); j++) {
-					if (tokenPos < pos.start) {
-						tokenPos += tokens.get(j).getText().length();
-						continue;
-					}
-					if (tokenPos + tokens.get(j).getText().length() > pos.end) {
-						break;
+			if (layout) {
+				Collections.sort(pool, new Comparator<Entity>() {
+					@Override
+					public int compare(Entity entity1, Entity entity2) {
+						return Integer.compare(entity1.getOffsetStart(), entity2.getOffsetStart());
 					}
+				});
+			}
 
-					if (tokenPos == pos.start) {
-						entityTokens = new ArrayList<LayoutToken>();
-						entityTokens.add(tokens.get(j));
-						lastTokenIndex = j;
-						lastTokenPos = tokenPos;
-					} else if ( (tokenPos >= pos.start) && (tokenPos <= pos.end) ) {
-						if (entityTokens == null) {
-							entityTokens = new ArrayList<LayoutToken>();
-							lastTokenIndex = j;
-							lastTokenPos = tokenPos;
-						}
-						entityTokens.add(tokens.get(j));
-					} 
-
-					tokenPos += tokens.get(j).getText().length();
+			for(Entity entity : pool) {
+				if (layout) {
+					// layout tokens of the selected ngram
+					List<LayoutToken> entityTokens = 
+						arena.getLayoutTokens(entity.getOffsetStart(), entity.getOffsetEnd());
+					if (entityTokens != null)
+						entity.setBoundingBoxes(BoundingBoxCalculator.calculate(entityTokens));
+					else 
+						LOGGER.warn("LayoutToken sequence not found for mention: " + entity.getRawName());
 				}
-				if (entityTokens != null)
-					entity.setBoundingBoxes(BoundingBoxCalculator.calculate(entityTokens));
-				else 
-					LOGGER.warn("LayoutToken sequence not found for mention: " + candidate.string);
 				// we have an additional check of validy based on language
-				if (validEntity(entity, lang.getLang()))
+				if (validEntity(entity, lang.getLang())) {
 					if (!results.contains(entity))
 						results.add(entity);
+				}
 			}
-		}
-		catch(Exception e) {
-			e.printStackTrace();
+		} catch(Exception e) {
 			throw new NerdException("NERD error when processing text.", e);
 		}
-		
 		return results;
 	}
 
@@ -691,10 +598,12 @@ public class ProcessText {
 		
 		List<Entity> results = new ArrayList<Entity>();
 		
+		// the content is tokenised once for all the stages
+		TokenArena arena = nerdQuery.getTokenArena();
+
 		// do we need to process the whole text only a sentence?
 		if ( ArrayUtils.isNotEmpty(processSentence) && CollectionUtils.isNotEmpty(sentences) ) {
 			// we process only the indicated sentences
-			String text2tag = null;
 			for(int i=0; i<processSentence.length; i++) {
 				Integer index = processSentence[i];
 			
@@ -703,17 +612,12 @@ public class ProcessText {
 				// message to the client
 				if (index.intValue() >= sentences.size())
 					continue;
-				Sentence sentence = sentences.get(index.intValue());
-				text2tag = text.substring(sentence.getOffsetStart(), sentence.getOffsetEnd());
 				try {
-					List<Entity> localResults = processBrutal(text2tag, language);
+					// the offsets of the entities are already the ones of the whole text
+					List<Entity> localResults = processBrutal(arena, arena.getSentenceStart(index.intValue()), 
+						arena.getSentenceEnd(index.intValue()), language);
 
-					// we "shift" the entities offset in case only specific sentences are processed
 					if ( CollectionUtils.isNotEmpty(localResults) ) {
-						for(Entity entity : localResults) {
-							entity.setOffsetStart(sentence.getOffsetStart() + entity.getOffsetStart());
-							entity.setOffsetEnd(sentence.getOffsetStart() + entity.getOffsetEnd());
-						}
 						for(Entity entity : localResults) {
 							if (validEntity(entity, lang)) {
 								if (results == null)
@@ -730,10 +634,7 @@ public class ProcessText {
 			}
 		}
 		else {
-			if (CollectionUtils.isNotEmpty(tokens) )
-				return processBrutal(tokens, language);
-			else
-				return processBrutal(text, language);
+			return processBrutal(arena, 0, arena.size(), language);
 		}
 		return results;
 	}
@@ -889,7 +790,7 @@ public class ProcessText {
 		if (CollectionUtils.isNotEmpty(tokens) ) 
 			acronyms = acronymCandidates(tokens);
 		else
-			acronyms = acronymCandidates(text, language);
+			acronyms = acronymCandidates(nerdQuery.getTokenArena().toLayoutTokens());
 
 		if (acronyms != null) {
 			if (nerdQuery.getContext() == null)
@@ -1090,6 +991,16 @@ System.out.println("acronym: " + acronym.getOffsetStart() + " " + acronym.getOff
      * http://aclweb.org/anthology/C02-1142 
      */
     public static double getDICECoefficient(String term, String lang) {
+		// tokenise according to language
+		List<String> tokens = GrobidAnalyzer.getInstance().tokenize(term, new Language(lang, 1.0));
+		return getDICECoefficient(term, tokens, lang);
+	}
+
+    /**
+     * Same as above, with the given tokenisation of the term, for instance from the token arena 
+     * of the text where the term appears.
+     */
+    public static double getDICECoefficient(String term, List<String> tokens, String lang) {
 		// term frequency
 		LowerKnowledgeBase wikipedia = UpperKnowledgeBase.getInstance().getWikipediaConf(lang);
 		Label label = NerdEngine.bestLabel(term, wikipedia);
@@ -1098,8 +1009,7 @@ System.out.println("acronym: " + acronym.getOffsetStart() + " " + acronym.getOff
 		if (label.getOccCount() != 0)
 			avFreqTerm = (double)label.getOccCount();
 
-		// tokenise according to language and remove punctuations/delimeters
-		List<String> tokens = GrobidAnalyzer.getInstance().tokenize(term, new Language(lang, 1.0));
+		// remove punctuations/delimeters
 		List<String> newTokens = new ArrayList<String>();
 		for(String token : tokens) {
 			if ((token.trim().length() == 0) || (delimiters.indexOf(token) != -1))
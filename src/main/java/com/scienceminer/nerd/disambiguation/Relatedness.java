@@ -8,6 +8,8 @@ import java.util.regex.Pattern;
 
 import com.scienceminer.nerd.utilities.NerdProperties;
 import com.scienceminer.nerd.utilities.NerdConfig;
+import com.scienceminer.nerd.utilities.NerdMetrics;
+import com.scienceminer.nerd.utilities.MinHash;
 import com.scienceminer.nerd.kb.*;
 
 import org.grobid.core.utilities.TextUtilities;
@@ -33,10 +35,13 @@ public class Relatedness {
 	private static final Logger LOGGER = LoggerFactory.getLogger(Relatedness.class);
 
 	private static volatile Relatedness instance = null;
+
+	// separators of the ngrams of a text context, compiled once
+	// would just match all non-word chars, but we dont want to match utf chars
+	private static final Pattern CONTEXT_SEPARATORS = Pattern.compile("[\\s\\{\\}\\(\\)\"\'\\.\\,\\;\\:\\-\\_]");
 		
-	// all the maps use the language code as a key
-	private Map<String, LowerKnowledgeBase> wikipedias = null;
-	private Map<String, ConcurrentMap<Long,Double>> caches = null;
+	// relatedness caches per Wikipedia, a new KB version having its own cache
+	private ConcurrentMap<LowerKnowledgeBase, ConcurrentMap<Long,Double>> caches = null;
 
 	private long comparisonsRequested = 0;
 	private long comparisonsCalculated = 0;
@@ -60,8 +65,14 @@ public class Relatedness {
 	 * Hidden constructor
 	 */
 	private Relatedness() {	
-		wikipedias = UpperKnowledgeBase.getInstance().getWikipediaConfs();
-		caches = new HashMap<String, ConcurrentMap<Long,Double>>();
+		caches = new ConcurrentHashMap<LowerKnowledgeBase, ConcurrentMap<Long,Double>>();
+	}
+
+	/**
+	 * @return the Wikipedia instances of the KB version used by the current request
+	 */
+	private Map<String, LowerKnowledgeBase> getWikipedias() {
+		return UpperKnowledgeBase.getInstance().getWikipediaConfs();
 	}
 
 	/**
@@ -93,17 +104,10 @@ public class Relatedness {
 		if (article == null) {
 			return 0.0;
 		}
-		for (Article contextArticle : contextArticles) {
-			if (article.getId() != contextArticle.getId()) {
-				currentRelatedness = 0.0;
-				try {
-					currentRelatedness = getRelatedness(article, contextArticle, lang);
-				} 
-				catch (Exception e) {
-					LOGGER.error("Error computing semantic relatedness for "
-							+ article + " and " + contextArticle, e);
-				}
-				totalRelatedness += currentRelatedness;
+		double[] relatednesses = getRelatedness(article, contextArticles, lang);
+		for (int i=0; i<contextArticles.size(); i++) {
+			if (article.getId() != contextArticles.get(i).getId()) {
+				totalRelatedness += relatednesses[i];
 				totalComparisons++;
 			}
 		}
@@ -119,39 +123,100 @@ public class Relatedness {
 	public double getRelatedness(Article art1, Article art2, String lang) throws Exception {
 		comparisonsRequested++;
 		
-		//generate unique key for the pair of articles
-		int min = Math.min(art1.getId(), art2.getId());
-		int max = Math.max(art1.getId(), art2.getId());
-		//long key = min + (max << 30);
-//System.out.println(min + " / " + max);
-		long key = (((long)min) << 32) | (max & 0xffffffffL);
-//System.out.println(key);
+		long key = getKey(art1, art2);
 		double relatedness = 0.0;
-		ConcurrentMap<Long,Double> cache = caches.get(lang);
-		if (cache == null) {
-			cache = new ConcurrentHashMap<Long,Double>();
-			caches.put(lang, cache);
-		}
-		if (!cache.containsKey(new Long(key))) {
+		ConcurrentMap<Long,Double> cache = getCache(lang);
+		Double cached = cache.get(key);
+		if (cached == null) {
 			relatedness = getRelatednessWithoutCache(art1, art2, lang);		
-			cache.put(new Long(key), new Double(relatedness));
+			cache.put(key, relatedness);
 			
 			comparisonsCalculated++;
+			NerdMetrics.countCacheMiss("relatedness");
 		} else {
-			relatedness = cache.get(new Long(key)).doubleValue();
+			relatedness = cached.doubleValue();
+			NerdMetrics.countCacheHit("relatedness");
 		}
-//System.out.println("obtained relatedness: " + relatedness);
 		return relatedness;
 	}
 
+	/**
+	 * Calculate the relatedness between one article and a list of articles. The link lists of 
+	 * the article are loaded only once for all the comparisons and the relatedness cache is 
+	 * filled with the computed pairs. 
+	 *
+	 * @return the relatedness with each article of the list, in the same order
+	 */
+	public double[] getRelatedness(Article article, List<Article> others, String lang) {
+		return getRelatedness(article, others, lang, new HashMap<Long,int[]>());
+	}
+
+	/**
+	 * Same as getRelatedness(Article, List, String), with a map of already loaded link lists 
+	 * (see getLinks()) to be shared by several calls, for instance for computing the 
+	 * relatedness of all the pairs of articles of a context.
+	 */
+	protected double[] getRelatedness(Article article, List<Article> others, String lang, Map<Long,int[]> links) {
+		double[] result = new double[others.size()];
+		ConcurrentMap<Long,Double> cache = getCache(lang);
+		LowerKnowledgeBase wikipedia = getWikipedias().get(lang);
+		for (int i=0; i<others.size(); i++) {
+			Article other = others.get(i);
+			comparisonsRequested++;
+			long key = getKey(article, other);
+			Double cached = cache.get(key);
+			if (cached != null) {
+				result[i] = cached.doubleValue();
+				NerdMetrics.countCacheHit("relatedness");
+				continue;
+			}
+			try {
+				result[i] = getRelatednessWithoutCache(article, other, wikipedia, links);
+				cache.put(key, result[i]);
+				comparisonsCalculated++;
+				NerdMetrics.countCacheMiss("relatedness");
+			} catch (Exception e) {
+				LOGGER.error("Error computing semantic relatedness for "
+						+ article + " and " + other, e);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return unique key for the pair of articles
+	 */
+	private static long getKey(Article art1, Article art2) {
+		int min = Math.min(art1.getId(), art2.getId());
+		int max = Math.max(art1.getId(), art2.getId());
+		return (((long)min) << 32) | (max & 0xffffffffL);
+	}
+
+	private ConcurrentMap<Long,Double> getCache(String lang) {
+		LowerKnowledgeBase wikipedia = getWikipedias().get(lang);
+		if (wikipedia == null)
+			return new ConcurrentHashMap<Long,Double>();
+		ConcurrentMap<Long,Double> cache = caches.get(wikipedia);
+		if (cache == null) {
+			caches.putIfAbsent(wikipedia, new ConcurrentHashMap<Long,Double>());
+			cache = caches.get(wikipedia);
+		}
+		return cache;
+	}
+
 	public double getRelatednessWithoutCache(Article artA, Article artB, String lang) throws Exception {
+		return getRelatednessWithoutCache(artA, artB, getWikipedias().get(lang), null);
+	}
+
+	private double getRelatednessWithoutCache(Article artA, Article artB, 
+											LowerKnowledgeBase wikipedia, 
+											Map<Long,int[]> links) throws Exception {
 		if (artA.getId() == artB.getId()) 
 			return 1.0;
 
-		LowerKnowledgeBase wikipedia = wikipedias.get(lang);
 		NerdConfig conf = wikipedia.getConfig();
 
-		EntityPairRelatedness epr = getEntityPairRelatedness(artA, artB, wikipedia);
+		EntityPairRelatedness epr = getEntityPairRelatedness(artA, artB, wikipedia, links);
 		if (epr == null)
 			return 0.0;
 		
@@ -178,12 +243,21 @@ public class Relatedness {
 	}
 
 	public EntityPairRelatedness getEntityPairRelatedness(Article artA, Article artB, LowerKnowledgeBase wikipedia) {
+		return getEntityPairRelatedness(artA, artB, wikipedia, null);
+	}
+
+	private EntityPairRelatedness getEntityPairRelatedness(Article artA, Article artB, 
+														LowerKnowledgeBase wikipedia, 
+														Map<Long,int[]> links) {
 		EntityPairRelatedness epr = new EntityPairRelatedness(artA, artB);
 		NerdConfig conf = wikipedia.getConfig();
 
-		epr = setPageLinkFeatures(epr, Direction.In, wikipedia);
-		if (conf.getUseLinkOut()) 	
-			epr = setPageLinkFeatures(epr, Direction.Out, wikipedia);
+		if (!conf.getUseRelatednessSketches() || !setPageLinkFeaturesFromSketches(epr, Direction.In, wikipedia))
+			epr = setPageLinkFeatures(epr, Direction.In, wikipedia, links);
+		if (conf.getUseLinkOut()) {
+			if (!conf.getUseRelatednessSketches() || !setPageLinkFeaturesFromSketches(epr, Direction.Out, wikipedia))
+				epr = setPageLinkFeatures(epr, Direction.Out, wikipedia, links);
+		}
 
 		if (!epr.inLinkFeaturesSet() && !epr.outLinkFeaturesSet())
 			return null;
@@ -194,85 +268,161 @@ public class Relatedness {
 	/**
 	 *  Following Milne anf Witten relatedness measurement as implemented in WikipediaMiner
 	 */
-	private EntityPairRelatedness setPageLinkFeatures(EntityPairRelatedness epr, Direction dir, LowerKnowledgeBase wikipedia) {
+	private EntityPairRelatedness setPageLinkFeatures(EntityPairRelatedness epr, Direction dir, 
+													LowerKnowledgeBase wikipedia, 
+													Map<Long,int[]> links) {
 		if (epr.getArticleA().getId() == epr.getArticleB().getId()) {
 			// nothing to do
 			return epr;
 		}
 
-		List<Integer> linksA = wikipedia.getLinks(epr.getArticleA().getId(), dir);
-		List<Integer> linksB = wikipedia.getLinks(epr.getArticleB().getId(), dir);
+		int[] linksA = getLinks(epr.getArticleA().getId(), dir, wikipedia, links);
+		int[] linksB = getLinks(epr.getArticleB().getId(), dir, wikipedia, links);
 
 		//we can't do anything if there are no links
-		if (linksA.isEmpty() || linksB.isEmpty()) 
+		if (linksA.length == 0 || linksB.length == 0) 
 			return epr;
 		
-		NerdConfig conf = wikipedia.getConfig();
-//System.out.println("#linksA: " + linksA.size() + " / " + "#linksB: " + linksB.size());
+		int idA = epr.getArticleA().getId();
+		int idB = epr.getArticleB().getId();
 
 		int intersection = 0;
-		//int sentenceIntersection = 0;
 		int union = 0;
 
 		int indexA = 0;
 		int indexB = 0;
 
-		List<Double> vectA = new ArrayList<Double>();
-		List<Double> vectB = new ArrayList<Double>();
-		
-		while (indexA < linksA.size() || indexB < linksB.size()) {
+		// merge of the two sorted link lists
+		while (indexA < linksA.length || indexB < linksB.length) {
 			//identify which links to use (A, B, or both)
-			boolean useA = false;
-			boolean useB = false;
-			boolean mutual = false;
+			boolean hasA = indexA < linksA.length;
+			boolean hasB = indexB < linksB.length;
 
-			Integer linkA = null;
-			Integer linkB = null;
+			if (hasA && hasB && (linksA[indexA] == linksB[indexB])) {
+				intersection++;
+				indexA++;
+				indexB++;
+			} else if (hasA && (!hasB || linksA[indexA] < linksB[indexB])) {
+				// mutual link
+				if (linksA[indexA] == idB)
+					intersection++;
+				indexA++;
+			} else {
+				// mutual link
+				if (linksB[indexB] == idA)
+					intersection++;
+				indexB++;
+			}
+			union++;
+		}
 
-			if (indexA < linksA.size())
-				linkA = linksA.get(indexA);
+		double milneWittenMeasure = getMilneWittenMeasure(linksA.length, linksB.length, intersection, 
+			wikipedia.getArticleCount());
 
-			if (indexB < linksB.size())
-				linkB = linksB.get(indexB);
+		double intersectionProportion;
+		if (union == 0)
+			intersectionProportion = 0;
+		else
+			intersectionProportion = (double)intersection/union;
 
-			if ( (linkA != null) && (linkB != null) && (linkA.equals(linkB)) ) {
-				useA = true;
-				useB = true;
-				intersection ++;
-			} else {
-				if (linkA != null && (linkB == null || linkA < linkB)) {
-					useA = true;
-					if (linkA.equals(epr.getArticleB().getId())) {
-						intersection++;
-						mutual = true;
-					}
+		if (dir == Direction.Out)
+			epr.setOutLinkFeatures(milneWittenMeasure, intersectionProportion);
+		else
+			epr.setInLinkFeatures(milneWittenMeasure, intersectionProportion);
 
-				} else {
-					useB = true;
-					if (linkB.equals(epr.getArticleA().getId())) {
-						intersection++;
-						mutual = true;
-					}
-				}
-			}
-			union++;
+		return epr;
+	}
 
-			if (useA)
-				indexA++;
-			if (useB)
-				indexB++;
-		}
 
-		// this is the famous Milne & Witten relatedness measure
+	/**
+	 * @return the link list of the given article as an array, taken from the map of 
+	 * already loaded link lists if not null
+	 */
+	private static int[] getLinks(int id, Direction dir, LowerKnowledgeBase wikipedia, Map<Long,int[]> links) {
+		Long key = null;
+		if (links != null) {
+			key = (((long)id) << 1) | dir.ordinal();
+			int[] result = links.get(key);
+			if (result != null)
+				return result;
+		}
+
+		List<Integer> list = wikipedia.getLinks(id, dir);
+		int[] result = new int[list.size()];
+		for (int i=0; i<result.length; i++)
+			result[i] = list.get(i).intValue();
+
+		if (links != null)
+			links.put(key, result);
+		return result;
+	}
+
+	/**
+	 * Approximation of the Milne and Witten relatedness, where the size of the intersection 
+	 * of the two link lists is estimated from their MinHash sketches. Mutual links between
+	 * the two articles are not taken into account. 
+	 *
+	 * @return false if the approximation cannot be used and the exact relatedness must be 
+	 * computed: no sketch for one of the articles (i.e. few links) or an estimation too 
+	 * uncertain given the margin of the configuration
+	 */
+	private boolean setPageLinkFeaturesFromSketches(EntityPairRelatedness epr, Direction dir, LowerKnowledgeBase wikipedia) {
+		if (epr.getArticleA().getId() == epr.getArticleB().getId())
+			return false;
+
+		int[] sketchA = wikipedia.getLinkSketch(epr.getArticleA().getId(), dir);
+		if (sketchA == null)
+			return false;
+		int[] sketchB = wikipedia.getLinkSketch(epr.getArticleB().getId(), dir);
+		if (sketchB == null)
+			return false;
+
+		int sizeA = MinHash.getSetSize(sketchA);
+		int sizeB = MinHash.getSetSize(sketchB);
+		int articleCount = wikipedia.getArticleCount();
+
+		double jaccard = MinHash.estimateJaccard(sketchA, sketchB);
+		double error = 2 * MinHash.getStandardError(jaccard);
+		double intersection = Math.round(MinHash.getIntersectionSize(sizeA, sizeB, jaccard));
+
+		// the estimation is used only if the measure is stable in the confidence interval 
+		// of the Jaccard similarity
+		double lower = getMilneWittenMeasure(sizeA, sizeB, 
+			Math.round(MinHash.getIntersectionSize(sizeA, sizeB, Math.max(0.0, jaccard - error))), articleCount);
+		double upper = getMilneWittenMeasure(sizeA, sizeB, 
+			Math.round(MinHash.getIntersectionSize(sizeA, sizeB, Math.min(1.0, jaccard + error))), articleCount);
+		// reported as a cache: hits are the estimations used, misses the exact fallbacks
+		if (upper - lower > wikipedia.getConfig().getRelatednessExactMargin()) {
+			NerdMetrics.countCacheMiss("relatednessSketch");
+			return false;
+		}
+		NerdMetrics.countCacheHit("relatednessSketch");
+
+		double milneWittenMeasure = getMilneWittenMeasure(sizeA, sizeB, intersection, articleCount);
+		double union = sizeA + sizeB - intersection;
+		double intersectionProportion = (union <= 0) ? 0.0 : intersection / union;
+
+		if (dir == Direction.Out)
+			epr.setOutLinkFeatures(milneWittenMeasure, intersectionProportion);
+		else
+			epr.setInLinkFeatures(milneWittenMeasure, intersectionProportion);
+
+		return true;
+	}
+
+	/**
+	 * This is the famous Milne & Witten relatedness measure, normalized in [0,1]
+	 */
+	private static double getMilneWittenMeasure(int sizeA, int sizeB, double intersection, int articleCount) {
 		double milneWittenMeasure = 1.0;
 		if (intersection == 0) {
 			milneWittenMeasure = 1.0;
 		} else {
-			double a = Math.log(linksA.size());
-			double b = Math.log(linksB.size());
+			double a = Math.log(sizeA);
+			double b = Math.log(sizeB);
 			double ab = Math.log(intersection);
 
-			double m = Math.log(wikipedia.getArticleCount());
+			double m = Math.log(articleCount);
 
 			milneWittenMeasure = (Math.max(a, b) - ab) / (m - Math.min(a, b));
 		}
@@ -283,25 +433,13 @@ public class Relatedness {
 		else 	
 			milneWittenMeasure = 1 - milneWittenMeasure;
 
-		double intersectionProportion;
-		if (union == 0)
-			intersectionProportion = 0;
-		else
-			intersectionProportion = (double)intersection/union;
-
-		if (dir == Direction.Out)
-			epr.setOutLinkFeatures(milneWittenMeasure, intersectionProportion);
-		else
-			epr.setInLinkFeatures(milneWittenMeasure, intersectionProportion);
-
-		return epr;
+		return milneWittenMeasure;
 	}
 
-
 	public Set<Article> collectAllContextTerms(List<NerdCandidate> candidates, String lang) {
 		// unambiguous context articles
 		Set<Article> context = new HashSet<Article>();
-		LowerKnowledgeBase wikipedia = wikipedias.get(lang);
+		LowerKnowledgeBase wikipedia = getWikipedias().get(lang);
 		for (NerdCandidate candidate : candidates) {
 			int bestSense = candidate.getWikipediaExternalRef();
 			if (bestSense == -1)
@@ -334,13 +472,25 @@ public class Relatedness {
 							List<NerdEntity> userEntities, 
 							String lang,
 							boolean shortText) throws Exception {
+		return getContext(candidates, userEntities, lang, shortText, NerdEngine.maxContextSize);
+	}
+
+	/**
+	 *  Same as above with a given maximum context size, smaller than the default one when 
+	 *  the processing is degraded.
+	 */
+	public NerdContext getContext(Map<NerdEntity, List<NerdCandidate>> candidates, 
+							List<NerdEntity> userEntities, 
+							String lang,
+							boolean shortText,
+							int maxContextSize) throws Exception {
 		List<Label.Sense> unambig = new ArrayList<Label.Sense>();
 		List<Integer> unambigIds = new ArrayList<Integer>();
 		
 		List<Label.Sense> extraSenses = new ArrayList<Label.Sense>();
 		List<Integer> extraSensesIds = new ArrayList<Integer>();
 		
-		LowerKnowledgeBase wikipedia = wikipedias.get(lang);
+		LowerKnowledgeBase wikipedia = getWikipedias().get(lang);
 		double minSenseProbability = wikipedia.getConfig().getMinSenseProbability();
 
 		// we add the "certain" senses
@@ -396,14 +546,14 @@ public class Relatedness {
 					}
 				}
 			}
-			if (unambig.size()+certainPages.size() > NerdEngine.maxContextSize)
+			if (unambig.size()+certainPages.size() > maxContextSize)
 				break;
 		}
 //System.out.println(unambig.size()+ " unambiguous entities; " + unambig.size());	
 
 		// if the context is still too small, we add come of the top sense of ambiguous labels
 		if (shortText) {
-			if (unambig.size()+certainPages.size() < NerdEngine.maxContextSize) {
+			if (unambig.size()+certainPages.size() < maxContextSize) {
 				if ((extraSenses != null) && (extraSenses.size() > 0)) {
 					for(Label.Sense sense : extraSenses) {
 						Integer theId = new Integer(sense.getId());
@@ -411,7 +561,7 @@ public class Relatedness {
 							unambig.add(sense);
 							unambigIds.add(theId);
 						}
-						if (unambig.size()+certainPages.size() > NerdEngine.maxContextSize)
+						if (unambig.size()+certainPages.size() > maxContextSize)
 							break;
 					}
 				}
@@ -438,13 +588,11 @@ public class Relatedness {
 
 		String s = "$ " + content + " $";
 
-		Pattern p = Pattern.compile("[\\s\\{\\}\\(\\)\"\'\\.\\,\\;\\:\\-\\_]");  
-			//would just match all non-word chars, but we dont want to match utf chars
-		Matcher m = p.matcher(s);
+		Matcher m = CONTEXT_SEPARATORS.matcher(s);
 
 		List<Integer> matchIndexes = new ArrayList<Integer>();
 		List<Label.Sense> extraSenses = new ArrayList<Label.Sense>();
-		LowerKnowledgeBase wikipedia = wikipedias.get(lang);
+		LowerKnowledgeBase wikipedia = getWikipedias().get(lang);
 		double minSenseProbability = wikipedia.getConfig().getMinSenseProbability();
 
 		while (m.find()) 
@@ -511,7 +659,7 @@ public class Relatedness {
 							String lang) throws Exception{
 		Vector<Label.Sense> unambig = new Vector<Label.Sense>();
 		List<Label.Sense> extraSenses = new ArrayList<Label.Sense>();
-		LowerKnowledgeBase wikipedia = wikipedias.get(lang);
+		LowerKnowledgeBase wikipedia = getWikipedias().get(lang);
 		double minSenseProbability = wikipedia.getConfig().getMinSenseProbability();
 		for (WeightedTerm term : terms) {
 
@@ -563,7 +711,7 @@ public class Relatedness {
 	}
 	
 	public long getTermOccurrence(String text, String lang) {
-		LowerKnowledgeBase wikipedia = wikipedias.get(lang);
+		LowerKnowledgeBase wikipedia = getWikipedias().get(lang);
 		Label label = wikipedia.getLabel(text);
 		if (label != null)
 			return label.getOccCount();
@@ -584,17 +732,52 @@ public class Relatedness {
 		return 1-p;
 	}
 
-	public void resetCache(String lang) {
-		ConcurrentMap<Long,Double> cache = caches.get(lang);
-		if (cache != null) {
-			cache.clear();
+	/**
+	 * @return at most max entries of the relatedness cache of a language, with the pair keys 
+	 * of the articles as keys
+	 */
+	public Map<Long,Double> getCacheEntries(String lang, int max) {
+		Map<Long,Double> result = new HashMap<Long,Double>();
+		ConcurrentMap<Long,Double> cache = getCache(lang);
+		for (Map.Entry<Long,Double> entry : cache.entrySet()) {
+			if (result.size() >= max)
+				break;
+			result.put(entry.getKey(), entry.getValue());
 		}
+		return result;
+	}
+
+	/**
+	 * Fill the relatedness cache of a language with previously computed entries, for 
+	 * instance from a warm-start snapshot
+	 */
+	public void putCacheEntries(String lang, Map<Long,Double> entries) {
+		getCache(lang).putAll(entries);
+	}
+
+	public void resetCache(String lang) {
+		getCache(lang).clear();
 		comparisonsCalculated = 0;
 		comparisonsRequested = 0;
 	}
 
+	/**
+	 * Remove the caches of a KB version no longer used
+	 */
+	public void releaseCaches(UpperKnowledgeBase kb) {
+		for (LowerKnowledgeBase wikipedia : kb.getWikipediaConfs().values())
+			releaseCaches(wikipedia);
+	}
+
+	/**
+	 * Remove the caches of a lower KB which has been closed
+	 */
+	public void releaseCaches(LowerKnowledgeBase wikipedia) {
+		caches.remove(wikipedia);
+	}
+
 	public void close() {
-		Iterator it = wikipedias.entrySet().iterator();
+		Iterator it = getWikipedias().entrySet().iterator();
 	    while (it.hasNext()) {
 	        Map.Entry pair = (Map.Entry)it.next();
 	        LowerKnowledgeBase wikipedia = (LowerKnowledgeBase)pair.getValue();
@@ -0,0 +1,87 @@
+package com.scienceminer.nerd.disambiguation;
+
+import java.util.*;
+
+/**
+ * Time budget of the processing of a query. The budget starts when the query is received,
+ * and the disambiguation checks it between its stages: when a given part of the budget has
+ * been consumed, the following stages are degraded so that the response is produced in time.
+ *
+ * The degradations applied to a query are reported in the response.
+ */
+public class TimeBudget {
+
+	/**
+	 * Possible degradations, with the consumed part of the budget from which they are applied.
+	 */
+	public enum Degradation {
+		// fewer candidates per mention
+		candidates(0.25),
+		// smaller context of unambiguous senses for the relatedness
+		context(0.25),
+		// the selector features requiring a scan of the full text are not computed
+		selectorFeatures(0.5),
+		// candidates are ranked by commonness only, without relatedness to the context
+		commonnessRanking(0.5);
+
+		private final double threshold;
+
+		Degradation(double threshold) {
+			this.threshold = threshold;
+		}
+
+		public double getThreshold() {
+			return threshold;
+		}
+	}
+
+	private final long start;
+	private final long budget;
+	private final Set<Degradation> degradations = EnumSet.noneOf(Degradation.class);
+
+	/**
+	 * @param budget time budget in milliseconds, starting now
+	 */
+	public TimeBudget(long budget) {
+		this.start = now();
+		this.budget = budget * 1000000L;
+	}
+
+	/**
+	 * @return the current time in nanoseconds
+	 */
+	protected long now() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * @return the part of the budget already consumed, higher than 1 when the budget is exceeded
+	 */
+	public double getConsumed() {
+		return (double)(now() - start) / budget;
+	}
+
+	/**
+	 * Check if a degradation must be applied, i.e. if it has already been applied or if
+	 * its part of the budget has been consumed. The degradation is then recorded.
+	 */
+	public synchronized boolean degrade(Degradation degradation) {
+		if (degradations.contains(degradation))
+			return true;
+		if (getConsumed() < degradation.getThreshold())
+			return false;
+		degradations.add(degradation);
+		return true;
+	}
+
+	public synchronized Set<Degradation> getDegradations() {
+		return EnumSet.copyOf(degradations);
+	}
+
+	/**
+	 * @return true if a degradation must be applied for the given, possibly null, budget
+	 */
+	public static boolean degrade(TimeBudget budget, Degradation degradation) {
+		return (budget != null) && budget.degrade(degradation);
+	}
+}
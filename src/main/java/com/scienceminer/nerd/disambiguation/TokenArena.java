@@ -0,0 +1,283 @@
+package com.scienceminer.nerd.disambiguation;
+
+import org.grobid.core.analyzers.GrobidAnalyzer;
+import org.grobid.core.lang.Language;
+import org.grobid.core.layout.LayoutToken;
+import org.grobid.core.utilities.LayoutTokensUtil;
+import org.grobid.core.utilities.TextUtilities;
+
+import java.util.*;
+
+/**
+ * Tokenisation of the text of a query, done once per query and shared by the stages
+ * processing the text (ngram mentions, acronyms, selector features). The tokens are kept
+ * as offsets in the text, together with the normalised form of the text and the token
+ * index of the sentence boundaries, so that the stages work on slices of the arena instead
+ * of tokenising their own copy of the text.
+ *
+ * The tokens are the ones of the GROBID analyzer, separators included.
+ */
+public class TokenArena {
+
+	private final String text;
+
+	// normalised text, lower cased and with the line breaks of layout tokens replaced by
+	// spaces, with the same offsets as the text
+	private final String normalisedText;
+
+	// offsets of the tokens in the text, end excluded
+	private final int[] starts;
+	private final int[] ends;
+
+	// token index of the first token of each sentence and of the token following it
+	private int[] sentenceStarts = null;
+	private int[] sentenceEnds = null;
+
+	// layout tokens the text comes from, if any, with their offsets in the text
+	private List<LayoutToken> layoutTokens = null;
+	private int[] layoutStarts = null;
+
+	// occurrence counts of terms in the text, computed once per term
+	private Map<String, Integer> occCounts = null;
+
+	/**
+	 * @param text the text
+	 * @param tokens the tokenisation of the text, in order
+	 */
+	TokenArena(String text, List<String> tokens) {
+		this(text, tokens, false);
+	}
+
+	/**
+	 * @param layout true if the text comes from layout tokens, its line breaks being then
+	 * normalised as spaces
+	 */
+	private TokenArena(String text, List<String> tokens, boolean layout) {
+		this.text = text;
+		this.normalisedText = normalise(text, layout);
+
+		int size = tokens.size();
+		starts = new int[size];
+		ends = new int[size];
+		int pos = 0;
+		for (int i = 0; i < size; i++) {
+			String token = tokens.get(i);
+			int start = text.indexOf(token, pos);
+			if (start == -1) {
+				// token not matching the text (normalised by the tokeniser), it is ignored
+				starts[i] = pos;
+				ends[i] = pos;
+				continue;
+			}
+			starts[i] = start;
+			ends[i] = start + token.length();
+			pos = ends[i];
+		}
+	}
+
+	private static String normalise(String text, boolean layout) {
+		String normalised = text.toLowerCase();
+		if (normalised.length() != text.length()) {
+			// lower casing changing the length, done character by character to keep the offsets
+			char[] chars = text.toCharArray();
+			for (int i = 0; i < chars.length; i++)
+				chars[i] = Character.toLowerCase(chars[i]);
+			normalised = new String(chars);
+		}
+		if (layout)
+			normalised = normalised.replace('\n', ' ');
+		return normalised;
+	}
+
+	public static TokenArena fromText(String text, Language lang) {
+		return new TokenArena(text, GrobidAnalyzer.getInstance().tokenize(text, lang));
+	}
+
+	/**
+	 * Tokenisation of the text of a sequence of layout tokens, the layout tokens being kept
+	 * for getting the layout tokens of a span of the text.
+	 */
+	public static TokenArena fromLayoutTokens(List<LayoutToken> tokens, Language lang) {
+		String text = LayoutTokensUtil.toText(tokens);
+		TokenArena arena = new TokenArena(text, GrobidAnalyzer.getInstance().tokenize(text, lang), true);
+		arena.layoutTokens = tokens;
+		arena.layoutStarts = new int[tokens.size()];
+		int pos = 0;
+		for (int i = 0; i < tokens.size(); i++) {
+			arena.layoutStarts[i] = pos;
+			if (tokens.get(i).getText() != null)
+				pos += tokens.get(i).getText().length();
+		}
+		return arena;
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	public boolean hasLayoutTokens() {
+		return layoutTokens != null;
+	}
+
+	/**
+	 * @return the number of tokens
+	 */
+	public int size() {
+		return starts.length;
+	}
+
+	public int getStart(int token) {
+		return starts[token];
+	}
+
+	public int getEnd(int token) {
+		return ends[token];
+	}
+
+	public boolean isEmpty(int token) {
+		return starts[token] == ends[token];
+	}
+
+	public String getToken(int token) {
+		return text.substring(starts[token], ends[token]);
+	}
+
+	/**
+	 * @return the normalised text between two offsets
+	 */
+	public String getNormalised(int start, int end) {
+		return normalisedText.substring(start, end);
+	}
+
+	/**
+	 * @return the index of the first token starting at or after the offset
+	 */
+	public int getTokenIndex(int offset) {
+		int low = 0;
+		int high = starts.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (starts[middle] < offset)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	/**
+	 * @return the non empty tokens of a span of the text, or null if the span does not
+	 * correspond to the given string or is not aligned with the token boundaries
+	 */
+	public List<String> getTokens(int start, int end, String string) {
+		if ((start < 0) || (end > text.length()) || (start >= end) || (string == null) ||
+				!text.regionMatches(start, string, 0, string.length()) || (string.length() != end - start))
+			return null;
+		int first = getTokenIndex(start);
+		if ((first == starts.length) || (starts[first] != start))
+			return null;
+		List<String> result = new ArrayList<String>();
+		int i = first;
+		for (; (i < starts.length) && (ends[i] <= end); i++) {
+			if (!isEmpty(i))
+				result.add(getToken(i));
+		}
+		if ((i > first) && (ends[i-1] != end))
+			return null;
+		return result;
+	}
+
+	/**
+	 * Set the sentence boundaries, given as offsets in the text.
+	 */
+	public void setSentences(List<Sentence> sentenceList) {
+		if (sentenceList == null) {
+			sentenceStarts = null;
+			sentenceEnds = null;
+			return;
+		}
+		sentenceStarts = new int[sentenceList.size()];
+		sentenceEnds = new int[sentenceList.size()];
+		for (int i = 0; i < sentenceList.size(); i++) {
+			sentenceStarts[i] = getTokenIndex(sentenceList.get(i).getOffsetStart());
+			sentenceEnds[i] = Math.max(sentenceStarts[i], getTokenIndex(sentenceList.get(i).getOffsetEnd()));
+		}
+	}
+
+	public int getSentenceNumber() {
+		return (sentenceStarts == null) ? 0 : sentenceStarts.length;
+	}
+
+	/**
+	 * @return the index of the first token of the sentence
+	 */
+	public int getSentenceStart(int sentence) {
+		return sentenceStarts[sentence];
+	}
+
+	/**
+	 * @return the index of the token following the sentence
+	 */
+	public int getSentenceEnd(int sentence) {
+		return sentenceEnds[sentence];
+	}
+
+	/**
+	 * @return the layout tokens fully included in a span of the text, or null if the arena
+	 * does not come from layout tokens or if no layout token is included in the span
+	 */
+	public List<LayoutToken> getLayoutTokens(int start, int end) {
+		if (layoutTokens == null)
+			return null;
+		int low = 0;
+		int high = layoutStarts.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (layoutStarts[middle] < start)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		List<LayoutToken> result = null;
+		for (int i = low; i < layoutTokens.size(); i++) {
+			String tokenText = layoutTokens.get(i).getText();
+			int length = (tokenText == null) ? 0 : tokenText.length();
+			if (layoutStarts[i] + length > end)
+				break;
+			if (result == null)
+				result = new ArrayList<LayoutToken>();
+			result.add(layoutTokens.get(i));
+		}
+		return result;
+	}
+
+	/**
+	 * @return the tokens as layout tokens with their offsets in the text
+	 */
+	public List<LayoutToken> toLayoutTokens() {
+		List<LayoutToken> result = new ArrayList<LayoutToken>(starts.length);
+		for (int i = 0; i < starts.length; i++) {
+			if (isEmpty(i))
+				continue;
+			LayoutToken token = new LayoutToken();
+			token.setText(getToken(i));
+			token.setOffset(starts[i]);
+			result.add(token);
+		}
+		return result;
+	}
+
+	/**
+	 * @return the number of occurrences of a term in the text, computed once per term
+	 */
+	public synchronized int getOccCount(String term) {
+		if (occCounts == null)
+			occCounts = new HashMap<String, Integer>();
+		Integer count = occCounts.get(term);
+		if (count == null) {
+			count = TextUtilities.getOccCount(term, text);
+			occCounts.put(term, count);
+		}
+		return count;
+	}
+}
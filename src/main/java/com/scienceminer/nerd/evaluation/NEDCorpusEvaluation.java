@@ -23,7 +23,6 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.File;
 import java.util.*;
 
-import static com.scienceminer.nerd.kb.UpperKnowledgeBase.TARGET_LANGUAGES;
 
 /**
  * Evaluation of entity disambiguation (NED) against the standard dataset 
@@ -53,7 +52,7 @@ public class NEDCorpusEvaluation {
 		// init ranker model
 		try {
 			upperKnowledgeBase = UpperKnowledgeBase.getInstance();
-			for(String lang : UpperKnowledgeBase.getInstance().TARGET_LANGUAGES) {
+			for(String lang : upperKnowledgeBase.getLanguages()) {
 				LowerKnowledgeBase lowerKnowledgeBase = upperKnowledgeBase.getWikipediaConf(lang);
 				wikipediaMap.put(lang, lowerKnowledgeBase);
 				rankers.put(lang, new NerdRanker(lowerKnowledgeBase));
@@ -132,7 +131,7 @@ public class NEDCorpusEvaluation {
 
 			// language recognition
 			String langId = recognizeLanguage(docFile);
-			if (langId != null && TARGET_LANGUAGES.contains(langId))
+			if (langId != null && upperKnowledgeBase.getLanguages().contains(langId))
 				lang = new Language(langId, 1.0);
 
 			// get the document content
@@ -47,11 +47,32 @@ public class Category {
 		wikiPageID = wikiCategory.getId();
     }
 
+	private static List<String> categoryFilter = Arrays.asList("article", "disambiguation", "pilot", "list of", "beadwork", "births");
+
+	/**
+	 * @return true if the category is not informative (administrative categories like 
+	 * disambiguation, list of, etc.) and should not be associated to an entity
+	 */
+	public static boolean isFiltered(String category) {
+		if (category != null) {
+			String cat = category.toLowerCase();
+			for (int i=0; i < categoryFilter.size(); i++) {
+				if (cat.indexOf(categoryFilter.get(i)) != -1)
+					return true;
+			}
+			return false;
+		}
+		return true;
+	}
+
 	public String toString() {
 		return wikiCategory.toString();
 	}
 	
 	public String getName() {
+		// the name of a category created from its page id only is resolved when needed
+		if ( (name == null) && (wikiCategory != null) )
+			name = wikiCategory.getTitle();
 		return name;
 	}
 	
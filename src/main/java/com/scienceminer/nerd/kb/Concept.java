@@ -2,6 +2,7 @@ package com.scienceminer.nerd.kb;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.ArrayList;
@@ -32,8 +33,7 @@ public class Concept {
 	}
 
 	public Integer getPageIdByLang(String lang) {
-		Map<String,Integer> localMap = env.getDbConcepts().retrieve(wikidataId);
-		return localMap.get(lang); 
+		return env.getDbConcepts().getPageIdByLang(wikidataId, lang);
 	}
 
 	/**
@@ -42,4 +42,13 @@ public class Concept {
 	public List<Statement> getStatements() {
 		return env.getDbStatements().retrieve(wikidataId);
 	}
+
+	/**
+	 * Return the list of statements associated to the concept for some properties only
+	 *
+	 * @param propertyIds the ids of the properties, null for all the properties
+	 */
+	public List<Statement> getStatements(Collection<String> propertyIds) {
+		return env.getDbStatements().retrieve(wikidataId, propertyIds);
+	}
 }
\ No newline at end of file
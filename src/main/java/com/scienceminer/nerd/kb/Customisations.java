@@ -12,6 +12,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Class for managing the NERD customisation which are contexts for particular domains.
@@ -29,6 +30,10 @@ public final class Customisations {
     // map a customisation id to the json definition
     private ConcurrentMap<String, String> cDB = null;
 
+    // incremented at each change of the customisations, so that results depending on 
+    // them can be invalidated
+    private static final AtomicLong version = new AtomicLong();
+
 	public static Customisations getInstance() {
         if (instance == null) {
 			getNewInstance();
@@ -70,12 +75,20 @@ public final class Customisations {
 		}
     }
 	
+    /**
+     * @return the current version of the customisations, changed each time they are modified
+     */
+    public static long getVersion() {
+        return version.get();
+    }
+
     /**
      * Close index for customisations
      */
     public void save() {
     	if (cDB == null)
     		return;
+    	version.incrementAndGet();
     	File home = null;
         ObjectOutputStream out = null;
         try {
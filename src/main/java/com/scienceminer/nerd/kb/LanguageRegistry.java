@@ -0,0 +1,245 @@
+package com.scienceminer.nerd.kb;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.scienceminer.nerd.utilities.NerdConfig;
+
+/**
+ * The languages served by a version of the KB and the state of their resources (the lower
+ * KBs): the resources of a language are opened at startup for a preloaded language, at its
+ * first use otherwise, and can then be closed again when the language is not used for a
+ * while (see unloadIdle()). A thread getting the resources of a language holds a reference
+ * on the language until it calls release(), and a language with references is not closed.
+ *
+ * When the resources of a language cannot be opened, the opening is attempted again at a
+ * later use, after a delay growing with the number of failures.
+ *
+ * @param <W> the resources of a language
+ */
+abstract class LanguageRegistry<W> {
+	protected static final Logger LOGGER = LoggerFactory.getLogger(LanguageRegistry.class);
+
+	// delays in milliseconds before a new attempt to open a language which failed to open
+	static final long MIN_RETRY_DELAY = 10000;
+	static final long MAX_RETRY_DELAY = 600000;
+
+	// languages referenced by the current thread
+	private static final ThreadLocal<Set<Entry<?>>> touched = new ThreadLocal<Set<Entry<?>>>() {
+		@Override
+		protected Set<Entry<?>> initialValue() {
+			return new HashSet<Entry<?>>();
+		}
+	};
+
+	// the languages, in the order of the configuration
+	private final Map<String, Entry<W>> entries = new LinkedHashMap<String, Entry<W>>();
+
+	// time after which a language not used is unloaded, 0 for never
+	private final long idleTimeout;
+
+	/**
+	 * @param idleTimeout time in milliseconds after which a language not used is unloaded,
+	 * 0 for never
+	 */
+	LanguageRegistry(long idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+
+	private static class Entry<W> {
+		private final String lang;
+		private final NerdConfig conf;
+		private final boolean preloaded;
+		private volatile W resource = null;
+		// last time the language was used
+		private volatile long lastUse;
+		// number of threads holding a reference on the language
+		private final AtomicInteger users = new AtomicInteger();
+		// last error when opening the language, number of failures in a row and time
+		// before which the opening is not attempted again
+		private volatile Exception failure = null;
+		private int failures = 0;
+		private volatile long nextAttempt = 0;
+
+		Entry(String lang, NerdConfig conf, boolean preloaded, long now) {
+			this.lang = lang;
+			this.conf = conf;
+			this.preloaded = preloaded;
+			this.lastUse = now;
+		}
+	}
+
+	/**
+	 * Open the resources of a language
+	 */
+	protected abstract W open(String lang, NerdConfig conf) throws Exception;
+
+	/**
+	 * Close the resources of a language
+	 */
+	protected abstract void close(String lang, W resource);
+
+	/**
+	 * @return the current time in milliseconds
+	 */
+	protected long now() {
+		return System.currentTimeMillis();
+	}
+
+	/**
+	 * Add a language, to be done before the registry is shared
+	 */
+	void add(String lang, NerdConfig conf, boolean preloaded) {
+		entries.put(lang, new Entry<W>(lang, conf, preloaded, now()));
+	}
+
+	/**
+	 * Open the preloaded languages
+	 *
+	 * @throws Exception the error of the first preloaded language which cannot be opened
+	 */
+	void preload() throws Exception {
+		for (Entry<W> entry : entries.values()) {
+			if (!entry.preloaded)
+				continue;
+			load(entry);
+			if (entry.resource == null)
+				throw entry.failure;
+		}
+	}
+
+	boolean contains(String lang) {
+		return (lang != null) && entries.containsKey(lang);
+	}
+
+	/**
+	 * @return the languages served
+	 */
+	List<String> getLanguages() {
+		return new ArrayList<String>(entries.keySet());
+	}
+
+	/**
+	 * @return the resources of the languages currently loaded, by language
+	 */
+	Map<String, W> getLoaded() {
+		Map<String, W> loaded = new LinkedHashMap<String, W>();
+		for (Entry<W> entry : entries.values()) {
+			W resource = entry.resource;
+			if (resource != null)
+				loaded.put(entry.lang, resource);
+		}
+		return loaded;
+	}
+
+	/**
+	 * Get the resources of a language, the current thread then holding a reference on the
+	 * language until it calls release()
+	 *
+	 * @return the resources of a language, opened if not loaded yet, null if the language
+	 * is not served or cannot be opened
+	 */
+	W get(String lang) {
+		Entry<W> entry = (lang == null) ? null : entries.get(lang);
+		if (entry == null)
+			return null;
+		// the reference is taken before reading the resource, see unloadIdle()
+		if (touched.get().add(entry))
+			entry.users.incrementAndGet();
+		entry.lastUse = now();
+		W resource = entry.resource;
+		if (resource == null) {
+			load(entry);
+			resource = entry.resource;
+		}
+		return resource;
+	}
+
+	private void load(Entry<W> entry) {
+		if ( (entry.failure != null) && (now() < entry.nextAttempt) )
+			return;
+		synchronized(entry) {
+			if ( (entry.resource != null) || ((entry.failure != null) && (now() < entry.nextAttempt)) )
+				return;
+			try {
+				LOGGER.info("Init " + entry.lang + " lower Knowledge base layer");
+				long start = now();
+				entry.resource = open(entry.lang, entry.conf);
+				entry.failure = null;
+				entry.failures = 0;
+				LOGGER.info(entry.lang + " lower Knowledge base layer loaded in " +
+					(now() - start) + " ms");
+			} catch(Exception e) {
+				entry.failures++;
+				long delay = Math.min(MIN_RETRY_DELAY << Math.min(entry.failures - 1, 16), MAX_RETRY_DELAY);
+				// the time of the next attempt is set first, as failure is read without lock
+				entry.nextAttempt = now() + delay;
+				entry.failure = e;
+				LOGGER.error("Cannot open the " + entry.lang + " lower Knowledge base layer, next attempt in " +
+					(delay / 1000) + " s", e);
+			}
+		}
+	}
+
+	/**
+	 * Release the references of the current thread on the languages of all the registries,
+	 * which can then be unloaded again
+	 */
+	static void release() {
+		Set<Entry<?>> referenced = touched.get();
+		for (Entry<?> entry : referenced)
+			entry.users.decrementAndGet();
+		referenced.clear();
+	}
+
+	/**
+	 * Close the resources of the languages which are not preloaded and have not been used
+	 * for longer than the idle timeout. A language still referenced by a thread is not
+	 * unloaded.
+	 *
+	 * @return the resources closed
+	 */
+	List<W> unloadIdle() {
+		List<W> unloaded = new ArrayList<W>();
+		if (idleTimeout <= 0)
+			return unloaded;
+		long now = now();
+		for (Entry<W> entry : entries.values()) {
+			if ( entry.preloaded || (entry.resource == null) ||
+				(now - entry.lastUse < idleTimeout) || (entry.users.get() > 0) )
+				continue;
+			synchronized(entry) {
+				W resource = entry.resource;
+				if (resource == null)
+					continue;
+				entry.resource = null;
+				// a thread may have taken a reference meanwhile
+				if ( (entry.users.get() > 0) || (now() - entry.lastUse < idleTimeout) ) {
+					entry.resource = resource;
+					continue;
+				}
+				LOGGER.info("Unload the " + entry.lang + " lower Knowledge base layer, idle since " +
+					((now - entry.lastUse) / 60000) + " min");
+				close(entry.lang, resource);
+				unloaded.add(resource);
+			}
+		}
+		return unloaded;
+	}
+
+	/**
+	 * Close the resources of all the languages
+	 */
+	void closeAll() {
+		for (Entry<W> entry : entries.values()) {
+			synchronized(entry) {
+				if (entry.resource != null)
+					close(entry.lang, entry.resource);
+				entry.resource = null;
+			}
+		}
+	}
+}
@@ -252,6 +252,17 @@ public class LowerKnowledgeBase {
 		return ids.getValues();
 	}
 
+	/**
+	 * @return the MinHash sketch of the links of the given article, or null if no sketch is 
+	 * available (sketches are only stored for articles with many links)
+	 */
+	public int[] getLinkSketch(int artId, Direction dir) {
+		if (dir == Direction.In)
+			return env.getDbPageLinkInSketches().retrieve(artId);
+		else
+			return env.getDbPageLinkOutSketches().retrieve(artId);
+	}
+
 	public void close() {
 		env.close();
 		this.env = null;
@@ -1,6 +1,9 @@
 package com.scienceminer.nerd.kb;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 
 import com.scienceminer.nerd.kb.db.*;
 import com.scienceminer.nerd.kb.model.*;
@@ -12,51 +15,117 @@ import com.fasterxml.jackson.core.io.*;
  */
 public class Statement implements Serializable { 
 
-    private String propertyId = null;
-    private String conceptId = null;
+    // the identifiers are kept as integer codes (see WikidataIds), the value being either 
+    // the code of an item or, for the other values, the JSON value
+    private int conceptCode = WikidataIds.NONE;
+    private int propertyCode = WikidataIds.NONE;
+    private int valueCode = WikidataIds.NONE;
     private String value = null;
 
+    // UTF-8 bytes of a JSON value not decoded yet
+    private transient volatile byte[] valueData = null;
+    private transient int valueOffset = 0;
+    private transient int valueLength = 0;
+
     public Statement() {}
 
     public Statement(String wikidataId, String propertyId, String value) {
-        this.conceptId = wikidataId;
-        this.propertyId = propertyId;
-        this.value = value;
+        setConceptId(wikidataId);
+        setPropertyId(propertyId);
+        setValue(value);
+    }
+
+    /**
+     * @param conceptCode code of the concept (see WikidataIds)
+     * @param propertyCode code of the property
+     * @param valueCode code of the item value, NONE for a JSON value
+     * @param value the JSON value, null for an item value
+     */
+    public Statement(int conceptCode, int propertyCode, int valueCode, String value) {
+        this.conceptCode = conceptCode;
+        this.propertyCode = propertyCode;
+        this.valueCode = valueCode;
+        this.value = (valueCode == WikidataIds.NONE) ? value : null;
+    }
+
+    /**
+     * Statement with a JSON value given by its UTF-8 bytes, the value being decoded only 
+     * when first needed
+     *
+     * @param conceptCode code of the concept (see WikidataIds)
+     * @param propertyCode code of the property
+     * @param valueData the bytes containing the JSON value
+     * @param valueOffset the offset of the value in the bytes
+     * @param valueLength the length of the value in bytes
+     */
+    public Statement(int conceptCode, int propertyCode, byte[] valueData, int valueOffset, int valueLength) {
+        this.conceptCode = conceptCode;
+        this.propertyCode = propertyCode;
+        this.valueData = valueData;
+        this.valueOffset = valueOffset;
+        this.valueLength = valueLength;
     }
 
     public String getConceptId() {
-        return this.conceptId;
+        return WikidataIds.decode(conceptCode);
     }
 
     public void setConceptId(String id) {
-        this.conceptId = id;
+        this.conceptCode = WikidataIds.encode(id);
+    }
+
+    public int getConceptCode() {
+        return conceptCode;
     }
 
     public String getPropertyId() {
-        return this.propertyId;
+        return WikidataIds.decode(propertyCode);
     }
 
     public void setPropertyId(String propertyId) {
-        this.propertyId = propertyId;
+        this.propertyCode = WikidataIds.encode(propertyId);
+    }
+
+    public int getPropertyCode() {
+        return propertyCode;
     }
  
     public Property getProperty() {
-        if (propertyId == null)
+        if (propertyCode == WikidataIds.NONE)
             return null;
         else
-           return UpperKnowledgeBase.getInstance().getProperty(propertyId);
+           return UpperKnowledgeBase.getInstance().getProperty(getPropertyId());
     }
 
     public String getValue() {
+        if (valueCode != WikidataIds.NONE)
+            return WikidataIds.decode(valueCode);
+        byte[] data = valueData;
+        if ( (value == null) && (data != null) ) {
+            value = new String(data, valueOffset, valueLength, StandardCharsets.UTF_8);
+            valueData = null;
+        }
         return value;
     }
 
     public void setValue(String value) {
-        this.value = value;
+        this.valueCode = WikidataIds.encode(value);
+        this.value = (valueCode == WikidataIds.NONE) ? value : null;
+        this.valueData = null;
+    }
+
+    /**
+     * @return the code of the item value, NONE if the value is not an item
+     */
+    public int getValueCode() {
+        return valueCode;
     }
 
     @Override
     public String toString() {
+        String conceptId = getConceptId();
+        String propertyId = getPropertyId();
+        String value = getValue();
         StringBuilder sb = new StringBuilder();
         sb.append(conceptId).append("\t").append(" -> ")
             .append(propertyId)
@@ -68,6 +137,9 @@ public class Statement implements Serializable {
      * Simple json serialization, keeping identifiers
      */
     public String toJsonOld() {
+        String conceptId = getConceptId();
+        String propertyId = getPropertyId();
+        String value = getValue();
         JsonStringEncoder encoder = JsonStringEncoder.getInstance();
         StringBuilder sb = new StringBuilder();
 
@@ -102,6 +174,9 @@ public class Statement implements Serializable {
      * Json serialization replacing identifier by litteral names
      */
     public String toJson() {
+        String conceptId = getConceptId();
+        String propertyId = getPropertyId();
+        String value = getValue();
         JsonStringEncoder encoder = JsonStringEncoder.getInstance();
         StringBuilder sb = new StringBuilder();
 
@@ -154,4 +229,10 @@ public class Statement implements Serializable {
 
         return sb.toString();
     }    
-}
\ No newline at end of file
+
+    // the value is decoded before being serialized
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        getValue();
+        out.defaultWriteObject();
+    }
+}
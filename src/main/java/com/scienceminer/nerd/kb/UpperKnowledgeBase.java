@@ -3,6 +3,7 @@ package com.scienceminer.nerd.kb;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,6 +15,7 @@ import com.scienceminer.nerd.kb.db.*;
 import com.scienceminer.nerd.kb.model.*;
 import com.scienceminer.nerd.kb.db.KBEnvironment.StatisticName;
 import com.scienceminer.nerd.utilities.*;
+import com.scienceminer.nerd.exceptions.NerdResourceException;
 import com.scienceminer.nerd.kb.model.Page.PageType;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -22,24 +24,62 @@ import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 /**
  * The class offering an access to the (N)ERD upper-level Knowledge Base, concepts and 
  * all the language indenpendent semantic information, and access to language-specific data 
- * level. There is a unique instance of this class in a (N)ERD service.
+ * level. There is a unique current instance of this class in a (N)ERD service.
  * 
+ * The KB can be versioned: a version is a directory under the KB configuration directory 
+ * (in versions/), with its own configuration files pointing to its own databases. A new 
+ * version can be opened alongside the current one and then made the current one while the 
+ * service is running. A request pins the version it started with (see acquire()), so that 
+ * it ends with the same version, and a version which is no longer current is closed when 
+ * the requests using it are finished.
  */
 public class UpperKnowledgeBase {
 	protected static final Logger LOGGER = LoggerFactory.getLogger(UpperKnowledgeBase.class);
     private static volatile UpperKnowledgeBase instance;
 
+	// version of the KB pinned by the request processed by the current thread
+	private static final ThreadLocal<UpperKnowledgeBase> pinned = new ThreadLocal<UpperKnowledgeBase>();
+
 	private KBUpperEnvironment env = null;
 
-	private Map<String, LowerKnowledgeBase> wikipedias = null;
-    private Map<String, WikipediaDomainMap> wikipediaDomainMaps = null;
+	// the languages served by this version, in the order of the configuration
+	private LanguageRegistry<LowerKnowledgeBase> languages = new WikipediaLanguages(0);
+
+	// lower KBs of the languages, loaded at first use for the languages not preloaded
+	private final Map<String, LowerKnowledgeBase> wikipedias = new WikipediaMap();
+
+	// the domain map is the one of the English lower KB, used for all the languages
+	private volatile WikipediaDomainMap wikipediaDomainMap = null;
 
 	private long conceptCount = -1;
 
-	// this is the list of supported languages
+	// name of the version, null for the KB directly in the configuration directory
+	private final String version;
+	// error when opening the KB, if any
+	private Exception failure = null;
+
+	// number of requests using this version and whether it is no longer the current version
+	private final AtomicInteger users = new AtomicInteger();
+	private volatile boolean retired = false;
+
+	// this is the list of supported languages when the configuration does not give them
   	public static final List<String> TARGET_LANGUAGES = Arrays.asList(
   			Language.EN, Language.FR, Language.DE);
+
+	// default directory of the KB configuration files
+	private static final String DEFAULT_KB_CONFIG_PATH = "data/wikipedia";
+
+	// directory of the KB versions, under the configuration directory
+	private static final String VERSIONS_DIRECTORY = "versions";
+
+	/**
+	 * @return the version of the KB pinned by the current thread if any, the current 
+	 * version otherwise
+	 */
 	 public static UpperKnowledgeBase getInstance() {
+		UpperKnowledgeBase pinnedInstance = pinned.get();
+		if (pinnedInstance != null)
+			return pinnedInstance;
         if (instance == null) {
 			getNewInstance();
         }
@@ -50,70 +90,322 @@ public class UpperKnowledgeBase {
      * Creates a new instance.
      */
 	private static synchronized void getNewInstance() {
+		if (instance != null)
+			return;
 		LOGGER.debug("Get new instance of UpperKnowledgeBase");
-		instance = new UpperKnowledgeBase();
+		UpperKnowledgeBase kb = new UpperKnowledgeBase(getDefaultVersion());
+		// the service cannot run with a KB which cannot be read
+		if (kb.failure != null) {
+			kb.close();
+			throw new NerdResourceException("Error when opening the KB", kb.failure);
+		}
+		instance = kb;
+
+		try {
+			LOGGER.info("Init Grobid") ;
+            Utilities.initGrobid();
+		} catch(Exception e) {
+			e.printStackTrace();
+		} 
+	}
+
+	private static String getDefaultVersion() {
+		// the properties are not loaded when the KB is used by the offline tools
+		if (NerdProperties.getProps() == null)
+			return null;
+		return NerdProperties.getKBVersion();
 	}
 
     /**
      * Hidden constructor
      * Initialises a newly created Upper-level knowledge base
      */
-    private UpperKnowledgeBase() {
+    private UpperKnowledgeBase(String version) {
+		this.version = version;
     	try {
     		LOGGER.info("Init Lexicon");
     		Lexicon.getInstance();
     		LOGGER.info("Lexicon initialized");
             ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
 
-            LOGGER.info("\nInit Upper Knowledge base layer");
-            NerdConfig conf = mapper.readValue(new File("data/wikipedia/kb.yaml"), NerdConfig.class);
+            File configPath = getConfigDirectory(version);
+
+            LOGGER.info("\nInit Upper Knowledge base layer" + ((version == null) ? "" : ", version " + version));
+            NerdConfig conf = mapper.readValue(new File(configPath, "kb.yaml"), NerdConfig.class);
 			this.env = new KBUpperEnvironment(conf);
 			this.env.buildEnvironment(conf, false);
 
-			wikipedias = new HashMap<String, LowerKnowledgeBase>(); 
-            wikipediaDomainMaps = new HashMap<String,WikipediaDomainMap>();
-
-            LOGGER.info("Init English lower Knowledge base layer");
-            conf = mapper.readValue(new File("data/wikipedia/wikipedia-en.yaml"), NerdConfig.class);
-			LowerKnowledgeBase wikipedia_en = new LowerKnowledgeBase(conf);
-
-			wikipedias.put(Language.EN, wikipedia_en);
-            WikipediaDomainMap wikipediaDomainMaps_en = new WikipediaDomainMap(Language.EN, conf.getDbDirectory());
-            wikipediaDomainMaps_en.setWikipedia(wikipedia_en);
-            wikipediaDomainMaps.put(Language.EN, wikipediaDomainMaps_en);
-			
-			LOGGER.info("Init German lower Knowledge base layer");
-            conf = mapper.readValue(new File("data/wikipedia/wikipedia-de.yaml"), NerdConfig.class);;
-			LowerKnowledgeBase wikipedia_de = new LowerKnowledgeBase(conf);
-			wikipedias.put(Language.DE, wikipedia_de);
-            wikipediaDomainMaps.put(Language.DE, wikipediaDomainMaps_en);
-
-            LOGGER.info("Init French lower Knowledge base layer");
-            conf = mapper.readValue(new File("data/wikipedia/wikipedia-fr.yaml"), NerdConfig.class);;
-			LowerKnowledgeBase wikipedia_fr = new LowerKnowledgeBase(conf);
-			wikipedias.put(Language.FR, wikipedia_fr);
-            wikipediaDomainMaps.put(Language.FR, wikipediaDomainMaps_en);
-
+			List<String> langs = (conf.getLanguages() != null) ? conf.getLanguages() : TARGET_LANGUAGES;
+			List<String> preloaded = (conf.getPreloadLanguages() != null) ? conf.getPreloadLanguages() : langs;
+			languages = new WikipediaLanguages(conf.getLanguageIdleTimeout() * 60000L);
+			for (String lang : langs) {
+				File langConfig = new File(configPath, "wikipedia-" + lang + ".yaml");
+				if (!langConfig.exists()) {
+					LOGGER.error("No configuration " + langConfig.getPath() + " for the language " + lang);
+					continue;
+				}
+				languages.add(lang, mapper.readValue(langConfig, NerdConfig.class), preloaded.contains(lang));
+			}
+			languages.preload();
 			LOGGER.info("End of Initialization of Wikipedia environments");
-
-			LOGGER.info("Init Grobid") ;
-            Utilities.initGrobid();
 		} catch(Exception e) {
 			e.printStackTrace();
+			failure = e;
 		} 
 	}
 
+	/**
+	 * @return the directory of the configuration files of a KB version, the configuration 
+	 * directory itself for the null version
+	 */
+	public static File getConfigDirectory(String version) {
+		// the configuration directory can be overriden, e.g. for running against a test KB
+		File configPath = new File(System.getProperty(NerdPropertyKeys.PROP_KB_CONFIG, DEFAULT_KB_CONFIG_PATH));
+		if (version == null)
+			return configPath;
+		return new File(new File(configPath, VERSIONS_DIRECTORY), version);
+	}
+
+	/**
+	 * Open a version of the KB alongside the current one, the version becoming the current 
+	 * one with switchTo().
+	 * 
+	 * @param version name of a directory under the versions directory
+	 */
+	public static UpperKnowledgeBase open(String version) throws NerdResourceException {
+		if ( (version == null) || !version.matches("[A-Za-z0-9_\\-][A-Za-z0-9_.\\-]*") )
+			throw new NerdResourceException("Invalid KB version name: " + version);
+		File configPath = getConfigDirectory(version);
+		if (!new File(configPath, "kb.yaml").exists())
+			throw new NerdResourceException("No KB configuration found in " + configPath.getPath());
+		UpperKnowledgeBase kb = new UpperKnowledgeBase(version);
+		if (kb.failure != null) {
+			kb.close();
+			throw new NerdResourceException("Error when opening the KB version " + version, kb.failure);
+		}
+		return kb;
+	}
+
+	/**
+	 * Make a version of the KB the current one: the requests starting from now use this 
+	 * version, while the requests in progress end with the version they pinned.
+	 * 
+	 * @return the previous current version, to be closed once drained 
+	 */
+	public static synchronized UpperKnowledgeBase switchTo(UpperKnowledgeBase kb) {
+		UpperKnowledgeBase previous = instance;
+		instance = kb;
+		// retired after the switch, so that a request failing to pin it finds the new version
+		if ( (previous != null) && (previous != kb) )
+			previous.retired = true;
+		return previous;
+	}
+
+	/**
+	 * Pin the current version of the KB for the request processed by the current thread: 
+	 * until release(), getInstance() returns this version in the current thread even if 
+	 * the service switches to another version, and the version is not closed.
+	 * 
+	 * @return false if a version was already pinned by the current thread, release() must 
+	 * then not be called
+	 */
+	public static boolean acquire() {
+		if (pinned.get() != null)
+			return false;
+		while (true) {
+			UpperKnowledgeBase kb = getInstance();
+			kb.users.incrementAndGet();
+			if (!kb.retired) {
+				pinned.set(kb);
+				return true;
+			}
+			// the version has been switched meanwhile
+			kb.users.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Unpin the version of the KB pinned by the current thread with acquire()
+	 */
+	public static void release() {
+		UpperKnowledgeBase kb = pinned.get();
+		if (kb == null)
+			return;
+		pinned.remove();
+		releaseLanguages();
+		kb.users.decrementAndGet();
+	}
+
+	/**
+	 * Use in the current thread a version of the KB pinned by another thread, e.g. in the 
+	 * workers processing the parts of a request, until detach(). The version stays pinned 
+	 * only by the other thread, which must wait for the end of this use before releasing it.
+	 */
+	public static void attach(UpperKnowledgeBase kb) {
+		pinned.set(kb);
+	}
+
+	public static void detach() {
+		pinned.remove();
+		releaseLanguages();
+	}
+
+	/**
+	 * Release the references of the current thread on the languages it used (see 
+	 * getWikipediaConf()), done by release() and detach() at the end of a request, and to 
+	 * be done by the threads using the languages outside of a request
+	 */
+	public static void releaseLanguages() {
+		LanguageRegistry.release();
+	}
+
+	/**
+	 * Wait until no request uses this version of the KB anymore. 
+	 * 
+	 * @param timeout maximum time to wait in milliseconds
+	 * @return true if the version is no longer used
+	 */
+	public boolean awaitDrained(long timeout) throws InterruptedException {
+		long end = System.currentTimeMillis() + timeout;
+		while (users.get() > 0) {
+			if (System.currentTimeMillis() >= end)
+				return false;
+			Thread.sleep(100);
+		}
+		return true;
+	}
+
+	/**
+	 * @return the name of the version, null for the KB directly in the configuration directory
+	 */
+	public String getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return the number of requests using this version
+	 */
+	public int getUsers() {
+		return users.get();
+	}
+
+	public boolean isRetired() {
+		return retired;
+	}
+
+	/**
+	 * The lower KBs of the languages, the English one coming with the domain map used for 
+	 * all the languages
+	 */
+	private class WikipediaLanguages extends LanguageRegistry<LowerKnowledgeBase> {
+		WikipediaLanguages(long idleTimeout) {
+			super(idleTimeout);
+		}
+
+		@Override
+		protected LowerKnowledgeBase open(String lang, NerdConfig conf) throws Exception {
+			LowerKnowledgeBase wikipedia = new LowerKnowledgeBase(conf);
+			if (lang.equals(Language.EN)) {
+				try {
+					WikipediaDomainMap domainMap = new WikipediaDomainMap(Language.EN, conf.getDbDirectory());
+					domainMap.setWikipedia(wikipedia);
+					wikipediaDomainMap = domainMap;
+				} catch(Exception e) {
+					wikipedia.close();
+					throw e;
+				}
+			}
+			return wikipedia;
+		}
+
+		@Override
+		protected void close(String lang, LowerKnowledgeBase wikipedia) {
+			if (lang.equals(Language.EN) && (wikipediaDomainMap != null)) {
+				wikipediaDomainMap.close();
+				wikipediaDomainMap = null;
+			}
+			wikipedia.close();
+		}
+	}
+
+	/**
+	 * @return the lower KB of a language, opened if not loaded yet, null if the language 
+	 * is not served or cannot be opened currently (see isLanguageServed()). The language 
+	 * is not unloaded until the current thread releases its references (see 
+	 * releaseLanguages()).
+	 */
 	public LowerKnowledgeBase getWikipediaConf(String lang) {
-		return wikipedias.get(lang);
+		return languages.get(lang);
 	}
 	
+	/**
+	 * @return the lower KBs by language: a language is loaded when looked up, while the 
+	 * iteration only gives the languages currently loaded
+	 */
 	public Map<String, LowerKnowledgeBase> getWikipediaConfs() {
 		return wikipedias;
 	}
 
-    public Map<String, WikipediaDomainMap> getWikipediaDomainMaps () {
-        return wikipediaDomainMaps;
-    }
+	private class WikipediaMap extends AbstractMap<String, LowerKnowledgeBase> {
+		@Override
+		public LowerKnowledgeBase get(Object lang) {
+			return (lang instanceof String) ? getWikipediaConf((String)lang) : null;
+		}
+
+		@Override
+		public boolean containsKey(Object lang) {
+			return (lang instanceof String) && languages.contains((String)lang);
+		}
+
+		@Override
+		public Set<Map.Entry<String, LowerKnowledgeBase>> entrySet() {
+			return languages.getLoaded().entrySet();
+		}
+	}
+
+	/**
+	 * @return the languages served by this version of the KB
+	 */
+	public List<String> getLanguages() {
+		return languages.getLanguages();
+	}
+
+	/**
+	 * @return true if a language is served by this version of the KB, even if its lower KB 
+	 * cannot be opened currently
+	 */
+	public boolean isLanguageServed(String lang) {
+		return languages.contains(lang);
+	}
+
+	/**
+	 * @return the languages whose lower KB is currently loaded
+	 */
+	public List<String> getLoadedLanguages() {
+		return new ArrayList<String>(languages.getLoaded().keySet());
+	}
+
+	/**
+	 * @return the domain map to be used for a language (the English one for all the 
+	 * languages), null if the language is not served
+	 */
+	public WikipediaDomainMap getWikipediaDomainMap(String lang) {
+		if (!languages.contains(lang))
+			return null;
+		getWikipediaConf(Language.EN);
+		return wikipediaDomainMap;
+	}
+
+	/**
+	 * Close the lower KBs of the languages which are not preloaded and have not been used 
+	 * for longer than the idle timeout of the configuration. A language still referenced 
+	 * by a thread, e.g. by a request in progress, is not unloaded.
+	 * 
+	 * @return the lower KBs closed, whose models and caches can be released
+	 */
+	public List<LowerKnowledgeBase> unloadIdleLanguages() {
+		return languages.unloadIdle();
+	}
 
 	public long getEntityCount() {
 		if (conceptCount == -1)
@@ -125,7 +417,7 @@ public class UpperKnowledgeBase {
 	 * Return the concept object corresponding to a given wikidata ID
 	 */
 	public Concept getConcept(String wikidataId) {
-		if (env.getDbConcepts().retrieve(wikidataId) == null) 
+		if (!env.getDbConcepts().contains(wikidataId)) 
 			return null;
 		else
 			return new Concept(env, wikidataId);
@@ -135,12 +427,7 @@ public class UpperKnowledgeBase {
 	 * Return the page id corresponding to a given concept id and a target lang
 	 */
 	public Integer getPageIdByLang(String wikidataId, String lang) {
-		if (env.getDbConcepts().retrieve(wikidataId) == null) 
-			return null;
-		else {
-			Concept concept = new Concept(env, wikidataId);
-			return concept.getPageIdByLang(lang);
-		}
+		return env.getDbConcepts().getPageIdByLang(wikidataId, lang);
 	}
 
 	/**
@@ -154,21 +441,50 @@ public class UpperKnowledgeBase {
 	 * Return the list of relations associated to a given concept id
 	 */
 	public List<Statement> getStatements(String wikidataId) {
-		//System.out.println("get statements for: " + wikidataId);
-		List<Statement> statements = env.getDbStatements().retrieve(wikidataId);
-		//if (statements != null)
-		//	System.out.println(statements.size() + " statements: ");
-
 		return env.getDbStatements().retrieve(wikidataId);
 	}
 
+	/**
+	 * Return the list of relations associated to a given concept id for some properties 
+	 * only, the statements of the other properties not being decoded
+	 *
+	 * @param propertyIds the ids of the properties, null for all the properties
+	 */
+	public List<Statement> getStatements(String wikidataId, Collection<String> propertyIds) {
+		return env.getDbStatements().retrieve(wikidataId, propertyIds);
+	}
+
+	/**
+	 * @return true if the concepts can be looked up by statement, i.e. if the reverse index 
+	 * of the statements has been built
+	 */
+	public boolean hasStatementIndex() {
+		return env.getDbStatementsByValue().isLoaded();
+	}
+
+	/**
+	 * Return the ids of the concepts having a statement with a given property and value, 
+	 * in the numerical order of the ids, so that the result can be paged through.
+	 * 
+	 * @param propertyId the property of the statement, e.g. P31
+	 * @param value a concept id for an item value (e.g. Q5), otherwise the string value
+	 * @param itemValue true for an item value, false for a string value
+	 * @param after the last concept id of the previous page, null for the first page
+	 * @param max maximum number of concept ids to be returned
+	 */
+	public List<String> getConceptIdsByStatement(String propertyId, String value, boolean itemValue, 
+			String after, int max) {
+		return env.getDbStatementsByValue().getConceptIds(propertyId, value, itemValue, after, max);
+	}
+
 	public void close() {
 		// close wikipedia instances
-		for (Map.Entry<String, LowerKnowledgeBase> entry : wikipedias.entrySet()) {
-			LowerKnowledgeBase wikipedia = entry.getValue();
-			wikipedia.close();
-		}
-		env.close();
+		languages.closeAll();
+		if (wikipediaDomainMap != null)
+			wikipediaDomainMap.close();
+		wikipediaDomainMap = null;
+		if (env != null)
+			env.close();
 		this.env = null;
 	}
 }
\ No newline at end of file
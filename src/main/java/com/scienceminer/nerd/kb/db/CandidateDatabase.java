@@ -0,0 +1,162 @@
+package com.scienceminer.nerd.kb.db;
+
+import java.io.*;
+import java.util.*;
+
+import org.apache.hadoop.record.CsvRecordInput;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.scienceminer.nerd.kb.model.*;
+import com.scienceminer.nerd.kb.model.Page.PageType;
+import com.scienceminer.nerd.utilities.*;
+
+import org.fusesource.lmdbjni.*;
+import static org.fusesource.lmdbjni.Constants.*;
+
+/**
+ * Associates String labels with their pre-filtered candidate senses, so that the candidates
+ * of a mention can be generated with a single read. The senses are filtered as for the
+ * candidate generation at request time: only articles, no "List of" page and no page
+ * belonging to a disambiguation category. Senses are kept in the order of the label
+ * (decreasing prior probability), at most MAX_CANDIDATES per label, in a fixed-width 
+ * record (see CandidateRecord).
+ */
+public class CandidateDatabase extends StringRecordDatabase<CandidateRecord> {
+	private static final Logger LOGGER = LoggerFactory.getLogger(CandidateDatabase.class);
+
+	// maximum number of candidates stored for a label
+	public static final int MAX_CANDIDATES = 10;
+
+	// the records are stored as they are read
+	private static final RecordCodec<CandidateRecord> CODEC = new RecordCodec<CandidateRecord>() {
+		@Override
+		public byte[] encode(CandidateRecord record) {
+			return record.getBytes();
+		}
+
+		@Override
+		public CandidateRecord decode(byte[] data) {
+			return new CandidateRecord(data);
+		}
+	};
+
+	public CandidateDatabase(KBEnvironment env) {
+		super(env, DatabaseType.candidates);
+		// the database directory is created even when the index is not used, so an
+		// empty database is considered as not built
+		isLoaded = (getDatabaseSize() > 0);
+	}
+
+	@Override
+	protected RecordCodec<CandidateRecord> getValueCodec() {
+		return CODEC;
+	}
+
+	@Override
+	public KBEntry<String, CandidateRecord> deserialiseCsvRecord(CsvRecordInput record) throws IOException {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void loadFromFile(File dataFile, boolean overwrite) throws Exception {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Builds the candidate index from the already loaded label, page and category databases
+	 *
+	 * @param env the environment of the label database
+	 * @param overwrite indicate if the existing database should be overwritten
+	 */
+	public void loadFromLabels(KBLowerEnvironment env, boolean overwrite) throws Exception {
+		if (isLoaded && !overwrite)
+			return;
+		System.out.println("Loading " + getName() + " database");
+
+		LabelIterator iterator = new LabelIterator(env);
+		int nbToAdd = 0;
+		Transaction tx = environment.createWriteTransaction();
+		while (iterator.hasNext()) {
+			if (nbToAdd == 10000) {
+				tx.commit();
+				tx.close();
+				nbToAdd = 0;
+				tx = environment.createWriteTransaction();
+			}
+			Label label = iterator.next();
+			if (label == null)
+				continue;
+			try {
+				CandidateRecord record = buildRecord(label);
+				if (record == null)
+					continue;
+				db.put(tx, encodeKey(label.getText()), encodeValue(record));
+				nbToAdd++;
+			} catch(Exception e) {
+				LOGGER.warn("Cannot index the candidates of label " + label.getText(), e);
+			}
+		}
+		tx.commit();
+		tx.close();
+		iterator.close();
+		isLoaded = true;
+	}
+
+	private static CandidateRecord buildRecord(Label label) {
+		List<Label.Sense> candidates = new ArrayList<Label.Sense>();
+		List<int[]> categories = new ArrayList<int[]>();
+		for (Label.Sense sense : label.getSenses()) {
+			if (sense.getType() != PageType.article)
+				continue;
+
+			// not a valid sense if title is a list of ...
+			String title = sense.getTitle();
+			if ((title == null) || title.startsWith("List of") || title.startsWith("Liste des"))
+				continue;
+
+			boolean invalid = false;
+			List<Integer> senseCategories = new ArrayList<Integer>();
+			Category[] parentCategories = sense.getParentCategories();
+			if (parentCategories != null) {
+				for (Category theCategory : parentCategories) {
+					if ( (theCategory == null) || (theCategory.getTitle() == null) )
+						continue;
+					if (!com.scienceminer.nerd.kb.Category.isFiltered(theCategory.getTitle()))
+						senseCategories.add(theCategory.getId());
+					// not a valid sense if a category of the sense contains "disambiguation"
+					if (theCategory.getTitle().toLowerCase().indexOf("disambiguation") != -1) {
+						invalid = true;
+						break;
+					}
+				}
+			}
+			if (invalid)
+				continue;
+
+			int[] categoryIds = new int[senseCategories.size()];
+			for (int i=0; i<categoryIds.length; i++)
+				categoryIds[i] = senseCategories.get(i);
+			candidates.add(sense);
+			categories.add(categoryIds);
+			if (candidates.size() == MAX_CANDIDATES)
+				break;
+		}
+
+		if (candidates.size() == 0)
+			return null;
+
+		int n = candidates.size();
+		int[] pageIds = new int[n];
+		double[] priors = new double[n];
+		int[] wikidataCodes = new int[n];
+		for (int i=0; i<n; i++) {
+			Label.Sense sense = candidates.get(i);
+			pageIds[i] = sense.getId();
+			priors[i] = sense.getPriorProbability();
+			wikidataCodes[i] = WikidataIds.encode(sense.getWikidataId());
+		}
+		return new CandidateRecord(label.getLinkProbability(), pageIds, priors, wikidataCodes, categories);
+	}
+}
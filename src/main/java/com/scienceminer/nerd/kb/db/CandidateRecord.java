@@ -0,0 +1,105 @@
+package com.scienceminer.nerd.kb.db;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * The pre-filtered candidate senses of a label, as stored in the candidate index (see
+ * CandidateDatabase). The record is read in place: a header with the link probability of
+ * the label and the number of candidates, one fixed-width entry per candidate, then the
+ * category ids of the candidates:
+ *     linkProbability (double), n (int),
+ *     (pageId (int), prior (double), wikidata code (int), category offset (int), category count (int)) x n,
+ *     category ids (int)...
+ * where the wikidata code is the code of the Wikidata id of the sense (see WikidataIds).
+ */
+public class CandidateRecord {
+
+	private static final int HEADER_SIZE = 12;
+	private static final int ENTRY_SIZE = 24;
+
+	private final byte[] data;
+	private final ByteBuffer buffer;
+
+	public CandidateRecord(byte[] data) {
+		this.data = data;
+		this.buffer = ByteBuffer.wrap(data);
+	}
+
+	/**
+	 * @param linkProbability the link probability of the label
+	 * @param pageIds the page ids of the candidates, in their order
+	 * @param priors the prior probabilities of the candidates
+	 * @param wikidataCodes the codes of the Wikidata ids of the candidates
+	 * @param categoryIds the category ids of each candidate
+	 */
+	public CandidateRecord(double linkProbability, int[] pageIds, double[] priors, int[] wikidataCodes,
+			List<int[]> categoryIds) {
+		int n = pageIds.length;
+		int nbCategories = 0;
+		for (int[] ids : categoryIds)
+			nbCategories += ids.length;
+		this.data = new byte[HEADER_SIZE + (n * ENTRY_SIZE) + (nbCategories * 4)];
+		this.buffer = ByteBuffer.wrap(data);
+		buffer.putDouble(0, linkProbability);
+		buffer.putInt(8, n);
+		int categoryOffset = HEADER_SIZE + (n * ENTRY_SIZE);
+		for (int i=0; i<n; i++) {
+			int entry = HEADER_SIZE + (i * ENTRY_SIZE);
+			buffer.putInt(entry, pageIds[i]);
+			buffer.putDouble(entry + 4, priors[i]);
+			buffer.putInt(entry + 12, wikidataCodes[i]);
+			buffer.putInt(entry + 16, categoryOffset);
+			buffer.putInt(entry + 20, categoryIds.get(i).length);
+			for (int categoryId : categoryIds.get(i)) {
+				buffer.putInt(categoryOffset, categoryId);
+				categoryOffset += 4;
+			}
+		}
+	}
+
+	/**
+	 * @return the stored bytes of the record
+	 */
+	public byte[] getBytes() {
+		return data;
+	}
+
+	public double getLinkProbability() {
+		return buffer.getDouble(0);
+	}
+
+	/**
+	 * @return the number of candidates in the record
+	 */
+	public int getCandidateCount() {
+		return buffer.getInt(8);
+	}
+
+	public int getPageId(int index) {
+		return buffer.getInt(HEADER_SIZE + (index * ENTRY_SIZE));
+	}
+
+	public double getPriorProbability(int index) {
+		return buffer.getDouble(HEADER_SIZE + (index * ENTRY_SIZE) + 4);
+	}
+
+	/**
+	 * @return the Wikidata id of the candidate, null if none
+	 */
+	public String getWikidataId(int index) {
+		return WikidataIds.decode(buffer.getInt(HEADER_SIZE + (index * ENTRY_SIZE) + 12));
+	}
+
+	/**
+	 * @return the ids of the (non filtered) parent categories of the candidate
+	 */
+	public int[] getCategoryIds(int index) {
+		int entry = HEADER_SIZE + (index * ENTRY_SIZE);
+		int offset = buffer.getInt(entry + 16);
+		int[] ids = new int[buffer.getInt(entry + 20)];
+		for (int i=0; i<ids.length; i++)
+			ids[i] = buffer.getInt(offset + (i * 4));
+		return ids;
+	}
+}
@@ -2,19 +2,18 @@ package com.scienceminer.nerd.kb.db;
 
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
-import org.apache.hadoop.record.CsvRecordInput;
-import org.apache.hadoop.record.CsvRecordOutput;
+import org.apache.commons.lang3.StringUtils;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.scienceminer.nerd.kb.model.hadoop.DbLabel;
-import com.scienceminer.nerd.kb.model.hadoop.DbSenseForLabel;
-
 import com.scienceminer.nerd.utilities.*;
 
 import org.fusesource.lmdbjni.*;
@@ -22,85 +21,181 @@ import static org.fusesource.lmdbjni.Constants.*;
 
 import com.scienceminer.nerd.exceptions.NerdResourceException;
 
-public class ConceptDatabase extends StringRecordDatabase<Map<String,Integer>> {
+/**
+ * Associates the Wikidata ids of the concepts with their page ids in the Wikipedia of each
+ * language.
+ *
+ * The languages are given small ordinals, in their order of appearance when the database
+ * is loaded, and the page ids of a concept are stored as an array of 4-byte integers indexed 
+ * by these ordinals (0 when the concept has no page in a language, the trailing 0 being 
+ * omitted). The page id of a concept in one language is then read directly in the stored 
+ * array. The languages are saved in the format entry of the database (see 
+ * ConceptRecordDatabase), after the version of the format.
+ */
+public class ConceptDatabase extends ConceptRecordDatabase<Map<String,Integer>> {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ConceptDatabase.class);
+
+	// languages by ordinal
+	private final List<String> languages = new CopyOnWriteArrayList<String>();
+	private final ConcurrentMap<String,Integer> ordinals = new ConcurrentHashMap<String,Integer>();
 
 	public ConceptDatabase(KBEnvironment env) {
 		super(env, DatabaseType.concepts);
+		byte[] format = readFormat();
+		if ( (format != null) && (format.length > 1) ) {
+			for (String lang : new String(format, 1, format.length - 1, StandardCharsets.UTF_8).split(","))
+				getOrdinal(lang);
+		}
+	}
+
+	/**
+	 * @return true if the concept is in the database
+	 */
+	public boolean contains(String wikidataId) {
+		countRead();
+		int code = WikidataIds.encode(wikidataId);
+		if (code == WikidataIds.NONE)
+			return false;
+		try (Transaction tx = environment.createReadTransaction();
+			 BufferCursor cursor = db.bufferCursor(tx)) {
+			cursor.keyWriteInt(code);
+			return cursor.seekKey();
+		} catch(Exception e) {
+			LOGGER.error("Cannot retrieve key " + wikidataId, e);
+		}
+		return false;
+	}
+
+	/**
+	 * @return the page id of a concept in the Wikipedia of a given language, null if the 
+	 * concept has no page in this language
+	 */
+	public Integer getPageIdByLang(String wikidataId, String lang) {
+		countRead();
+		int code = WikidataIds.encode(wikidataId);
+		Integer ordinal = ordinals.get(lang);
+		if ( (code == WikidataIds.NONE) || (ordinal == null) )
+			return null;
+		// the page id is read in place, without decoding the whole entry
+		try (Transaction tx = environment.createReadTransaction();
+			 BufferCursor cursor = db.bufferCursor(tx)) {
+			cursor.keyWriteInt(code);
+			if (!cursor.seekKey() || (cursor.valLength() < 4 * (ordinal + 1)))
+				return null;
+			int pageId = cursor.valInt(4 * ordinal);
+			return (pageId == 0) ? null : pageId;
+		} catch(Exception e) {
+			LOGGER.error("Cannot retrieve key " + wikidataId, e);
+		}
+		return null;
+	}
+
+	private int getOrdinal(String lang) {
+		Integer ordinal = ordinals.get(lang);
+		if (ordinal != null)
+			return ordinal;
+		synchronized (languages) {
+			ordinal = ordinals.get(lang);
+			if (ordinal == null) {
+				ordinal = languages.size();
+				languages.add(lang);
+				ordinals.put(lang, ordinal);
+			}
+			return ordinal;
+		}
 	}
 
 	@Override
-	public Map<String,Integer> retrieve(String key) {
-		return super.retrieve(key);
+	protected byte[] encodeValue(Map<String,Integer> pageIds) throws IOException {
+		int[] byOrdinal = new int[languages.size() + pageIds.size()];
+		int size = 0;
+		for (Map.Entry<String,Integer> entry : pageIds.entrySet()) {
+			if ( (entry.getKey() == null) || (entry.getValue() == null) )
+				continue;
+			int ordinal = getOrdinal(entry.getKey());
+			if (ordinal >= byOrdinal.length)
+				byOrdinal = Arrays.copyOf(byOrdinal, ordinal + 1);
+			byOrdinal[ordinal] = entry.getValue();
+			size = Math.max(size, ordinal + 1);
+		}
+		ByteBuffer data = ByteBuffer.allocate(4 * size);
+		for (int i = 0; i < size; i++)
+			data.putInt(byOrdinal[i]);
+		return data.array();
+	}
+
+	@Override
+	protected Map<String,Integer> decodeValue(int code, byte[] data) throws IOException {
+		Map<String,Integer> pageIds = new HashMap<String,Integer>();
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		for (int ordinal = 0; (ordinal < languages.size()) && (buffer.remaining() >= 4); ordinal++) {
+			int pageId = buffer.getInt();
+			if (pageId != 0)
+				pageIds.put(languages.get(ordinal), pageId);
+		}
+		return pageIds;
 	}
 
+	@Override
+	public void storeEntries(Map<String,Map<String,Integer>> entries) throws Exception {
+		super.storeEntries(entries);
+		writeLanguages();
+	}
+
+	private void writeLanguages() {
+		byte[] langs = StringUtils.join(languages, ",").getBytes(StandardCharsets.UTF_8);
+		byte[] format = new byte[langs.length + 1];
+		format[0] = getFormatVersion();
+		System.arraycopy(langs, 0, format, 1, langs.length);
+		writeFormat(format);
+	}
+
+	/**
+	 * Load the mapping of the Wikidata ids to the page ids of each language, one concept
+	 * per line, with the lines parsed in parallel (see DumpLoader)
+	 */
 	public void loadFromFile(File dataFile, boolean overwrite) throws Exception  {
-//System.out.println("input file: " + dataFile.getPath());
-//System.out.println("isLoaded: " + isLoaded);
 		if (isLoaded && !overwrite)
 			return;
 		if (dataFile == null)
 			throw new NerdResourceException("Concept dump file not found");
 		System.out.println("Loading " + name + " database");
 
-		BufferedReader input = new BufferedReader(new InputStreamReader(new FileInputStream(dataFile), "UTF-8"));
-		//long bytesRead = 0;
-
-		String line = null;
-		int nbToAdd = 0;
-		Transaction tx = environment.createWriteTransaction();
-		while ((line=input.readLine()) != null) {
-			if (nbToAdd == 10000) {
-				tx.commit();
-				tx.close();
-				nbToAdd = 0;
-				tx = environment.createWriteTransaction();
-			}
-
-			String[] pieces = line.split(",");
-			if (pieces.length < 3)
-				continue;
-			int pos = 0;
-			String keyVal = pieces[pos];
-			if ( (keyVal == null) || (keyVal.trim().length() == 0) )
-				continue;
-			pos++;
-			Map<String,Integer> conceptMap = new HashMap<String,Integer>();
-			while(pos < pieces.length) {
-				// pieces[1]
-				String lang = pieces[pos].replace("m{'", "").replace("'","");
+		DumpLoader<String,Map<String,Integer>> loader = 
+			new DumpLoader<String,Map<String,Integer>>(this, env.getConfiguration().getLoadingThreads());
+		loader.load(dataFile, new DumpLoader.LineParser<String,Map<String,Integer>>() {
+			@Override
+			public KBEntry<String,Map<String,Integer>> parse(String line) {
+				String[] pieces = line.split(",");
+				if (pieces.length < 3)
+					return null;
+				int pos = 0;
+				String keyVal = pieces[pos];
+				if ( (keyVal == null) || !WikidataIds.isValid(keyVal) )
+					return null;
 				pos++;
-				if (pos == pieces.length)
-					break;
-				String pageidString = pieces[pos].replace("'","").replace("}","");;
-				pos++;
-				Integer pageid = null;
-				try {
-					pageid = Integer.parseInt(pageidString);
-				} catch(Exception e) {
-					e.printStackTrace();
-				}
-				if ( (lang.trim().length() > 0) && (pageid != null) )
-					conceptMap.put(lang, pageid);
-			}
-			KBEntry<String,Map<String,Integer>> entry = new KBEntry<String,Map<String,Integer>>(keyVal, conceptMap);
-			if (entry != null) {
-				try {
-					db.put(tx, KBEnvironment.serialize(entry.getKey()), KBEnvironment.serialize(entry.getValue()));
-					nbToAdd++;
-				} catch(Exception e) {
-					e.printStackTrace();
+				Map<String,Integer> conceptMap = new HashMap<String,Integer>();
+				while(pos < pieces.length) {
+					// pieces[1]
+					String lang = pieces[pos].replace("m{'", "").replace("'","");
+					pos++;
+					if (pos == pieces.length)
+						break;
+					String pageidString = pieces[pos].replace("'","").replace("}","");
+					pos++;
+					Integer pageid = null;
+					try {
+						pageid = Integer.parseInt(pageidString);
+					} catch(Exception e) {
+						e.printStackTrace();
+					}
+					if ( (lang.trim().length() > 0) && (pageid != null) )
+						conceptMap.put(lang, pageid);
 				}
+				return new KBEntry<String,Map<String,Integer>>(keyVal, conceptMap);
 			}
-		}
-		tx.commit();
-		tx.close();
-		input.close();
+		});
+		writeLanguages();
 		isLoaded = true;
 	}
-
-	@Override
-	public KBEntry<String,Map<String,Integer>> deserialiseCsvRecord(CsvRecordInput record) throws IOException {
-		throw new UnsupportedOperationException();
-	}
-
 }
@@ -0,0 +1,141 @@
+package com.scienceminer.nerd.kb.db;
+
+import java.io.*;
+
+import org.apache.hadoop.record.CsvRecordInput;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.fusesource.lmdbjni.*;
+
+import com.scienceminer.nerd.exceptions.NerdResourceException;
+
+/**
+ * Database of the upper KB keyed by the Wikidata ids of the concepts and properties. The
+ * keys are the integer codes of the ids (see WikidataIds), written as 4 bytes in big-endian
+ * order, so that the keys are small and ordered by code, and the values are written by a
+ * codec specific to each database.
+ *
+ * The entry of key 0, which is not the code of an id, describes the format of the database,
+ * starting with the version of the format. A database without this entry has been built by
+ * a previous version with the keys and values serialized with FST, and must be rebuilt: 
+ * opening such a database fails.
+ *
+ * @param <V> the value type
+ */
+public abstract class ConceptRecordDatabase<V> extends KBDatabase<String, V> {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ConceptRecordDatabase.class);
+
+	protected static final byte FORMAT_VERSION = 1;
+
+	private static final byte[] FORMAT_KEY = encodeCode(WikidataIds.NONE);
+
+	public ConceptRecordDatabase(KBEnvironment env, DatabaseType type) {
+		super(env, type);
+		byte[] format = readFormat();
+		if ( (getDatabaseSize() > 0) && ( (format == null) || (format.length == 0) || (format[0] != getFormatVersion()) ) ) {
+			// its entries could not be read, every lookup would fail
+			close();
+			throw new NerdResourceException("The " + name + " database has the format of a previous version " + 
+				"and must be rebuilt (remove " + envFilePath + " and restart)");
+		}
+	}
+
+	/**
+	 * @return the version of the format of the database, written first in the format entry
+	 */
+	protected byte getFormatVersion() {
+		return FORMAT_VERSION;
+	}
+
+	/**
+	 * Decodes a value of the database
+	 *
+	 * @param code the code of the concept or property of the entry
+	 * @param data the value as stored
+	 */
+	protected abstract V decodeValue(int code, byte[] data) throws IOException;
+
+	/**
+	 * @return the number of entries in the database, not counting the format entry
+	 */
+	@Override
+	public long getDatabaseSize() {
+		long size = super.getDatabaseSize();
+		if ( (size > 0) && (readFormat() != null) )
+			size--;
+		return size;
+	}
+
+	@Override
+	public V retrieve(String id) {
+		countRead();
+		int code = WikidataIds.encode(id);
+		if (code == WikidataIds.NONE)
+			return null;
+		V record = null;
+		try (Transaction tx = environment.createReadTransaction()) {
+			byte[] data = db.get(tx, encodeCode(code));
+			if (data != null)
+				record = decodeValue(code, data);
+		} catch(Exception e) {
+			LOGGER.error("Cannot retrieve key " + id, e);
+		}
+		return record;
+	}
+
+	@Override
+	protected boolean usesDefaultKeys() {
+		return false;
+	}
+
+	@Override
+	protected byte[] encodeKey(String id) throws IOException {
+		int code = WikidataIds.encode(id);
+		if (code == WikidataIds.NONE)
+			throw new IOException("Invalid Wikidata id: " + id);
+		return encodeCode(code);
+	}
+
+	/**
+	 * @return the entry, null for the entry describing the format of the database
+	 */
+	@Override
+	protected KBEntry<String, V> decodeEntry(byte[] key, byte[] value) throws IOException {
+		if (key.length != 4)
+			throw new IOException("Invalid key in the " + name + " database");
+		int code = ((key[0] & 0xFF) << 24) | ((key[1] & 0xFF) << 16) | ((key[2] & 0xFF) << 8) | (key[3] & 0xFF);
+		if (code == WikidataIds.NONE)
+			return null;
+		return new KBEntry<String, V>(WikidataIds.decode(code), decodeValue(code, value));
+	}
+
+	@Override
+	public KBEntry<String, V> deserialiseCsvRecord(CsvRecordInput record) throws IOException {
+		throw new UnsupportedOperationException();
+	}
+
+	protected static byte[] encodeCode(int code) {
+		return new byte[] {(byte) (code >>> 24), (byte) (code >>> 16), (byte) (code >>> 8), (byte) code};
+	}
+
+	/**
+	 * @return the description of the format of the database, null if absent
+	 */
+	protected byte[] readFormat() {
+		try (Transaction tx = environment.createReadTransaction()) {
+			return db.get(tx, FORMAT_KEY);
+		}
+	}
+
+	/**
+	 * Writes the description of the format of the database, starting with its version
+	 */
+	protected void writeFormat(byte[] format) {
+		try (Transaction tx = environment.createWriteTransaction()) {
+			db.put(tx, FORMAT_KEY, format);
+			tx.commit();
+		}
+	}
+}
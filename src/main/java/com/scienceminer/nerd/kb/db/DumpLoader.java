@@ -0,0 +1,276 @@
+package com.scienceminer.nerd.kb.db;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.scienceminer.nerd.utilities.ParallelBZip2InputStream;
+
+import org.fusesource.lmdbjni.*;
+
+/**
+ * Loading of a database from a dump file with one record per line (the Wikidata JSON dump,
+ * the CSV files of the KB), as a pipeline:
+ * <ul>
+ * <li>the lines are read by a reader thread, the file being decompressed if needed, in
+ * parallel for a bzip2 file made of several streams (see ParallelBZip2InputStream),</li>
+ * <li>the lines are parsed and the entries serialized in batches by a pool of workers,</li>
+ * <li>the entries are written in the database by the calling thread in the order of the
+ * file, with one write transaction per batch of entries.</li>
+ * </ul>
+ * The throughput of the loading is reported regularly.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class DumpLoader<K,V> {
+	private static final Logger LOGGER = LoggerFactory.getLogger(DumpLoader.class);
+
+	// lines parsed by a task of the workers
+	private static final int BATCH_SIZE = 1000;
+
+	// entries written in a transaction
+	private static final int TRANSACTION_SIZE = 10000;
+
+	// delay between two reports of the throughput
+	private static final long REPORT_DELAY = 30000;
+
+	/**
+	 * Parser of the lines of a dump file, called by several threads at the same time.
+	 */
+	public interface LineParser<K,V> {
+		/**
+		 * @return the entry given by the line, or null if the line gives no entry
+		 */
+		KBEntry<K,V> parse(String line) throws Exception;
+	}
+
+	private final KBDatabase<K,V> database;
+	private final int threads;
+
+	private final AtomicLong bytesRead = new AtomicLong();
+	private final AtomicLong linesRead = new AtomicLong();
+	private final AtomicLong invalidLines = new AtomicLong();
+
+	/**
+	 * @param database the database to be loaded
+	 * @param threads the number of threads for decompressing and parsing, 0 for the number
+	 * of available processors
+	 */
+	public DumpLoader(KBDatabase<K,V> database, int threads) {
+		this.database = database;
+		this.threads = (threads > 0) ? threads : Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Load the entries of a dump file in the database, overwriting the values of the
+	 * existing keys.
+	 *
+	 * @param dataFile the dump file, possibly compressed
+	 * @param parser the parser of the lines of the file
+	 * @return the number of entries loaded
+	 */
+	public long load(final File dataFile, final LineParser<K,V> parser) throws Exception {
+		final ExecutorService workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "nerd-kb-loader");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		// batches in the order of the file, a bounded number of them being parsed in advance
+		final BlockingQueue<Future<List<byte[][]>>> batches =
+			new ArrayBlockingQueue<Future<List<byte[][]>>>(4 * threads);
+		final Future<List<byte[][]>> end = new FutureTask<List<byte[][]>>(new Callable<List<byte[][]>>() {
+			@Override
+			public List<byte[][]> call() {
+				return null;
+			}
+		});
+
+		Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				Future<List<byte[][]>> last = end;
+				try {
+					BufferedReader input = openReader(dataFile);
+					try {
+						String line = null;
+						List<String> lines = new ArrayList<String>(BATCH_SIZE);
+						while ((line = input.readLine()) != null) {
+							lines.add(line);
+							if (lines.size() == BATCH_SIZE) {
+								batches.put(workers.submit(parsing(lines, parser)));
+								lines = new ArrayList<String>(BATCH_SIZE);
+							}
+						}
+						if (lines.size() > 0)
+							batches.put(workers.submit(parsing(lines, parser)));
+					} finally {
+						input.close();
+					}
+				} catch (InterruptedException e) {
+					// the loading is abandoned
+					return;
+				} catch (final Exception e) {
+					FutureTask<List<byte[][]>> failure = new FutureTask<List<byte[][]>>(new Callable<List<byte[][]>>() {
+						@Override
+						public List<byte[][]> call() throws Exception {
+							throw e;
+						}
+					});
+					failure.run();
+					last = failure;
+				}
+				try {
+					batches.put(last);
+				} catch (InterruptedException e) {
+					// the loading is abandoned
+				}
+			}
+		}, "nerd-kb-reader");
+		reader.setDaemon(true);
+
+		long start = System.currentTimeMillis();
+		long lastReport = start;
+		long nbTotalAdded = 0;
+		int nbToAdd = 0;
+		Env environment = database.getEnvironment();
+		Database db = database.getDatabase();
+		Transaction tx = environment.createWriteTransaction();
+		try {
+			reader.start();
+			while (true) {
+				Future<List<byte[][]>> batch = batches.take();
+				if (batch == end)
+					break;
+				List<byte[][]> entries = null;
+				try {
+					entries = batch.get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof Exception)
+						throw (Exception) e.getCause();
+					throw e;
+				}
+				for (byte[][] entry : entries) {
+					try {
+						db.put(tx, entry[0], entry[1]);
+						nbToAdd++;
+						nbTotalAdded++;
+					} catch(Exception e) {
+						e.printStackTrace();
+					}
+				}
+				if (nbToAdd >= TRANSACTION_SIZE) {
+					tx.commit();
+					tx.close();
+					nbToAdd = 0;
+					tx = environment.createWriteTransaction();
+				}
+
+				long now = System.currentTimeMillis();
+				if (now - lastReport >= REPORT_DELAY) {
+					report(dataFile, nbTotalAdded, now - start);
+					lastReport = now;
+				}
+			}
+			tx.commit();
+			tx.close();
+			tx = null;
+		} finally {
+			if (tx != null)
+				tx.abort();
+			reader.interrupt();
+			workers.shutdownNow();
+		}
+
+		report(dataFile, nbTotalAdded, System.currentTimeMillis() - start);
+		if (invalidLines.get() > 0)
+			System.out.println(invalidLines.get() + " invalid lines ignored in " + dataFile.getName());
+		return nbTotalAdded;
+	}
+
+	private Callable<List<byte[][]>> parsing(final List<String> lines, final LineParser<K,V> parser) {
+		return new Callable<List<byte[][]>>() {
+			@Override
+			public List<byte[][]> call() {
+				List<byte[][]> entries = new ArrayList<byte[][]>(lines.size());
+				for (String line : lines) {
+					try {
+						KBEntry<K,V> entry = parser.parse(line);
+						if ( (entry == null) || (entry.getKey() == null) )
+							continue;
+						entries.add(new byte[][] {database.encodeKey(entry.getKey()),
+							database.encodeValue(entry.getValue())});
+					} catch(Exception e) {
+						invalidLines.incrementAndGet();
+						LOGGER.debug("Invalid line: " + line, e);
+					}
+				}
+				linesRead.addAndGet(lines.size());
+				return entries;
+			}
+		};
+	}
+
+	/**
+	 * Open a dump file, decompressed according to its content
+	 */
+	private BufferedReader openReader(File dataFile) throws IOException {
+		InputStream input = new BufferedInputStream(new CountingInputStream(new FileInputStream(dataFile)));
+		input.mark(3);
+		boolean bzip2 = (input.read() == 'B') && (input.read() == 'Z') && (input.read() == 'h');
+		input.reset();
+		if (bzip2) {
+			input = new ParallelBZip2InputStream(input, threads);
+		} else {
+			try {
+				input = new CompressorStreamFactory().createCompressorInputStream(input);
+			} catch(CompressorException e) {
+				// not compressed
+			}
+		}
+		return new BufferedReader(new InputStreamReader(input, "UTF-8"), 1024 * 1024);
+	}
+
+	private void report(File dataFile, long nbEntries, long elapsed) {
+		double seconds = Math.max(elapsed, 1) / 1000.0;
+		long lines = linesRead.get();
+		double megabytes = bytesRead.get() / (1024.0 * 1024.0);
+		System.out.println(String.format("%s: %d lines, %d entries, %.1f%% of %s read in %.0f s - %.0f lines/s, %.1f MB/s",
+			database.getName(), lines, nbEntries, 100.0 * bytesRead.get() / Math.max(dataFile.length(), 1),
+			dataFile.getName(), seconds, lines / seconds, megabytes / seconds));
+	}
+
+	// counts the bytes read from the file, before decompression
+	private class CountingInputStream extends FilterInputStream {
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b != -1)
+				bytesRead.incrementAndGet();
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0)
+				bytesRead.addAndGet(n);
+			return n;
+		}
+	}
+}
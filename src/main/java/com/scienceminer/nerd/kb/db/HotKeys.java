@@ -0,0 +1,96 @@
+package com.scienceminer.nerd.kb.db;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Approximate access counts of the keys of a database, used to know which entries are hot
+ * (for instance for saving them in the warm-start snapshot of the service).
+ *
+ * At most twice the given capacity of keys are counted: when this number is reached, only
+ * the capacity most accessed keys are kept and their counts are halved, so that the
+ * counts follow the recent accesses.
+ *
+ * @param <K> the key type
+ */
+public class HotKeys<K> {
+
+	private final int capacity;
+	private final ConcurrentMap<K, AtomicInteger> counts = new ConcurrentHashMap<K, AtomicInteger>();
+
+	/**
+	 * @param capacity the number of hot keys to be kept, 0 to count nothing
+	 */
+	public HotKeys(int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Count an access to a key
+	 */
+	public void hit(K key) {
+		add(key, 1);
+	}
+
+	/**
+	 * Add a number of accesses to a key
+	 */
+	public void add(K key, int count) {
+		if ( (capacity <= 0) || (key == null) )
+			return;
+		AtomicInteger counter = counts.get(key);
+		if (counter == null) {
+			if (counts.size() >= 2 * capacity)
+				prune();
+			counts.putIfAbsent(key, new AtomicInteger());
+			counter = counts.get(key);
+			if (counter == null)
+				return;
+		}
+		counter.addAndGet(count);
+	}
+
+	/**
+	 * @return the most accessed keys with their counts, by decreasing count
+	 */
+	public List<Map.Entry<K, Integer>> getTop(int max) {
+		List<Map.Entry<K, Integer>> result = new ArrayList<Map.Entry<K, Integer>>();
+		for (Map.Entry<K, AtomicInteger> entry : counts.entrySet())
+			result.add(new AbstractMap.SimpleEntry<K, Integer>(entry.getKey(), entry.getValue().get()));
+		Collections.sort(result, new Comparator<Map.Entry<K, Integer>>() {
+			@Override
+			public int compare(Map.Entry<K, Integer> entry1, Map.Entry<K, Integer> entry2) {
+				return Integer.compare(entry2.getValue(), entry1.getValue());
+			}
+		});
+		if (result.size() > max)
+			result = new ArrayList<Map.Entry<K, Integer>>(result.subList(0, max));
+		return result;
+	}
+
+	public int size() {
+		return counts.size();
+	}
+
+	public void clear() {
+		counts.clear();
+	}
+
+	private synchronized void prune() {
+		if (counts.size() < 2 * capacity)
+			return;
+		List<Map.Entry<K, Integer>> top = getTop(capacity);
+		Set<K> kept = new HashSet<K>();
+		for (Map.Entry<K, Integer> entry : top)
+			kept.add(entry.getKey());
+		Iterator<Map.Entry<K, AtomicInteger>> it = counts.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<K, AtomicInteger> entry = it.next();
+			if (!kept.contains(entry.getKey()))
+				it.remove();
+			else
+				entry.getValue().set(entry.getValue().get() / 2 + 1);
+		}
+	}
+}
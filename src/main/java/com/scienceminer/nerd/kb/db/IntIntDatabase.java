@@ -27,10 +27,11 @@ public abstract class IntIntDatabase extends KBDatabase<Integer, Integer> {
 	// using standard LMDB copy mode
 	@Override
 	public Integer retrieve(Integer key) {
+		countRead();
 		byte[] cachedData = null;
 		Integer record = null;
 		try (Transaction tx = environment.createReadTransaction()) {
-			cachedData = db.get(tx, KBEnvironment.serialize(key));
+			cachedData = db.get(tx, encodeKey(key));
 			if (cachedData != null) {
 				record = (Integer)KBEnvironment.deserialize(cachedData);
 			}
@@ -47,7 +48,7 @@ public abstract class IntIntDatabase extends KBDatabase<Integer, Integer> {
 		Integer record = null;
 		try (Transaction tx = environment.createReadTransaction();
 			BufferCursor cursor = db.bufferCursor(tx)) {
-			cursor.keyWriteBytes(KBEnvironment.serialize(key));
+			cursor.keyWriteBytes(encodeKey(key));
 			if (cursor.seekKey()) {
 				record = (Integer)KBEnvironment.deserialize(cursor.valBytes());
 			}
@@ -85,7 +86,7 @@ public abstract class IntIntDatabase extends KBDatabase<Integer, Integer> {
 			KBEntry<Integer,Integer> entry = deserialiseCsvRecord(cri);
 			if (entry != null) {
 				try {
-					db.put(tx, KBEnvironment.serialize(entry.getKey()), KBEnvironment.serialize(entry.getValue()));
+					db.put(tx, encodeKey(entry.getKey()), KBEnvironment.serialize(entry.getValue()));
 					nbToAdd++;
 				} catch(Exception e) {
 					e.printStackTrace();
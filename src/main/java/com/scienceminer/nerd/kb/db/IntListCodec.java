@@ -0,0 +1,103 @@
+package com.scienceminer.nerd.kb.db;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Compact encoding of increasing lists of integers (posting lists): the number of values,
+ * then the first value and the gaps between consecutive values, as variable-length
+ * integers (7 bits per byte, the high bit set for all the bytes but the last one). The
+ * first value is zigzag encoded so that small negative values are short too.
+ */
+public class IntListCodec {
+
+	/**
+	 * @param values increasing values
+	 * @param offset the index of the first value to be encoded
+	 * @param length the number of values to be encoded
+	 */
+	public static byte[] encode(int[] values, int offset, int length) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(length + 8);
+		writeVarInt(out, length);
+		if (length == 0)
+			return out.toByteArray();
+		int first = values[offset];
+		writeVarInt(out, (first << 1) ^ (first >> 31));
+		for (int i = offset + 1; i < offset + length; i++) {
+			long gap = (long) values[i] - values[i - 1];
+			if (gap <= 0)
+				throw new IllegalArgumentException("The values are not increasing");
+			writeVarInt(out, (int) gap);
+		}
+		return out.toByteArray();
+	}
+
+	public static byte[] encode(int[] values) {
+		return encode(values, 0, values.length);
+	}
+
+	/**
+	 * @return the values of an encoded list
+	 */
+	public static int[] decode(byte[] data) throws IOException {
+		return decode(data, new int[1]);
+	}
+
+	/**
+	 * @param pos the position of the encoded list in the data, updated to the position 
+	 * following the list
+	 */
+	static int[] decode(byte[] data, int[] pos) throws IOException {
+		int length = readVarInt(data, pos);
+		int[] values = new int[length];
+		if (length == 0)
+			return values;
+		int zigzag = readVarInt(data, pos);
+		values[0] = (zigzag >>> 1) ^ -(zigzag & 1);
+		for (int i = 1; i < length; i++)
+			values[i] = values[i - 1] + readVarInt(data, pos);
+		return values;
+	}
+
+	static void writeVarInt(ByteArrayOutputStream out, int value) {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	static int readVarInt(byte[] data, int[] pos) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			if (pos[0] >= data.length)
+				throw new IOException("Truncated list of integers");
+			byte b = data[pos[0]++];
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Invalid encoded integer");
+	}
+
+	static void writeVarLong(ByteArrayOutputStream out, long value) {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	static long readVarLong(byte[] data, int[] pos) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 70; shift += 7) {
+			if (pos[0] >= data.length)
+				throw new IOException("Truncated encoded integer");
+			byte b = data[pos[0]++];
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Invalid encoded integer");
+	}
+}
@@ -26,10 +26,11 @@ public abstract class IntLongDatabase extends KBDatabase<Integer, Long> {
 	// using standard LMDB copy mode
 	@Override
 	public Long retrieve(Integer key) {
+		countRead();
 		byte[] cachedData = null;
 		Long record = null;
 		try (Transaction tx = environment.createReadTransaction()) {
-			cachedData = db.get(tx, KBEnvironment.serialize(key));
+			cachedData = db.get(tx, encodeKey(key));
 			if (cachedData != null) {
 				record = (Long)KBEnvironment.deserialize(cachedData);
 			}
@@ -46,7 +47,7 @@ public abstract class IntLongDatabase extends KBDatabase<Integer, Long> {
 		Long record = null;
 		try (Transaction tx = environment.createReadTransaction();
 			BufferCursor cursor = db.bufferCursor(tx)) {
-			cursor.keyWriteBytes(KBEnvironment.serialize(key));
+			cursor.keyWriteBytes(encodeKey(key));
 			if (cursor.seekKey()) {
 				record = (Long)KBEnvironment.deserialize(cursor.valBytes());
 			}
@@ -84,7 +85,7 @@ public abstract class IntLongDatabase extends KBDatabase<Integer, Long> {
 			KBEntry<Integer,Long> entry = deserialiseCsvRecord(cri);
 			if (entry != null) {
 				try {
-					db.put(tx, KBEnvironment.serialize(entry.getKey()), KBEnvironment.serialize(entry.getValue()));
+					db.put(tx, encodeKey(entry.getKey()), KBEnvironment.serialize(entry.getValue()));
 					nbToAdd++;
 				} catch(Exception e) {
 					e.printStackTrace();
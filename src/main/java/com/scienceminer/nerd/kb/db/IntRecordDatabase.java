@@ -27,12 +27,13 @@ public abstract class IntRecordDatabase<Record> extends KBDatabase<Integer, Reco
 	// using standard LMDB copy mode
 	@Override
 	public Record retrieve(Integer key) {
+		countRead();
 		byte[] cachedData = null;
 		Record record = null;
 		try (Transaction tx = environment.createReadTransaction()) {
-			cachedData = db.get(tx, KBEnvironment.serialize(key));
+			cachedData = db.get(tx, encodeKey(key));
 			if (cachedData != null) {
-				record = (Record)KBEnvironment.deserialize(cachedData);
+				record = decodeValue(cachedData);
 			}
 		} catch(Exception e) {
 			e.printStackTrace();
@@ -47,9 +48,9 @@ public abstract class IntRecordDatabase<Record> extends KBDatabase<Integer, Reco
 		Record record = null;
 		try (Transaction tx = environment.createReadTransaction();
 			 BufferCursor cursor = db.bufferCursor(tx)) {
-			cursor.keyWriteBytes(KBEnvironment.serialize(key));
+			cursor.keyWriteBytes(encodeKey(key));
 			if (cursor.seekKey()) {
-				record = (Record)KBEnvironment.deserialize(cursor.valBytes());
+				record = decodeValue(cursor.valBytes());
 			}
 		} catch(Exception e) {
 			e.printStackTrace();
@@ -84,7 +85,7 @@ public abstract class IntRecordDatabase<Record> extends KBDatabase<Integer, Reco
 				KBEntry<Integer,Record> entry = deserialiseCsvRecord(cri);
 				if (entry != null) {
 					try {
-						db.put(tx, KBEnvironment.serialize(entry.getKey()), KBEnvironment.serialize(entry.getValue()));
+						db.put(tx, encodeKey(entry.getKey()), encodeValue(entry.getValue()));
 						nbToAdd++;
 					} catch(Exception e) {
 						e.printStackTrace();
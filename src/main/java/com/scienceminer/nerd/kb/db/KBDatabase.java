@@ -10,16 +10,21 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
+import java.util.Map;
 import java.util.concurrent.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import javax.xml.stream.XMLStreamException;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.hadoop.record.CsvRecordInput;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.scienceminer.nerd.kb.model.hadoop.*;
+import com.scienceminer.nerd.exceptions.NerdResourceException;
 
 import java.util.concurrent.*;
 import org.apache.hadoop.record.*;
@@ -42,6 +47,19 @@ public abstract class KBDatabase<K,V> {
 	protected DatabaseType type = null;
 	protected KBEnvironment env = null;
 
+	// file marking the databases whose keys are encoded with OrderedKeys, the keys of the
+	// databases built by previous versions being serialized with FST (see KBMigration)
+	static final String ORDERED_KEYS_MARKER = "ordered-keys";
+
+	// file giving the version of the format of the values of the databases encoded with a 
+	// RecordCodec, the values of the other databases being serialized with FST
+	static final String VALUE_FORMAT_MARKER = "value-format";
+
+	protected boolean orderedKeys = false;
+
+	// version of the format of the values, 0 for values serialized with FST
+	protected int valueFormat = 0;
+
 	/**
 	 * Creates or load an existing database whose name will match the given {@link KBDatabase.DatabaseType}
 	 * 
@@ -69,6 +87,8 @@ public abstract class KBDatabase<K,V> {
     	}
     	this.environment.open(envFilePath, Constants.NOTLS);
 		db = this.environment.openDatabase();
+		orderedKeys = initKeyEncoding();
+		valueFormat = initValueFormat();
 	}
 
 	/**
@@ -98,6 +118,90 @@ public abstract class KBDatabase<K,V> {
     	}
     	this.environment.open(envFilePath);
 		db = this.environment.openDatabase();
+		orderedKeys = initKeyEncoding();
+		valueFormat = initValueFormat();
+	}
+
+	/**
+	 * @return true if the keys are encoded with OrderedKeys, which is the case of the 
+	 * databases created empty by this version
+	 */
+	private boolean initKeyEncoding() {
+		File marker = new File(envFilePath, ORDERED_KEYS_MARKER);
+		if (!marker.exists() && usesDefaultKeys() && (db.stat().ms_entries == 0)) {
+			try {
+				marker.createNewFile();
+			} catch(IOException e) {
+				System.out.println("Cannot create " + marker.getPath());
+				e.printStackTrace();
+			}
+		}
+		return marker.exists();
+	}
+
+	/**
+	 * @return the version of the format of the values, written in the value-format marker 
+	 * of the databases created empty by this version with a codec for their values, 0 if
+	 * the values are serialized with FST
+	 * @throws NerdResourceException if the values have a format which cannot be read, the 
+	 * database is then closed
+	 */
+	private int initValueFormat() {
+		File marker = new File(envFilePath, VALUE_FORMAT_MARKER);
+		if (!marker.exists() && (getValueCodec() != null) && (db.stat().ms_entries == 0)) {
+			try {
+				FileUtils.writeStringToFile(marker, Integer.toString(RecordCodecs.FORMAT_VERSION), "UTF-8");
+			} catch(IOException e) {
+				System.out.println("Cannot create " + marker.getPath());
+				e.printStackTrace();
+			}
+		}
+		if (!marker.exists())
+			return 0;
+		int format = 0;
+		try {
+			format = Integer.parseInt(FileUtils.readFileToString(marker, "UTF-8").trim());
+		} catch(Exception e) {
+			close();
+			throw new NerdResourceException("Cannot read " + marker.getPath(), e);
+		}
+		if ( (format != RecordCodecs.FORMAT_VERSION) || (getValueCodec() == null) ) {
+			close();
+			throw new NerdResourceException("The values of the " + name + " database have an unknown format (" + 
+				format + ") and the database must be rebuilt (remove " + envFilePath + " and restart)");
+		}
+		return format;
+	}
+
+	/**
+	 * @return the codec of the values of the database, null for serializing the values 
+	 * with FST
+	 */
+	protected RecordCodec<V> getValueCodec() {
+		return null;
+	}
+
+	/**
+	 * @return true if the values are encoded with the codec of the database
+	 */
+	public boolean hasCompactValues() {
+		return (valueFormat != 0);
+	}
+
+	/**
+	 * @return false if the subclass has its own encoding of the keys, true if the keys
+	 * are encoded by encodeKey
+	 */
+	protected boolean usesDefaultKeys() {
+		return true;
+	}
+
+	/**
+	 * @return true if the keys are encoded with OrderedKeys, false if they are serialized 
+	 * with FST (databases built by previous versions)
+	 */
+	public boolean hasOrderedKeys() {
+		return orderedKeys;
 	}
 
 	public Database getDatabase() {
@@ -133,6 +237,71 @@ public abstract class KBDatabase<K,V> {
 	 */
 	public abstract V retrieve(K key);
 
+	/**
+	 * Record a read access to this database in the service metrics
+	 */
+	protected void countRead() {
+		NerdMetrics.countRead(type.name());
+	}
+
+	/**
+	 * Encodes a key as stored in the database, with OrderedKeys or, for the databases 
+	 * built by previous versions, serialized with FST
+	 */
+	protected byte[] encodeKey(K key) throws IOException {
+		if (orderedKeys)
+			return OrderedKeys.encode(key);
+		return KBEnvironment.serialize(key);
+	}
+
+	/**
+	 * Decodes a key as stored in the database
+	 */
+	@SuppressWarnings("unchecked")
+	protected K decodeKey(byte[] key) throws IOException {
+		if (orderedKeys)
+			return (K)OrderedKeys.decode(key);
+		try {
+			return (K)KBEnvironment.deserialize(key);
+		} catch(ClassNotFoundException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Encodes a value as stored in the database, with the codec of the database or, for the 
+	 * databases built by previous versions and the databases without codec, serialized 
+	 * with FST
+	 */
+	protected byte[] encodeValue(V value) throws IOException {
+		if (valueFormat != 0)
+			return getValueCodec().encode(value);
+		return KBEnvironment.serialize(value);
+	}
+
+	/**
+	 * Decodes a value as stored in the database
+	 */
+	@SuppressWarnings("unchecked")
+	protected V decodeValue(byte[] value) throws IOException {
+		if (valueFormat != 0)
+			return getValueCodec().decode(value);
+		try {
+			return (V)KBEnvironment.deserialize(value);
+		} catch(ClassNotFoundException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Decodes an entry as stored in the database
+	 *
+	 * @return the entry, null if it is not an entry of the data (e.g. a format entry)
+	 */
+	protected KBEntry<K,V> decodeEntry(byte[] key, byte[] value) throws IOException {
+		return new KBEntry<K,V>(decodeKey(key), decodeValue(value));
+	}
+
 	/**
 	 * Deserialises a CSV record.
 	 * 
@@ -150,6 +319,31 @@ public abstract class KBDatabase<K,V> {
 	 */
 	public abstract void loadFromFile(File dataFile, boolean overwrite) throws Exception;
 
+	/**
+	 * Stores a set of entries in the persistent database, overwriting the values of 
+	 * existing keys. This is used to populate a database from another KB rather than 
+	 * from the data files.
+	 * 
+	 * @param entries the key/value pairs to be stored
+	 */
+	public void storeEntries(Map<K,V> entries) throws Exception {
+		int nbToAdd = 0;
+		Transaction tx = environment.createWriteTransaction();
+		for (Map.Entry<K,V> entry : entries.entrySet()) {
+			if (nbToAdd == 10000) {
+				tx.commit();
+				tx.close();
+				nbToAdd = 0;
+				tx = environment.createWriteTransaction();
+			}
+			db.put(tx, encodeKey(entry.getKey()), encodeValue(entry.getValue()));
+			nbToAdd++;
+		}
+		tx.commit();
+		tx.close();
+		isLoaded = true;
+	}
+
 	/**
 	 * @return an iterator for the entries in this database in ascending key order
 	 */
@@ -157,6 +351,119 @@ public abstract class KBDatabase<K,V> {
 		return new KBIterator(this);
 	}
 
+	/**
+	 * @return a spliterator over the decoded entries of this database, which splits the 
+	 * database into key ranges scanned each with its own cursor and read transaction
+	 */
+	public KBSpliterator<K,V> getSpliterator() {
+		return new KBSpliterator<K,V>(this);
+	}
+
+	/**
+	 * Stream of the decoded entries of this database, to be closed after use so that the 
+	 * read transactions of the ranges not entirely scanned are released
+	 *
+	 * @param parallel true for scanning the key ranges of the database in parallel
+	 */
+	public Stream<KBEntry<K,V>> stream(boolean parallel) {
+		final KBSpliterator<K,V> spliterator = getSpliterator();
+		return StreamSupport.stream(spliterator, parallel).onClose(new Runnable() {
+			@Override
+			public void run() {
+				spliterator.close();
+			}
+		});
+	}
+
+	/**
+	 * Converts a database built by a previous version to the current format: the keys
+	 * serialized with FST are re-encoded with OrderedKeys, and the values serialized with 
+	 * FST are re-encoded with the codec of the database if any. The entries are copied in
+	 * a new database which then replaces the current one.
+	 *
+	 * @return the number of entries migrated, 0 if the database had the current format
+	 */
+	public long migrate() throws Exception {
+		boolean migrateKeys = !orderedKeys && usesDefaultKeys();
+		boolean migrateValues = (valueFormat == 0) && (getValueCodec() != null);
+		if (!migrateKeys && !migrateValues)
+			return 0;
+		File source = new File(envFilePath);
+		File target = new File(envFilePath + "-migration");
+		if (target.exists())
+			FileUtils.deleteDirectory(target);
+		target.mkdirs();
+
+		long nbMigrated = 0;
+		Env targetEnvironment = new Env();
+		targetEnvironment.setMapSize(100 * 1024 * 1024, ByteUnit.KIBIBYTES);
+		targetEnvironment.open(target.getPath(), Constants.NOTLS);
+		Database targetDb = targetEnvironment.openDatabase();
+		try (Transaction tx = environment.createReadTransaction();
+			 EntryIterator iterator = db.iterate(tx)) {
+			int nbToAdd = 0;
+			Transaction targetTx = targetEnvironment.createWriteTransaction();
+			try {
+				while (iterator.hasNext()) {
+					if (nbToAdd == 10000) {
+						targetTx.commit();
+						targetTx.close();
+						nbToAdd = 0;
+						targetTx = targetEnvironment.createWriteTransaction();
+					}
+					Entry entry = iterator.next();
+					byte[] key = entry.getKey();
+					if (migrateKeys)
+						key = OrderedKeys.encode(decodeKey(key));
+					byte[] value = entry.getValue();
+					if (migrateValues)
+						value = getValueCodec().encode(decodeValue(value));
+					targetDb.put(targetTx, key, value);
+					nbToAdd++;
+					nbMigrated++;
+				}
+				targetTx.commit();
+				targetTx.close();
+				targetTx = null;
+			} finally {
+				if (targetTx != null)
+					targetTx.abort();
+			}
+		} finally {
+			targetDb.close();
+			targetEnvironment.close();
+		}
+		// the other files of the database (e.g. a compression dictionary) are kept
+		for (File file : source.listFiles()) {
+			String fileName = file.getName();
+			if (!fileName.equals("data.mdb") && !fileName.equals("lock.mdb") && 
+				!fileName.equals(ORDERED_KEYS_MARKER) && !fileName.equals(VALUE_FORMAT_MARKER))
+				FileUtils.copyFileToDirectory(file, target);
+		}
+		if (orderedKeys || migrateKeys)
+			new File(target, ORDERED_KEYS_MARKER).createNewFile();
+		if (getValueCodec() != null) {
+			FileUtils.writeStringToFile(new File(target, VALUE_FORMAT_MARKER), 
+				Integer.toString(RecordCodecs.FORMAT_VERSION), "UTF-8");
+		}
+
+		// the migrated database replaces the current one
+		close();
+		File backup = new File(envFilePath + "-previous");
+		if (backup.exists())
+			FileUtils.deleteDirectory(backup);
+		if (!source.renameTo(backup) || !target.renameTo(source))
+			throw new IOException("Cannot replace " + envFilePath + " by its migration " + target.getPath());
+		FileUtils.deleteDirectory(backup);
+		environment = new Env();
+		environment.setMapSize(100 * 1024 * 1024, ByteUnit.KIBIBYTES);
+		environment.open(envFilePath, Constants.NOTLS);
+		db = environment.openDatabase();
+		orderedKeys = initKeyEncoding();
+		valueFormat = initValueFormat();
+		return nbMigrated;
+	}
+
 	/**
 	 * Closes the underlying database
 	 */
@@ -185,6 +492,11 @@ public abstract class KBDatabase<K,V> {
 		 */
 		label,
 
+		/**
+		 * Associates String labels with their pre-filtered candidate senses for the disambiguation
+		 */
+		candidates,
+
 		/**
 		 * Associates String titles with the id of the page within the article namespace that this refers to
 		 */
@@ -215,6 +527,16 @@ public abstract class KBDatabase<K,V> {
 		 */
 		pageLinkCounts,
 
+		/**
+		 * Associates integer ids with the MinHash sketch of the ids of articles that link to it
+		 */
+		pageLinksInSketches,
+
+		/**
+		 * Associates integer ids with the MinHash sketch of the ids of articles that it links to
+		 */
+		pageLinksOutSketches,
+
 		/**
 		 * Associates integer ids of categories with the ids of categories it belongs to
 		 */
@@ -276,6 +598,12 @@ public abstract class KBDatabase<K,V> {
 		 */
 		statements,
 
+		/**
+		 * Associates a property and a value of statements with the ids of the concepts having 
+		 * these statements (reverse index of the statements)
+		 */
+		statementsByValue,
+
 		/**
 		 * Associates the string identifier of a property to a property description
 		 */
@@ -39,6 +39,11 @@ public class KBDatabaseFactory {
 
 	public KBDatabase<Integer, DbPage> buildPageDatabase() {
 		return new IntRecordDatabase<DbPage>(env, DatabaseType.page) {
+			@Override
+			protected RecordCodec<DbPage> getValueCodec() {
+				return RecordCodecs.PAGE;
+			}
+
 			@Override
 			public KBEntry<Integer,DbPage> deserialiseCsvRecord(CsvRecordInput record) throws IOException {
 				Integer id = record.readInt(null);
@@ -54,9 +59,9 @@ public class KBDatabaseFactory {
 				DbPage record = null;
 				try (Transaction tx = environment.createReadTransaction();
 					BufferCursor cursor = db.bufferCursor(tx)) {
-					cursor.keyWriteBytes(KBEnvironment.serialize(key));
+					cursor.keyWriteBytes(encodeKey(key));
 					if (cursor.seekKey()) {
-						record = (DbPage)KBEnvironment.deserialize(cursor.valBytes());
+						record = decodeValue(cursor.valBytes());
 					}
 				} catch(Exception e) {
 					e.printStackTrace();
@@ -67,12 +72,13 @@ public class KBDatabaseFactory {
 			// using standard LMDB copy mode
 			@Override
 			public DbPage retrieve(Integer key) {
+				countRead();
 				byte[] cachedData = null;
 				DbPage record = null;
 				try (Transaction tx = environment.createReadTransaction()) {
-					cachedData = db.get(tx, KBEnvironment.serialize(key));
+					cachedData = db.get(tx, encodeKey(key));
 					if (cachedData != null)
-						record = (DbPage)KBEnvironment.deserialize(cachedData);
+						record = decodeValue(cachedData);
 				} catch(Exception e) {
 					e.printStackTrace();
 				}
@@ -112,7 +118,7 @@ public class KBDatabaseFactory {
 						KBEntry<Integer,DbPage> entry = deserialiseCsvRecord(cri);
 						if ( (entry != null) && (filterEntry(entry) != null) ) {
 							try {
-								db.put(tx, KBEnvironment.serialize(entry.getKey()), KBEnvironment.serialize(entry.getValue()));
+								db.put(tx, encodeKey(entry.getKey()), encodeValue(entry.getValue()));
 								nbToAdd++;
 							} catch(Exception e) {
 								e.printStackTrace();
@@ -167,6 +173,11 @@ public class KBDatabaseFactory {
 			throw new IllegalArgumentException("type must be either DatabaseType.pageLinksInNoSentences or DatabaseType.pageLinksOutNoSentences");
 
 		return new IntRecordDatabase<DbIntList>(env, type) {
+			@Override
+			protected RecordCodec<DbIntList> getValueCodec() {
+				return RecordCodecs.INT_LIST;
+			}
+
 			@Override
 			public KBEntry<Integer, DbIntList> deserialiseCsvRecord(CsvRecordInput record) throws IOException {
 				// this has to read from pagelinks file (with sentences)
@@ -206,7 +217,7 @@ public class KBDatabaseFactory {
 					CsvRecordInput cri = new CsvRecordInput(new ByteArrayInputStream((line + "\n").getBytes("UTF-8")));
 					KBEntry<Integer,DbIntList> entry = deserialiseCsvRecord(cri);
 					try {
-						db.put(tx, KBEnvironment.serialize(entry.getKey()), KBEnvironment.serialize(entry.getValue()));
+						db.put(tx, encodeKey(entry.getKey()), encodeValue(entry.getValue()));
 						nbToAdd++;
 					} catch(Exception e) {
 						e.printStackTrace();
@@ -232,6 +243,11 @@ public class KBDatabaseFactory {
 			}
 
 		return new IntRecordDatabase<DbIntList>(env, type) {
+			@Override
+			protected RecordCodec<DbIntList> getValueCodec() {
+				return RecordCodecs.INT_LIST;
+			}
+
 			@Override
 			public KBEntry<Integer, DbIntList> deserialiseCsvRecord(CsvRecordInput record) throws IOException {
 				Integer k = record.readInt(null);
@@ -275,6 +291,11 @@ public class KBDatabaseFactory {
 
 	public KBDatabase<Integer,DbTranslations> buildTranslationsDatabase() {
 		return new IntRecordDatabase<DbTranslations>(env, DatabaseType.translations) {
+			@Override
+			protected RecordCodec<DbTranslations> getValueCodec() {
+				return RecordCodecs.TRANSLATIONS;
+			}
+
 			@Override
 			public KBEntry<Integer, DbTranslations> deserialiseCsvRecord(CsvRecordInput record) throws IOException {
 				int k = record.readInt(null);
@@ -302,19 +323,25 @@ public class KBDatabaseFactory {
 			// using standard LMDB copy mode
 			@Override
 			public String retrieve(Integer key) {
+				countRead();
 				byte[] cachedData = null;
 				String record = null;
 				try (Transaction tx = environment.createReadTransaction()) {
-					cachedData = db.get(tx, KBEnvironment.serialize(key));
-					if (cachedData != null) {
-						record = (String)KBEnvironment.deserialize(cachedData);
-					}
+					cachedData = db.get(tx, encodeKey(key));
+					if (cachedData != null)
+						record = decodeValue(cachedData);
 				} catch(Exception e) {
 					e.printStackTrace();
 				}
 				return record;
 			}
 
+			// the Wikidata id is stored as its integer code (see WikidataIds)
+			@Override
+			protected RecordCodec<String> getValueCodec() {
+				return RecordCodecs.WIKIDATA_ID;
+			}
+
 			public void loadFromFile(File dataFile, boolean overwrite) throws Exception  {
 //System.out.println("input file: " + dataFile.getPath());
 System.out.println("isLoaded: " + isLoaded);
@@ -346,12 +373,12 @@ System.out.println("isLoaded: " + isLoaded);
 					} catch(Exception e) {
 						e.printStackTrace();
 					}
-					if (keyVal == null)
+					if ( (keyVal == null) || !WikidataIds.isValid(pieces[1]) )
 						continue;
 					KBEntry<Integer,String> entry = new KBEntry<Integer,String>(keyVal, pieces[1]);
 					if (entry != null) {
 						try {
-							db.put(tx, KBEnvironment.serialize(entry.getKey()), KBEnvironment.serialize(entry.getValue()));
+							db.put(tx, encodeKey(entry.getKey()), encodeValue(entry.getValue()));
 							nbToAdd++;
 						} catch(Exception e) {
 							e.printStackTrace();
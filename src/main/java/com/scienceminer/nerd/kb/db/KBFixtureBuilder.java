@@ -0,0 +1,427 @@
+package com.scienceminer.nerd.kb.db;
+
+import java.io.*;
+import java.util.*;
+
+import org.apache.commons.io.FileUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.scienceminer.nerd.kb.LowerKnowledgeBase;
+import com.scienceminer.nerd.kb.LowerKnowledgeBase.Direction;
+import com.scienceminer.nerd.kb.UpperKnowledgeBase;
+import com.scienceminer.nerd.kb.db.KBEnvironment.StatisticName;
+import com.scienceminer.nerd.kb.model.Article;
+import com.scienceminer.nerd.kb.model.Page;
+import com.scienceminer.nerd.kb.model.Page.PageType;
+import com.scienceminer.nerd.kb.model.hadoop.*;
+import com.scienceminer.nerd.utilities.NerdConfig;
+
+import org.fusesource.lmdbjni.*;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+
+/**
+ * Extract a miniature but consistent KB from a complete KB, for performance and
+ * regression testing without the full Wikipedia/Wikidata data.
+ *
+ * A connected set of articles is first selected in the English Wikipedia, following
+ * the out-links of some seed articles. All the language-dependent databases are then
+ * restricted to these articles, their redirects and their parent categories (labels,
+ * links, categories, translations, markup...), and the statistics are recomputed so
+ * that the article count used by the relatedness measure matches the extracted KB.
+ * The other languages are restricted to the pages corresponding to the same concepts,
+ * and the upper KB to these concepts.
+ *
+ * The result is a directory with the YAML configuration files and the LMDB databases,
+ * which can be used by setting the system property com.scienceminer.nerd.kb.config
+ * to this directory.
+ *
+ * Usage: KBFixtureBuilder source_config_dir target_dir [nb_articles] [seed_titles_file]
+ */
+public class KBFixtureBuilder {
+	private static final Logger LOGGER = LoggerFactory.getLogger(KBFixtureBuilder.class);
+
+	public static final int DEFAULT_NB_ARTICLES = 50000;
+
+	// number of levels of parent categories kept above the selected articles
+	private static final int CATEGORY_DEPTH = 2;
+
+	// the language used to select the articles
+	private static final String PIVOT_LANG = "en";
+
+	private File sourceConfigDir = null;
+	private File targetDir = null;
+	private ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
+
+	// concepts corresponding to the pages kept in the lower KBs
+	private Set<String> conceptIds = new TreeSet<String>();
+
+	public KBFixtureBuilder(File sourceConfigDir, File targetDir) {
+		this.sourceConfigDir = sourceConfigDir;
+		this.targetDir = targetDir;
+	}
+
+	public void build(int nbArticles, List<String> seedTitles) throws Exception {
+		if (!targetDir.exists())
+			targetDir.mkdirs();
+
+		NerdConfig sourceKbConf = readConfig("kb.yaml");
+		KBUpperEnvironment sourceUpperEnv = new KBUpperEnvironment(sourceKbConf);
+
+		// pivot language, where the articles are selected
+		NerdConfig pivotConf = readConfig("wikipedia-" + PIVOT_LANG + ".yaml");
+		LowerKnowledgeBase pivot = new LowerKnowledgeBase(pivotConf);
+		Set<Integer> pivotArticles = selectArticles(pivot, nbArticles, seedTitles);
+		LOGGER.info(pivotArticles.size() + " articles selected for " + PIVOT_LANG);
+		extractLowerEnvironment(pivot, pivotArticles, PIVOT_LANG);
+
+		// other languages, restricted to the same concepts
+		Set<String> pivotConcepts = new TreeSet<String>(conceptIds);
+		for(String lang : UpperKnowledgeBase.TARGET_LANGUAGES) {
+			if (lang.equals(PIVOT_LANG))
+				continue;
+			if (!new File(sourceConfigDir, "wikipedia-" + lang + ".yaml").exists()) {
+				LOGGER.info("No configuration for " + lang + ", language skipped");
+				continue;
+			}
+			LowerKnowledgeBase wikipedia = new LowerKnowledgeBase(readConfig("wikipedia-" + lang + ".yaml"));
+			Set<Integer> articles = new TreeSet<Integer>();
+			for(String conceptId : pivotConcepts) {
+				Map<String,Integer> pageIds = sourceUpperEnv.getDbConcepts().retrieve(conceptId);
+				if (pageIds == null || pageIds.get(lang) == null)
+					continue;
+				DbPage page = wikipedia.getEnvironment().getDbPage().retrieve(pageIds.get(lang));
+				if (page != null && page.getType() == PageType.article.ordinal())
+					articles.add(pageIds.get(lang));
+			}
+			LOGGER.info(articles.size() + " articles selected for " + lang);
+			extractLowerEnvironment(wikipedia, articles, lang);
+			wikipedia.close();
+		}
+		pivot.close();
+
+		extractUpperEnvironment(sourceUpperEnv, sourceKbConf);
+		sourceUpperEnv.close();
+	}
+
+	/**
+	 * Select a connected set of articles by following the out-links from the seed
+	 * articles (breadth first). If the seeds are exhausted, the next articles in
+	 * database order are used as new seeds.
+	 */
+	protected Set<Integer> selectArticles(LowerKnowledgeBase wikipedia, int nbArticles, List<String> seedTitles) {
+		Set<Integer> selected = new LinkedHashSet<Integer>();
+		Deque<Integer> queue = new ArrayDeque<Integer>();
+		if (seedTitles != null) {
+			for(String title : seedTitles) {
+				Article article = wikipedia.getArticleByTitle(title);
+				if (article != null)
+					queue.add(article.getId());
+				else
+					LOGGER.warn("Seed article not found: " + title);
+			}
+		}
+
+		PageIterator iterator = wikipedia.getPageIterator(PageType.article);
+		while (selected.size() < nbArticles) {
+			if (queue.isEmpty()) {
+				if (!iterator.hasNext())
+					break;
+				queue.add(iterator.next().getId());
+			}
+			Integer id = queue.poll();
+			if (selected.contains(id))
+				continue;
+			DbPage page = wikipedia.getEnvironment().getDbPage().retrieve(id);
+			if (page == null || page.getType() != PageType.article.ordinal())
+				continue;
+			selected.add(id);
+			for(Integer target : wikipedia.getLinks(id, Direction.Out)) {
+				if (!selected.contains(target))
+					queue.add(target);
+			}
+		}
+		iterator.close();
+
+		return new TreeSet<Integer>(selected);
+	}
+
+	/**
+	 * Write the language-dependent databases restricted to the given articles, their
+	 * redirects and their parent categories.
+	 */
+	protected void extractLowerEnvironment(LowerKnowledgeBase wikipedia, Set<Integer> articleIds, String lang)
+		throws Exception {
+		KBLowerEnvironment from = wikipedia.getEnvironment();
+		NerdConfig conf = targetConfig(from.getConfiguration(), "db-" + lang);
+		KBLowerEnvironment to = new KBLowerEnvironment(conf);
+
+		// redirects to the selected articles
+		Set<Integer> redirectIds = new TreeSet<Integer>();
+		for(Integer id : articleIds) {
+			DbIntList sources = from.getDbRedirectSourcesByTarget().retrieve(id);
+			if (sources != null && sources.getValues() != null)
+				redirectIds.addAll(sources.getValues());
+		}
+
+		// parent categories of the selected articles
+		Set<Integer> categoryIds = new TreeSet<Integer>();
+		Set<Integer> frontier = parents(from.getDbArticleParents(), articleIds);
+		for(int depth=0; depth<CATEGORY_DEPTH && !frontier.isEmpty(); depth++) {
+			categoryIds.addAll(frontier);
+			frontier = parents(from.getDbCategoryParents(), frontier);
+			frontier.removeAll(categoryIds);
+		}
+		Long rootCategoryId = from.retrieveStatistic(StatisticName.rootCategoryId);
+		if (rootCategoryId != null)
+			categoryIds.add(rootCategoryId.intValue());
+
+		Set<Integer> pageIds = new TreeSet<Integer>();
+		pageIds.addAll(articleIds);
+		pageIds.addAll(redirectIds);
+		pageIds.addAll(categoryIds);
+
+		// pages and titles
+		Map<Integer,DbPage> pages = new TreeMap<Integer,DbPage>();
+		Map<String,Integer> articlesByTitle = new TreeMap<String,Integer>();
+		Map<String,Integer> categoriesByTitle = new TreeMap<String,Integer>();
+		for(Integer id : pageIds) {
+			DbPage page = from.getDbPage().retrieve(id);
+			if (page == null)
+				continue;
+			pages.put(id, page);
+			if (page.getType() == PageType.category.ordinal())
+				categoriesByTitle.put(page.getTitle(), id);
+			else
+				articlesByTitle.put(page.getTitle(), id);
+		}
+		to.getDbPage().storeEntries(pages);
+		to.getDbArticlesByTitle().storeEntries(articlesByTitle);
+		to.getDbCategoriesByTitle().storeEntries(categoriesByTitle);
+
+		// redirects
+		Map<Integer,Integer> redirectTargets = new TreeMap<Integer,Integer>();
+		for(Integer id : redirectIds) {
+			Integer target = from.getDbRedirectTargetBySource().retrieve(id);
+			if (target != null && articleIds.contains(target))
+				redirectTargets.put(id, target);
+		}
+		to.getDbRedirectTargetBySource().storeEntries(redirectTargets);
+		to.getDbRedirectSourcesByTarget().storeEntries(
+			restrict(from.getDbRedirectSourcesByTarget(), articleIds, redirectIds));
+
+		// links, only between selected articles
+		Map<Integer,DbIntList> linksIn = restrict(from.getDbPageLinkInNoSentences(), articleIds, articleIds);
+		Map<Integer,DbIntList> linksOut = restrict(from.getDbPageLinkOutNoSentences(), articleIds, articleIds);
+		to.getDbPageLinkInNoSentences().storeEntries(linksIn);
+		to.getDbPageLinkOutNoSentences().storeEntries(linksOut);
+		// no link occurrence information is kept, so total counts are the distinct counts
+		Map<Integer,DbPageLinkCounts> linkCounts = new TreeMap<Integer,DbPageLinkCounts>();
+		for(Integer id : articleIds) {
+			int nbIn = linksIn.containsKey(id) ? linksIn.get(id).getValues().size() : 0;
+			int nbOut = linksOut.containsKey(id) ? linksOut.get(id).getValues().size() : 0;
+			if (nbIn > 0 || nbOut > 0)
+				linkCounts.put(id, new DbPageLinkCounts(nbIn, nbIn, nbOut, nbOut));
+		}
+		to.getDbPageLinkCounts().storeEntries(linkCounts);
+		to.buildLinkSketches(true);
+
+		// category structure
+		to.getDbArticleParents().storeEntries(restrict(from.getDbArticleParents(), articleIds, categoryIds));
+		to.getDbCategoryParents().storeEntries(restrict(from.getDbCategoryParents(), categoryIds, categoryIds));
+		to.getDbChildCategories().storeEntries(restrict(from.getDbChildCategories(), categoryIds, categoryIds));
+		to.getDbChildArticles().storeEntries(restrict(from.getDbChildArticles(), categoryIds, articleIds));
+
+		// page content and cross-references
+		Map<Integer,DbTranslations> translations = new TreeMap<Integer,DbTranslations>();
+		Map<Integer,String> markups = new TreeMap<Integer,String>();
+		for(Integer id : articleIds) {
+			DbTranslations translation = from.getDbTranslations().retrieve(id);
+			if (translation != null)
+				translations.put(id, translation);
+			String markup = from.getDbMarkup().retrieve(id);
+			if (markup != null)
+				markups.put(id, markup);
+		}
+		to.getDbTranslations().storeEntries(translations);
+		to.getDbMarkup().storeEntries(markups);
+
+		Map<Integer,String> conceptByPageId = new TreeMap<Integer,String>();
+		for(Integer id : pageIds) {
+			String conceptId = from.getDbConceptByPageId().retrieve(id);
+			if (conceptId != null) {
+				conceptByPageId.put(id, conceptId);
+				conceptIds.add(conceptId);
+			}
+		}
+		to.getDbConceptByPageId().storeEntries(conceptByPageId);
+
+		// labels, keeping only the senses present in the extracted KB - the label counts
+		// are kept unchanged so that the prior probabilities of the senses are preserved
+		Map<String,DbLabel> labels = new TreeMap<String,DbLabel>();
+		KBIterator iterator = from.getDbLabel().getIterator();
+		while(iterator.hasNext()) {
+			Entry entry = iterator.next();
+			try {
+				String text = from.getDbLabel().decodeKey(entry.getKey());
+				DbLabel label = from.getDbLabel().decodeValue(entry.getValue());
+				if (label.getSenses() == null)
+					continue;
+				ArrayList<DbSenseForLabel> senses = new ArrayList<DbSenseForLabel>();
+				for(DbSenseForLabel sense : label.getSenses()) {
+					if (pageIds.contains(sense.getId()))
+						senses.add(sense);
+				}
+				if (senses.size() > 0) {
+					label.setSenses(senses);
+					labels.put(text, label);
+				}
+			} catch(Exception e) {
+				LOGGER.warn("Invalid label entry", e);
+			}
+		}
+		iterator.close();
+		to.getDbLabel().storeEntries(labels);
+
+		// statistics consistent with the extracted pages
+		Map<Integer,Long> statistics = new TreeMap<Integer,Long>();
+		statistics.put(StatisticName.articleCount.ordinal(), new Long(articleIds.size()));
+		statistics.put(StatisticName.categoryCount.ordinal(), new Long(categoryIds.size()));
+		statistics.put(StatisticName.redirectCount.ordinal(), new Long(redirectTargets.size()));
+		statistics.put(StatisticName.disambiguationCount.ordinal(), new Long(0));
+		for(StatisticName name : Arrays.asList(StatisticName.lastEdit, StatisticName.maxCategoryDepth,
+				StatisticName.rootCategoryId)) {
+			Long value = from.retrieveStatistic(name);
+			if (value != null)
+				statistics.put(name.ordinal(), value);
+		}
+		((KBDatabase<Integer,Long>)to.getDatabase(KBDatabase.DatabaseType.statistics)).storeEntries(statistics);
+
+		LOGGER.info(lang + ": " + articleIds.size() + " articles, " + redirectIds.size() + " redirects, " +
+			categoryIds.size() + " categories, " + labels.size() + " labels");
+		to.close();
+		writeConfig(conf, "wikipedia-" + lang + ".yaml");
+	}
+
+	/**
+	 * Write the upper KB restricted to the concepts of the extracted pages. All the
+	 * property definitions are kept.
+	 */
+	protected void extractUpperEnvironment(KBUpperEnvironment from, NerdConfig sourceConf) throws Exception {
+		NerdConfig conf = targetConfig(sourceConf, "db-kb");
+		KBUpperEnvironment to = new KBUpperEnvironment(conf);
+
+		Map<String,Map<String,Integer>> concepts = new TreeMap<String,Map<String,Integer>>();
+		Map<String,List<com.scienceminer.nerd.kb.Statement>> statements =
+			new TreeMap<String,List<com.scienceminer.nerd.kb.Statement>>();
+		for(String conceptId : conceptIds) {
+			Map<String,Integer> pageIds = from.getDbConcepts().retrieve(conceptId);
+			if (pageIds != null)
+				concepts.put(conceptId, pageIds);
+			List<com.scienceminer.nerd.kb.Statement> conceptStatements = from.getDbStatements().retrieve(conceptId);
+			if (conceptStatements != null)
+				statements.put(conceptId, conceptStatements);
+		}
+		to.getDbConcepts().storeEntries(concepts);
+		to.getDbStatements().storeEntries(statements);
+
+		Map<String,com.scienceminer.nerd.kb.Property> properties =
+			new TreeMap<String,com.scienceminer.nerd.kb.Property>();
+		KBIterator iterator = from.getDbProperties().getIterator();
+		while(iterator.hasNext()) {
+			Entry entry = iterator.next();
+			try {
+				properties.put(from.getDbProperties().decodeKey(entry.getKey()),
+					(com.scienceminer.nerd.kb.Property)KBEnvironment.deserialize(entry.getValue()));
+			} catch(Exception e) {
+				LOGGER.warn("Invalid property entry", e);
+			}
+		}
+		iterator.close();
+		to.getDbProperties().storeEntries(properties);
+
+		LOGGER.info("upper KB: " + concepts.size() + " concepts, " + properties.size() + " properties");
+		to.close();
+		writeConfig(conf, "kb.yaml");
+	}
+
+	/**
+	 * Union of the lists associated to the given keys
+	 */
+	private static Set<Integer> parents(KBDatabase<Integer,DbIntList> db, Set<Integer> ids) {
+		Set<Integer> result = new TreeSet<Integer>();
+		for(Integer id : ids) {
+			DbIntList list = db.retrieve(id);
+			if (list != null && list.getValues() != null)
+				result.addAll(list.getValues());
+		}
+		return result;
+	}
+
+	/**
+	 * Lists associated to the given keys, keeping only the kept values, empty lists are dropped
+	 */
+	private static Map<Integer,DbIntList> restrict(KBDatabase<Integer,DbIntList> db, Set<Integer> keys,
+		Set<Integer> kept) {
+		Map<Integer,DbIntList> result = new TreeMap<Integer,DbIntList>();
+		for(Integer key : keys) {
+			DbIntList list = db.retrieve(key);
+			if (list == null || list.getValues() == null)
+				continue;
+			ArrayList<Integer> values = new ArrayList<Integer>();
+			for(Integer value : list.getValues()) {
+				if (kept.contains(value))
+					values.add(value);
+			}
+			if (values.size() > 0)
+				result.put(key, new DbIntList(values));
+		}
+		return result;
+	}
+
+	private NerdConfig readConfig(String fileName) throws IOException {
+		return mapper.readValue(new File(sourceConfigDir, fileName), NerdConfig.class);
+	}
+
+	private void writeConfig(NerdConfig conf, String fileName) throws IOException {
+		mapper.writeValue(new File(targetDir, fileName), conf);
+	}
+
+	/**
+	 * Configuration of the extracted KB, identical to the source one except the LMDB
+	 * directory. The data directory points to the (empty) target directory, so that
+	 * nothing is ever rebuilt from the original data files.
+	 */
+	private NerdConfig targetConfig(NerdConfig sourceConf, String dbName) throws IOException {
+		NerdConfig conf = mapper.readValue(mapper.writeValueAsString(sourceConf), NerdConfig.class);
+		File dbDirectory = new File(targetDir, dbName);
+		if (dbDirectory.exists())
+			FileUtils.deleteDirectory(dbDirectory);
+		conf.setDbDirectory(dbDirectory.getPath());
+		conf.setDataDirectory(targetDir.getPath());
+		return conf;
+	}
+
+	public static void main(String args[]) throws Exception {
+		if (args.length < 2) {
+			System.out.println("usage: KBFixtureBuilder source_config_dir target_dir [nb_articles] [seed_titles_file]");
+			System.exit(1);
+		}
+
+		int nbArticles = DEFAULT_NB_ARTICLES;
+		if (args.length > 2)
+			nbArticles = Integer.parseInt(args[2]);
+
+		List<String> seedTitles = null;
+		if (args.length > 3)
+			seedTitles = FileUtils.readLines(new File(args[3]), "UTF-8");
+
+		long start = System.currentTimeMillis();
+		KBFixtureBuilder builder = new KBFixtureBuilder(new File(args[0]), new File(args[1]));
+		builder.build(nbArticles, seedTitles);
+		System.out.println("KB fixture built in " + (System.currentTimeMillis() - start) / 1000 + " s under " + args[1]);
+	}
+}
@@ -32,6 +32,7 @@ public class KBLowerEnvironment extends KBEnvironment {
 
 	private KBDatabase<Integer, DbPage> dbPage = null;
 	private LabelDatabase dbLabel = null;
+	private CandidateDatabase dbCandidates = null;
 	private KBDatabase<String,Integer> dbArticlesByTitle = null;
 	private KBDatabase<String,Integer> dbCategoriesByTitle = null;
 	private KBDatabase<String,Integer> dbTemplatesByTitle = null;
@@ -40,6 +41,8 @@ public class KBLowerEnvironment extends KBEnvironment {
 	private KBDatabase<Integer, DbIntList> dbPageLinkInNoSentences = null;
 	private KBDatabase<Integer, DbIntList> dbPageLinkOutNoSentences = null;
 	private PageLinkCountDatabase dbPageLinkCounts = null;
+	private LinkSketchDatabase dbPageLinkInSketches = null;
+	private LinkSketchDatabase dbPageLinkOutSketches = null;
 	private KBDatabase<Integer, DbIntList> dbCategoryParents = null;
 	private KBDatabase<Integer, DbIntList> dbArticleParents = null;
 	private KBDatabase<Integer, DbIntList> dbChildCategories = null;
@@ -49,6 +52,10 @@ public class KBLowerEnvironment extends KBEnvironment {
 	private KBDatabase<Integer, DbTranslations> dbTranslations = null;
 	private KBDatabase<Integer, Long> dbStatistics = null;
 	private KBDatabase<Integer,String> dbConceptByPageId = null;
+
+	// most accessed labels and pages, saved in the warm-start snapshot
+	private final HotKeys<String> hotLabels = new HotKeys<String>(getHotKeysCapacity());
+	private final HotKeys<Integer> hotPages = new HotKeys<Integer>(getHotKeysCapacity());
 	
 	public KBLowerEnvironment(NerdConfig conf) {
 		super(conf);
@@ -64,6 +71,10 @@ public class KBLowerEnvironment extends KBEnvironment {
 	public LabelDatabase getDbLabel() {
 		return dbLabel;
 	}
+
+	public CandidateDatabase getDbCandidates() {
+		return dbCandidates;
+	}
 	
 	public KBDatabase<String, Integer> getDbArticlesByTitle() {
 		return dbArticlesByTitle;
@@ -96,6 +107,14 @@ public class KBLowerEnvironment extends KBEnvironment {
 	public KBDatabase<Integer, DbPageLinkCounts> getDbPageLinkCounts() {
 		return dbPageLinkCounts;
 	}
+
+	public LinkSketchDatabase getDbPageLinkInSketches() {
+		return dbPageLinkInSketches;
+	}
+
+	public LinkSketchDatabase getDbPageLinkOutSketches() {
+		return dbPageLinkOutSketches;
+	}
 	
 	public KBDatabase<Integer, DbIntList> getDbCategoryParents() {
 		return dbCategoryParents;
@@ -129,6 +148,21 @@ public class KBLowerEnvironment extends KBEnvironment {
 		return dbConceptByPageId;
 	}
 
+	private static int getHotKeysCapacity() {
+		// the properties are not loaded when the KB is used by the offline tools
+		if (NerdProperties.getProps() == null)
+			return 0;
+		return NerdProperties.getWarmStartMaxEntries();
+	}
+
+	public HotKeys<String> getHotLabels() {
+		return hotLabels;
+	}
+
+	public HotKeys<Integer> getHotPages() {
+		return hotPages;
+	}
+
 	@Override
 	protected void initDatabases() {
 		System.out.println("init Environment for language " + conf.getLangCode());
@@ -142,6 +176,9 @@ public class KBLowerEnvironment extends KBEnvironment {
 		
 		dbLabel = dbFactory.buildLabelDatabase();
 		databasesByType.put(DatabaseType.label, dbLabel);
+
+		dbCandidates = new CandidateDatabase(this);
+		databasesByType.put(DatabaseType.candidates, dbCandidates);
 		
 		dbArticlesByTitle = dbFactory.buildTitleDatabase(DatabaseType.articlesByTitle);
 		databasesByType.put(DatabaseType.articlesByTitle, dbArticlesByTitle);
@@ -158,6 +195,11 @@ public class KBLowerEnvironment extends KBEnvironment {
 		
 		dbPageLinkCounts = dbFactory.buildPageLinkCountDatabase();
 		databasesByType.put(DatabaseType.pageLinkCounts, dbPageLinkCounts);
+
+		dbPageLinkInSketches = new LinkSketchDatabase(this, DatabaseType.pageLinksInSketches);
+		databasesByType.put(DatabaseType.pageLinksInSketches, dbPageLinkInSketches);
+		dbPageLinkOutSketches = new LinkSketchDatabase(this, DatabaseType.pageLinksOutSketches);
+		databasesByType.put(DatabaseType.pageLinksOutSketches, dbPageLinkOutSketches);
 		
 		dbCategoryParents = dbFactory.buildIntIntListDatabase(DatabaseType.categoryParents);
 		databasesByType.put(DatabaseType.categoryParents, dbCategoryParents);
@@ -249,6 +291,9 @@ public class KBLowerEnvironment extends KBEnvironment {
 		//System.out.println("Building PageLinkCounts db");
 		dbPageLinkCounts.loadFromFiles(pageLinksIn, pageLinksOut, overwrite);
 		
+		if (conf.getUseRelatednessSketches())
+			buildLinkSketches(overwrite);
+		
 		//System.out.println("Building CategoryParents db");
 		dbCategoryParents.loadFromFile(categoryParents, overwrite);
 		
@@ -270,6 +315,9 @@ public class KBLowerEnvironment extends KBEnvironment {
 		//System.out.println("Building Markup db");
 		dbMarkup.loadFromXmlFile(markup, overwrite);
 
+		if (conf.getUseCandidateIndex())
+			dbCandidates.loadFromLabels(this, overwrite);
+
 		System.out.println("Environment built - " + dbPage.getDatabaseSize() + " pages.");
 	}
 	
@@ -293,11 +341,21 @@ public class KBLowerEnvironment extends KBEnvironment {
 		System.out.println("Full markup database built - " + dbPage.getDatabaseSize() + " pages.");
 	}
 	
+	/**
+	 * The link sketches are derived from the link databases, they are only required 
+	 * when the approximated relatedness is used. 
+	 */
+	public void buildLinkSketches(boolean overwrite) throws Exception {
+		dbPageLinkInSketches.loadFromLinks(dbPageLinkInNoSentences, overwrite);
+		if (conf.getUseLinkOut())
+			dbPageLinkOutSketches.loadFromLinks(dbPageLinkOutNoSentences, overwrite);
+	}
+
 	private static File getMarkupDataFile(File dataDirectory) throws IOException {
 		File[] files = dataDirectory.listFiles(new FilenameFilter() {
 			public boolean accept(File dir, String name) {
 				return name.endsWith("-pages-articles.xml") || name.endsWith("-pages-articles.xml.bz2") ||
-						name.endsWith("-pages-articles-multistream.xml");
+						name.endsWith("-pages-articles-multistream.xml") || name.endsWith("-pages-articles-multistream.xml.bz2");
 			}
 		});
 		
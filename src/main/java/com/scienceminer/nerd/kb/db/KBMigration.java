@@ -0,0 +1,99 @@
+package com.scienceminer.nerd.kb.db;
+
+import java.io.*;
+import java.util.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.scienceminer.nerd.kb.db.KBDatabase.DatabaseType;
+import com.scienceminer.nerd.utilities.NerdConfig;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+
+/**
+ * Converts in place the databases of a KB built by a previous version to the current format
+ * (see KBDatabase.migrate()): the keys serialized with FST are re-encoded with the 
+ * order-preserving encoding of OrderedKeys, and the records of the lower KB serialized with 
+ * FST are re-encoded with their compact codec (see RecordCodecs). The databases already 
+ * having the current format, and the ones with their own encoding (upper KB keyed by Wikidata 
+ * codes), are left unchanged, so that the migration can be run again after an interruption.
+ *
+ * All the KBs described in the configuration directory are migrated: the upper KB (kb.yaml)
+ * and the lower KB of each language (wikipedia-*.yaml), including its full markup database
+ * when it has been built. The markup of the pages is re-encoded according to the compression
+ * configured for the language (see MarkupCodec).
+ *
+ * Usage: KBMigration config_dir
+ */
+public class KBMigration {
+	private static final Logger LOGGER = LoggerFactory.getLogger(KBMigration.class);
+
+	private File configDir = null;
+	private ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
+
+	public KBMigration(File configDir) {
+		this.configDir = configDir;
+	}
+
+	public void migrate() throws Exception {
+		File kbConfig = new File(configDir, "kb.yaml");
+		if (kbConfig.exists()) {
+			KBUpperEnvironment upperEnv = new KBUpperEnvironment(readConfig(kbConfig));
+			migrate(upperEnv);
+		}
+
+		File[] langConfigs = configDir.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith("wikipedia-") && name.endsWith(".yaml");
+			}
+		});
+		if (langConfigs == null)
+			return;
+		Arrays.sort(langConfigs);
+		for (File langConfig : langConfigs) {
+			NerdConfig conf = readConfig(langConfig);
+			KBLowerEnvironment lowerEnv = new KBLowerEnvironment(conf);
+			// the full markup database is optional and not opened with the environment
+			File markupFull = new File(conf.getDbDirectory(), DatabaseType.markupFull.toString());
+			if (markupFull.isDirectory())
+				lowerEnv.databasesByType.put(DatabaseType.markupFull, new MarkupDatabase(lowerEnv, DatabaseType.markupFull));
+			migrate(lowerEnv);
+		}
+	}
+
+	private void migrate(KBEnvironment env) throws Exception {
+		try {
+			for (KBDatabase database : env.databasesByType.values()) {
+				if (database == null)
+					continue;
+				System.out.println("Migrating the " + database.getName() + " database");
+				long nbMigrated = database.migrate();
+				System.out.println("Total of " + nbMigrated + " entries migrated");
+			}
+		} finally {
+			env.close();
+		}
+	}
+
+	private NerdConfig readConfig(File file) throws IOException {
+		return mapper.readValue(file, NerdConfig.class);
+	}
+
+	public static void main(String args[]) throws Exception {
+		if (args.length < 1) {
+			System.out.println("usage: KBMigration config_dir");
+			System.exit(1);
+		}
+		File configDir = new File(args[0]);
+		if (!configDir.isDirectory()) {
+			LOGGER.error("Invalid configuration directory: " + configDir.getPath());
+			System.exit(1);
+		}
+		long start = System.currentTimeMillis();
+		new KBMigration(configDir).migrate();
+		System.out.println("KB migrated in " + (System.currentTimeMillis() - start) / 1000 + " s");
+	}
+}
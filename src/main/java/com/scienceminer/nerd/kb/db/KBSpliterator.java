@@ -0,0 +1,217 @@
+package com.scienceminer.nerd.kb.db;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.fusesource.lmdbjni.*;
+
+/**
+ * Spliterator over the decoded entries of a database, for scanning a whole database in
+ * parallel, e.g. with KBDatabase.stream(true).
+ *
+ * A spliterator covers a range of keys, the whole database at first. It is split by
+ * cutting its range at the middle of its first and last keys, considered as big-endian
+ * numbers: with the keys encoded with OrderedKeys, this is the middle of the range of
+ * page ids or the lexical middle of the range of labels, so the ranges have similar sizes
+ * when the keys are evenly spread. Each range is scanned with its own cursor and read
+ * transaction, opened when the scan starts and closed when the range is exhausted, or by
+ * close() for the ranges not entirely scanned.
+ */
+public class KBSpliterator<K,V> implements Spliterator<KBEntry<K,V>> {
+	private static final Logger LOGGER = LoggerFactory.getLogger(KBSpliterator.class);
+
+	// ranges with fewer entries (estimated) are not split
+	private static final long MIN_SPLIT_SIZE = 1024;
+
+	// attempts to find a split point having keys on both sides
+	private static final int MAX_SPLIT_ATTEMPTS = 16;
+
+	private final KBDatabase<K,V> database;
+
+	// first key of the range (included), null for the first key of the database
+	private byte[] from = null;
+
+	// end of the range (excluded), null for the end of the database
+	private byte[] to = null;
+
+	private long estimatedSize = 0;
+
+	// scan of the range
+	private Transaction tx = null;
+	private Cursor cursor = null;
+	private boolean started = false;
+	private boolean finished = false;
+
+	// spliterators of the database with a scan in progress
+	private final Queue<KBSpliterator<K,V>> scanning;
+
+	public KBSpliterator(KBDatabase<K,V> database) {
+		this(database, null, null, database.getDatabaseSize(), new ConcurrentLinkedQueue<KBSpliterator<K,V>>());
+	}
+
+	private KBSpliterator(KBDatabase<K,V> database, byte[] from, byte[] to, long estimatedSize,
+			Queue<KBSpliterator<K,V>> scanning) {
+		this.database = database;
+		this.from = from;
+		this.to = to;
+		this.estimatedSize = estimatedSize;
+		this.scanning = scanning;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super KBEntry<K,V>> action) {
+		while (!finished) {
+			Entry entry = null;
+			if (!started) {
+				started = true;
+				tx = database.getEnvironment().createReadTransaction();
+				cursor = database.getDatabase().openCursor(tx);
+				scanning.add(this);
+				entry = (from == null) ? cursor.get(GetOp.FIRST) : cursor.seek(SeekOp.RANGE, from);
+			} else {
+				entry = cursor.get(GetOp.NEXT);
+			}
+			if ( (entry == null) || ( (to != null) && (compare(entry.getKey(), to) >= 0) ) ) {
+				finish();
+				return false;
+			}
+			KBEntry<K,V> decoded = null;
+			try {
+				decoded = database.decodeEntry(entry.getKey(), entry.getValue());
+			} catch(Exception e) {
+				LOGGER.warn("Invalid entry in the " + database.getName() + " database", e);
+			}
+			if (decoded != null) {
+				action.accept(decoded);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public Spliterator<KBEntry<K,V>> trySplit() {
+		if (started || (estimatedSize < MIN_SPLIT_SIZE))
+			return null;
+		try (Transaction splitTx = database.getEnvironment().createReadTransaction();
+			 Cursor splitCursor = database.getDatabase().openCursor(splitTx)) {
+			Entry first = (from == null) ? splitCursor.get(GetOp.FIRST) : splitCursor.seek(SeekOp.RANGE, from);
+			if (first == null)
+				return null;
+			byte[] low = first.getKey();
+			byte[] high = to;
+			if (high == null) {
+				// the last key is included in the range
+				Entry last = splitCursor.get(GetOp.LAST);
+				if (last == null)
+					return null;
+				high = last.getKey();
+			}
+			for (int attempt = 0; attempt < MAX_SPLIT_ATTEMPTS; attempt++) {
+				byte[] middle = middle(low, high);
+				if ( (compare(middle, low) <= 0) || (compare(middle, high) > 0) ||
+					 ( (to != null) && (compare(middle, to) >= 0) ) )
+					return null;
+				Entry next = splitCursor.seek(SeekOp.RANGE, middle);
+				if ( (next != null) && ( (to == null) || (compare(next.getKey(), to) < 0) ) ) {
+					// the range is split at the first key after the middle
+					estimatedSize = estimatedSize / 2;
+					KBSpliterator<K,V> prefix =
+						new KBSpliterator<K,V>(database, from, next.getKey(), estimatedSize, scanning);
+					from = next.getKey();
+					return prefix;
+				}
+				// no key in the upper half, which is removed from the range
+				to = middle;
+				high = middle;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public long estimateSize() {
+		return finished ? 0 : estimatedSize;
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | NONNULL;
+	}
+
+	/**
+	 * Releases the read transactions of the scans in progress of this spliterator and of
+	 * the spliterators split from it
+	 */
+	public void close() {
+		finish();
+		KBSpliterator<K,V> other = null;
+		while ((other = scanning.poll()) != null)
+			other.finish();
+	}
+
+	private void finish() {
+		if (finished)
+			return;
+		finished = true;
+		if (started) {
+			scanning.remove(this);
+			try {
+				cursor.close();
+			} finally {
+				tx.close();
+			}
+		}
+	}
+
+	/**
+	 * @return a key between two keys, the keys being considered as big-endian numbers
+	 * padded with zeros, with one more byte than the longest key so that there is a key
+	 * between two consecutive keys
+	 */
+	static byte[] middle(byte[] low, byte[] high) {
+		int length = Math.max(low.length, high.length) + 1;
+		byte[] a = Arrays.copyOf(low, length);
+		byte[] b = Arrays.copyOf(high, length);
+		byte[] middle = new byte[length];
+		// (a + b) / 2: sum from the least significant byte, then division from the most 
+		// significant one
+		int carry = 0;
+		int[] sum = new int[length];
+		for (int i = length - 1; i >= 0; i--) {
+			int s = (a[i] & 0xFF) + (b[i] & 0xFF) + carry;
+			sum[i] = s & 0xFF;
+			carry = s >>> 8;
+		}
+		int remainder = carry;
+		for (int i = 0; i < length; i++) {
+			int value = (remainder << 8) | sum[i];
+			middle[i] = (byte) (value >>> 1);
+			remainder = value & 1;
+		}
+		// trailing zeros are removed, a shorter key being smaller in the LMDB order
+		int end = length;
+		while ( (end > 0) && (middle[end - 1] == 0) )
+			end--;
+		return Arrays.copyOf(middle, end);
+	}
+
+	/**
+	 * @return the comparison of two keys in the LMDB order (unsigned lexicographic order)
+	 */
+	static int compare(byte[] key1, byte[] key2) {
+		int n = Math.min(key1.length, key2.length);
+		for (int i = 0; i < n; i++) {
+			int diff = (key1[i] & 0xFF) - (key2[i] & 0xFF);
+			if (diff != 0)
+				return diff;
+		}
+		return key1.length - key2.length;
+	}
+}
@@ -34,6 +34,7 @@ public class KBUpperEnvironment extends KBEnvironment {
 	private ConceptDatabase dbConcepts = null;
 	private StatementDatabase dbStatements = null;
 	private PropertyDatabase dbProperties = null;
+	private StatementIndexDatabase dbStatementsByValue = null;
 
 	/**
 	 * Constructor
@@ -65,6 +66,13 @@ public class KBUpperEnvironment extends KBEnvironment {
 	public StatementDatabase getDbStatements() {
 		return dbStatements;
 	}
+
+	/**
+	 * Returns the {@link DatabaseType#statementsByValue} database
+	 */
+	public StatementIndexDatabase getDbStatementsByValue() {
+		return dbStatementsByValue;
+	}
 	
 	@Override
 	protected void initDatabases() {
@@ -80,6 +88,9 @@ public class KBUpperEnvironment extends KBEnvironment {
 
 		dbStatements = buildStatementDatabase();
 		databasesByType.put(DatabaseType.statements, dbStatements);
+
+		dbStatementsByValue = new StatementIndexDatabase(this);
+		databasesByType.put(DatabaseType.statementsByValue, dbStatementsByValue);
 	}
 
 	/**
@@ -122,6 +133,11 @@ public class KBUpperEnvironment extends KBEnvironment {
 
 		//System.out.println("Building Statement db");
 		dbStatements.loadFromFile(wikidataStatements, overwrite);
+
+		if (conf.getUseStatementIndex()) {
+			//System.out.println("Building Statement index db");
+			dbStatementsByValue.loadFromStatements(dbStatements, overwrite);
+		}
 		
 		System.out.println("Environment built - " + dbConcepts.getDatabaseSize() + " concepts.");
 	}
@@ -27,8 +27,8 @@ public class LabelDatabase extends StringRecordDatabase<DbLabel> {
 	}
 
 	@Override
-	public DbLabel retrieve(String key) {
-		return super.retrieve(key);
+	protected RecordCodec<DbLabel> getValueCodec() {
+		return RecordCodecs.LABEL;
 	}
 
 	@Override
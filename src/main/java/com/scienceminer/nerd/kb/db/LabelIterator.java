@@ -34,8 +34,8 @@ public class LabelIterator implements Iterator<Label> {
         byte[] valueData = entry.getValue();
         Label l = null;
         try {
-            DbLabel la = (DbLabel)KBEnvironment.deserialize(valueData);
-            String keyId = string(keyData);
+            DbLabel la = env.getDbLabel().decodeValue(valueData);
+            String keyId = env.getDbLabel().decodeKey(keyData);
             l = toLabel(new KBEntry<String, DbLabel>(keyId, la));
         } catch(Exception e) {
             e.printStackTrace();
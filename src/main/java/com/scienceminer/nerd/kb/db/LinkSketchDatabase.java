@@ -0,0 +1,78 @@
+package com.scienceminer.nerd.kb.db;
+
+import java.io.*;
+
+import org.apache.hadoop.record.CsvRecordInput;
+
+import com.scienceminer.nerd.kb.model.hadoop.DbIntList;
+import com.scienceminer.nerd.utilities.*;
+
+import org.fusesource.lmdbjni.*;
+import static org.fusesource.lmdbjni.Constants.*;
+
+/**
+ * Associates page ids with the MinHash sketch of their links (see {@link MinHash}),
+ * for approximating the relatedness between articles with many links.
+ *
+ * Sketches are only stored for pages having more links than the number of hash
+ * functions of a sketch: for smaller link lists, the exact computation is cheap and
+ * the estimation is not reliable.
+ */
+public class LinkSketchDatabase extends IntRecordDatabase<int[]> {
+
+	public LinkSketchDatabase(KBEnvironment env, DatabaseType type) {
+		super(env, type);
+		// the database directory is created even when the sketches are not used, so an 
+		// empty database is considered as not built
+		isLoaded = (getDatabaseSize() > 0);
+	}
+
+	@Override
+	public KBEntry<Integer, int[]> deserialiseCsvRecord(CsvRecordInput record) throws IOException {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void loadFromFile(File dataFile, boolean overwrite) throws Exception {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Builds the sketches from an already loaded link database
+	 *
+	 * @param links the database of link lists (in or out links)
+	 * @param overwrite indicate if the existing database should be overwritten
+	 */
+	public void loadFromLinks(KBDatabase<Integer, DbIntList> links, boolean overwrite) throws Exception {
+		if (isLoaded && !overwrite)
+			return;
+		System.out.println("Loading " + getName() + " database");
+
+		KBIterator iterator = links.getIterator();
+		int nbToAdd = 0;
+		Transaction tx = environment.createWriteTransaction();
+		while (iterator.hasNext()) {
+			if (nbToAdd == 10000) {
+				tx.commit();
+				tx.close();
+				nbToAdd = 0;
+				tx = environment.createWriteTransaction();
+			}
+			Entry entry = iterator.next();
+			try {
+				DbIntList list = links.decodeValue(entry.getValue());
+				if ( (list.getValues() == null) || (list.getValues().size() <= MinHash.NUM_HASHES) )
+					continue;
+				int[] sketch = MinHash.sketch(list.getValues());
+				db.put(tx, encodeKey(links.decodeKey(entry.getKey())), KBEnvironment.serialize(sketch));
+				nbToAdd++;
+			} catch(Exception e) {
+				e.printStackTrace();
+			}
+		}
+		tx.commit();
+		tx.close();
+		iterator.close();
+		isLoaded = true;
+	}
+}
@@ -0,0 +1,231 @@
+package com.scienceminer.nerd.kb.db;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.commons.io.FileUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Encoding of the markup of the pages, as UTF-8 text or compressed with Deflate using a
+ * preset dictionary shared by all the pages of the database. The markup of a single page
+ * is too short to be compressed well on its own, but the pages of a language have much in
+ * common (templates, formatting, frequent words), which the dictionary provides up front.
+ *
+ * The dictionary is trained on a sample of pages (see train()) and written in the
+ * directory of the database. An encoded value starts with its method, so the values
+ * written with and without compression can be read whatever the configuration:
+ * <ul>
+ * <li>0: the UTF-8 bytes of the markup,</li>
+ * <li>1: the length of the UTF-8 markup as a variable-length integer, then the raw
+ * Deflate stream of the UTF-8 markup compressed with the dictionary.</li>
+ * </ul>
+ */
+public class MarkupCodec implements RecordCodec<String> {
+	private static final Logger LOGGER = LoggerFactory.getLogger(MarkupCodec.class);
+
+	public static final String DICTIONARY_FILE = "dictionary";
+
+	public static final String NONE = "none";
+	public static final String DEFLATE = "deflate";
+
+	private static final byte UNCOMPRESSED = 0;
+	private static final byte DEFLATED = 1;
+
+	// Deflate can refer to the last 32KB only
+	private static final int DICTIONARY_SIZE = 32 * 1024;
+
+	// length of the segments of text selected for the dictionary
+	private static final int SEGMENT_LENGTH = 12;
+
+	// maximum number of characters of the sample read for training the dictionary
+	private static final int MAX_SAMPLE_LENGTH = 500000;
+
+	private final File dictionaryFile;
+	private final boolean compress;
+	private volatile byte[] dictionary = null;
+
+	// Deflater and Inflater are not thread-safe and costly to create
+	private final ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>() {
+		@Override
+		protected Deflater initialValue() {
+			return new Deflater(Deflater.BEST_COMPRESSION, true);
+		}
+	};
+	private final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>() {
+		@Override
+		protected Inflater initialValue() {
+			return new Inflater(true);
+		}
+	};
+
+	/**
+	 * @param dictionaryFile the file of the dictionary, read if it exists
+	 * @param compress true if the values written are compressed
+	 */
+	public MarkupCodec(File dictionaryFile, boolean compress) {
+		this.dictionaryFile = dictionaryFile;
+		this.compress = compress;
+		if (dictionaryFile.exists()) {
+			try {
+				dictionary = FileUtils.readFileToByteArray(dictionaryFile);
+			} catch(IOException e) {
+				LOGGER.error("Cannot read the markup dictionary " + dictionaryFile.getPath(), e);
+			}
+		}
+	}
+
+	/**
+	 * @return true if the values written are compressed and the dictionary still has to
+	 * be trained
+	 */
+	public boolean needsDictionary() {
+		return compress && (dictionary == null);
+	}
+
+	@Override
+	public byte[] encode(String markup) throws IOException {
+		byte[] text = markup.getBytes(StandardCharsets.UTF_8);
+		if (compress && (dictionary != null)) {
+			Deflater deflater = deflaters.get();
+			deflater.reset();
+			deflater.setDictionary(dictionary);
+			deflater.setInput(text);
+			deflater.finish();
+			ByteArrayOutputStream out = new ByteArrayOutputStream(text.length / 2 + 16);
+			out.write(DEFLATED);
+			IntListCodec.writeVarInt(out, text.length);
+			byte[] buffer = new byte[4096];
+			while (!deflater.finished()) {
+				int length = deflater.deflate(buffer);
+				out.write(buffer, 0, length);
+			}
+			// very short texts can be larger once compressed
+			if (out.size() < text.length + 1)
+				return out.toByteArray();
+		}
+		byte[] data = new byte[text.length + 1];
+		data[0] = UNCOMPRESSED;
+		System.arraycopy(text, 0, data, 1, text.length);
+		return data;
+	}
+
+	@Override
+	public String decode(byte[] data) throws IOException {
+		if (data.length == 0)
+			throw new IOException("Empty markup");
+		if (data[0] == UNCOMPRESSED)
+			return new String(data, 1, data.length - 1, StandardCharsets.UTF_8);
+		if (data[0] != DEFLATED)
+			throw new IOException("Unknown markup encoding: " + data[0]);
+		if (dictionary == null)
+			throw new IOException("Missing markup dictionary " + dictionaryFile.getPath());
+		int[] pos = new int[] {1};
+		byte[] text = new byte[IntListCodec.readVarInt(data, pos)];
+		Inflater inflater = inflaters.get();
+		inflater.reset();
+		inflater.setDictionary(dictionary);
+		inflater.setInput(data, pos[0], data.length - pos[0]);
+		try {
+			int length = 0;
+			while (length < text.length) {
+				int n = inflater.inflate(text, length, text.length - length);
+				if ( (n == 0) && (inflater.finished() || inflater.needsInput()) )
+					throw new IOException("Truncated markup");
+				length += n;
+			}
+		} catch(DataFormatException e) {
+			throw new IOException(e);
+		}
+		return new String(text, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Trains the dictionary on a sample of markup and writes it in the dictionary file.
+	 * The dictionary is made of the segments of text present in the largest number of
+	 * samples, the most frequent ones at the end of the dictionary where they are the
+	 * cheapest to refer to.
+	 */
+	public void train(Collection<String> samples) throws IOException {
+		dictionary = buildDictionary(samples);
+		FileUtils.writeByteArrayToFile(dictionaryFile, dictionary);
+	}
+
+	static byte[] buildDictionary(Collection<String> samples) {
+		// number of samples containing each segment
+		Map<String,Integer> frequencies = new HashMap<String,Integer>();
+		int sampleLength = 0;
+		for (String sample : samples) {
+			if (sampleLength >= MAX_SAMPLE_LENGTH)
+				break;
+			sampleLength += sample.length();
+			Set<String> segments = new HashSet<String>();
+			for (int i = 0; i + SEGMENT_LENGTH <= sample.length(); i++)
+				segments.add(sample.substring(i, i + SEGMENT_LENGTH));
+			for (String segment : segments) {
+				Integer frequency = frequencies.get(segment);
+				frequencies.put(segment, (frequency == null) ? 1 : frequency + 1);
+			}
+		}
+
+		List<Map.Entry<String,Integer>> candidates = new ArrayList<Map.Entry<String,Integer>>();
+		for (Map.Entry<String,Integer> entry : frequencies.entrySet()) {
+			if (entry.getValue() > 1)
+				candidates.add(entry);
+		}
+		Collections.sort(candidates, new Comparator<Map.Entry<String,Integer>>() {
+			@Override
+			public int compare(Map.Entry<String,Integer> e1, Map.Entry<String,Integer> e2) {
+				int diff = e2.getValue().compareTo(e1.getValue());
+				return (diff != 0) ? diff : e1.getKey().compareTo(e2.getKey());
+			}
+		});
+
+		// the segments overlapping a selected one by all but one character extend it, so
+		// that the frequent phrases longer than a segment are written once
+		List<StringBuilder> selected = new ArrayList<StringBuilder>();
+		Map<String,StringBuilder> byStart = new HashMap<String,StringBuilder>();
+		Map<String,StringBuilder> byEnd = new HashMap<String,StringBuilder>();
+		int size = 0;
+		for (Map.Entry<String,Integer> candidate : candidates) {
+			String segment = candidate.getKey();
+			String head = segment.substring(0, SEGMENT_LENGTH - 1);
+			String tail = segment.substring(1);
+			StringBuilder phrase = null;
+			if ( (phrase = byEnd.remove(head)) != null ) {
+				String added = segment.substring(SEGMENT_LENGTH - 1);
+				size += added.getBytes(StandardCharsets.UTF_8).length;
+				phrase.append(added);
+				byEnd.put(tail, phrase);
+			} else if ( (phrase = byStart.remove(tail)) != null ) {
+				String added = segment.substring(0, 1);
+				size += added.getBytes(StandardCharsets.UTF_8).length;
+				phrase.insert(0, added);
+				byStart.put(head, phrase);
+			} else {
+				phrase = new StringBuilder(segment);
+				size += segment.getBytes(StandardCharsets.UTF_8).length;
+				selected.add(phrase);
+				byStart.put(head, phrase);
+				byEnd.put(tail, phrase);
+			}
+			if (size >= DICTIONARY_SIZE)
+				break;
+		}
+
+		StringBuilder dictionary = new StringBuilder(size);
+		for (int i = selected.size() - 1; i >= 0; i--)
+			dictionary.append(selected.get(i));
+		byte[] data = dictionary.toString().getBytes(StandardCharsets.UTF_8);
+		// the end of the dictionary is kept, with the most frequent segments
+		if (data.length > DICTIONARY_SIZE)
+			data = Arrays.copyOfRange(data, data.length - DICTIONARY_SIZE, data.length);
+		return data;
+	}
+}
@@ -1,26 +1,20 @@
 package com.scienceminer.nerd.kb.db;
 
 import com.scienceminer.nerd.utilities.mediaWiki.MediaWikiParser;
-import com.scienceminer.nerd.kb.model.Page;
 import com.scienceminer.nerd.kb.model.Page.PageType;
-import com.scienceminer.nerd.kb.LowerKnowledgeBase;
-import com.scienceminer.nerd.kb.UpperKnowledgeBase;
+import com.scienceminer.nerd.kb.model.hadoop.DbPage;
 
-import org.apache.commons.compress.compressors.CompressorInputStream;
-import org.apache.commons.compress.compressors.CompressorStreamFactory;
-import org.apache.commons.io.input.CountingInputStream;
 import org.apache.hadoop.record.CsvRecordInput;
 import org.fusesource.lmdbjni.BufferCursor;
 import org.fusesource.lmdbjni.Transaction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.xml.stream.XMLInputFactory;
-import javax.xml.stream.XMLStreamReader;
 import java.io.*;
-import java.nio.charset.Charset;
-import java.nio.charset.CharsetDecoder;
-import java.nio.charset.CodingErrorAction;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
 
 import com.scienceminer.nerd.exceptions.NerdResourceException;
 
@@ -36,7 +30,15 @@ public class MarkupDatabase extends KBDatabase<Integer, String> {
 	// not the full markup content
 	private boolean full = false;
 
-	private enum DumpTag {page, id, text, ignorable};
+	// number of pages whose markup is used for training the compression dictionary
+	private static final int DICTIONARY_SAMPLE_SIZE = 2000;
+
+	// number of pages written in a transaction
+	private static final int TRANSACTION_SIZE = 1000;
+
+	// created at the first call of getValueCodec(), from the constructor of KBDatabase, 
+	// so it must not be initialized here
+	private MarkupCodec codec;
 
 	public MarkupDatabase(KBEnvironment env) {
 		super (env, DatabaseType.markup);
@@ -52,6 +54,47 @@ public class MarkupDatabase extends KBDatabase<Integer, String> {
 		}
 	}
 
+	/**
+	 * @return the codec of the markup, which compresses the markup written if configured 
+	 * for this database (markupCompression or markupFullCompression)
+	 */
+	@Override
+	protected RecordCodec<String> getValueCodec() {
+		return markupCodec();
+	}
+
+	private MarkupCodec markupCodec() {
+		if (codec == null) {
+			String compression = (type == DatabaseType.markupFull) ? 
+				env.getConfiguration().getMarkupFullCompression() : env.getConfiguration().getMarkupCompression();
+			if ( (compression != null) && !compression.equals(MarkupCodec.NONE) && !compression.equals(MarkupCodec.DEFLATE) )
+				LOGGER.warn("Unknown markup compression " + compression + ", the markup of the " + name + " database is not compressed");
+			codec = new MarkupCodec(new File(envFilePath, MarkupCodec.DICTIONARY_FILE), MarkupCodec.DEFLATE.equals(compression));
+		}
+		return codec;
+	}
+
+	/**
+	 * Converts the database to the current format (see KBDatabase.migrate()), the 
+	 * compression dictionary being first trained on the markup of the first pages if the 
+	 * markup is compressed
+	 */
+	@Override
+	public long migrate() throws Exception {
+		if (!hasCompactValues() && markupCodec().needsDictionary()) {
+			List<String> samples = new ArrayList<String>();
+			KBIterator iterator = getIterator();
+			try {
+				while (iterator.hasNext() && (samples.size() < DICTIONARY_SAMPLE_SIZE))
+					samples.add(decodeValue(iterator.next().getValue()));
+			} finally {
+				iterator.close();
+			}
+			markupCodec().train(samples);
+		}
+		return super.migrate();
+	}
+
 	@Override
 	public KBEntry<Integer,String> deserialiseCsvRecord(CsvRecordInput record) throws IOException {
 		throw new UnsupportedOperationException();
@@ -65,12 +108,13 @@ public class MarkupDatabase extends KBDatabase<Integer, String> {
 	// using standard LMDB copy mode
 	@Override
 	public String retrieve(Integer key) {
+		countRead();
 		byte[] cachedData = null;
 		String theString = null;
 		try (Transaction tx = environment.createReadTransaction()) {
-			cachedData = db.get(tx, KBEnvironment.serialize(key));
+			cachedData = db.get(tx, encodeKey(key));
 			if (cachedData != null) {
-				theString = (String)KBEnvironment.deserialize(cachedData);
+				theString = decodeValue(cachedData);
 			}
 		} catch(Exception e) {
 			LOGGER.error("cannot retrieve " + key, e);
@@ -85,9 +129,9 @@ public class MarkupDatabase extends KBDatabase<Integer, String> {
 		String theString = null;
 		try (Transaction tx = environment.createReadTransaction();
 			BufferCursor cursor = db.bufferCursor(tx)) {
-			cursor.keyWriteBytes(KBEnvironment.serialize(key));
+			cursor.keyWriteBytes(encodeKey(key));
 			if (cursor.seekKey()) {
-				theString = (String)KBEnvironment.deserialize(cursor.valBytes());
+				theString = decodeValue(cursor.valBytes());
 			}
 		} catch(Exception e) {
 			e.printStackTrace();
@@ -96,7 +140,8 @@ public class MarkupDatabase extends KBDatabase<Integer, String> {
 	}
 
 	/**
-	 * Builds the persistent markup database from th Wikipedia XML article dump
+	 * Builds the persistent markup database from th Wikipedia XML article dump, the pages 
+	 * being read and converted in parallel (see PageDumpLoader)
 	 *
 	 * @param dataFile the XML wikipedia dump
 	 * @param overwrite true if the existing database should be overwritten, otherwise false
@@ -108,124 +153,165 @@ public class MarkupDatabase extends KBDatabase<Integer, String> {
 			throw new NerdResourceException("Markup file not found");
 		System.out.println("Loading " + getName() + " database");
 
-		Integer currId = null;
-		String currMarkup = null;
-		StringBuffer characters = new StringBuffer();
-
-		InputStream reader;
-		CharsetDecoder decoder = Charset.forName("UTF-8").newDecoder()
-                .onMalformedInput(CodingErrorAction.REPORT)
-                .onUnmappableCharacter(CodingErrorAction.REPORT);
-
-		if (dataFile.getName().endsWith(".bz2")){
-            FileInputStream fis = new FileInputStream(dataFile);
-            BufferedInputStream bis = new BufferedInputStream(fis);
-            CompressorInputStream input = new CompressorStreamFactory().createCompressorInputStream(bis);
-            reader = input;
-        } else{
-			reader = new FileInputStream(dataFile);
-        }
-
-		XMLInputFactory xmlStreamFactory = XMLInputFactory.newInstance();
-		CountingInputStream countingReader = new CountingInputStream(reader);
-		XMLStreamReader xmlStreamReader = xmlStreamFactory.createXMLStreamReader(new InputStreamReader(countingReader,decoder));
-
-		LowerKnowledgeBase wikipedia = null;
-		if (full) {
-			wikipedia = UpperKnowledgeBase.getInstance().getWikipediaConf(env.getConfiguration().getLangCode());
-		}
+		final String lang = env.getConfiguration().getLangCode();
+		// the full markup is only stored for the articles
+		final BitSet articles = full ? getArticleIds() : null;
+		// each thread of the loading has its own parser engines
+		final MediaWikiParser parser = MediaWikiParser.getInstance();
 
-		int nbToAdd = 0;
-		int totalAdded = 0;
-		boolean isArticle = false;
-		Transaction tx = environment.createWriteTransaction();
-		while (xmlStreamReader.hasNext()) {
-			int eventCode = xmlStreamReader.next();
-			switch (eventCode) {
-				case XMLStreamReader.START_ELEMENT :
-					switch(resolveDumpTag(xmlStreamReader.getLocalName())) {
-						case page: // nothing to do
+		MarkupWriter writer = new MarkupWriter();
+		try {
+			PageDumpLoader loader = new PageDumpLoader(env.getConfiguration().getLoadingThreads());
+			long nbPages = loader.load(dataFile, new PageDumpLoader.PageConverter<PageMarkup>() {
+				@Override
+				public PageMarkup convert(int id, String wikitext) throws Exception {
+					String markup = null;
+					if (full) {
+						if (!articles.get(id))
+							return null;
+						// we store the complete text if we have an article
+						markup = parser.formatAllWikiText(wikitext, lang);
+						// we don't consider articles when too short or too long
+						if ( (markup == null) || (markup.length() < 500) || (markup.length() > 50000) )
+							return null;
+					} else {
+						// we only store the first paragraph/summary
+						markup = parser.formatFirstParagraphWikiText(wikitext, lang);
 					}
-					break;
-				case XMLStreamReader.END_ELEMENT :
-					switch(resolveDumpTag(xmlStreamReader.getLocalName())) {
-						case id:
-							//only take the first id (there is a second one for the revision)
-							if (currId == null) {
-								currId = Integer.parseInt(characters.toString().trim());
-								if ( full && (currId != null) && (wikipedia != null) ) {
-									Page page = wikipedia.getPageById(currId.intValue());
-									if (page.getType() == Page.PageType.article)
-										isArticle = true;
-								}
-							}
-							break;
-						case text:
-							currMarkup = characters.toString().trim();
-							break;
-						case page:
-							if (nbToAdd == 1000) {
-								tx.commit();
-								tx.close();
-								nbToAdd = 0;
-								tx = environment.createWriteTransaction();
-System.out.println(totalAdded + " / " + currId);
-							}
-							if (full && isArticle) {
-								// we store the complete text if we have an article
-								currMarkup = MediaWikiParser.getInstance().formatAllWikiText(currMarkup, 
-									env.getConfiguration().getLangCode());
-								// we don't consider articles when too short or too long
-								if ( (currMarkup != null) && ((currMarkup.length() < 500) || (currMarkup.length() > 50000)) ) {
-									currMarkup = null;
-								}
-								
-							} else if (!full) {
-								// we only store the first paragraph/summary
-								currMarkup = MediaWikiParser.getInstance().formatFirstParagraphWikiText(currMarkup, 
-									env.getConfiguration().getLangCode());
-							} else {
-								// full and not article: we don't store that
-								currMarkup = null;
-							}
-
-							if ((currMarkup != null) && (currMarkup.trim().length() > 5)) {
-								try {
-									db.put(tx, KBEnvironment.serialize(currId), KBEnvironment.serialize(currMarkup));
-									nbToAdd++;
-									totalAdded++;
-								} catch(Exception e) {
-									System.out.println("Markup addition failed: " + currId + " / " + currMarkup);
-									e.printStackTrace();
-								}
-							}
-
-							currId = null;
-							currMarkup = null;
-							isArticle = false;
-						default:
-							break;
+					if ( (markup == null) || (markup.trim().length() <= 5) )
+						return null;
+					// the markup converted before the training of the dictionary is encoded 
+					// when written
+					byte[] value = (hasCompactValues() && markupCodec().needsDictionary()) ? null : encodeValue(markup);
+					return new PageMarkup(id, markup, value);
+				}
+			}, writer);
+			writer.finish();
+			System.out.println(writer.totalAdded + " pages written out of " + nbPages);
+		} finally {
+			writer.abort();
+		}
+
+		isLoaded = true;
+	}
+
+	// markup of a page converted for the database
+	private static class PageMarkup {
+		final int id;
+		final String markup;
+		final byte[] value;
+
+		PageMarkup(int id, String markup, byte[] value) {
+			this.id = id;
+			this.markup = markup;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * Writes the markup of the pages in the order of the dump, the first pages being kept 
+	 * until the compression dictionary is trained on them
+	 */
+	private class MarkupWriter implements PageDumpLoader.BatchHandler<PageMarkup> {
+		private boolean training = hasCompactValues() && markupCodec().needsDictionary();
+		private final Map<Integer,String> pending = new LinkedHashMap<Integer,String>();
+		private Transaction tx = environment.createWriteTransaction();
+		private int nbToAdd = 0;
+		private long totalAdded = 0;
+
+		@Override
+		public void handle(List<PageMarkup> batch) throws Exception {
+			for (PageMarkup page : batch) {
+				if (page.value != null) {
+					try {
+						db.put(tx, encodeKey(page.id), page.value);
+						nbToAdd++;
+					} catch(Exception e) {
+						System.out.println("Markup addition failed: " + page.id + " / " + page.markup);
+						e.printStackTrace();
 					}
+					continue;
+				}
+				pending.put(page.id, page.markup);
+				if (training && (pending.size() == DICTIONARY_SAMPLE_SIZE)) {
+					markupCodec().train(pending.values());
+					training = false;
+				}
+				if (!training)
+					nbToAdd += storeMarkup(tx, pending);
+			}
+			if (nbToAdd >= TRANSACTION_SIZE) {
+				tx.commit();
+				tx.close();
+				totalAdded += nbToAdd;
+				nbToAdd = 0;
+				tx = environment.createWriteTransaction();
+				System.out.println(totalAdded + " pages written");
+			}
+		}
 
-					characters = new StringBuffer();
+		void finish() throws Exception {
+			if (training && (pending.size() > 0)) {
+				// fewer pages than the sample size
+				markupCodec().train(pending.values());
+			}
+			nbToAdd += storeMarkup(tx, pending);
+			tx.commit();
+			tx.close();
+			tx = null;
+			totalAdded += nbToAdd;
+			nbToAdd = 0;
+		}
 
-					break;
-				case XMLStreamReader.CHARACTERS :
-					characters.append(xmlStreamReader.getText());
+		void abort() {
+			if (tx != null) {
+				tx.abort();
+				tx = null;
 			}
 		}
-		tx.commit();
-		tx.close();
-		xmlStreamReader.close();
+	}
 
-		isLoaded = true;
+	/**
+	 * @return the ids of the articles, which are the pages whose full markup is stored
+	 */
+	private BitSet getArticleIds() {
+		int[] ids = null;
+		try (Stream<KBEntry<Integer, DbPage>> pages = ((KBLowerEnvironment) env).getDbPage().stream(true)) {
+			ids = pages.filter(new Predicate<KBEntry<Integer, DbPage>>() {
+				@Override
+				public boolean test(KBEntry<Integer, DbPage> entry) {
+					return entry.getValue().getType() == PageType.article.ordinal();
+				}
+			}).mapToInt(new ToIntFunction<KBEntry<Integer, DbPage>>() {
+				@Override
+				public int applyAsInt(KBEntry<Integer, DbPage> entry) {
+					return entry.getKey();
+				}
+			}).toArray();
+		}
+		BitSet articles = new BitSet();
+		for (int id : ids)
+			articles.set(id);
+		return articles;
 	}
 
-	private DumpTag resolveDumpTag(String tagName) {
-		try {
-			return DumpTag.valueOf(tagName);
-		} catch (IllegalArgumentException e) {
-			return DumpTag.ignorable;
+	/**
+	 * Writes the markup of some pages, which are then removed from the given map
+	 *
+	 * @return the number of pages written
+	 */
+	private int storeMarkup(Transaction tx, Map<Integer,String> markups) {
+		int nbAdded = 0;
+		for (Map.Entry<Integer,String> markup : markups.entrySet()) {
+			try {
+				db.put(tx, encodeKey(markup.getKey()), encodeValue(markup.getValue()));
+				nbAdded++;
+			} catch(Exception e) {
+				System.out.println("Markup addition failed: " + markup.getKey() + " / " + markup.getValue());
+				e.printStackTrace();
+			}
 		}
+		markups.clear();
+		return nbAdded;
 	}
 }
@@ -0,0 +1,72 @@
+package com.scienceminer.nerd.kb.db;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Order-preserving encoding of the keys of the databases: the LMDB order of the encoded
+ * keys (unsigned lexicographic order of the bytes) is the natural order of the keys,
+ * numerical for the integers and lexical (by code point) for the strings. The contiguous
+ * key ranges of a database are then meaningful, for instance a range of page ids, and a
+ * database can be split into ranges of similar sizes (see KBSpliterator).
+ *
+ * An encoded key starts with a tag giving its type, so that the keys can be decoded
+ * without knowing the type of the keys of the database:
+ * <ul>
+ * <li>Integer: 'I' and the 4 bytes of the value in big-endian order, the sign bit flipped,</li>
+ * <li>Long: 'J' and the 8 bytes of the value in big-endian order, the sign bit flipped,</li>
+ * <li>String: 'S' and the UTF-8 bytes of the string.</li>
+ * </ul>
+ */
+public class OrderedKeys {
+
+	private static final byte INTEGER = 'I';
+	private static final byte LONG = 'J';
+	private static final byte STRING = 'S';
+
+	public static byte[] encode(Object key) throws IOException {
+		if (key instanceof Integer) {
+			int value = ((Integer) key) ^ 0x80000000;
+			return new byte[] {INTEGER, (byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+		} else if (key instanceof Long) {
+			long value = ((Long) key) ^ 0x8000000000000000L;
+			byte[] data = new byte[9];
+			data[0] = LONG;
+			for (int i = 8; i > 0; i--) {
+				data[i] = (byte) value;
+				value >>>= 8;
+			}
+			return data;
+		} else if (key instanceof String) {
+			byte[] text = ((String) key).getBytes(StandardCharsets.UTF_8);
+			byte[] data = new byte[text.length + 1];
+			data[0] = STRING;
+			System.arraycopy(text, 0, data, 1, text.length);
+			return data;
+		}
+		throw new IOException("Unsupported key type: " + ((key == null) ? null : key.getClass().getName()));
+	}
+
+	public static Object decode(byte[] data) throws IOException {
+		if ( (data == null) || (data.length == 0) )
+			throw new IOException("Empty key");
+		switch (data[0]) {
+			case INTEGER:
+				if (data.length != 5)
+					break;
+				return ( ((data[1] & 0xFF) << 24) | ((data[2] & 0xFF) << 16) |
+					((data[3] & 0xFF) << 8) | (data[4] & 0xFF) ) ^ 0x80000000;
+			case LONG:
+				if (data.length != 9)
+					break;
+				long value = 0;
+				for (int i = 1; i < 9; i++)
+					value = (value << 8) | (data[i] & 0xFF);
+				return value ^ 0x8000000000000000L;
+			case STRING:
+				return new String(data, 1, data.length - 1, StandardCharsets.UTF_8);
+		}
+		throw new IOException("Invalid key: " + Arrays.toString(data));
+	}
+}
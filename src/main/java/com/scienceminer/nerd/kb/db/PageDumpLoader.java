@@ -0,0 +1,400 @@
+package com.scienceminer.nerd.kb.db;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.io.IOUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.scienceminer.nerd.utilities.ParallelBZip2InputStream;
+
+/**
+ * Loading of the pages of a Wikipedia XML dump (pages-articles), as a pipeline:
+ * <ul>
+ * <li>the dump is split in segments of whole pages by a reader thread. For a multistream
+ * dump with its index next to it (*-multistream-index.txt.bz2), the segments are groups of
+ * the bzip2 streams given by the index, read directly from the file and decompressed by the
+ * workers. Otherwise the dump is decompressed if needed, in parallel for a bzip2 file made
+ * of several streams (see ParallelBZip2InputStream), and split on the page elements,</li>
+ * <li>the pages of the segments are parsed and converted by a pool of workers,</li>
+ * <li>the converted pages are given to the calling thread by batch, in the order of the
+ * dump.</li>
+ * </ul>
+ */
+public class PageDumpLoader {
+	private static final Logger LOGGER = LoggerFactory.getLogger(PageDumpLoader.class);
+
+	// pages of a segment when the dump is split on the page elements
+	private static final int PAGES_PER_SEGMENT = 500;
+
+	// bzip2 streams of a segment when the dump is split with its index, each stream
+	// of a multistream dump having 100 pages
+	private static final int STREAMS_PER_SEGMENT = 5;
+
+	private static final String PAGE_START = "<page>";
+	private static final String PAGE_END = "</page>";
+
+	private enum DumpTag {page, id, text, ignorable};
+
+	/**
+	 * Conversion of the pages, called by several threads at the same time.
+	 */
+	public interface PageConverter<T> {
+		/**
+		 * @return the result of the conversion of the page, or null if the page is ignored
+		 */
+		T convert(int id, String wikitext) throws Exception;
+	}
+
+	/**
+	 * Handler of the converted pages, called by the thread of the loading.
+	 */
+	public interface BatchHandler<T> {
+		/**
+		 * @param batch the converted pages of a segment of the dump, in the order of the dump
+		 */
+		void handle(List<T> batch) throws Exception;
+	}
+
+	private final int threads;
+
+	private final AtomicLong pagesRead = new AtomicLong();
+
+	// StAX factories are not guaranteed to be thread-safe
+	private final ThreadLocal<XMLInputFactory> xmlFactories = new ThreadLocal<XMLInputFactory>() {
+		@Override
+		protected XMLInputFactory initialValue() {
+			return XMLInputFactory.newInstance();
+		}
+	};
+
+	/**
+	 * @param threads the number of threads for decompressing and converting, 0 for the
+	 * number of available processors
+	 */
+	public PageDumpLoader(int threads) {
+		this.threads = (threads > 0) ? threads : Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Load the pages of a dump file.
+	 *
+	 * @param dumpFile the XML dump, possibly compressed
+	 * @param converter the conversion of the pages
+	 * @param handler the handler of the converted pages
+	 * @return the total number of pages read by this loader
+	 */
+	public <T> long load(final File dumpFile, final PageConverter<T> converter, BatchHandler<T> handler) throws Exception {
+		final ExecutorService workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "nerd-page-loader");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		// segments in the order of the dump, a bounded number of them being converted in advance
+		final BlockingQueue<Future<List<T>>> batches = new ArrayBlockingQueue<Future<List<T>>>(4 * threads);
+		final Future<List<T>> end = new FutureTask<List<T>>(new Callable<List<T>>() {
+			@Override
+			public List<T> call() {
+				return null;
+			}
+		});
+		Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				Future<List<T>> last = end;
+				try {
+					SegmentHandler segments = new SegmentHandler() {
+						@Override
+						public void handle(Callable<String> segment) throws InterruptedException {
+							batches.put(workers.submit(conversion(segment, converter)));
+						}
+					};
+					File index = getIndexFile(dumpFile);
+					if (index != null)
+						readStreams(dumpFile, index, segments);
+					else
+						readPages(dumpFile, segments);
+				} catch (InterruptedException e) {
+					// the loading is abandoned
+					return;
+				} catch (final Exception e) {
+					FutureTask<List<T>> failure = new FutureTask<List<T>>(new Callable<List<T>>() {
+						@Override
+						public List<T> call() throws Exception {
+							throw e;
+						}
+					});
+					failure.run();
+					last = failure;
+				}
+				try {
+					batches.put(last);
+				} catch (InterruptedException e) {
+					// the loading is abandoned
+				}
+			}
+		}, "nerd-page-reader");
+		reader.setDaemon(true);
+
+		try {
+			reader.start();
+			while (true) {
+				Future<List<T>> batch = batches.take();
+				if (batch == end)
+					break;
+				try {
+					handler.handle(batch.get());
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof Exception)
+						throw (Exception) e.getCause();
+					throw e;
+				}
+			}
+		} finally {
+			reader.interrupt();
+			workers.shutdownNow();
+		}
+		return pagesRead.get();
+	}
+
+	// receives the segments of the dump from the reader thread
+	private interface SegmentHandler {
+		void handle(Callable<String> segment) throws InterruptedException;
+	}
+
+	/**
+	 * @return the index of a multistream dump, or null if there is none
+	 */
+	static File getIndexFile(File dumpFile) {
+		String name = dumpFile.getName();
+		if (!name.endsWith(".xml.bz2"))
+			return null;
+		String prefix = name.substring(0, name.length() - ".xml.bz2".length());
+		for (String suffix : new String[] {"-index.txt.bz2", "-index.txt"}) {
+			File index = new File(dumpFile.getParentFile(), prefix + suffix);
+			if (index.exists())
+				return index;
+		}
+		return null;
+	}
+
+	/**
+	 * Split a multistream dump according to its index, whose lines give the offset of the
+	 * stream of each page (offset:page id:title). The streams before the first offset (the
+	 * site information) and the text after the last page are ignored.
+	 */
+	private void readStreams(final File dumpFile, File index, SegmentHandler segments) throws Exception {
+		InputStream indexInput = new BufferedInputStream(new FileInputStream(index));
+		if (index.getName().endsWith(".bz2"))
+			indexInput = new BZip2CompressorInputStream(indexInput, true);
+		BufferedReader indexReader = new BufferedReader(new InputStreamReader(indexInput, StandardCharsets.UTF_8));
+		RandomAccessFile dump = new RandomAccessFile(dumpFile, "r");
+		try {
+			long start = -1;
+			long previous = -1;
+			int nbStreams = 0;
+			String line = null;
+			while ((line = indexReader.readLine()) != null) {
+				int pos = line.indexOf(':');
+				if (pos <= 0)
+					continue;
+				long offset = Long.parseLong(line.substring(0, pos));
+				if (offset == previous)
+					continue;
+				if (offset < previous)
+					throw new IOException("Unordered multistream index " + index.getPath());
+				previous = offset;
+				if (start == -1) {
+					start = offset;
+				} else if (++nbStreams == STREAMS_PER_SEGMENT) {
+					segments.handle(decompression(read(dump, start, offset)));
+					start = offset;
+					nbStreams = 0;
+				}
+			}
+			if (start != -1)
+				segments.handle(decompression(read(dump, start, dump.length())));
+		} finally {
+			dump.close();
+			indexReader.close();
+		}
+	}
+
+	private static byte[] read(RandomAccessFile file, long start, long end) throws IOException {
+		byte[] data = new byte[(int) (end - start)];
+		file.seek(start);
+		file.readFully(data);
+		return data;
+	}
+
+	private static Callable<String> decompression(final byte[] streams) {
+		return new Callable<String>() {
+			@Override
+			public String call() throws IOException {
+				InputStream input = new BZip2CompressorInputStream(new ByteArrayInputStream(streams), true);
+				try {
+					return IOUtils.toString(input, StandardCharsets.UTF_8);
+				} finally {
+					input.close();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Split a dump on the page elements, a page element starting and ending on its own
+	 * line in the dumps
+	 */
+	private void readPages(File dumpFile, SegmentHandler segments) throws Exception {
+		BufferedReader reader = openReader(dumpFile);
+		try {
+			StringBuilder segment = new StringBuilder();
+			int nbPages = 0;
+			boolean inPage = false;
+			String line = null;
+			while ((line = reader.readLine()) != null) {
+				String trimmed = line.trim();
+				if (!inPage && trimmed.startsWith(PAGE_START))
+					inPage = true;
+				if (!inPage)
+					continue;
+				segment.append(line).append('\n');
+				if (trimmed.endsWith(PAGE_END)) {
+					inPage = false;
+					if (++nbPages == PAGES_PER_SEGMENT) {
+						segments.handle(text(segment.toString()));
+						segment = new StringBuilder();
+						nbPages = 0;
+					}
+				}
+			}
+			if (nbPages > 0)
+				segments.handle(text(segment.toString()));
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static Callable<String> text(final String segment) {
+		return new Callable<String>() {
+			@Override
+			public String call() {
+				return segment;
+			}
+		};
+	}
+
+	/**
+	 * Open a dump file, decompressed according to its content
+	 */
+	private BufferedReader openReader(File dumpFile) throws IOException {
+		InputStream input = new BufferedInputStream(new FileInputStream(dumpFile));
+		input.mark(3);
+		boolean bzip2 = (input.read() == 'B') && (input.read() == 'Z') && (input.read() == 'h');
+		input.reset();
+		if (bzip2) {
+			input = new ParallelBZip2InputStream(input, threads);
+		} else {
+			try {
+				input = new CompressorStreamFactory().createCompressorInputStream(input);
+			} catch(CompressorException e) {
+				// not compressed
+			}
+		}
+		return new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8), 1024 * 1024);
+	}
+
+	private <T> Callable<List<T>> conversion(final Callable<String> segment, final PageConverter<T> converter) {
+		return new Callable<List<T>>() {
+			@Override
+			public List<T> call() throws Exception {
+				List<T> batch = new ArrayList<T>();
+				pagesRead.addAndGet(parse(segment.call(), converter, batch));
+				return batch;
+			}
+		};
+	}
+
+	/**
+	 * Parse and convert the pages of a segment of the dump
+	 *
+	 * @return the number of pages parsed
+	 */
+	private <T> int parse(String segment, PageConverter<T> converter, List<T> batch) throws Exception {
+		int start = segment.indexOf(PAGE_START);
+		int end = segment.lastIndexOf(PAGE_END);
+		if ( (start == -1) || (end == -1) )
+			return 0;
+		// the page elements of the segment under a single root
+		Reader pages = new StringReader("<pages>" + segment.substring(start, end + PAGE_END.length()) + "</pages>");
+		XMLStreamReader xmlStreamReader = xmlFactories.get().createXMLStreamReader(pages);
+
+		int nbPages = 0;
+		Integer currId = null;
+		String currText = null;
+		StringBuilder characters = new StringBuilder();
+		try {
+			while (xmlStreamReader.hasNext()) {
+				int eventCode = xmlStreamReader.next();
+				switch (eventCode) {
+					case XMLStreamReader.END_ELEMENT :
+						switch(resolveDumpTag(xmlStreamReader.getLocalName())) {
+							case id:
+								//only take the first id (there is a second one for the revision)
+								if (currId == null)
+									currId = Integer.parseInt(characters.toString().trim());
+								break;
+							case text:
+								currText = characters.toString().trim();
+								break;
+							case page:
+								nbPages++;
+								if ( (currId != null) && (currText != null) ) {
+									try {
+										T converted = converter.convert(currId, currText);
+										if (converted != null)
+											batch.add(converted);
+									} catch(Exception e) {
+										LOGGER.warn("Conversion of page " + currId + " failed", e);
+									}
+								}
+								currId = null;
+								currText = null;
+							default:
+								break;
+						}
+						characters.setLength(0);
+						break;
+					case XMLStreamReader.CHARACTERS :
+						characters.append(xmlStreamReader.getText());
+				}
+			}
+		} finally {
+			xmlStreamReader.close();
+		}
+		return nbPages;
+	}
+
+	private static DumpTag resolveDumpTag(String tagName) {
+		try {
+			return DumpTag.valueOf(tagName);
+		} catch (IllegalArgumentException e) {
+			return DumpTag.ignorable;
+		}
+	}
+}
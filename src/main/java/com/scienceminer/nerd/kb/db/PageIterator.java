@@ -58,10 +58,10 @@ public class PageIterator implements Iterator<Page> {
 				byte[] valueData = entry.getValue();
 				//Page p = null;
 				try {
-					DbPage pa = (DbPage)KBEnvironment.deserialize(valueData);
+					DbPage pa = env.getDbPage().decodeValue(valueData);
 					
 					//Integer keyId = new BigInteger(keyData).intValue();
-					Integer keyId = (Integer)KBEnvironment.deserialize(keyData);
+					Integer keyId = env.getDbPage().decodeKey(keyData);
 					
 					nextPage = toPage(new KBEntry<Integer,DbPage>(keyId, pa));
 					//PageType localType = PageType.values()[nextPage.getType()];
@@ -20,6 +20,11 @@ public class PageLinkCountDatabase extends IntRecordDatabase<DbPageLinkCounts>{
 		super(env, DatabaseType.pageLinkCounts);
 	}
 
+	@Override
+	protected RecordCodec<DbPageLinkCounts> getValueCodec() {
+		return RecordCodecs.PAGE_LINK_COUNTS;
+	}
+
 	@Override
 	public KBEntry<Integer, DbPageLinkCounts> deserialiseCsvRecord(
 			CsvRecordInput record) throws IOException {
@@ -138,7 +143,7 @@ public class PageLinkCountDatabase extends IntRecordDatabase<DbPageLinkCounts>{
 
 			if (linkCountEntry != null) {
 				try {
-					db.put(tx, KBEnvironment.serialize(linkCountEntry.getKey()), KBEnvironment.serialize(linkCountEntry.getValue()));
+					db.put(tx, encodeKey(linkCountEntry.getKey()), encodeValue(linkCountEntry.getValue()));
 					nbToAdd++;
 				} catch(Exception e) {
 					e.printStackTrace();
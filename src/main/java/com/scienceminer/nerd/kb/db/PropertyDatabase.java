@@ -121,7 +121,7 @@ public class PropertyDatabase extends StringRecordDatabase<Property> {
         Transaction tx = environment.createWriteTransaction();
         for(Property property : properties) {
         	try {
-	        	db.put(tx, KBEnvironment.serialize(property.getId()), KBEnvironment.serialize(property));
+	        	db.put(tx, encodeKey(property.getId()), KBEnvironment.serialize(property));
 				nbTotalAdded++;
 			} catch(Exception e) {
 				e.printStackTrace();
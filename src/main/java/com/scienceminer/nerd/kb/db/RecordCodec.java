@@ -0,0 +1,16 @@
+package com.scienceminer.nerd.kb.db;
+
+import java.io.IOException;
+
+/**
+ * Binary encoding of the values of a database, used instead of the generic FST 
+ * serialization (see RecordCodecs)
+ *
+ * @param <V> the value type
+ */
+public interface RecordCodec<V> {
+
+	byte[] encode(V value) throws IOException;
+
+	V decode(byte[] data) throws IOException;
+}
@@ -0,0 +1,260 @@
+package com.scienceminer.nerd.kb.db;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import com.scienceminer.nerd.kb.model.hadoop.*;
+
+/**
+ * Compact binary encodings of the records of the lower KB, written field by field without
+ * the class descriptions and the boxed values of the generic FST serialization. The
+ * integers are written as variable-length integers (see IntListCodec), the strings as
+ * their UTF-8 length followed by their UTF-8 bytes, and the increasing lists of integers
+ * as their first value and the gaps between consecutive values.
+ *
+ * The version of the format is written in the value-format marker of the databases using
+ * these encodings (see KBDatabase), and must be incremented when an encoding changes.
+ */
+public class RecordCodecs {
+
+	public static final int FORMAT_VERSION = 1;
+
+	// encodings of a list of integers
+	private static final int INCREASING_LIST = 0;
+	private static final int PLAIN_LIST = 1;
+
+	/**
+	 * Page: type, depth and title
+	 */
+	public static final RecordCodec<DbPage> PAGE = new RecordCodec<DbPage>() {
+		@Override
+		public byte[] encode(DbPage page) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(32);
+			IntListCodec.writeVarInt(out, page.getType());
+			writeSignedVarInt(out, page.getDepth());
+			writeString(out, page.getTitle());
+			return out.toByteArray();
+		}
+
+		@Override
+		public DbPage decode(byte[] data) throws IOException {
+			int[] pos = new int[1];
+			int type = IntListCodec.readVarInt(data, pos);
+			int depth = readSignedVarInt(data, pos);
+			return new DbPage(readString(data, pos), type, depth);
+		}
+	};
+
+	/**
+	 * Label: the four counts, then the senses in their order (most frequent first), each 
+	 * with its page id, its two counts and a byte of flags
+	 */
+	public static final RecordCodec<DbLabel> LABEL = new RecordCodec<DbLabel>() {
+		@Override
+		public byte[] encode(DbLabel label) {
+			List<DbSenseForLabel> senses = label.getSenses();
+			int nbSenses = (senses == null) ? 0 : senses.size();
+			ByteArrayOutputStream out = new ByteArrayOutputStream(8 + nbSenses * 6);
+			IntListCodec.writeVarLong(out, label.getLinkOccCount());
+			IntListCodec.writeVarLong(out, label.getLinkDocCount());
+			IntListCodec.writeVarLong(out, label.getTextOccCount());
+			IntListCodec.writeVarLong(out, label.getTextDocCount());
+			IntListCodec.writeVarInt(out, nbSenses);
+			for (int i = 0; i < nbSenses; i++) {
+				DbSenseForLabel sense = senses.get(i);
+				IntListCodec.writeVarInt(out, sense.getId());
+				IntListCodec.writeVarLong(out, sense.getLinkOccCount());
+				IntListCodec.writeVarLong(out, sense.getLinkDocCount());
+				out.write((sense.getFromTitle() ? 1 : 0) | (sense.getFromRedirect() ? 2 : 0));
+			}
+			return out.toByteArray();
+		}
+
+		@Override
+		public DbLabel decode(byte[] data) throws IOException {
+			int[] pos = new int[1];
+			long linkOccCount = IntListCodec.readVarLong(data, pos);
+			long linkDocCount = IntListCodec.readVarLong(data, pos);
+			long textOccCount = IntListCodec.readVarLong(data, pos);
+			long textDocCount = IntListCodec.readVarLong(data, pos);
+			int nbSenses = IntListCodec.readVarInt(data, pos);
+			ArrayList<DbSenseForLabel> senses = new ArrayList<DbSenseForLabel>(nbSenses);
+			for (int i = 0; i < nbSenses; i++) {
+				int id = IntListCodec.readVarInt(data, pos);
+				long senseLinkOccCount = IntListCodec.readVarLong(data, pos);
+				long senseLinkDocCount = IntListCodec.readVarLong(data, pos);
+				if (pos[0] >= data.length)
+					throw new IOException("Truncated label");
+				int flags = data[pos[0]++];
+				senses.add(new DbSenseForLabel(id, senseLinkOccCount, senseLinkDocCount, 
+					(flags & 1) != 0, (flags & 2) != 0));
+			}
+			return new DbLabel(linkOccCount, linkDocCount, textOccCount, textDocCount, senses);
+		}
+	};
+
+	/**
+	 * List of integers: delta encoded when the values are increasing, which is the case of 
+	 * the lists of page ids built from the sorted Wikipedia data, and in the original 
+	 * order otherwise
+	 */
+	public static final RecordCodec<DbIntList> INT_LIST = new RecordCodec<DbIntList>() {
+		@Override
+		public byte[] encode(DbIntList list) {
+			List<Integer> values = list.getValues();
+			int length = (values == null) ? 0 : values.size();
+			int[] array = new int[length];
+			boolean increasing = true;
+			for (int i = 0; i < length; i++) {
+				array[i] = values.get(i);
+				if ( (i > 0) && (array[i] <= array[i - 1]) )
+					increasing = false;
+			}
+			ByteArrayOutputStream out = new ByteArrayOutputStream(length + 8);
+			if (increasing) {
+				out.write(INCREASING_LIST);
+				byte[] encoded = IntListCodec.encode(array);
+				out.write(encoded, 0, encoded.length);
+			} else {
+				out.write(PLAIN_LIST);
+				IntListCodec.writeVarInt(out, length);
+				for (int value : array)
+					writeSignedVarInt(out, value);
+			}
+			return out.toByteArray();
+		}
+
+		@Override
+		public DbIntList decode(byte[] data) throws IOException {
+			if (data.length == 0)
+				throw new IOException("Empty list of integers");
+			int[] values = null;
+			if (data[0] == INCREASING_LIST) {
+				values = IntListCodec.decode(data, new int[] {1});
+			} else if (data[0] == PLAIN_LIST) {
+				int[] pos = new int[] {1};
+				values = new int[IntListCodec.readVarInt(data, pos)];
+				for (int i = 0; i < values.length; i++)
+					values[i] = readSignedVarInt(data, pos);
+			} else
+				throw new IOException("Invalid list of integers");
+			ArrayList<Integer> list = new ArrayList<Integer>(values.length);
+			for (int value : values)
+				list.add(value);
+			return new DbIntList(list);
+		}
+	};
+
+	/**
+	 * Translations: the number of translations, then the language code and the title of 
+	 * each translation
+	 */
+	public static final RecordCodec<DbTranslations> TRANSLATIONS = new RecordCodec<DbTranslations>() {
+		@Override
+		public byte[] encode(DbTranslations translations) {
+			Map<String,String> byLang = translations.getTranslationsByLangCode();
+			ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+			IntListCodec.writeVarInt(out, (byLang == null) ? 0 : byLang.size());
+			if (byLang != null) {
+				for (Map.Entry<String,String> translation : byLang.entrySet()) {
+					writeString(out, translation.getKey());
+					writeString(out, translation.getValue());
+				}
+			}
+			return out.toByteArray();
+		}
+
+		@Override
+		public DbTranslations decode(byte[] data) throws IOException {
+			int[] pos = new int[1];
+			int nbTranslations = IntListCodec.readVarInt(data, pos);
+			TreeMap<String,String> byLang = new TreeMap<String,String>();
+			for (int i = 0; i < nbTranslations; i++) {
+				String lang = readString(data, pos);
+				byLang.put(lang, readString(data, pos));
+			}
+			return new DbTranslations(byLang);
+		}
+	};
+
+	/**
+	 * Link counts: total and distinct in-links, total and distinct out-links
+	 */
+	public static final RecordCodec<DbPageLinkCounts> PAGE_LINK_COUNTS = new RecordCodec<DbPageLinkCounts>() {
+		@Override
+		public byte[] encode(DbPageLinkCounts counts) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(8);
+			IntListCodec.writeVarInt(out, counts.getTotalLinksIn());
+			IntListCodec.writeVarInt(out, counts.getDistinctLinksIn());
+			IntListCodec.writeVarInt(out, counts.getTotalLinksOut());
+			IntListCodec.writeVarInt(out, counts.getDistinctLinksOut());
+			return out.toByteArray();
+		}
+
+		@Override
+		public DbPageLinkCounts decode(byte[] data) throws IOException {
+			int[] pos = new int[1];
+			int totalLinksIn = IntListCodec.readVarInt(data, pos);
+			int distinctLinksIn = IntListCodec.readVarInt(data, pos);
+			int totalLinksOut = IntListCodec.readVarInt(data, pos);
+			int distinctLinksOut = IntListCodec.readVarInt(data, pos);
+			return new DbPageLinkCounts(totalLinksIn, distinctLinksIn, totalLinksOut, distinctLinksOut);
+		}
+	};
+
+	/**
+	 * Wikidata id: its integer code (see WikidataIds) as 4 bytes in big-endian order
+	 */
+	public static final RecordCodec<String> WIKIDATA_ID = new RecordCodec<String>() {
+		@Override
+		public byte[] encode(String wikidataId) throws IOException {
+			int code = WikidataIds.encode(wikidataId);
+			if (code == WikidataIds.NONE)
+				throw new IOException("Invalid Wikidata id: " + wikidataId);
+			return ConceptRecordDatabase.encodeCode(code);
+		}
+
+		@Override
+		public String decode(byte[] data) throws IOException {
+			if (data.length != 4)
+				throw new IOException("Invalid Wikidata id code");
+			return WikidataIds.decode(((data[0] & 0xFF) << 24) | ((data[1] & 0xFF) << 16) | 
+				((data[2] & 0xFF) << 8) | (data[3] & 0xFF));
+		}
+	};
+
+	private static void writeSignedVarInt(ByteArrayOutputStream out, int value) {
+		IntListCodec.writeVarInt(out, (value << 1) ^ (value >> 31));
+	}
+
+	private static int readSignedVarInt(byte[] data, int[] pos) throws IOException {
+		int zigzag = IntListCodec.readVarInt(data, pos);
+		return (zigzag >>> 1) ^ -(zigzag & 1);
+	}
+
+	/**
+	 * Writes the UTF-8 length of a string plus one, 0 for null, then its UTF-8 bytes
+	 */
+	private static void writeString(ByteArrayOutputStream out, String value) {
+		if (value == null) {
+			IntListCodec.writeVarInt(out, 0);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		IntListCodec.writeVarInt(out, bytes.length + 1);
+		out.write(bytes, 0, bytes.length);
+	}
+
+	private static String readString(byte[] data, int[] pos) throws IOException {
+		int length = IntListCodec.readVarInt(data, pos) - 1;
+		if (length < 0)
+			return null;
+		if (pos[0] + length > data.length)
+			throw new IOException("Truncated string");
+		String value = new String(data, pos[0], length, StandardCharsets.UTF_8);
+		pos[0] += length;
+		return value;
+	}
+}
@@ -1,156 +1,197 @@
 package com.scienceminer.nerd.kb.db;
 
 import java.io.*;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import org.apache.commons.compress.compressors.*;
-import org.apache.hadoop.record.CsvRecordInput;
-
 import com.scienceminer.nerd.kb.db.*;
 import com.scienceminer.nerd.kb.db.KBDatabase.DatabaseType;
 import com.scienceminer.nerd.utilities.*;
 import com.scienceminer.nerd.kb.*;
 import com.scienceminer.nerd.exceptions.NerdResourceException;
 
-import com.fasterxml.jackson.core.*;
-import com.fasterxml.jackson.databind.*;
-import com.fasterxml.jackson.databind.node.*;
-import com.fasterxml.jackson.annotation.*;
-import com.fasterxml.jackson.core.io.*;
-
 import org.fusesource.lmdbjni.*;
 import static org.fusesource.lmdbjni.Constants.*;
 
-public class StatementDatabase extends StringRecordDatabase<List<Statement>> {
+/**
+ * Statements of the concepts, keyed by concept. The statements of a concept are grouped 
+ * by property, so that the statements of some properties only can be retrieved without 
+ * decoding the others. The value of a concept is the number of groups followed, for each 
+ * group, by the code of the property (see WikidataIds), the size of the group in bytes 
+ * and its statements: their number then, for each statement, either the code of the item 
+ * value or the UTF-8 bytes of the JSON value, all as variable-length integers (see 
+ * IntListCodec). The JSON values are only decoded when accessed (see Statement).
+ */
+public class StatementDatabase extends ConceptRecordDatabase<List<Statement>> {
 	private static final Logger logger = LoggerFactory.getLogger(StatementDatabase.class);	
 
+	// statements grouped by property
+	private static final byte GROUPED_FORMAT_VERSION = 2;
+
 	public StatementDatabase(KBUpperEnvironment env) {
 		super(env, DatabaseType.statements);
 	}
 
 	@Override
-	public KBEntry<String, List<Statement>> deserialiseCsvRecord(
-			CsvRecordInput record) throws IOException {
-		throw new UnsupportedOperationException();
+	protected byte getFormatVersion() {
+		return GROUPED_FORMAT_VERSION;
 	}
 
-	private KBEntry<String, List<Statement>> deserializePageLinkCsvRecord(CsvRecordInput record) throws IOException {
-		throw new UnsupportedOperationException();
+	/**
+	 * Retrieve the statements of a concept for some properties only
+	 *
+	 * @param id the id of the concept
+	 * @param propertyIds the ids of the properties, null for all the properties
+	 * @return the statements of the concept with these properties, in the order of the 
+	 * properties of the concept, null if the concept has no statement
+	 */
+	public List<Statement> retrieve(String id, Collection<String> propertyIds) {
+		if (propertyIds == null)
+			return retrieve(id);
+		countRead();
+		int code = WikidataIds.encode(id);
+		if (code == WikidataIds.NONE)
+			return null;
+		int[] propertyCodes = new int[propertyIds.size()];
+		int nbProperties = 0;
+		for (String propertyId : propertyIds) {
+			int propertyCode = WikidataIds.encode(propertyId);
+			if (propertyCode != WikidataIds.NONE)
+				propertyCodes[nbProperties++] = propertyCode;
+		}
+		propertyCodes = Arrays.copyOf(propertyCodes, nbProperties);
+		Arrays.sort(propertyCodes);
+
+		List<Statement> record = null;
+		try (Transaction tx = environment.createReadTransaction()) {
+			byte[] data = db.get(tx, encodeCode(code));
+			if (data != null)
+				record = decodeStatements(code, data, propertyCodes);
+		} catch(Exception e) {
+			logger.error("Cannot retrieve key " + id, e);
+		}
+		return record;
 	}
 
-	@Override 
-	public void loadFromFile(File dataFile, boolean overwrite) throws Exception {
-//System.out.println("input file: " + dataFile.getPath());
-		if (isLoaded && !overwrite)
-			return;
-		System.out.println("Loading " + name + " database");
-
-		if (dataFile == null)
-			throw new NerdResourceException("Wikidata dump file not found");
+	@Override
+	protected byte[] encodeValue(List<Statement> statements) throws IOException {
+		return encodeStatements(statements);
+	}
 
-		// open file
-		BufferedInputStream bis = new BufferedInputStream(new FileInputStream(dataFile));
-		CompressorInputStream input = new CompressorStreamFactory().createCompressorInputStream(bis);
-		BufferedReader reader = new BufferedReader(new InputStreamReader(input));
-
-		String line = null;
-		int nbToAdd = 0;
-		int nbTotalAdded = 0;
-		int currentPageId = -1;
-		ObjectMapper mapper = new ObjectMapper();
-		Transaction tx = environment.createWriteTransaction();
-		while ((line=reader.readLine()) != null) {
-			if (line.length() == 0) continue;
-			if (line.startsWith("[")) continue;
-			if (line.startsWith("]")) break;
-
-			if (nbToAdd >= 10000) {
-				try {
-					tx.commit();
-					tx.close();
-					nbToAdd = 0;
-					tx = environment.createWriteTransaction();
-				} catch(Exception e) {
-					e.printStackTrace();
+	static byte[] encodeStatements(List<Statement> statements) throws IOException {
+		Map<Integer,List<Statement>> groups = new LinkedHashMap<Integer,List<Statement>>();
+		for (Statement statement : statements) {
+			List<Statement> group = groups.get(statement.getPropertyCode());
+			if (group == null) {
+				group = new ArrayList<Statement>();
+				groups.put(statement.getPropertyCode(), group);
+			}
+			group.add(statement);
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(8 * statements.size() + 1);
+		ByteArrayOutputStream groupOut = new ByteArrayOutputStream();
+		IntListCodec.writeVarInt(out, groups.size());
+		for (Map.Entry<Integer,List<Statement>> group : groups.entrySet()) {
+			groupOut.reset();
+			IntListCodec.writeVarInt(groupOut, group.getValue().size());
+			for (Statement statement : group.getValue()) {
+				if (statement.getValueCode() != WikidataIds.NONE) {
+					// the lowest bit distinguishes the item values from the JSON values
+					IntListCodec.writeVarInt(groupOut, zigzag(statement.getValueCode()) << 1);
+				} else {
+					String value = statement.getValue();
+					byte[] literal = (value == null) ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+					IntListCodec.writeVarInt(groupOut, (literal.length << 1) | 1);
+					groupOut.write(literal, 0, literal.length);
 				}
 			}
+			IntListCodec.writeVarInt(out, zigzag(group.getKey()));
+			IntListCodec.writeVarInt(out, groupOut.size());
+			groupOut.writeTo(out);
+		}
+		return out.toByteArray();
+	}
+
+	@Override
+	protected List<Statement> decodeValue(int code, byte[] data) throws IOException {
+		return decodeStatements(code, data, null);
+	}
 
-			JsonNode rootNode = mapper.readTree(line);
-			JsonNode idNode = rootNode.findPath("id");
-			String itemId = null;
-			if ((idNode != null) && (!idNode.isMissingNode())) {
-				itemId = idNode.textValue();
+	/**
+	 * @param propertyCodes the sorted codes of the properties to be decoded, null for all
+	 */
+	static List<Statement> decodeStatements(int code, byte[] data, int[] propertyCodes) throws IOException {
+		int[] pos = new int[1];
+		int nbGroups = IntListCodec.readVarInt(data, pos);
+		List<Statement> statements = new ArrayList<Statement>();
+		for (int i = 0; i < nbGroups; i++) {
+			int propertyCode = unzigzag(IntListCodec.readVarInt(data, pos));
+			int groupSize = IntListCodec.readVarInt(data, pos);
+			int groupEnd = pos[0] + groupSize;
+			if ( (groupSize < 0) || (groupEnd > data.length) )
+				throw new IOException("Truncated statements of " + WikidataIds.decode(code));
+			if ( (propertyCodes != null) && (Arrays.binarySearch(propertyCodes, propertyCode) < 0) ) {
+				pos[0] = groupEnd;
+				continue;
 			}
-            
-            if (itemId == null)
-            	continue;
-
-            List<Statement> statements = new ArrayList<Statement>();
-			JsonNode claimsNode = rootNode.findPath("claims");
-			if ((claimsNode != null) && (!claimsNode.isMissingNode())) {
-				Iterator<JsonNode> ite = claimsNode.elements();
-	            while (ite.hasNext()) {
-	            	JsonNode propertyNode = ite.next();
-					
-	            	String propertytId = null;
-	            	String value = null;
-
-	            	Iterator<JsonNode> ite2 = propertyNode.elements();
-	            	if (ite2.hasNext()) {
-	            		JsonNode mainsnakNode = ite2.next();
-	            		JsonNode propNameNode = mainsnakNode.findPath("property");
-	            		if ((propNameNode != null) && (!propNameNode.isMissingNode())) {
-		            		propertytId = propNameNode.textValue();
-		            	}
-
-		            	JsonNode dataValueNode = mainsnakNode.findPath("datavalue");
-		            	if ((dataValueNode != null) && (!dataValueNode.isMissingNode())) {
-		            		JsonNode valueNode = dataValueNode.findPath("value");
-		            		if ((valueNode != null) && (!valueNode.isMissingNode())) {
-		            			// for "entity-type":"item", we just take the wikidata id
-		            			JsonNode entityTypeNode = valueNode.findPath("entity-type");
-		         		   		if ((entityTypeNode != null) && (!entityTypeNode.isMissingNode()) && (entityTypeNode.textValue().equals("item"))) {
-		         		   			JsonNode localIdNode = valueNode.findPath("id");
-		            				if ((localIdNode != null) && (!localIdNode.isMissingNode())) {
-		            					value = localIdNode.textValue();
-		            				}
-		         		   		} 
-		         		   		if (value == null) {
-			            			// default, store the json value
-			            			value = valueNode.toString();
-			            		}
-		            		}
-		            	}
-
-		            	if ((propertytId != null) && (value != null)) {
-							Statement statement = new Statement(itemId, propertytId, value);
-//System.out.println("Adding: " + statement.toString());
-							statements.add(statement);
-						}
-					}
+			int size = IntListCodec.readVarInt(data, pos);
+			for (int j = 0; j < size; j++) {
+				int header = IntListCodec.readVarInt(data, pos);
+				if ((header & 1) == 0) {
+					statements.add(new Statement(code, propertyCode, unzigzag(header >>> 1), null));
+				} else {
+					int length = header >>> 1;
+					if (pos[0] + length > groupEnd)
+						throw new IOException("Truncated statements of " + WikidataIds.decode(code));
+					statements.add(new Statement(code, propertyCode, data, pos[0], length));
+					pos[0] += length;
 				}
 			}
+			pos[0] = groupEnd;
+		}
+		return statements;
+	}
 
-			if (statements.size() > 0) {
-				try {
-					db.put(tx, KBEnvironment.serialize(itemId), KBEnvironment.serialize(statements));
-					nbToAdd++;
-					nbTotalAdded++;
-				} catch(Exception e) {
-					e.printStackTrace();
-				}
-			}
-		}			
+	private static int zigzag(int value) {
+		return (value << 1) ^ (value >> 31);
+	}
+
+	private static int unzigzag(int value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	@Override
+	public void storeEntries(Map<String,List<Statement>> entries) throws Exception {
+		super.storeEntries(entries);
+		writeFormat(new byte[] {GROUPED_FORMAT_VERSION});
+	}
+
+	/**
+	 * Load the statements from the Wikidata JSON dump, possibly compressed, with the
+	 * entities parsed in parallel (see DumpLoader and StatementParser)
+	 */
+	@Override 
+	public void loadFromFile(File dataFile, boolean overwrite) throws Exception {
+		if (isLoaded && !overwrite)
+			return;
+		System.out.println("Loading " + name + " database");
+
+		if (dataFile == null)
+			throw new NerdResourceException("Wikidata dump file not found");
 
-		// last commit
-		tx.commit();
-		tx.close();
-		reader.close();
+		DumpLoader<String, List<Statement>> loader = 
+			new DumpLoader<String, List<Statement>>(this, env.getConfiguration().getLoadingThreads());
+		long nbTotalAdded = loader.load(dataFile, new StatementParser());
+		writeFormat(new byte[] {GROUPED_FORMAT_VERSION});
 		isLoaded = true;
 		System.out.println("Total of " + nbTotalAdded + " statements indexed");
 	}
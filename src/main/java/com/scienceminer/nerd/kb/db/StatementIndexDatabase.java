@@ -0,0 +1,343 @@
+package com.scienceminer.nerd.kb.db;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.record.CsvRecordInput;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import com.scienceminer.nerd.kb.Statement;
+
+import org.fusesource.lmdbjni.*;
+import static org.fusesource.lmdbjni.Constants.*;
+
+/**
+ * Reverse index of the statements: associates a property and a value with the ids of the
+ * concepts having a statement with this property and value, for instance P31 and Q5 with
+ * all the humans, or P356 and a DOI with the publication having this DOI.
+ *
+ * Only the item values and the string values (identifiers, DOI, etc.) are indexed, not the
+ * dates, quantities, coordinates or texts. The keys are the UTF-8 bytes of the property
+ * and of the value, prefixed by its type so that an item and a string with the same text
+ * are distinct, followed by the code of the first concept of a chunk (see WikidataIds),
+ * and the values are chunks of at most CHUNK_SIZE concept codes in increasing order (see
+ * IntListCodec). The keys are not serialized with FST, so that the chunks of a property and
+ * value are contiguous and ordered in the database and can be paged through with a cursor.
+ */
+public class StatementIndexDatabase extends KBDatabase<String, int[]> {
+	private static final Logger LOGGER = LoggerFactory.getLogger(StatementIndexDatabase.class);
+
+	// concepts per chunk of a posting list
+	private static final int CHUNK_SIZE = 4096;
+
+	// postings sorted in memory before being written in the temporary database
+	private static final int SORT_BATCH_SIZE = 1000000;
+
+	// LMDB maximum key size is 511 bytes
+	private static final int MAX_KEY_SIZE = 500;
+
+	// type of the indexed values, written before the value in the keys
+	static final char ITEM_VALUE = 'i';
+	static final char STRING_VALUE = 's';
+
+	private static final ObjectMapper mapper = new ObjectMapper();
+
+	public StatementIndexDatabase(KBEnvironment env) {
+		super(env, DatabaseType.statementsByValue);
+		// the database directory is created even when the index is not used, so an
+		// empty database is considered as not built
+		isLoaded = (getDatabaseSize() > 0);
+	}
+
+	public boolean isLoaded() {
+		return isLoaded;
+	}
+
+	@Override
+	protected boolean usesDefaultKeys() {
+		return false;
+	}
+
+	@Override
+	public int[] retrieve(String key) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public KBEntry<String, int[]> deserialiseCsvRecord(CsvRecordInput record) throws IOException {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void loadFromFile(File dataFile, boolean overwrite) throws Exception {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Get the concepts having a statement with a given property and value, by increasing
+	 * code of concept (see WikidataIds), so that the concepts can be paged through.
+	 *
+	 * @param propertyId the property of the statement, e.g. P31
+	 * @param value the value of the statement, a concept id for an item value (e.g. Q5)
+	 * or the string itself for a string value
+	 * @param itemValue true for an item value, false for a string value
+	 * @param after the last concept of the previous page, null for the first page
+	 * @param max the maximum number of concepts
+	 * @return the ids of the concepts
+	 */
+	public List<String> getConceptIds(String propertyId, String value, boolean itemValue, String after, int max) {
+		countRead();
+		List<String> result = new ArrayList<String>();
+		if (value == null)
+			return result;
+		byte[] prefix = getPrefix(propertyId, (itemValue ? ITEM_VALUE : STRING_VALUE) + value);
+		if ( (prefix == null) || (max <= 0) )
+			return result;
+		int last = WikidataIds.encode(after);
+		if ( (after != null) && (last == WikidataIds.NONE) )
+			return result;
+
+		try (Transaction tx = environment.createReadTransaction();
+			 Cursor cursor = db.openCursor(tx)) {
+			Entry entry = null;
+			if (after == null) {
+				entry = cursor.seek(SeekOp.RANGE, prefix);
+			} else {
+				// the chunk containing the last concept starts at or before it
+				byte[] key = getKey(prefix, last);
+				entry = cursor.seek(SeekOp.RANGE, key);
+				if ( (entry == null) || !Arrays.equals(entry.getKey(), key) ) {
+					Entry previous = (entry == null) ? cursor.get(GetOp.LAST) : cursor.get(GetOp.PREV);
+					if ( (previous != null) && hasPrefix(previous.getKey(), prefix) )
+						entry = previous;
+					else
+						entry = cursor.seek(SeekOp.RANGE, key);
+				}
+			}
+
+			while ( (entry != null) && hasPrefix(entry.getKey(), prefix) && (result.size() < max) ) {
+				for (int code : IntListCodec.decode(entry.getValue())) {
+					if ( (after != null) && (code <= last) )
+						continue;
+					result.add(WikidataIds.decode(code));
+					if (result.size() == max)
+						break;
+				}
+				entry = cursor.get(GetOp.NEXT);
+			}
+		} catch(Exception e) {
+			LOGGER.error("Cannot read the statement index for " + propertyId + " " + value, e);
+		}
+		return result;
+	}
+
+	/**
+	 * Builds the index from an already loaded statement database. The postings are first
+	 * written in a temporary database where LMDB sorts them, then grouped in chunks.
+	 *
+	 * @param statements the database of the statements
+	 * @param overwrite indicate if the existing database should be overwritten
+	 */
+	public void loadFromStatements(KBDatabase<String, List<Statement>> statements, boolean overwrite) throws Exception {
+		if (isLoaded && !overwrite)
+			return;
+		System.out.println("Loading " + getName() + " database");
+		// the postings of a previous build would be mixed with the new ones
+		if (getDatabaseSize() > 0) {
+			try (Transaction tx = environment.createWriteTransaction()) {
+				db.drop(tx, false);
+				tx.commit();
+			}
+		}
+
+		File sortDirectory = new File(envFilePath + "-sort");
+		if (sortDirectory.exists())
+			FileUtils.deleteDirectory(sortDirectory);
+		sortDirectory.mkdirs();
+		Env sortEnvironment = new Env();
+		sortEnvironment.setMapSize(100 * 1024 * 1024, ByteUnit.KIBIBYTES);
+		sortEnvironment.open(sortDirectory.getPath(), Constants.NOTLS);
+		Database sortDb = sortEnvironment.openDatabase();
+		try {
+			long nbPostings = sortPostings(statements, sortEnvironment, sortDb);
+			long nbChunks = writeChunks(sortEnvironment, sortDb);
+			System.out.println("Total of " + nbPostings + " statements indexed in " + nbChunks + " chunks");
+		} finally {
+			sortDb.close();
+			sortEnvironment.close();
+			FileUtils.deleteDirectory(sortDirectory);
+		}
+		isLoaded = true;
+	}
+
+	private long sortPostings(KBDatabase<String, List<Statement>> statements, Env sortEnvironment, Database sortDb)
+			throws Exception {
+		long nbPostings = 0;
+		List<byte[]> batch = new ArrayList<byte[]>();
+		KBIterator iterator = statements.getIterator();
+		try {
+			while (iterator.hasNext()) {
+				Entry entry = iterator.next();
+				KBEntry<String, List<Statement>> conceptStatements = null;
+				try {
+					conceptStatements = statements.decodeEntry(entry.getKey(), entry.getValue());
+				} catch(Exception e) {
+					e.printStackTrace();
+				}
+				if (conceptStatements == null)
+					continue;
+				for (Statement statement : conceptStatements.getValue()) {
+					int concept = statement.getConceptCode();
+					byte[] prefix = getPrefix(statement.getPropertyId(), getIndexValue(statement.getValue()));
+					if ( (concept == WikidataIds.NONE) || (prefix == null) )
+						continue;
+					batch.add(getKey(prefix, concept));
+				}
+				if (batch.size() >= SORT_BATCH_SIZE) {
+					nbPostings += writeSorted(batch, sortEnvironment, sortDb);
+					batch.clear();
+				}
+			}
+			nbPostings += writeSorted(batch, sortEnvironment, sortDb);
+		} finally {
+			iterator.close();
+		}
+		return nbPostings;
+	}
+
+	// the keys are sorted first so that the writes are local in the database
+	private static int writeSorted(List<byte[]> keys, Env sortEnvironment, Database sortDb) {
+		Collections.sort(keys, new Comparator<byte[]>() {
+			@Override
+			public int compare(byte[] key1, byte[] key2) {
+				return compareKeys(key1, key2);
+			}
+		});
+		byte[] empty = new byte[0];
+		try (Transaction tx = sortEnvironment.createWriteTransaction()) {
+			for (byte[] key : keys)
+				sortDb.put(tx, key, empty);
+			tx.commit();
+		}
+		return keys.size();
+	}
+
+	private long writeChunks(Env sortEnvironment, Database sortDb) throws Exception {
+		long nbChunks = 0;
+		int nbToAdd = 0;
+		byte[] prefix = null;
+		int[] chunk = new int[CHUNK_SIZE];
+		int size = 0;
+		Transaction tx = environment.createWriteTransaction();
+		try (Transaction sortTx = sortEnvironment.createReadTransaction();
+			 EntryIterator iterator = sortDb.iterate(sortTx)) {
+			while (iterator.hasNext()) {
+				byte[] key = iterator.next().getKey();
+				int concept = getConcept(key);
+				byte[] keyPrefix = Arrays.copyOf(key, key.length - 4);
+				if ( (size > 0) && ( (size == CHUNK_SIZE) || !Arrays.equals(prefix, keyPrefix) ) ) {
+					db.put(tx, getKey(prefix, chunk[0]), IntListCodec.encode(chunk, 0, size));
+					nbChunks++;
+					size = 0;
+					if (++nbToAdd == 10000) {
+						tx.commit();
+						tx.close();
+						nbToAdd = 0;
+						tx = environment.createWriteTransaction();
+					}
+				}
+				prefix = keyPrefix;
+				chunk[size++] = concept;
+			}
+			if (size > 0) {
+				db.put(tx, getKey(prefix, chunk[0]), IntListCodec.encode(chunk, 0, size));
+				nbChunks++;
+			}
+			tx.commit();
+			tx.close();
+			tx = null;
+		} finally {
+			if (tx != null)
+				tx.abort();
+		}
+		return nbChunks;
+	}
+
+	/**
+	 * @return the value of a statement as indexed, i.e. prefixed by its type, null if the 
+	 * value is not indexed
+	 */
+	static String getIndexValue(String value) {
+		if ( (value == null) || (value.length() == 0) )
+			return null;
+		if (WikidataIds.isValid(value))
+			return ITEM_VALUE + value;
+		// string values are stored as JSON strings, the other values as JSON objects
+		if ( (value.length() >= 2) && value.startsWith("\"") && value.endsWith("\"") ) {
+			try {
+				return STRING_VALUE + mapper.readValue(value, String.class);
+			} catch(IOException e) {
+				return null;
+			}
+		}
+		return null;
+	}
+
+	private static byte[] getPrefix(String propertyId, String value) {
+		if ( (propertyId == null) || (value == null) )
+			return null;
+		byte[] property = propertyId.getBytes(StandardCharsets.UTF_8);
+		byte[] val = value.getBytes(StandardCharsets.UTF_8);
+		if (property.length + val.length + 6 > MAX_KEY_SIZE)
+			return null;
+		byte[] prefix = new byte[property.length + val.length + 2];
+		System.arraycopy(property, 0, prefix, 0, property.length);
+		System.arraycopy(val, 0, prefix, property.length + 1, val.length);
+		return prefix;
+	}
+
+	// the concept code is written so that the byte order is the numerical order
+	private static byte[] getKey(byte[] prefix, int concept) {
+		byte[] key = Arrays.copyOf(prefix, prefix.length + 4);
+		int sortable = concept ^ 0x80000000;
+		key[prefix.length] = (byte) (sortable >>> 24);
+		key[prefix.length + 1] = (byte) (sortable >>> 16);
+		key[prefix.length + 2] = (byte) (sortable >>> 8);
+		key[prefix.length + 3] = (byte) sortable;
+		return key;
+	}
+
+	private static int getConcept(byte[] key) {
+		int n = key.length;
+		int sortable = ((key[n - 4] & 0xFF) << 24) | ((key[n - 3] & 0xFF) << 16) |
+			((key[n - 2] & 0xFF) << 8) | (key[n - 1] & 0xFF);
+		return sortable ^ 0x80000000;
+	}
+
+	private static boolean hasPrefix(byte[] key, byte[] prefix) {
+		if (key.length != prefix.length + 4)
+			return false;
+		for (int i = 0; i < prefix.length; i++) {
+			if (key[i] != prefix[i])
+				return false;
+		}
+		return true;
+	}
+
+	// LMDB order of the keys
+	private static int compareKeys(byte[] key1, byte[] key2) {
+		int n = Math.min(key1.length, key2.length);
+		for (int i = 0; i < n; i++) {
+			int diff = (key1[i] & 0xFF) - (key2[i] & 0xFF);
+			if (diff != 0)
+				return diff;
+		}
+		return key1.length - key2.length;
+	}
+}
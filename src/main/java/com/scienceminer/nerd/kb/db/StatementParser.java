@@ -0,0 +1,147 @@
+package com.scienceminer.nerd.kb.db;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.core.*;
+import com.fasterxml.jackson.databind.*;
+
+import com.scienceminer.nerd.kb.Statement;
+
+/**
+ * Parser of the entities of the Wikidata JSON dump (one entity per line) giving the
+ * statements of an entity: for each property, the value of the main snak of its first claim,
+ * the Wikidata id for an item value and the JSON value otherwise.
+ *
+ * The line is read as a stream of JSON tokens, only the id and the main snaks of the
+ * claims being looked at: the labels, descriptions, aliases, sitelinks, qualifiers and
+ * references are skipped without being decoded, and only the values of the statements are
+ * read as JSON trees. This parser can be used by several threads at the same time.
+ */
+public class StatementParser implements DumpLoader.LineParser<String, List<Statement>> {
+
+	private static final ObjectMapper mapper = new ObjectMapper();
+
+	@Override
+	public KBEntry<String, List<Statement>> parse(String line) throws IOException {
+		// the entities are the elements of a JSON array, one per line
+		if ( (line.length() == 0) || line.startsWith("[") || line.startsWith("]") )
+			return null;
+
+		JsonParser parser = mapper.getFactory().createParser(line);
+		try {
+			if (parser.nextToken() != JsonToken.START_OBJECT)
+				return null;
+			String itemId = null;
+			List<String[]> claims = null;
+			while (nextToken(parser) == JsonToken.FIELD_NAME) {
+				String field = parser.getCurrentName();
+				JsonToken token = nextToken(parser);
+				if (field.equals("id") && (token == JsonToken.VALUE_STRING))
+					itemId = parser.getText();
+				else if (field.equals("claims") && (token == JsonToken.START_OBJECT))
+					claims = parseClaims(parser);
+				else
+					parser.skipChildren();
+			}
+
+			if ( !WikidataIds.isValid(itemId) || (claims == null) || (claims.size() == 0) )
+				return null;
+			List<Statement> statements = new ArrayList<Statement>(claims.size());
+			for (String[] claim : claims)
+				statements.add(new Statement(itemId, claim[0], claim[1]));
+			return new KBEntry<String, List<Statement>>(itemId, statements);
+		} finally {
+			parser.close();
+		}
+	}
+
+	/**
+	 * @return the property and value of the first claim of each property
+	 */
+	private static List<String[]> parseClaims(JsonParser parser) throws IOException {
+		List<String[]> claims = new ArrayList<String[]>();
+		while (nextToken(parser) == JsonToken.FIELD_NAME) {
+			String propertyId = parser.getCurrentName();
+			if (nextToken(parser) != JsonToken.START_ARRAY) {
+				parser.skipChildren();
+				continue;
+			}
+			boolean first = true;
+			while (nextToken(parser) != JsonToken.END_ARRAY) {
+				if (first && (parser.getCurrentToken() == JsonToken.START_OBJECT)) {
+					String[] claim = parseClaim(parser, propertyId);
+					if (claim != null)
+						claims.add(claim);
+				} else
+					parser.skipChildren();
+				first = false;
+			}
+		}
+		return claims;
+	}
+
+	private static String[] parseClaim(JsonParser parser, String propertyId) throws IOException {
+		String[] claim = null;
+		while (nextToken(parser) == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			if ( (nextToken(parser) == JsonToken.START_OBJECT) && field.equals("mainsnak") )
+				claim = parseSnak(parser, propertyId);
+			else
+				parser.skipChildren();
+		}
+		return claim;
+	}
+
+	private static String[] parseSnak(JsonParser parser, String propertyId) throws IOException {
+		String value = null;
+		while (nextToken(parser) == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			JsonToken token = nextToken(parser);
+			if (field.equals("property") && (token == JsonToken.VALUE_STRING))
+				propertyId = parser.getText();
+			else if (field.equals("datavalue") && (token == JsonToken.START_OBJECT))
+				value = parseDataValue(parser);
+			else
+				parser.skipChildren();
+		}
+		// no value for the "novalue" and "somevalue" snaks
+		if (value == null)
+			return null;
+		return new String[] {propertyId, value};
+	}
+
+	private static String parseDataValue(JsonParser parser) throws IOException {
+		String value = null;
+		while (nextToken(parser) == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			nextToken(parser);
+			if (!field.equals("value")) {
+				parser.skipChildren();
+				continue;
+			}
+			JsonNode valueNode = mapper.readTree(parser);
+			if (valueNode == null)
+				continue;
+			// for "entity-type":"item", we just take the wikidata id
+			if ("item".equals(valueNode.path("entity-type").textValue())) {
+				value = valueNode.path("id").textValue();
+				if ( (value == null) && valueNode.path("numeric-id").isNumber() )
+					value = "Q" + valueNode.path("numeric-id").asLong();
+			}
+			if (value == null) {
+				// default, store the json value
+				value = valueNode.toString();
+			}
+		}
+		return value;
+	}
+
+	private static JsonToken nextToken(JsonParser parser) throws IOException {
+		JsonToken token = parser.nextToken();
+		if (token == null)
+			throw new JsonParseException(parser, "Unexpected end of entity");
+		return token;
+	}
+}
@@ -26,10 +26,11 @@ public abstract class StringIntDatabase extends KBDatabase<String, Integer> {
 		
 	@Override
 	public Integer retrieve(String key) {
+		countRead();
 		byte[] cachedData = null;
 		Integer record = null;
 		try (Transaction tx = environment.createReadTransaction()) {
-			cachedData = db.get(tx, KBEnvironment.serialize(key));
+			cachedData = db.get(tx, encodeKey(key));
 			if (cachedData != null) {
 				record = (Integer)KBEnvironment.deserialize(cachedData);
 			}
@@ -46,7 +47,7 @@ public abstract class StringIntDatabase extends KBDatabase<String, Integer> {
 		Integer record = null;
 		try (Transaction tx = environment.createReadTransaction();
 			BufferCursor cursor = db.bufferCursor(tx)) {
-			cursor.keyWriteBytes(KBEnvironment.serialize(key));
+			cursor.keyWriteBytes(encodeKey(key));
 			if (cursor.seekKey()) {
 				record = (Integer)KBEnvironment.deserialize(cursor.valBytes());
 			}
@@ -81,7 +82,7 @@ public abstract class StringIntDatabase extends KBDatabase<String, Integer> {
 
 			if (entry != null) {
 				try {
-					db.put(tx, KBEnvironment.serialize(entry.getKey()), KBEnvironment.serialize(entry.getValue()));
+					db.put(tx, encodeKey(entry.getKey()), KBEnvironment.serialize(entry.getValue()));
 					nbToAdd++;
 				} catch(Exception e) {
 					e.printStackTrace();
@@ -26,12 +26,13 @@ public abstract class StringRecordDatabase<Record> extends KBDatabase<String, Re
 		
 	@Override
 	public Record retrieve(String key) {
+		countRead();
 		byte[] cachedData = null;
 		Record record = null;
 		try (Transaction tx = environment.createReadTransaction()) {
-			cachedData = db.get(tx, KBEnvironment.serialize(key));
+			cachedData = db.get(tx, encodeKey(key));
 			if (cachedData != null) {
-				record = (Record)KBEnvironment.deserialize(cachedData);
+				record = decodeValue(cachedData);
 			}
 		} catch(Exception e) {
 			e.printStackTrace();
@@ -46,9 +47,9 @@ public abstract class StringRecordDatabase<Record> extends KBDatabase<String, Re
 		Record record = null;
 		try (Transaction tx = environment.createReadTransaction();
 			BufferCursor cursor = db.bufferCursor(tx)) {
-			cursor.keyWriteBytes(KBEnvironment.serialize(key));
+			cursor.keyWriteBytes(encodeKey(key));
 			if (cursor.seekKey()) {
-				record = (Record)KBEnvironment.deserialize(cursor.valBytes());
+				record = decodeValue(cursor.valBytes());
 			}
 		} catch(Exception e) {
             LOGGER.error("Cannot retrieve key " + key, e);
@@ -81,7 +82,7 @@ public abstract class StringRecordDatabase<Record> extends KBDatabase<String, Re
 
 			if (entry != null) {
 				try {
-					db.put(tx, KBEnvironment.serialize(entry.getKey()), KBEnvironment.serialize(entry.getValue()));
+					db.put(tx, encodeKey(entry.getKey()), encodeValue(entry.getValue()));
 					nbToAdd++;
 				} catch(Exception e) {
 					//System.out.println("Invalid input line: " + line);
@@ -76,7 +76,7 @@ public class TitleDatabase extends StringIntDatabase {
 			KBEntry<String,Integer> entry = deserialiseCsvRecord(cri);
 			if (entry != null) {				
 				try {
-					db.put(tx, KBEnvironment.serialize(entry.getKey()), KBEnvironment.serialize(entry.getValue()));
+					db.put(tx, encodeKey(entry.getKey()), KBEnvironment.serialize(entry.getValue()));
 					nbToAdd++;
 				} catch(Exception e) {
 					e.printStackTrace();
@@ -0,0 +1,54 @@
+package com.scienceminer.nerd.kb.db;
+
+/**
+ * Encoding of the Wikidata identifiers of the items and properties as integers: the item
+ * Q42 is encoded as 42 and the property P31 as -31, so that the order of the codes is the
+ * numerical order of the identifiers, the properties coming first.
+ */
+public class WikidataIds {
+
+	/**
+	 * Code of an invalid identifier, Q0 and P0 not being valid identifiers
+	 */
+	public static final int NONE = 0;
+
+	/**
+	 * @return the integer code of an item or property identifier, NONE if it is not one
+	 */
+	public static int encode(String id) {
+		if ( (id == null) || (id.length() < 2) || (id.length() > 11) )
+			return NONE;
+		char prefix = id.charAt(0);
+		if ( (prefix != 'Q') && (prefix != 'P') )
+			return NONE;
+		long number = 0;
+		for (int i = 1; i < id.length(); i++) {
+			char c = id.charAt(i);
+			if ( (c < '0') || (c > '9') )
+				return NONE;
+			number = 10 * number + (c - '0');
+		}
+		if (number > Integer.MAX_VALUE)
+			return NONE;
+		return (prefix == 'Q') ? (int) number : - (int) number;
+	}
+
+	/**
+	 * @return the identifier of an item or property code, null for NONE
+	 */
+	public static String decode(int code) {
+		if (code > 0)
+			return "Q" + code;
+		else if (code < 0)
+			return "P" + (- (long) code);
+		else
+			return null;
+	}
+
+	/**
+	 * @return true if the identifier is the identifier of an item or property
+	 */
+	public static boolean isValid(String id) {
+		return encode(id) != NONE;
+	}
+}
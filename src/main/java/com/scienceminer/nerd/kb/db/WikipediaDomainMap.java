@@ -13,12 +13,15 @@ import org.slf4j.LoggerFactory;
 import java.io.*;
 import java.util.*;
 import java.util.concurrent.*;  
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang.ArrayUtils;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 
 import com.scienceminer.nerd.kb.model.*;
+import com.scienceminer.nerd.kb.model.hadoop.DbPage;
 import com.scienceminer.nerd.kb.LowerKnowledgeBase;
 
 import org.fusesource.lmdbjni.*;
@@ -173,47 +176,85 @@ System.out.print("\n");*/
     }
 
     public void createAllMappings() {
-        // for each page id in wikipedia we get the list of domain id
-        PageIterator iterator = wikipedia.getPageIterator(Page.PageType.article);
+        // for each article id in wikipedia we get the list of domain ids: the mappings are 
+        // computed in parallel over ranges of page ids, and written by this thread, LMDB write 
+        // transactions being bound to a thread
+        final KBLowerEnvironment env = wikipedia.getEnvironment();
+        final BlockingQueue<Object[]> mappings = new ArrayBlockingQueue<Object[]>(10000);
+        final Object[] endOfMappings = new Object[0];
+        Thread mapper = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try (Stream<KBEntry<Integer, DbPage>> pages = env.getDbPage().stream(true)) {
+                    pages.forEach(new Consumer<KBEntry<Integer, DbPage>>() {
+                        @Override
+                        public void accept(KBEntry<Integer, DbPage> entry) {
+                            if (entry.getValue().getType() != Page.PageType.article.ordinal())
+                                return;
+                            Page page = Page.createPage(env, entry.getKey(), entry.getValue());
+                            // conservative check 
+                            if (page instanceof Article) {
+                                int[] theDomains = createMapping((Article) page);
+                                if (theDomains != null)
+                                    putMapping(mappings, new Object[]{entry.getKey(), theDomains});
+                            }
+                        }
+                    });
+                } catch(Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    putMapping(mappings, endOfMappings);
+                }
+            }
+        }, "domain-mapping");
+        mapper.start();
+
         int p = 0;
         int nbToAdd = 0;
         Transaction tx = environment.createWriteTransaction();
-        while(iterator.hasNext()) {
-            if ((p%10000) == 0)
-                System.out.println(p);
-
-            if (nbToAdd == 10000) {
-                tx.commit();
-                tx.close();
-                nbToAdd = 0;
-                tx = environment.createWriteTransaction();
-            }
+        try {
+            Object[] mapping = null;
+            while ((mapping = mappings.take()) != endOfMappings) {
+                if ((p%10000) == 0)
+                    System.out.println(p);
+
+                if (nbToAdd == 10000) {
+                    tx.commit();
+                    tx.close();
+                    nbToAdd = 0;
+                    tx = environment.createWriteTransaction();
+                }
 
-            // add to the persistent map
-            Page page = iterator.next();
-            int pageId = page.getId();
-            // conservative check 
-            if (page instanceof Article) {
-                int[] theDomains = createMapping((Article) page);
-                if (theDomains != null) {
-                    try {
-                        db.put(tx, KBEnvironment.serialize(pageId), KBEnvironment.serialize(theDomains));
-                        nbToAdd++;
-                    } catch(Exception e) {
-                        e.printStackTrace();
-                    }
-                    //domainsCache.put(new Integer(pageId), theDomains);
+                // add to the persistent map
+                try {
+                    db.put(tx, KBEnvironment.serialize(mapping[0]), KBEnvironment.serialize(mapping[1]));
+                    nbToAdd++;
+                } catch(Exception e) {
+                    e.printStackTrace();
                 }
+                p++;
             }
-            p++;
+            mapper.join();
+        } catch(InterruptedException e) {
+            mapper.interrupt();
+            Thread.currentThread().interrupt();
+            LOGGER.error("Creation of the domain mappings interrupted", e);
         }
         tx.commit();
         tx.close();
-        iterator.close();
 
         isLoaded = true;
     }
 
+    private static void putMapping(BlockingQueue<Object[]> mappings, Object[] mapping) {
+        try {
+            mappings.put(mapping);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NerdException("Creation of the domain mappings interrupted", e);
+        }
+    }
+
     private Map<Integer, List<Integer>> readMapping(String mappingFilePath) throws IOException {
         LineIterator iterator = FileUtils.lineIterator(new File(mappingFilePath));
         Map<Integer, List<Integer>> domains = new HashMap<Integer, List<Integer>>();
@@ -4,6 +4,7 @@ import com.scienceminer.nerd.kb.db.*;
 import com.scienceminer.nerd.kb.model.Page.PageType;
 import com.scienceminer.nerd.kb.model.hadoop.DbLabel;
 import com.scienceminer.nerd.kb.model.hadoop.DbSenseForLabel;
+import com.scienceminer.nerd.utilities.NerdMetrics;
 
 import java.util.*;
 
@@ -23,6 +24,13 @@ public class Label {
 	protected KBLowerEnvironment env = null;
 	private boolean detailsSet = false;
 
+	// maximum number of resolved labels kept in a batch cache
+	private static final int BATCH_CACHE_MAX_SIZE = 200000;
+
+	// labels resolved while processing the current batch of documents, shared
+	// by the threads processing the documents of the same batch
+	private static final ThreadLocal<Map<String, Label>> batchCache = new ThreadLocal<Map<String, Label>>();
+
 	public Label(KBLowerEnvironment env, String text) {
 		this.env = env;
 		this.text = text;
@@ -108,6 +116,14 @@ public class Label {
 			setDetails();	
 		return senses;
 	}	
+
+	/**
+	 * @return a sense of this label with a known prior probability, as given by the 
+	 * candidate index, without loading the senses of the label
+	 */
+	public Sense createSense(int pageId, double priorProbability) {
+		return new Sense(env, pageId, priorProbability);
+	}
 	
 	/**
 	 * A possible sense for a label
@@ -118,6 +134,9 @@ public class Label {
 
 		private final boolean fromTitle;
 		private final boolean fromRedirect;
+
+		// prior probability given by the candidate index, -1 when computed from the counts
+		private final double priorProbability;
 		
 		protected Sense(KBLowerEnvironment env,  DbSenseForLabel s) {
 			super(env, s.getId());
@@ -126,6 +145,30 @@ public class Label {
 			this.sLinkOccCount = s.getLinkOccCount();
 			this.fromTitle = s.getFromTitle();
 			this.fromRedirect = s.getFromRedirect();
+			this.priorProbability = -1;
+		}
+
+		// sense read from the candidate index, whose link counts are not known
+		private Sense(KBLowerEnvironment env, int id, double priorProbability) {
+			super(env, id);
+
+			this.sLinkDocCount = 0;
+			this.sLinkOccCount = 0;
+			this.fromTitle = false;
+			this.fromRedirect = false;
+			this.priorProbability = priorProbability;
+		}
+
+		// copy of a sense of another label with the same text, the page details being 
+		// loaded again when needed
+		private Sense(Sense s) {
+			super(s.env, s.id);
+
+			this.sLinkDocCount = s.sLinkDocCount;
+			this.sLinkOccCount = s.sLinkOccCount;
+			this.fromTitle = s.fromTitle;
+			this.fromRedirect = s.fromRedirect;
+			this.priorProbability = s.priorProbability;
 		}
 
 		/**
@@ -168,6 +211,8 @@ public class Label {
 		 * 
 		 */
 		public double getPriorProbability() {
+			if (priorProbability >= 0)
+				return priorProbability;
 			if (linkOccCount == 0)
 				return 0;
 			else {
@@ -185,6 +230,29 @@ public class Label {
 	}
 
 	private void setDetails() {	
+		Map<String, Label> cache = batchCache.get();
+		String key = null;
+		if (cache != null) {
+			key = env.getConfiguration().getLangCode() + "\t" + text;
+			Label cached = cache.get(key);
+			if (cached != null) {
+				NerdMetrics.countCacheHit("label");
+				this.linkDocCount = cached.linkDocCount;
+				this.linkOccCount = cached.linkOccCount;
+				this.textDocCount = cached.textDocCount;
+				this.textOccCount = cached.textOccCount;
+				// the senses are weighted while processing a document, so each label gets 
+				// its own copies
+				this.senses = new Sense[cached.senses.length];
+				for (int i = 0; i < senses.length; i++)
+					this.senses[i] = new Sense(cached.senses[i]);
+				this.detailsSet = true;
+				return;
+			}
+			NerdMetrics.countCacheMiss("label");
+		}
+
+		env.getHotLabels().hit(text);
 		try {
 			DbLabel lbl = env.getDbLabel().retrieve(text);
 			if (lbl == null) {
@@ -196,6 +264,27 @@ public class Label {
 			this.senses = new Sense[0];
 			detailsSet = true;
 		}
+
+		if ( (cache != null) && (cache.size() < BATCH_CACHE_MAX_SIZE) )
+			cache.put(key, this);
+	}
+
+	/**
+	 * Share the given cache of resolved labels with the current thread, until 
+	 * {@link #detachBatchCache()} is called. This is used when processing a batch of 
+	 * documents, where the same labels are typically resolved again and again. 
+	 * 
+	 * @param cache a thread-safe map, shared by all the threads processing the batch
+	 */
+	public static void attachBatchCache(Map<String, Label> cache) {
+		batchCache.set(cache);
+	}
+
+	/**
+	 * Stop using a batch cache of resolved labels in the current thread
+	 */
+	public static void detachBatchCache() {
+		batchCache.remove();
 	}
 	
 	private void setDetails(DbLabel lbl) {
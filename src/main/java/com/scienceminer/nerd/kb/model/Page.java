@@ -154,6 +154,7 @@ public class Page implements Comparable<Page> {
 	 * Instantiates the appropriate subclass of Page given the supplied parameters
 	 */
 	public static Page createPage(KBLowerEnvironment env, int id)  {
+		env.getHotPages().hit(id);
 		DbPage pd = env.getDbPage().retrieve(id); 
 		if (pd != null)
 			return createPage(env, id, pd);
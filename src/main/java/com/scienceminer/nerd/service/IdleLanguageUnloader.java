@@ -0,0 +1,64 @@
+package com.scienceminer.nerd.service;
+
+import com.scienceminer.nerd.disambiguation.NerdEngine;
+import com.scienceminer.nerd.disambiguation.Relatedness;
+import com.scienceminer.nerd.kb.LowerKnowledgeBase;
+import com.scienceminer.nerd.kb.UpperKnowledgeBase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.*;
+
+/**
+ * Periodic unloading of the languages of the current KB version which have not been used
+ * for longer than the idle timeout of the KB configuration (languageIdleTimeout in kb.yaml),
+ * with their disambiguation models and relatedness caches. An unloaded language is loaded
+ * again at its next request.
+ */
+public class IdleLanguageUnloader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IdleLanguageUnloader.class);
+
+    // interval between two checks of the idle languages in minutes
+    private static final long CHECK_INTERVAL = 1;
+
+    private static ScheduledExecutorService scheduler = null;
+
+    /**
+     * Start the periodic checks, to be called once the KB is initialised
+     */
+    public static synchronized void start() {
+        if (scheduler != null)
+            return;
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "nerd-language-unloader");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                unloadIdleLanguages();
+            }
+        }, CHECK_INTERVAL, CHECK_INTERVAL, TimeUnit.MINUTES);
+    }
+
+    private static void unloadIdleLanguages() {
+        // the warm-up uses the languages of the snapshot
+        if (WarmStart.getInstance().isWarmingUp())
+            return;
+        try {
+            for (LowerKnowledgeBase wikipedia : UpperKnowledgeBase.getInstance().unloadIdleLanguages()) {
+                NerdEngine.getInstance().releaseModels(wikipedia);
+                Relatedness.getInstance().releaseCaches(wikipedia);
+            }
+        } catch (Exception e) {
+            // the next checks must still be scheduled
+            LOGGER.error("Error when unloading the idle languages", e);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.scienceminer.nerd.service;
+
+import com.scienceminer.nerd.disambiguation.NerdEngine;
+import com.scienceminer.nerd.disambiguation.Relatedness;
+import com.scienceminer.nerd.exceptions.NerdResourceException;
+import com.scienceminer.nerd.kb.UpperKnowledgeBase;
+import com.scienceminer.nerd.utilities.JsonUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Switch of the KB version used by the service, without restart. The new version is opened
+ * alongside the current one and warmed (models and hot entries, see WarmStart), then made
+ * the current version: the requests starting after the switch use the new version, while
+ * the requests in progress end with the previous one. The previous version is closed in the
+ * background once these requests are finished.
+ */
+public class KBSwitch {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(KBSwitch.class);
+
+    // delay between two warnings when a previous version is still used
+    private static final long DRAIN_WARNING_DELAY = 60000;
+
+    // only one switch at a time
+    private static final AtomicBoolean switching = new AtomicBoolean(false);
+
+    // previous versions waiting for the end of their requests
+    private static final Set<UpperKnowledgeBase> draining =
+        Collections.newSetFromMap(new ConcurrentHashMap<UpperKnowledgeBase, Boolean>());
+
+    /**
+     * Open, warm and switch to a KB version.
+     *
+     * @param version name of the version, i.e. of its directory in the KB versions directory
+     * @return the new current version
+     * @throws IllegalStateException if another switch is in progress
+     * @throws NerdResourceException if the version cannot be opened
+     */
+    public static UpperKnowledgeBase switchTo(String version) {
+        if (!switching.compareAndSet(false, true))
+            throw new IllegalStateException("A switch of KB version is already in progress");
+        try {
+            long start = System.currentTimeMillis();
+            LOGGER.info("Opening KB version " + version);
+            UpperKnowledgeBase kb = UpperKnowledgeBase.open(version);
+            WarmStart.getInstance().warm(kb);
+
+            UpperKnowledgeBase previous = UpperKnowledgeBase.switchTo(kb);
+            // the cached responses were produced with the previous version
+            NerdResponseCache.getInstance().invalidate();
+            PdfCache.getInstance().invalidateResults();
+            LOGGER.info("Switched to KB version " + version + " in " + (System.currentTimeMillis() - start) + " ms");
+
+            if ((previous != null) && (previous != kb))
+                close(previous);
+            return kb;
+        } finally {
+            switching.set(false);
+        }
+    }
+
+    /**
+     * Close a previous version once the requests using it are finished
+     */
+    private static void close(final UpperKnowledgeBase previous) {
+        draining.add(previous);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    // a version still used cannot be closed, the requests would fail on the
+                    // closed LMDB environments
+                    while (!previous.awaitDrained(DRAIN_WARNING_DELAY)) {
+                        LOGGER.warn("KB version " + previous.getVersion() + " still used by " +
+                            previous.getUsers() + " requests");
+                    }
+                    NerdEngine.getInstance().releaseModels(previous);
+                    Relatedness.getInstance().releaseCaches(previous);
+                    previous.close();
+                    LOGGER.info("KB version " + previous.getVersion() + " closed");
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    draining.remove(previous);
+                }
+            }
+        }, "nerd-kb-drain");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public static boolean isSwitching() {
+        return switching.get();
+    }
+
+    /**
+     * @param current the current KB version
+     * @return a JSON representation of the current KB version and of the previous versions
+     * not closed yet
+     */
+    public static String toJson(UpperKnowledgeBase current) {
+        StringWriter json = new StringWriter();
+        try {
+            json.write("{\"version\": ");
+            writeVersion(json, current.getVersion());
+            json.write(", \"switching\": " + switching.get());
+            json.write(", \"draining\": [");
+            boolean first = true;
+            for (UpperKnowledgeBase kb : draining) {
+                if (!first)
+                    json.write(", ");
+                first = false;
+                json.write("{\"version\": ");
+                writeVersion(json, kb.getVersion());
+                json.write(", \"requests\": " + kb.getUsers() + "}");
+            }
+            json.write("]}");
+        } catch (IOException e) {
+            // not possible with a StringWriter
+        }
+        return json.toString();
+    }
+
+    private static void writeVersion(StringWriter json, String version) throws IOException {
+        if (version == null) {
+            json.write("null");
+            return;
+        }
+        json.write("\"");
+        JsonUtils.writeEscaped(json, version);
+        json.write("\"");
+    }
+}
@@ -0,0 +1,34 @@
+package com.scienceminer.nerd.service;
+
+import com.scienceminer.nerd.kb.UpperKnowledgeBase;
+
+import javax.servlet.*;
+import java.io.IOException;
+
+/**
+ * Pin the current KB version for the whole processing of a request, including the writing
+ * of a streamed response, so that a request started before a switch of KB version ends with
+ * the version it started with (see KBSwitch).
+ */
+public class KBVersionFilter implements Filter {
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        boolean pinned = UpperKnowledgeBase.acquire();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (pinned)
+                UpperKnowledgeBase.release();
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
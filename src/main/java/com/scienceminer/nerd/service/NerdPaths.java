@@ -36,11 +36,31 @@ public interface NerdPaths {
 	 */
 	String ADMIN_PROPERTIES = ADMIN + "/properties";
 
+	/**
+	 * admin processing metrics
+	 */
+	String ADMIN_METRICS = ADMIN + "/metrics";
+
+	/**
+	 * admin cache of the responses
+	 */
+	String ADMIN_CACHE = ADMIN + "/cache";
+
+	/**
+	 * admin KB version
+	 */
+	String ADMIN_KB = ADMIN + "/kb";
+
 	/**
 	 * NERD disambiguation (query, text, shortText, PDF) entry point
 	 */
 	String DISAMBIGUATE= "disambiguate";
 
+	/**
+	 * NERD disambiguation of a batch of queries (JSON array or NDJSON)
+	 */
+	String DISAMBIGUATE_BATCH = DISAMBIGUATE + "/batch";
+
 	/**
 	 * Customisation entry points:
 	 *  - GET /customisations
@@ -53,6 +73,7 @@ public interface NerdPaths {
 	 * Concept lookup 
 	 */
 	String CONCEPT = "concept";
+	String CONCEPTS = "concepts";
 	String KB = "kb";
 
 
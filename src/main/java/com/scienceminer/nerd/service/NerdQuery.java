@@ -2,22 +2,20 @@ package com.scienceminer.nerd.service;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
-import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.core.JsonGenerationException;
-import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.core.io.JsonStringEncoder;
-import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
 import com.scienceminer.nerd.disambiguation.NerdContext;
 import com.scienceminer.nerd.disambiguation.NerdEntity;
 import com.scienceminer.nerd.disambiguation.Sentence;
+import com.scienceminer.nerd.disambiguation.TimeBudget;
+import com.scienceminer.nerd.disambiguation.TokenArena;
 import com.scienceminer.nerd.disambiguation.WeightedTerm;
 import com.scienceminer.nerd.exceptions.QueryException;
 import com.scienceminer.nerd.kb.Category;
 import com.scienceminer.nerd.kb.Statement;
 import com.scienceminer.nerd.utilities.Filter;
+import com.scienceminer.nerd.utilities.JsonUtils;
+import com.scienceminer.nerd.utilities.NerdMetrics;
 import com.scienceminer.nerd.utilities.NerdRestUtils;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang3.ArrayUtils;
@@ -31,9 +29,17 @@ import org.grobid.core.utilities.KeyGen;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import static org.apache.commons.lang3.StringUtils.isNotEmpty;
@@ -111,10 +117,30 @@ public class NerdQuery {
     // indicate if the full description of the entities should be included in the result
     private boolean full = false;
 
+    // ids of the properties of the statements to be included in the description of the 
+    // entities, null for all the properties
+    private List<String> properties = null;
+
     // query-based threshold, override default values in the config file only for the present query
     private double minSelectorScore;
     private double minRankerScore;
 
+    // indicate if the processing time of each stage should be included in the result
+    private boolean timings = false;
+
+    // per-stage timings of the processing of this query
+    private NerdMetrics.Trace trace = null;
+
+    // time budget in milliseconds for processing this query, 0 for the default of the service
+    private long timeBudget = 0;
+
+    // running time budget, null if the processing is not limited in time
+    private TimeBudget budget = null;
+
+    // tokenisation of the content of the query shared by the processing stages, built 
+    // when first needed and reset when the content changes
+    private TokenArena tokenArena = null;
+
 	public NerdQuery() {
 	}
 
@@ -143,6 +169,10 @@ public class NerdQuery {
         this.globalCategories = query.getGlobalCategories();
 
         this.filter = filter;
+        this.properties = query.getProperties();
+        this.timings = query.getTimings();
+        this.timeBudget = query.getTimeBudget();
+        this.budget = query.getBudget();
     }
 
     public String getText() {
@@ -151,6 +181,7 @@ public class NerdQuery {
 
     public void setText(String text) {
         this.text = text;
+        this.tokenArena = null;
     }
 
     public String getAbstract_() {
@@ -179,6 +210,7 @@ public class NerdQuery {
 
     public void setLanguage(Language lang) {
         this.language = lang;
+        this.tokenArena = null;
     }
 
     public Language getLanguage() {
@@ -243,6 +275,8 @@ public class NerdQuery {
 
     public void setSentences(List<Sentence> sentences) {
         this.sentences = sentences;
+        if (tokenArena != null)
+            tokenArena.setSentences(sentences);
     }
 
     public boolean getOnlyNER() {
@@ -259,6 +293,7 @@ public class NerdQuery {
 
     public void setShortText(String shortText) {
         this.shortText = shortText;
+        this.tokenArena = null;
     }
 
     public boolean getNbest() {
@@ -341,6 +376,7 @@ public class NerdQuery {
 
     public void setTokens(List<LayoutToken> tokens) {
         this.tokens = tokens;
+        this.tokenArena = null;
     }
 
     public NerdContext getContext() {
@@ -367,6 +403,27 @@ public class NerdQuery {
         this.full = full;
     }
 
+    public List<String> getProperties() {
+        return this.properties;
+    }
+
+    public void setProperties(List<String> properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * @return the ids of the properties of the statements to be retrieved for the entities, 
+     * including the property of the filter, null for all the properties
+     */
+    @JsonIgnore
+    public List<String> getStatementProperties() {
+        if ( (properties == null) || (filter == null) || (filter.getProperty() == null) )
+            return properties;
+        List<String> statementProperties = new ArrayList<String>(properties);
+        statementProperties.add(filter.getProperty().getId());
+        return statementProperties;
+    }
+
     public double getMinSelectorScore() {
         return this.minSelectorScore;
     }
@@ -383,14 +440,70 @@ public class NerdQuery {
         this.minRankerScore = minRankerScore;
     }
 
+    public boolean getTimings() {
+        return this.timings;
+    }
+
+    public void setTimings(boolean timings) {
+        this.timings = timings;
+    }
+
+    @JsonIgnore
+    public NerdMetrics.Trace getTrace() {
+        return this.trace;
+    }
+
+    public void setTrace(NerdMetrics.Trace trace) {
+        this.trace = trace;
+    }
+
+    public long getTimeBudget() {
+        return this.timeBudget;
+    }
+
+    public void setTimeBudget(long timeBudget) {
+        this.timeBudget = timeBudget;
+    }
+
+    @JsonIgnore
+    public TimeBudget getBudget() {
+        return this.budget;
+    }
+
+    /**
+     * @return the tokenisation of the content of the query (text, short text or layout 
+     * tokens, in this order), built once for all the processing stages, or null if there 
+     * is no content
+     */
+    @JsonIgnore
+    public TokenArena getTokenArena() {
+        if (tokenArena == null) {
+            if (isNotEmpty(text))
+                tokenArena = TokenArena.fromText(text, language);
+            else if (isNotEmpty(shortText))
+                tokenArena = TokenArena.fromText(shortText, language);
+            else if (CollectionUtils.isNotEmpty(tokens))
+                tokenArena = TokenArena.fromLayoutTokens(tokens, language);
+            if (tokenArena != null)
+                tokenArena.setSentences(sentences);
+        }
+        return tokenArena;
+    }
+
+    /**
+     * Start the time budget of the query, given in the query or by default the one of 
+     * the service. No budget is started if none is set.
+     */
+    public void startBudget(long defaultTimeBudget) {
+        long theBudget = (timeBudget > 0) ? timeBudget : defaultTimeBudget;
+        if (theBudget > 0)
+            this.budget = new TimeBudget(theBudget);
+    }
+
     public String toJSON() {
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
-        mapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
-        mapper.setSerializationInclusion(JsonInclude.Include.NON_DEFAULT);
         String json = null;
         try {
-            json = mapper.writeValueAsString(this);
+            json = JsonUtils.getQueryMapper().writeValueAsString(this);
 
         } catch (IOException e) {
             throw new QueryException("Cannot serialise this query", e);
@@ -399,84 +512,153 @@ public class NerdQuery {
     }
 
     public String toJSONClean(Document doc) {
-        JsonStringEncoder encoder = JsonStringEncoder.getInstance();
-        StringBuilder buffer = new StringBuilder();
-        buffer.append("{");
+        StringWriter writer = new StringWriter();
+        try {
+            writeJSONClean(doc, writer);
+        } catch (IOException e) {
+            throw new QueryException("Cannot serialise this query", e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Same as toJSONClean(), but the response is written directly in the output stream
+     * when sent by the service, without building the complete JSON string in memory.
+     *
+     * @param pageSizes the height and width of the pages of the document, possibly null
+     */
+    public StreamingOutput toStreamingJSONClean(final double[][] pageSizes) {
+        return new StreamingOutput() {
+            @Override
+            public void write(OutputStream output) throws IOException {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+                writeJSONClean(pageSizes, writer);
+                writer.flush();
+            }
+        };
+    }
+
+    /**
+     * Write the JSON serialisation of the query, the entities being written one by one
+     * in the writer.
+     */
+    public void writeJSONClean(Document doc, Writer writer) throws IOException {
+        writeJSONClean(getPageSizes(doc), writer);
+    }
+
+    /**
+     * Same as writeJSONClean(Document, Writer), with the height and width of the pages
+     * of the document, possibly null.
+     */
+    public void writeJSONClean(double[][] pageSizes, Writer writer) throws IOException {
+        writer.write("{");
 
         // server runtime is always present (even at 0.0)
-        buffer.append("\"runtime\": " + runtime);
+        writer.write("\"runtime\": ");
+        writer.write(Long.toString(runtime));
 
         // parameters
-        buffer.append(", \"onlyNER\": " + onlyNER);
-        buffer.append(", \"nbest\": " + nbest);
+        writer.write(", \"onlyNER\": ");
+        writer.write(Boolean.toString(onlyNER));
+        writer.write(", \"nbest\": ");
+        writer.write(Boolean.toString(nbest));
+
+        // optional per-stage timings
+        if (timings && (trace != null)) {
+            writer.write(", \"timings\": ");
+            writer.write(trace.toJson());
+        }
+
+        // degradations applied for processing the query in its time budget
+        if (budget != null) {
+            Set<TimeBudget.Degradation> degradations = budget.getDegradations();
+            if (!degradations.isEmpty()) {
+                writer.write(", \"degradations\": [");
+                boolean first = true;
+                for (TimeBudget.Degradation degradation : degradations) {
+                    if (!first)
+                        writer.write(", ");
+                    first = false;
+                    writer.write("\"" + degradation.name() + "\"");
+                }
+                writer.write("]");
+            }
+        }
 
         // parameters
         if (ArrayUtils.isNotEmpty(processSentence)) {
-            buffer.append(", \"processSentence\": [");
+            writer.write(", \"processSentence\": [");
             for (int i = 0; i < processSentence.length; i++) {
                 if (i != 0) {
-                    buffer.append(", ");
+                    writer.write(", ");
                 }
-                buffer.append(processSentence[i].intValue());
+                writer.write(Integer.toString(processSentence[i].intValue()));
             }
-            buffer.append("]");
+            writer.write("]");
         }
 
         // surface form
         if (text != null) {
-            byte[] encoded = encoder.quoteAsUTF8(text);
-            String output = new String(encoded);
-            buffer.append(", \"text\": \"" + output + "\"");
+            writer.write(", \"text\": \"");
+            JsonUtils.writeEscaped(writer, text);
+            writer.write("\"");
             if (CollectionUtils.isNotEmpty(sentences)) {
-                buffer.append(",").append(Sentence.listToJSON(sentences));
+                writer.write(",");
+                writer.write(Sentence.listToJSON(sentences));
             }
         }
 
         if (shortText != null) {
-            byte[] encoded = encoder.quoteAsUTF8(shortText);
-            String output = new String(encoded);
-            buffer.append(", \"shortText\": \"" + output + "\"");
+            writer.write(", \"shortText\": \"");
+            JsonUtils.writeEscaped(writer, shortText);
+            writer.write("\"");
         }
 
         if (CollectionUtils.isNotEmpty(termVector)) {
-            buffer.append(", \"termVector\": [ ");
+            writer.write(", \"termVector\": [ ");
             boolean begin = true;
             for (WeightedTerm term : termVector) {
                 if (!begin)
-                    buffer.append(", ");
+                    writer.write(", ");
                 else
                     begin = false;
-                buffer.append(term.toJson());
+                writer.write(term.toJson());
             }
-            buffer.append(" ]");
+            writer.write(" ]");
         }
 
         String lang = "en"; // default language
         if (language != null) {
-            buffer.append(", \"language\": " + language.toJSON());
+            writer.write(", \"language\": ");
+            writer.write(language.toJSON());
             lang = language.getLang();
         }
 
         // if available, document level distribution of categories
         if (CollectionUtils.isNotEmpty(globalCategories)) {
-            buffer.append(", \"global_categories\": [");
+            writer.write(", \"global_categories\": [");
             boolean first = true;
             for (com.scienceminer.nerd.kb.Category category : globalCategories) {
-                byte[] encoded = encoder.quoteAsUTF8(category.getName());
-                String output = new String(encoded);
                 if (first) {
                     first = false;
                 } else
-                    buffer.append(", ");
-                buffer.append("{\"weight\" : " + category.getWeight() + ", \"source\" : \"wikipedia-" + lang
-                        + "\", \"category\" : \"" + output + "\", ");
-                buffer.append("\"page_id\" : " + category.getWikiPageID() + "}");
+                    writer.write(", ");
+                writer.write("{\"weight\" : ");
+                writer.write(Double.toString(category.getWeight()));
+                writer.write(", \"source\" : \"wikipedia-");
+                writer.write(String.valueOf(lang));
+                writer.write("\", \"category\" : \"");
+                JsonUtils.writeEscaped(writer, category.getName());
+                writer.write("\", ");
+                writer.write("\"page_id\" : ");
+                writer.write(Integer.toString(category.getWikiPageID()));
+                writer.write("}");
             }
-            buffer.append("]");
+            writer.write("]");
         }
 
         if (CollectionUtils.isNotEmpty(entities)) {
-            buffer.append(", \"entities\": [");
+            writer.write(", \"entities\": [");
             boolean first = true;
             for (NerdEntity entity : entities) {
                 if (filter != null) {
@@ -493,37 +675,51 @@ public class NerdQuery {
                 if (first)
                     first = false;
                 else
-                    buffer.append(", ");
+                    writer.write(", ");
                 if (this.full)
-                    buffer.append(entity.toJsonFull());
+                    entity.writeJsonFull(writer);
                 else   
-                    buffer.append(entity.toJsonCompact());
+                    entity.writeJsonCompact(writer);
             }
-            buffer.append("]");
+            writer.write("]");
         }
 
         // possible page information
         // page height and width
-        if (doc != null) {
-            List<Page> pages = doc.getPages();
+        if (pageSizes != null) {
             boolean first = true;
-            if (pages != null) {
-                buffer.append(", \"pages\":[");
-                for (Page page : pages) {
-                    if (first)
-                        first = false;
-                    else
-                        buffer.append(", ");
-                    buffer.append("{\"page_height\":" + page.getHeight());
-                    buffer.append(", \"page_width\":" + page.getWidth() + "}");
-                }
-                buffer.append("]");
+            writer.write(", \"pages\":[");
+            for (double[] pageSize : pageSizes) {
+                if (first)
+                    first = false;
+                else
+                    writer.write(", ");
+                writer.write("{\"page_height\":");
+                writer.write(String.valueOf(pageSize[0]));
+                writer.write(", \"page_width\":");
+                writer.write(String.valueOf(pageSize[1]));
+                writer.write("}");
             }
+            writer.write("]");
         }
 
-        buffer.append("}");
+        writer.write("}");
+    }
 
-        return buffer.toString();
+    /**
+     * @return the height and width of the pages of the document, or null if the document or
+     * its pages are not available
+     */
+    public static double[][] getPageSizes(Document doc) {
+        if ((doc == null) || (doc.getPages() == null))
+            return null;
+        List<Page> pages = doc.getPages();
+        double[][] pageSizes = new double[pages.size()][2];
+        for (int i = 0; i < pages.size(); i++) {
+            pageSizes[i][0] = pages.get(i).getHeight();
+            pageSizes[i][1] = pages.get(i).getWidth();
+        }
+        return pageSizes;
     }
 
     @Override
@@ -576,10 +772,7 @@ public class NerdQuery {
         }
 
         try {
-            ObjectMapper mapper = new ObjectMapper();
-            mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, true);
-            mapper.configure(JsonParser.Feature.ALLOW_SINGLE_QUOTES, true);
-            return mapper.readValue(theQuery, NerdQuery.class);
+            return JsonUtils.getQueryMapper().readValue(theQuery, NerdQuery.class);
         } catch(JsonGenerationException | JsonMappingException e) {
             throw new QueryException("JSON cannot be processed:\n " + theQuery + "\n ", e);
         } catch(IOException e) {
@@ -0,0 +1,309 @@
+package com.scienceminer.nerd.service;
+
+import com.scienceminer.nerd.kb.Customisations;
+import com.scienceminer.nerd.kb.UpperKnowledgeBase;
+import com.scienceminer.nerd.utilities.NerdMetrics;
+import com.scienceminer.nerd.utilities.NerdProperties;
+import org.apache.commons.collections.CollectionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the serialised responses of the idempotent queries (short text disambiguation
+ * and term lookup), the search front-ends sending many times the same queries.
+ *
+ * Responses are keyed by a canonical form of the query and the KB version, and evicted in
+ * LRU order when the memory budget is exceeded, or when their time to live is over. The cache
+ * is cleared when the customisations change, and can be cleared by the admin service when
+ * the KB changes.
+ * Concurrent misses for the same key are coalesced: only one thread computes the response
+ * and the others wait for it.
+ *
+ * Hits and misses are counted in the metrics, a coalesced miss being counted as a hit.
+ */
+public class NerdResponseCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NerdResponseCache.class);
+
+    public static final String SHORT_TEXT = "responseShortText";
+    public static final String TERM_LOOKUP = "responseTermLookup";
+
+    // estimated memory overhead of an entry besides its key and response
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private static final char SEPARATOR = '\u0001';
+
+    private static volatile NerdResponseCache instance = null;
+
+    private final long maxBytes;
+    private final long ttl;
+
+    // access ordered map, the eldest entry is the least recently used
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(1024, 0.75f, true);
+    private long bytes = 0;
+
+    // responses being computed
+    private final ConcurrentMap<String, FutureTask<byte[]>> pending = new ConcurrentHashMap<>();
+
+    // incremented at each invalidation, responses computed before are not stored
+    private final AtomicLong generation = new AtomicLong();
+    private volatile long customisationVersion;
+
+    private static class Entry {
+        private final byte[] response;
+        private final long expiration;
+        private final int size;
+
+        private Entry(String key, byte[] response, long expiration) {
+            this.response = response;
+            this.expiration = expiration;
+            this.size = response.length + 2 * key.length() + ENTRY_OVERHEAD;
+        }
+    }
+
+    public static NerdResponseCache getInstance() {
+        if (instance == null)
+            getNewInstance();
+        return instance;
+    }
+
+    private static synchronized void getNewInstance() {
+        if (instance != null)
+            return;
+        instance = new NerdResponseCache(NerdProperties.getResponseCacheSize() * 1024 * 1024,
+            NerdProperties.getResponseCacheTtl() * 1000);
+    }
+
+    /**
+     * @param maxBytes memory budget of the cache, 0 to disable the cache
+     * @param ttl time to live of the responses in milliseconds
+     */
+    protected NerdResponseCache(long maxBytes, long ttl) {
+        this.maxBytes = maxBytes;
+        this.ttl = ttl;
+        this.customisationVersion = Customisations.getVersion();
+    }
+
+    /**
+     * Return the cached response for the key, or compute and cache it.
+     *
+     * @param cache name of the cache for the metrics
+     * @param key canonical form of the query
+     * @param computation computation of the serialised response, returning null if the
+     *                    response must not be cached
+     * @return the response, or null if it has not been cached (the caller must then use
+     * its own result, or compute it if it is not the computing thread)
+     */
+    public byte[] get(String cache, String key, Callable<byte[]> computation) {
+        if (maxBytes <= 0) {
+            return call(computation);
+        }
+
+        // customisations are used by the disambiguation
+        long version = Customisations.getVersion();
+        if (version != customisationVersion) {
+            customisationVersion = version;
+            invalidate();
+        }
+
+        byte[] response = lookup(key);
+        if (response != null) {
+            NerdMetrics.countCacheHit(cache);
+            return response;
+        }
+
+        FutureTask<byte[]> task = new FutureTask<>(computation);
+        FutureTask<byte[]> running = pending.putIfAbsent(key, task);
+        if (running != null) {
+            // same query being computed by another thread
+            NerdMetrics.countCacheHit(cache);
+            return getResult(running);
+        }
+
+        NerdMetrics.countCacheMiss(cache);
+        long theGeneration = generation.get();
+        try {
+            task.run();
+            response = getResult(task);
+            if (response != null)
+                store(key, response, theGeneration);
+            return response;
+        } finally {
+            pending.remove(key, task);
+        }
+    }
+
+    private static byte[] call(Callable<byte[]> computation) {
+        try {
+            return computation.call();
+        } catch (Exception e) {
+            LOGGER.warn("Computation of a response failed.", e);
+            return null;
+        }
+    }
+
+    private static byte[] getResult(FutureTask<byte[]> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            LOGGER.warn("Computation of a response failed.", e.getCause());
+            return null;
+        }
+    }
+
+    private synchronized byte[] lookup(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null)
+            return null;
+        if (entry.expiration < System.currentTimeMillis()) {
+            entries.remove(key);
+            bytes -= entry.size;
+            return null;
+        }
+        return entry.response;
+    }
+
+    private synchronized void store(String key, byte[] response, long theGeneration) {
+        if (theGeneration != generation.get())
+            return;
+        Entry entry = new Entry(key, response, System.currentTimeMillis() + ttl);
+        if (entry.size > maxBytes)
+            return;
+        Entry previous = entries.put(key, entry);
+        if (previous != null)
+            bytes -= previous.size;
+        bytes += entry.size;
+
+        Iterator<Entry> iterator = entries.values().iterator();
+        while ((bytes > maxBytes) && iterator.hasNext()) {
+            bytes -= iterator.next().size;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Remove all the cached responses, for instance after a change of the KB.
+     */
+    public synchronized void invalidate() {
+        generation.incrementAndGet();
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the serialised entity of a successful response, to be cached, or null if the 
+     * response cannot be cached
+     */
+    public static byte[] getCacheableEntity(Response response) throws IOException {
+        if ((response == null) || (response.getStatus() != Status.OK.getStatusCode()))
+            return null;
+        Object entity = response.getEntity();
+        if (entity instanceof byte[]) {
+            return (byte[]) entity;
+        } else if (entity instanceof String) {
+            return ((String) entity).getBytes(StandardCharsets.UTF_8);
+        } else if (entity instanceof StreamingOutput) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            ((StreamingOutput) entity).write(output);
+            return output.toByteArray();
+        }
+        return null;
+    }
+
+    private static final byte[] RUNTIME_PREFIX = "{\"runtime\": ".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * @return the serialised response with its runtime, given first in the responses of the
+     * queries (see NerdQuery.writeJSONClean), replaced by the given one, so that a cached
+     * response does not replay the runtime of the query which computed it. A response
+     * without runtime is returned as it is.
+     */
+    public static byte[] withRuntime(byte[] response, long runtime) {
+        if (response.length < RUNTIME_PREFIX.length)
+            return response;
+        for (int i = 0; i < RUNTIME_PREFIX.length; i++) {
+            if (response[i] != RUNTIME_PREFIX[i])
+                return response;
+        }
+        int end = RUNTIME_PREFIX.length;
+        while ((end < response.length) && (response[end] >= '0') && (response[end] <= '9'))
+            end++;
+        byte[] value = Long.toString(runtime).getBytes(StandardCharsets.UTF_8);
+        byte[] result = new byte[RUNTIME_PREFIX.length + value.length + response.length - end];
+        System.arraycopy(RUNTIME_PREFIX, 0, result, 0, RUNTIME_PREFIX.length);
+        System.arraycopy(value, 0, result, RUNTIME_PREFIX.length, value.length);
+        System.arraycopy(response, end, result, RUNTIME_PREFIX.length + value.length, response.length - end);
+        return result;
+    }
+
+    /**
+     * @return the canonical form of a short text query, or null if the query cannot be
+     * cached (entities or context given in the query, per-query timings)
+     */
+    public static String getShortTextKey(NerdQuery nerdQuery) {
+        if ((nerdQuery.getShortText() == null) || CollectionUtils.isNotEmpty(nerdQuery.getEntities()) ||
+                CollectionUtils.isNotEmpty(nerdQuery.getTermVector()) || (nerdQuery.getContext() != null) ||
+                (nerdQuery.getFilter() != null) || nerdQuery.getTimings())
+            return null;
+
+        StringBuilder key = new StringBuilder();
+        // the text is kept as it is, the offsets of the response are relative to it
+        key.append(nerdQuery.getShortText()).append(SEPARATOR);
+        key.append(getKBVersion()).append(SEPARATOR);
+        if ((nerdQuery.getLanguage() != null) && (nerdQuery.getLanguage().getLang() != null))
+            key.append(nerdQuery.getLanguage().getLang());
+        key.append(SEPARATOR).append(nerdQuery.getCustomisation());
+        key.append(SEPARATOR).append(nerdQuery.getNbest());
+        key.append(SEPARATOR).append(nerdQuery.getOnlyNER());
+        key.append(SEPARATOR).append(nerdQuery.getFull());
+        key.append(SEPARATOR).append(nerdQuery.getProperties());
+        key.append(SEPARATOR).append(nerdQuery.getSentence());
+        key.append(SEPARATOR).append(nerdQuery.getFormat());
+        key.append(SEPARATOR).append(nerdQuery.getMinSelectorScore());
+        key.append(SEPARATOR).append(nerdQuery.getMinRankerScore());
+        key.append(SEPARATOR);
+        if (nerdQuery.getResultLanguages() != null) {
+            List<String> languages = new ArrayList<>(new TreeSet<>(nerdQuery.getResultLanguages()));
+            key.append(languages);
+        }
+        return key.toString();
+    }
+
+    /**
+     * @return the canonical form of a term lookup
+     */
+    public static String getTermKey(String term, String lang) {
+        return term + SEPARATOR + lang + SEPARATOR + getKBVersion();
+    }
+
+    /**
+     * @return the version of the KB used by the current request, which is part of the keys:
+     * a request ending with the previous version after a switch must not store its
+     * response for the requests using the new version
+     */
+    static String getKBVersion() {
+        String version = UpperKnowledgeBase.getInstance().getVersion();
+        return (version == null) ? "" : version;
+    }
+}
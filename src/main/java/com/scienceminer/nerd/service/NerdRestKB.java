@@ -1,10 +1,12 @@
 package com.scienceminer.nerd.service;
 
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.io.*;
 import com.scienceminer.nerd.disambiguation.NerdCategories;
 import com.scienceminer.nerd.disambiguation.NerdEntity;
 import com.scienceminer.nerd.kb.Definition;
+import com.scienceminer.nerd.kb.db.WikidataIds;
 import com.scienceminer.nerd.kb.db.WikipediaDomainMap;
 import com.scienceminer.nerd.kb.model.Article;
 import com.scienceminer.nerd.kb.model.Label;
@@ -56,16 +58,34 @@ public class NerdRestKB {
 	 */
 	private static final Logger LOGGER = LoggerFactory.getLogger(NerdRestKB.class);
 
+	// maximum number of concepts in a page of concepts looked up by statement
+	private static final int MAX_CONCEPTS_BY_STATEMENT = 10000;
+
 	/**
 	 *  Get the information for a concept.
 	 * 
 	 *  @param id identifier of the concept      
+	 *  @param properties comma-separated ids of the properties of the statements, null 
+	 *  for all the properties
 	 *
 	 *  @return a response object containing the information related to the identified concept.
 	 */
-	public static Response getConceptInfo(String id, String lang) {
+	public static Response getConceptInfo(String id, String lang, String properties) {
 		//LOGGER.debug(methodLogIn());       
 
+		List<String> propertyIds = null;
+		if (StringUtils.isNotBlank(properties)) {
+			propertyIds = new ArrayList<String>();
+			for (String propertyId : properties.split(",")) {
+				propertyId = propertyId.trim();
+				if (!propertyId.startsWith("P") || !WikidataIds.isValid(propertyId)) {
+					LOGGER.error("Not a valid property identifier: " + propertyId + ". Bad request.");
+					return Response.status(Status.BAD_REQUEST).build();
+				}
+				propertyIds.add(propertyId);
+			}
+		}
+
 		Response response = null;
 		String retVal = null;
 		try {
@@ -73,13 +93,13 @@ public class NerdRestKB {
 			
 			if (id.startsWith("Q")) {
 				// we have a concept
-				response = getWikidataConceptInfo(id);
+				response = getWikidataConceptInfo(id, propertyIds);
 			} else if (id.startsWith("P")) {
 				// we have a property
-				response = getWikidataConceptInfo(id);
+				response = getWikidataConceptInfo(id, propertyIds);
 			} else {
 				// we have a wikipedia page id, and the lang field matters
-				response = getWikipediaConceptInfo(id, lang);
+				response = getWikipediaConceptInfo(id, lang, propertyIds);
 			}
 		}
 		catch(NoSuchElementException nseExp) {
@@ -95,7 +115,7 @@ public class NerdRestKB {
 		return response;
 	}
 
-	private static Response getWikipediaConceptInfo(String id, String lang) throws Exception {
+	private static Response getWikipediaConceptInfo(String id, String lang, List<String> propertyIds) throws Exception {
 		Response response = null;
 		Integer identifier = null;
 		try {
@@ -167,9 +187,8 @@ public class NerdRestKB {
 					Map<String, LowerKnowledgeBase> wikipedias = 
 						UpperKnowledgeBase.getInstance().getWikipediaConfs();
 					//Map<String, WikipediaDomainMap> wikipediaDomainMaps = Lexicon.getInstance().getWikipediaDomainMaps();
-					Map<String, WikipediaDomainMap> wikipediaDomainMaps = 
-						UpperKnowledgeBase.getInstance().getWikipediaDomainMaps();
-					WikipediaDomainMap wikipediaDomainMap = wikipediaDomainMaps.get(lang);
+					WikipediaDomainMap wikipediaDomainMap = 
+						UpperKnowledgeBase.getInstance().getWikipediaDomainMap(lang);
 					if (wikipediaDomainMap == null)
 						System.out.println("wikipediaDomainMap is null for " + lang);
 					else
@@ -178,7 +197,8 @@ public class NerdRestKB {
 					entity.setWikipediaMultilingualRef(article.getTranslations(), targetLanguages, wikipedias);
 					entity.setWikidataId(article.getWikidataId());
 
-					List<Statement> statements = UpperKnowledgeBase.getInstance().getStatements(entity.getWikidataId());
+					List<Statement> statements = 
+						UpperKnowledgeBase.getInstance().getStatements(entity.getWikidataId(), propertyIds);
 					entity.setStatements(statements);
 
 					String json = entity.toJsonFull();
@@ -197,7 +217,7 @@ public class NerdRestKB {
 		return response;
 	}
 
-	private static Response getWikidataConceptInfo(String id) {
+	private static Response getWikidataConceptInfo(String id, List<String> propertyIds) {
 		NerdEntity entity = new NerdEntity();
 		Response response = null;
 		entity.setLang("en");
@@ -253,9 +273,8 @@ public class NerdRestKB {
 						// translations
 						Map<String, LowerKnowledgeBase> wikipedias = 
 							UpperKnowledgeBase.getInstance().getWikipediaConfs();
-						Map<String, WikipediaDomainMap> wikipediaDomainMaps = 
-							UpperKnowledgeBase.getInstance().getWikipediaDomainMaps();
-						WikipediaDomainMap wikipediaDomainMap = wikipediaDomainMaps.get("en");
+						WikipediaDomainMap wikipediaDomainMap = 
+							UpperKnowledgeBase.getInstance().getWikipediaDomainMap("en");
 						if (wikipediaDomainMap == null)
 							System.out.println("wikipediaDomainMap is null for en");
 						else
@@ -270,11 +289,6 @@ public class NerdRestKB {
 				return response;
 			}
 
-			entity.setWikidataId(id);
-
-			List<Statement> statements = 
-				UpperKnowledgeBase.getInstance().getStatements(id);
-			entity.setStatements(statements);
 		} else if (id.startsWith("P")) {
 			Property property = knowledgeBase.getProperty(id);
 			entity.setPreferredTerm(property.getName());
@@ -284,7 +298,7 @@ public class NerdRestKB {
 		entity.setWikidataId(id);
 
 		List<Statement> statements = 
-			UpperKnowledgeBase.getInstance().getStatements(id);
+			UpperKnowledgeBase.getInstance().getStatements(id, propertyIds);
 		entity.setStatements(statements);
 
 		String json = entity.toJsonFull();
@@ -299,6 +313,66 @@ public class NerdRestKB {
 		return response;
 	}
 
+	/**
+	 *  Get the concepts having a statement with a given property and value, one page at
+	 *  a time.
+	 * 
+	 *  @param propertyId the property of the statement
+	 *  @param value the value of the statement, a concept id for an item value
+	 *  @param type "item" or "string", null for an item value if the value is a concept 
+	 *  id and a string value otherwise
+	 *  @param cursor the cursor returned with the previous page, null for the first page
+	 *  @param limit the maximum number of concepts in the page
+	 *
+	 *  @return a response object containing the concept ids and the cursor of the next 
+	 *  page if any
+	 */
+	public static Response getConceptsByStatement(String propertyId, String value, String type, String cursor, int limit) {
+		if ( StringUtils.isBlank(propertyId) || StringUtils.isBlank(value) || (limit <= 0) || (limit > MAX_CONCEPTS_BY_STATEMENT) )
+			return Response.status(Status.BAD_REQUEST).build();
+		boolean itemValue = false;
+		if (type == null)
+			itemValue = WikidataIds.isValid(value);
+		else if (type.equals("item"))
+			itemValue = true;
+		else if (!type.equals("string"))
+			return Response.status(Status.BAD_REQUEST).build();
+		if ( (cursor != null) && !WikidataIds.isValid(cursor) )
+			return Response.status(Status.BAD_REQUEST).build();
+
+		UpperKnowledgeBase knowledgeBase = UpperKnowledgeBase.getInstance();
+		if (!knowledgeBase.hasStatementIndex()) {
+			LOGGER.error("The statement index has not been built (useStatementIndex in kb.yaml).");
+			return Response.status(Status.SERVICE_UNAVAILABLE).build();
+		}
+
+		Response response = null;
+		try {
+			List<String> conceptIds = 
+				knowledgeBase.getConceptIdsByStatement(propertyId, value, itemValue, cursor, limit);
+
+			ObjectMapper mapper = new ObjectMapper();
+			ObjectNode root = mapper.createObjectNode();
+			root.put("property", propertyId);
+			root.put("value", value);
+			root.put("type", itemValue ? "item" : "string");
+			ArrayNode concepts = root.putArray("concepts");
+			for (String conceptId : conceptIds)
+				concepts.add(conceptId);
+			// a full page can be followed by other concepts
+			if (conceptIds.size() == limit)
+				root.put("nextCursor", conceptIds.get(conceptIds.size() - 1));
+
+			response = Response.status(Status.OK).entity(mapper.writeValueAsString(root))
+				.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON+"; charset=UTF-8" )
+				.build();
+		} catch(Exception e) {
+			LOGGER.error("An unexpected exception occurs. ", e);
+			response = Response.status(Status.INTERNAL_SERVER_ERROR).build();
+		}
+		return response;
+	}
+
 	/**
 	 *  Get the list of all ambiguous concepts that can be realized by a given term with 
 	 *  associated conditional probability.
@@ -307,7 +381,34 @@ public class NerdRestKB {
 	 *
 	 *  @return a response object containing the concept information related to the term.
 	 */
-	public static Response getTermLookup(String term, String lang) {
+	public static Response getTermLookup(final String term, final String lang) {
+		if ((term == null) || (term.trim().length() == 0))
+			return termLookup(term, lang);
+
+		// the responses are cached, the same terms being frequently looked up
+		final Response[] computed = new Response[1];
+		byte[] json = NerdResponseCache.getInstance().get(NerdResponseCache.TERM_LOOKUP, 
+			NerdResponseCache.getTermKey(term, lang), new Callable<byte[]>() {
+				@Override
+				public byte[] call() throws Exception {
+					computed[0] = termLookup(term, lang);
+					return NerdResponseCache.getCacheableEntity(computed[0]);
+				}
+			});
+
+		if (json != null) {
+			return Response.status(Status.OK).entity(json)
+				.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON+"; charset=UTF-8" )
+				.build();
+		} else if (computed[0] != null) {
+			return computed[0];
+		} else {
+			// the response computed by a concurrent identical lookup has not been cached
+			return termLookup(term, lang);
+		}
+	}
+
+	private static Response termLookup(String term, String lang) {
 		//LOGGER.debug(methodLogIn());       
 
 		Response response = null;
@@ -1,5 +1,7 @@
 package com.scienceminer.nerd.service;
 
+import com.scienceminer.nerd.exceptions.NerdResourceException;
+import com.scienceminer.nerd.kb.UpperKnowledgeBase;
 import com.scienceminer.nerd.utilities.*;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -133,6 +135,93 @@ public class NerdRestProcessAdmin {
         return response;
     }
 
+    /**
+     * Return the processing metrics (per-stage timers, database reads, cache hits)
+     * accumulated since the start of the service or the last reset.
+     *
+     * @param authToken password
+     * @return Response containing the metrics in JSON.
+     */
+    public static Response getMetrics(String authToken) {
+        if (!isAuthTokenOK(authToken)) return Response.status(Status.NOT_FOUND).build();
+
+        return Response
+                .status(Status.OK)
+                .entity(NerdMetrics.toJson())
+                .type(MediaType.APPLICATION_JSON)
+                .build();
+    }
+
+    /**
+     * Reset the processing metrics.
+     *
+     * @param authToken password
+     */
+    public static Response resetMetrics(String authToken) {
+        if (!isAuthTokenOK(authToken)) return Response.status(Status.NOT_FOUND).build();
+
+        NerdMetrics.reset();
+        return Response.status(Status.OK).build();
+    }
+
+    /**
+     * Clear the cache of responses, including the results of the cached PDF, to be called
+     * when the KB has changed.
+     *
+     * @param authToken password
+     */
+    public static Response clearResponseCache(String authToken) {
+        if (!isAuthTokenOK(authToken)) return Response.status(Status.NOT_FOUND).build();
+
+        NerdResponseCache.getInstance().invalidate();
+        PdfCache.getInstance().invalidateResults();
+        return Response.status(Status.OK).build();
+    }
+
+    /**
+     * Return the current KB version and the previous versions still used by requests.
+     *
+     * @param authToken password
+     */
+    public static Response getKBVersion(String authToken) {
+        if (!isAuthTokenOK(authToken)) return Response.status(Status.NOT_FOUND).build();
+
+        return Response
+                .status(Status.OK)
+                .entity(KBSwitch.toJson(UpperKnowledgeBase.getInstance()))
+                .type(MediaType.APPLICATION_JSON)
+                .build();
+    }
+
+    /**
+     * Open and warm a KB version, then make it the version used by the new requests. The
+     * previous version is closed once the requests using it are finished.
+     *
+     * @param authToken password
+     * @param version name of the version directory
+     */
+    public static Response switchKBVersion(String authToken, String version) {
+        if (!isAuthTokenOK(authToken)) return Response.status(Status.NOT_FOUND).build();
+
+        try {
+            UpperKnowledgeBase kb = KBSwitch.switchTo(version);
+            return Response
+                    .status(Status.OK)
+                    .entity(KBSwitch.toJson(kb))
+                    .type(MediaType.APPLICATION_JSON)
+                    .build();
+        } catch (IllegalStateException e) {
+            LOGGER.warn(e.getMessage());
+            return Response.status(Status.CONFLICT).build();
+        } catch (NerdResourceException e) {
+            LOGGER.error("Cannot switch to the KB version " + version, e);
+            return Response.status(Status.BAD_REQUEST).build();
+        } catch (Exception e) {
+            LOGGER.error("Cannot switch to the KB version " + version, e);
+            return Response.status(Status.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     public static Response getProperty(String authToken, String name) {
         if (!isAuthTokenOK(authToken)) return Response.status(Status.NOT_FOUND).build();
 
@@ -177,6 +266,9 @@ public class NerdRestProcessAdmin {
             NerdServiceProperties.reload();
 
             property.setValue(newValue);
+            // cached responses might depend on the changed property
+            NerdResponseCache.getInstance().invalidate();
+            PdfCache.getInstance().invalidateResults();
 
         } catch (Exception e) {
             LOGGER.error("Something went wrong while updating property " + key + " with value " + newValue, e);
@@ -0,0 +1,288 @@
+package com.scienceminer.nerd.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.scienceminer.nerd.exceptions.QueryException;
+import com.scienceminer.nerd.kb.UpperKnowledgeBase;
+import com.scienceminer.nerd.kb.model.Label;
+import com.scienceminer.nerd.utilities.JsonUtils;
+import com.scienceminer.nerd.utilities.NerdMetrics;
+import com.scienceminer.nerd.utilities.NerdProperties;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Processing of a batch of queries sent in one request, either as a JSON array or as
+ * NDJSON (one query per line). The queries are processed in parallel by a bounded pool
+ * of workers and the results are streamed back as NDJSON, one line per query:
+ *
+ *     {"index": 0, "status": 200, "result": { ...usual disambiguation response... }}
+ *     {"index": 1, "status": 400, "error": "Bad Request"}
+ *
+ * where index is the position of the query in the batch. Results are written in the order
+ * of the batch, or as soon as they are available when the order is not requested.
+ *
+ * The labels resolved against the KB are shared by all the queries of the batch.
+ */
+public class NerdRestProcessBatch {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NerdRestProcessBatch.class);
+
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+    private static volatile ExecutorService executor = null;
+
+    private static ExecutorService getExecutor() {
+        if (executor == null)
+            getNewExecutor();
+        return executor;
+    }
+
+    private static synchronized void getNewExecutor() {
+        if (executor != null)
+            return;
+        final AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(NerdProperties.getBatchThreads(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "nerd-batch-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Process a batch of queries.
+     *
+     * @param theQueries the queries as a JSON array or as NDJSON
+     * @param ordered if true, results are returned in the order of the batch, otherwise
+     *                as soon as they are available
+     * @return a response streaming one NDJSON line per query of the batch
+     */
+    public static Response processBatch(String theQueries, boolean ordered) {
+        LOGGER.debug(methodLogIn());
+        Response response = null;
+
+        List<String> queries = null;
+        try {
+            queries = splitQueries(theQueries);
+        } catch (QueryException qe) {
+            LOGGER.error("The sent batch is invalid.", qe);
+            return Response.status(Status.BAD_REQUEST).build();
+        }
+
+        if (queries.isEmpty()) {
+            response = Response.status(Status.BAD_REQUEST).build();
+        } else if (queries.size() > NerdProperties.getBatchMaxSize()) {
+            LOGGER.info("Batch of " + queries.size() + " queries rejected, maximum is "
+                + NerdProperties.getBatchMaxSize());
+            // 413 Request Entity Too Large, not available in the Status enum of JAX-RS 1.1
+            response = Response.status(413).build();
+        } else {
+            response = Response.status(Status.OK)
+                .entity(new BatchOutput(queries, ordered))
+                .type(APPLICATION_NDJSON + "; charset=UTF-8")
+                .build();
+        }
+
+        LOGGER.debug(methodLogOut());
+        return response;
+    }
+
+    /**
+     * Split the batch into the JSON strings of the individual queries. The queries are
+     * parsed later, by the workers, so that an invalid query fails alone.
+     */
+    protected static List<String> splitQueries(String theQueries) throws QueryException {
+        List<String> queries = new ArrayList<>();
+        if (StringUtils.isBlank(theQueries))
+            return queries;
+
+        String trimmed = theQueries.trim();
+        if (trimmed.startsWith("[")) {
+            JsonNode root = null;
+            try {
+                root = JsonUtils.getMapper().readTree(trimmed);
+            } catch (IOException e) {
+                throw new QueryException("The batch is not a valid JSON array", e);
+            }
+            for (JsonNode item : root) {
+                queries.add(item.toString());
+            }
+        } else {
+            // NDJSON, empty lines are ignored
+            for (String line : trimmed.split("\r?\n")) {
+                if (StringUtils.isNotBlank(line))
+                    queries.add(line);
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * Process one query of the batch and return its complete NDJSON line. Never throws,
+     * failures are reported in the line.
+     */
+    protected static byte[] processItem(int index, String theQuery) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            NerdQuery nerdQuery = NerdQuery.fromJson(theQuery);
+            Response response = NerdRestProcessQuery.processQuery(nerdQuery);
+            // the responses served from the response cache are already serialised
+            byte[] result = NerdResponseCache.getCacheableEntity(response);
+            if (result != null) {
+                output.write(("{\"index\": " + index + ", \"status\": 200, \"result\": ")
+                    .getBytes(StandardCharsets.UTF_8));
+                output.write(result);
+                output.write("}\n".getBytes(StandardCharsets.UTF_8));
+                return output.toByteArray();
+            } else {
+                int status = (response == null) ? Status.BAD_REQUEST.getStatusCode() : response.getStatus();
+                Status reason = Status.fromStatusCode(status);
+                return errorLine(index, status, (reason == null) ? "Error" : reason.getReasonPhrase());
+            }
+        } catch (QueryException qe) {
+            LOGGER.debug("Invalid query at index " + index + " of the batch", qe);
+            return errorLine(index, Status.BAD_REQUEST.getStatusCode(), "Invalid query");
+        } catch (Exception e) {
+            LOGGER.error("An unexpected exception occurs at index " + index + " of the batch. ", e);
+            return errorLine(index, Status.INTERNAL_SERVER_ERROR.getStatusCode(),
+                Status.INTERNAL_SERVER_ERROR.getReasonPhrase());
+        }
+    }
+
+    private static byte[] errorLine(int index, int status, String message) {
+        StringWriter line = new StringWriter();
+        line.write("{\"index\": " + index + ", \"status\": " + status + ", \"error\": \"");
+        try {
+            JsonUtils.writeEscaped(line, message);
+        } catch (IOException e) {
+            // not possible with a StringWriter
+        }
+        line.write("\"}\n");
+        return line.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Submit the queries to the worker pool while the results are written, keeping at
+     * most a fixed number of queries in progress so that the buffered results stay bounded.
+     */
+    private static class BatchOutput implements StreamingOutput {
+        private final List<String> queries;
+        private final boolean ordered;
+        private final Map<String, Label> labels = new ConcurrentHashMap<>();
+        // KB version pinned by the request, used by the workers
+        private final UpperKnowledgeBase kb = UpperKnowledgeBase.getInstance();
+        // set when the writing stops before the end of the batch
+        private volatile boolean aborted = false;
+
+        private BatchOutput(List<String> queries, boolean ordered) {
+            this.queries = queries;
+            this.ordered = ordered;
+        }
+
+        private Callable<byte[]> task(final int index) {
+            return new Callable<byte[]>() {
+                @Override
+                public byte[] call() {
+                    if (aborted)
+                        return null;
+                    UpperKnowledgeBase.attach(kb);
+                    Label.attachBatchCache(labels);
+                    NerdMetrics.startTrace();
+                    try {
+                        return processItem(index, queries.get(index));
+                    } finally {
+                        NerdMetrics.stopTrace();
+                        Label.detachBatchCache();
+                        UpperKnowledgeBase.detach();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public void write(OutputStream output) throws IOException {
+            ExecutorService executor = getExecutor();
+            int window = 2 * NerdProperties.getBatchThreads();
+            int next = 0;
+            int written = 0;
+
+            // ordered: futures are consumed in submission order, otherwise in completion order,
+            // with the index of their query
+            Map<Future<byte[]>, Integer> pending = new LinkedHashMap<>();
+            CompletionService<byte[]> completion = new ExecutorCompletionService<>(executor);
+            try {
+                while (written < queries.size()) {
+                    while ((next < queries.size()) && (next - written < window)) {
+                        if (ordered)
+                            pending.put(executor.submit(task(next)), next);
+                        else
+                            pending.put(completion.submit(task(next)), next);
+                        next++;
+                    }
+
+                    Future<byte[]> done = ordered ? pending.keySet().iterator().next() : completion.take();
+                    int index = pending.remove(done);
+                    try {
+                        output.write(done.get());
+                    } catch (ExecutionException e) {
+                        // processItem already reports the failures, this is not expected
+                        LOGGER.error("Batch item failed.", e);
+                        output.write(errorLine(index, Status.INTERNAL_SERVER_ERROR.getStatusCode(),
+                            Status.INTERNAL_SERVER_ERROR.getReasonPhrase()));
+                    }
+                    written++;
+                    output.flush();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Batch processing interrupted", e);
+            } finally {
+                // client gone or interrupted: the queries not yet started are skipped, but the
+                // ones in progress must end before the request releases its KB version, which
+                // could otherwise be closed while they read it
+                aborted = true;
+                awaitAll(pending.keySet());
+            }
+        }
+
+        private void awaitAll(Collection<Future<byte[]>> futures) {
+            boolean interrupted = false;
+            for (Future<byte[]> future : futures) {
+                while (true) {
+                    try {
+                        future.get();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    } catch (ExecutionException e) {
+                        break;
+                    }
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    public static String methodLogIn() {
+        return ">> " + NerdRestProcessBatch.class.getName() + "." +
+            Thread.currentThread().getStackTrace()[1].getMethodName();
+    }
+
+    public static String methodLogOut() {
+        return "<< " + NerdRestProcessBatch.class.getName() + "." +
+            Thread.currentThread().getStackTrace()[1].getMethodName();
+    }
+}
@@ -2,6 +2,10 @@ package com.scienceminer.nerd.service;
 
 import com.scienceminer.nerd.disambiguation.*;
 import com.scienceminer.nerd.exceptions.QueryException;
+import com.scienceminer.nerd.utilities.NerdMetrics;
+import com.scienceminer.nerd.utilities.NerdMetrics.Stage;
+import com.scienceminer.nerd.utilities.NerdProperties;
+import com.scienceminer.nerd.utilities.SHA1;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -31,8 +35,9 @@ import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
-import java.io.File;
-import java.io.InputStream;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
@@ -57,6 +62,7 @@ public class NerdRestProcessFile {
 		File originFile = null;
         Engine engine = null;
         LOGGER.debug(">> received query to process: " + theQuery);
+        NerdMetrics.startTrace();
         try {
             LibraryLoader.load();
             engine = GrobidFactory.getInstance().getEngine();
@@ -75,6 +81,9 @@ public class NerdRestProcessFile {
 				}
 				LOGGER.debug(">> set query object...");
 
+				// the time budget, if any, covers the whole processing of the PDF
+				nerdQuery.startBudget(NerdProperties.getTimeBudget());
+
 				Language lang = nerdQuery.getLanguage();
 				if (nerdQuery.hasValidLanguage()) {
 					lang.setConf(1.0);
@@ -101,194 +110,161 @@ public class NerdRestProcessFile {
 				}*/
 
 				//List<NerdEntity> entities = originalEntities;
-		        Document doc = null;
 		        DocumentContext documentContext = new DocumentContext();
 		        NerdQuery workingQuery = new NerdQuery(nerdQuery);
 
-		        try {
-					DocumentSource documentSource =
-						DocumentSource.fromPdf(originFile, config.getStartPage(), config.getEndPage());
-					doc = engine.getParsers().getSegmentationParser().processing(documentSource, config);
+		        // a PDF already processed with the same parameters is not processed again
+		        PdfCache pdfCache = PdfCache.getInstance();
+		        String sha1 = null;
+		        String resultKey = null;
+		        if (pdfCache.isEnabled()) {
+		        	sha1 = SHA1.getSHA1(originFile);
+		        	resultKey = PdfCache.getResultKey(nerdQuery);
+		        	byte[] result = pdfCache.getResult(sha1, resultKey);
+		        	if (result != null) {
+		        		// the runtime of the response is the one of this query
+		        		result = NerdResponseCache.withRuntime(result, System.currentTimeMillis() - start);
+		        		return Response.status(Status.OK).entity(result)
+							.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON+"; charset=UTF-8" )
+							.build();
+		        	}
+		        }
 
-		            // here we process the relevant textual content of the document
-		            // for refining the process based on structures, we need to filter
-		            // segment of interest (e.g. header, body, annex) and possibly apply
-		            // the corresponding model to further filter by structure types
+		        PdfSegments segments = null;
+		        boolean processed = false;
+		        try {
+		        	// GROBID is only applied to unknown PDF
+		        	if (sha1 != null)
+		        		segments = pdfCache.getSegments(sha1);
+		        	if (segments == null) {
+		        		// the language is also identified for the next queries on the same PDF
+		        		segments = segment(originFile, engine, config, (lang == null) || (sha1 != null));
+		        		if (sha1 != null)
+		        			pdfCache.putSegments(sha1, segments);
+		        	}
 
 		            // from the header, we are interested in title, abstract and keywords
-		            SortedSet<DocumentPiece> documentParts = doc.getDocumentPart(SegmentationLabels.HEADER);
-		            if (documentParts != null) {
-		                String header = engine.getParsers().getHeaderParser().getSectionHeaderFeatured(doc, documentParts, true);
-		                List<LayoutToken> tokenizationHeader =
-		                	doc.getTokenizationParts(documentParts, doc.getTokenizations());
-		                String labeledResult = null;
-
-		                // alternative
-		                String alternativeHeader = doc.getHeaderFeatured(true, true);
-		                // we choose the longest header
-		                if (StringUtils.isNotBlank(StringUtils.trim(header))) {
-		                	header = alternativeHeader;
-		                	tokenizationHeader = doc.getTokenizationsHeader();
-		                } else if (StringUtils.isNotBlank(StringUtils.trim(alternativeHeader)) && alternativeHeader.length() > header.length()) {
-			            	header = alternativeHeader;
-			                tokenizationHeader = doc.getTokenizationsHeader();
-						}
-
-		                if (StringUtils.isNotBlank(StringUtils.trim(header))) {
-		                    labeledResult = engine.getParsers().getHeaderParser().label(header);
-
-		                    BiblioItem resHeader = new BiblioItem();
-		                    resHeader.generalResultMapping(doc, labeledResult, tokenizationHeader);
-
-		                    if(lang == null) {
-								BiblioItem resHeaderLangIdentification = new BiblioItem();
-								engine.getParsers().getHeaderParser().resultExtraction(labeledResult, true,
-										tokenizationHeader, resHeaderLangIdentification);
-
-								lang = identifyLanguage(resHeaderLangIdentification, doc);
-								if (lang != null) {
-									workingQuery.setLanguage(lang);
-								} else {
-									LOGGER.error("Language was not specified and there was not enough text to identify it. The process might fail. ");
-								}
-							}	
+		            if (segments.hasHeader()) {
+	                    if(lang == null) {
+							lang = segments.getLanguage();
+							if (lang != null) {
+								workingQuery.setLanguage(lang);
+							} else {
+								LOGGER.error("Language was not specified and there was not enough text to identify it. The process might fail. ");
+							}
+						}	
 
-		                    // title
-		                    List<LayoutToken> titleTokens = resHeader.getLayoutTokens(TaggingLabels.HEADER_TITLE);
-		                    if (titleTokens != null) {
-								System.out.println("Process title... ");
+	                    // title
+	                    List<LayoutToken> titleTokens = segments.getTitle();
+	                    if (titleTokens != null) {
+							LOGGER.debug("Process title... ");
 
-								//workingQuery.setEntities(null);
-		                        List<NerdEntity> newEntities = processLayoutTokenSequence(titleTokens, null, workingQuery);
-								if (newEntities != null) {
-									System.out.println(newEntities.size() + " nerd entities");
-								}
-		                        nerdQuery.addNerdEntities(newEntities);
+							//workingQuery.setEntities(null);
+	                        List<NerdEntity> newEntities = processLayoutTokenSequence(titleTokens, null, workingQuery);
+							if (newEntities != null) {
+								LOGGER.debug(newEntities.size() + " nerd entities");
 							}
+	                        nerdQuery.addNerdEntities(newEntities);
+						}
 
-		                    // abstract
-		                    List<LayoutToken> abstractTokens = resHeader.getLayoutTokens(TaggingLabels.HEADER_ABSTRACT);
-		                    if (abstractTokens != null) {
-								System.out.println("Process abstract...");
-		                    	//workingQuery.setEntities(null);
-		                        List<NerdEntity> newEntities = processLayoutTokenSequence(abstractTokens, null, workingQuery);
-								if (newEntities != null) {
-									System.out.println(newEntities.size() + " nerd entities");
-								}
+	                    // abstract
+	                    List<LayoutToken> abstractTokens = segments.getAbstract();
+	                    if (abstractTokens != null) {
+							LOGGER.debug("Process abstract...");
+	                    	//workingQuery.setEntities(null);
+	                        List<NerdEntity> newEntities = processLayoutTokenSequence(abstractTokens, null, workingQuery);
+							if (newEntities != null) {
+								LOGGER.debug(newEntities.size() + " nerd entities");
+							}
 
-		                        nerdQuery.addNerdEntities(newEntities);
-		                    }
-
-		                    // keywords
-		                    List<LayoutToken> keywordTokens = resHeader.getLayoutTokens(TaggingLabels.HEADER_KEYWORD);
-		                    if (keywordTokens != null) {
-								System.out.println("Process keywords...");
-		                    	//workingQuery.setEntities(null);
-		                        List<NerdEntity> newEntities = processLayoutTokenSequence(keywordTokens, null, workingQuery);
-								if (newEntities != null)
-									System.out.println(newEntities.size() + " nerd entities");
-		                        nerdQuery.addNerdEntities(newEntities);
-		                    }
-
-		                    // create document context from this first pass
-		                    documentContext.seed(nerdQuery.getEntities(), lang);
-		                    nerdQuery.setEntities(null);
-
-		                    // as alternative, we should use key phrase extraction and disambiguation on the whole document
-		                    // to seed the document context
-
-		                    // reprocess header fields with document context
-		                    if (titleTokens != null) {
-		                    	//workingQuery.setEntities(null);
-		                        List<NerdEntity> newEntities = processLayoutTokenSequence(titleTokens, documentContext, workingQuery);
-		                        nerdQuery.addNerdEntities(newEntities);
-		                    }
-
-		                    if (abstractTokens != null) {
-		                    	//workingQuery.setEntities(null);
-		                        List<NerdEntity> newEntities = processLayoutTokenSequence(abstractTokens, documentContext, workingQuery);
-		                        nerdQuery.addNerdEntities(newEntities);
-		                    }
-
-		                    if (keywordTokens != null) {
-		                    	//workingQuery.setEntities(null);
-		                        List<NerdEntity> newEntities = processLayoutTokenSequence(keywordTokens, documentContext, workingQuery);
-		                        nerdQuery.addNerdEntities(newEntities);
-		                    }
-		                }
+	                        nerdQuery.addNerdEntities(newEntities);
+	                    }
+
+	                    // keywords
+	                    List<LayoutToken> keywordTokens = segments.getKeywords();
+	                    if (keywordTokens != null) {
+							LOGGER.debug("Process keywords...");
+	                    	//workingQuery.setEntities(null);
+	                        List<NerdEntity> newEntities = processLayoutTokenSequence(keywordTokens, null, workingQuery);
+							if (newEntities != null)
+								LOGGER.debug(newEntities.size() + " nerd entities");
+	                        nerdQuery.addNerdEntities(newEntities);
+	                    }
+
+	                    // create document context from this first pass
+	                    documentContext.seed(nerdQuery.getEntities(), lang);
+	                    nerdQuery.setEntities(null);
+
+	                    // as alternative, we should use key phrase extraction and disambiguation on the whole document
+	                    // to seed the document context
+
+	                    // reprocess header fields with document context
+	                    if (titleTokens != null) {
+	                    	//workingQuery.setEntities(null);
+	                        List<NerdEntity> newEntities = processLayoutTokenSequence(titleTokens, documentContext, workingQuery);
+	                        nerdQuery.addNerdEntities(newEntities);
+	                    }
+
+	                    if (abstractTokens != null) {
+	                    	//workingQuery.setEntities(null);
+	                        List<NerdEntity> newEntities = processLayoutTokenSequence(abstractTokens, documentContext, workingQuery);
+	                        nerdQuery.addNerdEntities(newEntities);
+	                    }
+
+	                    if (keywordTokens != null) {
+	                    	//workingQuery.setEntities(null);
+	                        List<NerdEntity> newEntities = processLayoutTokenSequence(keywordTokens, documentContext, workingQuery);
+	                        nerdQuery.addNerdEntities(newEntities);
+	                    }
 		            }
 
 		            // we can process all the body, in the future figure and table could be the
 		            // object of more refined processing
-		            documentParts = doc.getDocumentPart(SegmentationLabels.BODY);
-		            if (documentParts != null) {
-						System.out.println("Process body...");
-						// full text processing
-						Pair<String, LayoutTokenization> featSeg = engine.getParsers().getFullTextParser().getBodyTextFeatured(doc, documentParts);
-						if (featSeg != null) {
-							// if featSeg is null, it usually means that no body segment is found in the
-							// document segmentation
-							String bodytext = featSeg.getA();
-
-							LayoutTokenization tokenizationBody = featSeg.getB();
-							String rese = null;
-							if ( (bodytext != null) && (bodytext.trim().length() > 0) ) {
-								rese = engine.getParsers().getFullTextParser().label(bodytext);
-							} else {
-								LOGGER.debug("Fulltext model: The input to the CRF processing is empty");
-							}
-
-							// get the reference, figure, table and formula markers, plus the formula
-							// the rest can be processed by NERD
-		                    List<TaggingLabel> toProcess = Arrays.asList(TaggingLabels.PARAGRAPH, TaggingLabels.ITEM,
-		                    	TaggingLabels.SECTION, TaggingLabels.FIGURE, TaggingLabels.TABLE);
-		                    List<LayoutTokenization> documentBodyTokens =
-		                    	FullTextParser.getDocumentFullTextTokens(toProcess, rese, tokenizationBody.getTokenization());
-
-		                    if (documentBodyTokens != null) {
-		                		List<NerdEntity> newEntities =
-		                			processLayoutTokenSequences(documentBodyTokens, documentContext, workingQuery);
-		                		nerdQuery.addNerdEntities(newEntities);
-		                	} else
-		                		System.out.println("no body part?!?");
-						}
+		            if (segments.getBody() != null) {
+						LOGGER.debug("Process body...");
+						List<LayoutTokenization> documentBodyTokens = new ArrayList<LayoutTokenization>();
+						for (List<LayoutToken> bodyTokens : segments.getBody())
+							documentBodyTokens.add(new LayoutTokenization(bodyTokens));
+                		List<NerdEntity> newEntities =
+                			processLayoutTokenSequences(documentBodyTokens, documentContext, workingQuery);
+                		nerdQuery.addNerdEntities(newEntities);
 					}
 
 		            // we don't process references (although reference titles could be relevant)
 
 		            // acknowledgement
-		            documentParts = doc.getDocumentPart(SegmentationLabels.ACKNOWLEDGEMENT);
-		            if (documentParts != null) {
-						System.out.println("Process acknowledgement...");
+		            if (segments.getAcknowledgement() != null) {
+						LOGGER.debug("Process acknowledgement...");
 		            	workingQuery.setEntities(null);
-		                List<NerdEntity> newEntities = processDocumentPart(documentParts, doc, documentContext, workingQuery);
+		                List<NerdEntity> newEntities = 
+		                	processLayoutTokenSequence(segments.getAcknowledgement(), documentContext, workingQuery);
 						if (newEntities != null)
-							System.out.println(newEntities.size() + " nerd entities");
+							LOGGER.debug(newEntities.size() + " nerd entities");
 		                nerdQuery.addNerdEntities(newEntities);
 		            }
 
 		            // we can process annexes
-		            documentParts = doc.getDocumentPart(SegmentationLabels.ANNEX);
-		            if (documentParts != null) {
-						System.out.println("Process annex...");
+		            if (segments.getAnnex() != null) {
+						LOGGER.debug("Process annex...");
 		            	//workingQuery.setEntities(null);
-		                List<NerdEntity> newEntities = processDocumentPart(documentParts, doc, documentContext, workingQuery);
+		                List<NerdEntity> newEntities = 
+		                	processLayoutTokenSequence(segments.getAnnex(), documentContext, workingQuery);
 						if (newEntities != null)
-							System.out.println(newEntities.size() + " nerd entities");
+							LOGGER.debug(newEntities.size() + " nerd entities");
 		                nerdQuery.addNerdEntities(newEntities);
 		            }
 
 		            // footnotes are also relevant
-		            documentParts = doc.getDocumentPart(SegmentationLabels.FOOTNOTE);
-		            if (documentParts != null) {
-						System.out.println("Process footnotes...");
+		            if (segments.getFootnotes() != null) {
+						LOGGER.debug("Process footnotes...");
 		            	//workingQuery.setEntities(null);
-		                List<NerdEntity> newEntities = processDocumentPart(documentParts, doc, documentContext, workingQuery);
+		                List<NerdEntity> newEntities = 
+		                	processLayoutTokenSequence(segments.getFootnotes(), documentContext, workingQuery);
 						if (newEntities != null)
-							System.out.println(newEntities.size() + " nerd entities");
+							LOGGER.debug(newEntities.size() + " nerd entities");
 		                nerdQuery.addNerdEntities(newEntities);
 		            }
-
+		            processed = true;
 		        } catch (Exception e) {
 		        	LOGGER.error("Cannot process input pdf file. ", e);
 		            response = Response.status(Status.INTERNAL_SERVER_ERROR).build();
@@ -357,19 +333,31 @@ public class NerdRestProcessFile {
 				long end = System.currentTimeMillis();
 				nerdQuery.setRuntime(end - start);
 				LOGGER.info("runtime: " + (end - start));
+				nerdQuery.setTrace(NerdMetrics.getTrace());
 				if(CollectionUtils.isNotEmpty(nerdQuery.getEntities())) {
 					Collections.sort(nerdQuery.getEntities());
 				}
 
-				String json = nerdQuery.toJSONClean(doc);
-
-
 				// TBD: output in the resulting json also page info from the doc object as in GROBID
-				if (json == null) {
-					response = Response.status(Status.INTERNAL_SERVER_ERROR).build();
-				}
-				else {
-					response = Response.status(Status.OK).entity(json)
+				double[][] pageSizes = (segments != null) ? segments.getPageSizes() : null;
+				// a result degraded to respect the time budget is not kept
+				TimeBudget budget = nerdQuery.getBudget();
+				boolean degraded = (budget != null) && !budget.getDegradations().isEmpty();
+				if (processed && !degraded && (resultKey != null)) {
+					// the response is kept for the next queries with the same parameters
+					ByteArrayOutputStream output = new ByteArrayOutputStream();
+					Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+					nerdQuery.writeJSONClean(pageSizes, writer);
+					writer.flush();
+					byte[] result = output.toByteArray();
+					pdfCache.putResult(sha1, resultKey, result);
+					response = Response.status(Status.OK).entity(result)
+						.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON+"; charset=UTF-8" )
+						.build();
+				} else {
+					// the response is serialised when written to the client
+					StreamingOutput output = nerdQuery.toStreamingJSONClean(pageSizes);
+					response = Response.status(Status.OK).entity(output)
 						.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON+"; charset=UTF-8" )
 						.build();
 				}
@@ -387,11 +375,116 @@ public class NerdRestProcessFile {
 			LOGGER.error("An unexpected exception occurs. ", e);
 			response = Response.status(Status.INTERNAL_SERVER_ERROR).build();
 		}
+		finally {
+			NerdMetrics.stopTrace();
+		}
 
 		LOGGER.debug(methodLogOut());
 		return response;
 	}
 
+	/**
+	 * Apply GROBID to a PDF: segmentation of the document, then selection of the layout token
+	 * sequences to be annotated with the header and full text models.
+	 *
+	 * @param identifyLanguage	true if the language must be identified from the header
+	 */
+	private static PdfSegments segment(File originFile, 
+									Engine engine, 
+									GrobidAnalysisConfig config, 
+									boolean identifyLanguage) throws Exception {
+		PdfSegments segments = new PdfSegments();
+		DocumentSource documentSource =
+			DocumentSource.fromPdf(originFile, config.getStartPage(), config.getEndPage());
+		Document doc = engine.getParsers().getSegmentationParser().processing(documentSource, config);
+		segments.setPageSizes(NerdQuery.getPageSizes(doc));
+
+        // here we select the relevant textual content of the document
+        // for refining the process based on structures, we need to filter
+        // segment of interest (e.g. header, body, annex) and possibly apply
+        // the corresponding model to further filter by structure types
+
+        // from the header, we are interested in title, abstract and keywords
+        SortedSet<DocumentPiece> documentParts = doc.getDocumentPart(SegmentationLabels.HEADER);
+        if (documentParts != null) {
+            String header = engine.getParsers().getHeaderParser().getSectionHeaderFeatured(doc, documentParts, true);
+            List<LayoutToken> tokenizationHeader =
+            	doc.getTokenizationParts(documentParts, doc.getTokenizations());
+            String labeledResult = null;
+
+            // alternative
+            String alternativeHeader = doc.getHeaderFeatured(true, true);
+            // we choose the longest header
+            if (StringUtils.isNotBlank(StringUtils.trim(header))) {
+            	header = alternativeHeader;
+            	tokenizationHeader = doc.getTokenizationsHeader();
+            } else if (StringUtils.isNotBlank(StringUtils.trim(alternativeHeader)) && alternativeHeader.length() > header.length()) {
+            	header = alternativeHeader;
+                tokenizationHeader = doc.getTokenizationsHeader();
+			}
+
+            if (StringUtils.isNotBlank(StringUtils.trim(header))) {
+                labeledResult = engine.getParsers().getHeaderParser().label(header);
+
+                BiblioItem resHeader = new BiblioItem();
+                resHeader.generalResultMapping(doc, labeledResult, tokenizationHeader);
+
+                if (identifyLanguage) {
+					BiblioItem resHeaderLangIdentification = new BiblioItem();
+					engine.getParsers().getHeaderParser().resultExtraction(labeledResult, true,
+							tokenizationHeader, resHeaderLangIdentification);
+					segments.setLanguage(identifyLanguage(resHeaderLangIdentification, doc));
+				}
+
+                segments.setHeader(true);
+                segments.setTitle(resHeader.getLayoutTokens(TaggingLabels.HEADER_TITLE));
+                segments.setAbstract(resHeader.getLayoutTokens(TaggingLabels.HEADER_ABSTRACT));
+                segments.setKeywords(resHeader.getLayoutTokens(TaggingLabels.HEADER_KEYWORD));
+            }
+        }
+
+        documentParts = doc.getDocumentPart(SegmentationLabels.BODY);
+        if (documentParts != null) {
+			// full text processing
+			Pair<String, LayoutTokenization> featSeg = engine.getParsers().getFullTextParser().getBodyTextFeatured(doc, documentParts);
+			if (featSeg != null) {
+				// if featSeg is null, it usually means that no body segment is found in the
+				// document segmentation
+				String bodytext = featSeg.getA();
+
+				LayoutTokenization tokenizationBody = featSeg.getB();
+				String rese = null;
+				if ( (bodytext != null) && (bodytext.trim().length() > 0) ) {
+					rese = engine.getParsers().getFullTextParser().label(bodytext);
+				} else {
+					LOGGER.debug("Fulltext model: The input to the CRF processing is empty");
+				}
+
+				// get the reference, figure, table and formula markers, plus the formula
+				// the rest can be processed by NERD
+                List<TaggingLabel> toProcess = Arrays.asList(TaggingLabels.PARAGRAPH, TaggingLabels.ITEM,
+                	TaggingLabels.SECTION, TaggingLabels.FIGURE, TaggingLabels.TABLE);
+                List<LayoutTokenization> documentBodyTokens =
+                	FullTextParser.getDocumentFullTextTokens(toProcess, rese, tokenizationBody.getTokenization());
+
+                if (documentBodyTokens != null) {
+                	List<List<LayoutToken>> body = new ArrayList<List<LayoutToken>>();
+                	for (LayoutTokenization layoutTokenization : documentBodyTokens)
+                		body.add(layoutTokenization.getTokenization());
+                	segments.setBody(body);
+            	} else
+            		LOGGER.debug("no body part?!?");
+			}
+		}
+
+        // we don't select references (although reference titles could be relevant)
+        segments.setAcknowledgement(getDocumentPart(doc, SegmentationLabels.ACKNOWLEDGEMENT));
+        segments.setAnnex(getDocumentPart(doc, SegmentationLabels.ANNEX));
+        segments.setFootnotes(getDocumentPart(doc, SegmentationLabels.FOOTNOTE));
+
+		return segments;
+	}
+
 	public static Language identifyLanguage(BiblioItem resHeader, Document doc) {
 
 		String contentSample = "";
@@ -409,9 +502,11 @@ public class NerdRestProcessFile {
 		LanguageUtilities languageIdentifier = LanguageUtilities.getInstance();
 
 		Language resultLang = null;
+		long start = NerdMetrics.start();
 		synchronized (languageIdentifier) {
 			resultLang = languageIdentifier.runLanguageId(contentSample, 2000);
 		}
+		NerdMetrics.stop(Stage.languageIdentification, start);
 
         return resultLang;
 	}
@@ -439,16 +534,20 @@ public class NerdRestProcessFile {
 	        try {
 		        // ner
 				ProcessText processText = ProcessText.getInstance();
+				long start = NerdMetrics.start();
 				List<Entity> nerEntities = processText.process(workingQuery);
+				NerdMetrics.stop(Stage.ner, start);
 				if (nerEntities != null)
-					System.out.println(nerEntities.size() + " ner entities");
+					LOGGER.debug(nerEntities.size() + " ner entities");
 				else
 					nerEntities = new ArrayList<Entity>();
 
 				if (!workingQuery.getOnlyNER()) {
+					start = NerdMetrics.start();
 					List<Entity> entities2 = processText.processBrutal(workingQuery);
+					NerdMetrics.stop(Stage.processBrutal, start);
 					if (entities2 != null) {
-						System.out.println(entities2.size() + " non-ner entities");
+						LOGGER.debug(entities2.size() + " non-ner entities");
 						for(Entity entity : entities2) {
 							// we add entities only if the mention is not already present
 							if (!nerEntities.contains(entity))
@@ -458,7 +557,9 @@ public class NerdRestProcessFile {
 				}
 
 				// inject explicit acronyms
+				start = NerdMetrics.start();
 				nerEntities = ProcessText.acronymCandidates(workingQuery, nerEntities);
+				NerdMetrics.stop(Stage.acronyms, start);
 
 				/*if (nerEntities != null) {
 					// we keep only entities not conflicting with the ones already present in the query
@@ -521,12 +622,11 @@ System.out.println(workingQuery.getEntities().size() + " nerd entities");	*/
 		return processLayoutTokenSequences(layoutTokenizations, documentContext, workingQuery);
 	}
 
-	private static List<NerdEntity> processDocumentPart(SortedSet<DocumentPiece> documentParts,
-												Document doc,
-												NerdContext documentContext,
-                                                NerdQuery workingQuery) {
-		List<LayoutToken> tokenizationParts = doc.getTokenizationParts(documentParts, doc.getTokenizations());
-		return processLayoutTokenSequence(tokenizationParts, documentContext, workingQuery);
+	private static List<LayoutToken> getDocumentPart(Document doc, TaggingLabel label) {
+		SortedSet<DocumentPiece> documentParts = doc.getDocumentPart(label);
+		if (documentParts == null)
+			return null;
+		return doc.getTokenizationParts(documentParts, doc.getTokenizations());
 	}
 
 	public static String methodLogIn() {
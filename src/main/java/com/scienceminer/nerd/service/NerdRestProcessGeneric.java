@@ -2,12 +2,15 @@ package com.scienceminer.nerd.service;
 
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.UriInfo;
 import javax.ws.rs.core.Response.Status;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.scienceminer.nerd.kb.UpperKnowledgeBase;
+
 /**
  * 
  *
@@ -15,9 +18,16 @@ import org.slf4j.LoggerFactory;
 public class NerdRestProcessGeneric {
 	
 	private static final Logger LOGGER = LoggerFactory.getLogger(NerdRestProcessGeneric.class);
+
+	private static final String WARM_UP_PROGRESS = "X-Warm-Up-Progress";
+	private static final String LOADED_LANGUAGES = "X-Loaded-Languages";
 	
 	/**
-	 * Returns a string containing true, if the service is alive.
+	 * Returns a string containing true, if the service is alive. When the warm-start is 
+	 * enabled, the progress in percent of the restoration of the KB caches is given in the 
+	 * header X-Warm-Up-Progress (100 when the service is warm). The languages whose KB is 
+	 * currently loaded, i.e. served without loading delay, are given in the header 
+	 * X-Loaded-Languages, separated by commas.
 	 * 
 	 * @return returns a response object containing the string true if service
 	 *         is alive.
@@ -34,7 +44,13 @@ public class NerdRestProcessGeneric {
 				LOGGER.error("Nerd service is not alive. ", e);
 				retVal = Boolean.valueOf(false).toString();
 			}
-			response = Response.status(Status.OK).entity(retVal).build();
+			ResponseBuilder builder = Response.status(Status.OK).entity(retVal);
+			WarmStart warmStart = WarmStart.getInstance();
+			if (warmStart.isEnabled())
+				builder.header(WARM_UP_PROGRESS, (int)(100 * warmStart.getProgress()));
+			builder.header(LOADED_LANGUAGES, 
+				String.join(",", UpperKnowledgeBase.getInstance().getLoadedLanguages()));
+			response = builder.build();
 		} catch (Exception e) {
 			LOGGER.error("Exception occurred while check if the service is alive. " + e);
 			response = Response.status(Status.INTERNAL_SERVER_ERROR).build();
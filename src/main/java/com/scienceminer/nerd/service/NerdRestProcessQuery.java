@@ -2,6 +2,10 @@ package com.scienceminer.nerd.service;
 
 import com.scienceminer.nerd.disambiguation.*;
 import com.scienceminer.nerd.exceptions.QueryException;
+import com.scienceminer.nerd.kb.UpperKnowledgeBase;
+import com.scienceminer.nerd.utilities.NerdMetrics;
+import com.scienceminer.nerd.utilities.NerdMetrics.Stage;
+import com.scienceminer.nerd.utilities.NerdProperties;
 import org.apache.commons.collections4.CollectionUtils;
 import org.grobid.core.data.Entity;
 import org.grobid.core.lang.Language;
@@ -14,6 +18,7 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 public class NerdRestProcessQuery {
 
@@ -31,30 +36,10 @@ public class NerdRestProcessQuery {
         Response response = null;
 
         LOGGER.debug(">> received query to process: " + theQuery);
+        NerdMetrics.startTrace();
         try {
             NerdQuery nerdQuery = NerdQuery.fromJson(theQuery);
-
-            // we analyze the query object in order to determine the kind of object to be processed
-            LOGGER.debug(">> set query object for stateless service...");
-
-            switch (nerdQuery.getQueryType()) {
-                case NerdQuery.QUERY_TYPE_TEXT:
-                    if (nerdQuery.getText().length() > 5) {
-                        response = processQueryText(nerdQuery);
-                    } else {
-                        response = Response.status(Status.BAD_REQUEST).build();
-                    }
-                    break;
-                case NerdQuery.QUERY_TYPE_SHORT_TEXT:
-                    response = processSearchQuery(nerdQuery);
-                    break;
-                case NerdQuery.QUERY_TYPE_TERM_VECTOR:
-                    response = processQueryTermVector(nerdQuery);
-                    break;
-                case NerdQuery.QUERY_TYPE_INVALID:
-                    response = Response.status(Status.BAD_REQUEST).build();
-                    break;
-            }
+            response = processQuery(nerdQuery);
         } catch (QueryException qe) {
             LOGGER.error("The sent query is invalid. Query sent: " + theQuery, qe);
             response = Response.status(Status.BAD_REQUEST).build();
@@ -62,12 +47,52 @@ public class NerdRestProcessQuery {
         } catch (Exception e) {
             LOGGER.error("An unexpected exception occurs. ", e);
             response = Response.status(Status.INTERNAL_SERVER_ERROR).build();
+        } finally {
+            NerdMetrics.stopTrace();
         }
 
         LOGGER.debug(methodLogOut());
         return response;
     }
 
+    /**
+     * Process an already parsed query according to its type (text, shortText or termVector).
+     *
+     * @param nerdQuery POJO query object
+     * @return a response query object containing the structured representation of
+     * the enriched and disambiguated query.
+     */
+    public static Response processQuery(NerdQuery nerdQuery) {
+        Response response = null;
+
+        // we analyze the query object in order to determine the kind of object to be processed
+        LOGGER.debug(">> set query object for stateless service...");
+
+        // the time budget, if any, covers the whole processing of the query
+        nerdQuery.startBudget(NerdProperties.getTimeBudget());
+
+        switch (nerdQuery.getQueryType()) {
+            case NerdQuery.QUERY_TYPE_TEXT:
+                if (nerdQuery.getText().length() > 5) {
+                    response = processQueryText(nerdQuery);
+                } else {
+                    response = Response.status(Status.BAD_REQUEST).build();
+                }
+                break;
+            case NerdQuery.QUERY_TYPE_SHORT_TEXT:
+                response = processSearchQuery(nerdQuery);
+                break;
+            case NerdQuery.QUERY_TYPE_TERM_VECTOR:
+                response = processQueryTermVector(nerdQuery);
+                break;
+            case NerdQuery.QUERY_TYPE_INVALID:
+                response = Response.status(Status.BAD_REQUEST).build();
+                break;
+        }
+
+        return response;
+    }
+
     /**
      * Parse a structured query and return the corresponding normalized enriched and disambiguated query object.
      *
@@ -84,9 +109,11 @@ public class NerdRestProcessQuery {
             // language identification
             Language lang = nerdQuery.getLanguage();
             if ((nerdQuery.getLanguage() == null) || (nerdQuery.getLanguage().getLang() == null)) {
+                long startStage = NerdMetrics.start();
                 LanguageUtilities languageUtilities = LanguageUtilities.getInstance();
                 lang = languageUtilities.runLanguageId(nerdQuery.getText());
                 nerdQuery.setLanguage(lang);
+                NerdMetrics.stop(Stage.languageIdentification, startStage);
                 LOGGER.debug(">> identified language: " + lang.toString());
             } else {
                 LOGGER.debug(">> language already identified: " + nerdQuery.getLanguage().getLang().toString());
@@ -98,11 +125,17 @@ public class NerdRestProcessQuery {
                 return response;
             } else {
                 String theLang = lang.getLang();
-                if (!theLang.equals("en") && !theLang.equals("de") && !theLang.equals("fr")) {
+                if (!UpperKnowledgeBase.getInstance().getLanguages().contains(theLang)) {
                     response = Response.status(Status.NOT_ACCEPTABLE).build();
                     LOGGER.debug(methodLogOut());
                     return response;
                 }
+                // a served language whose KB cannot be opened currently, its opening is retried later
+                if (UpperKnowledgeBase.getInstance().getWikipediaConf(theLang) == null) {
+                    response = Response.status(Status.SERVICE_UNAVAILABLE).build();
+                    LOGGER.debug(methodLogOut());
+                    return response;
+                }
             }
 
             // create an empty context for the query
@@ -135,9 +168,13 @@ public class NerdRestProcessQuery {
             // first process all mentions
 
             // ner
+            long startStage = NerdMetrics.start();
             List<Entity> entities = processText.process(nerdQuery);
+            NerdMetrics.stop(Stage.ner, startStage);
             if (!nerdQuery.getOnlyNER()) {
+                startStage = NerdMetrics.start();
                 List<Entity> entities2 = processText.processBrutal(nerdQuery);
+                NerdMetrics.stop(Stage.processBrutal, startStage);
                 if (entities == null)
                     entities = new ArrayList<Entity>();
                 for (Entity entity : entities2) {
@@ -149,7 +186,9 @@ public class NerdRestProcessQuery {
             }
 
             // inject explicit acronyms
+            startStage = NerdMetrics.start();
 			entities = ProcessText.acronymCandidates(nerdQuery, entities);
+            NerdMetrics.stop(Stage.acronyms, startStage);
 
             // we keep only entities not conflicting with the ones already present in the query
             List<NerdEntity> newEntities = new ArrayList<NerdEntity>();
@@ -213,7 +252,9 @@ public class NerdRestProcessQuery {
                     NerdEngine disambiguator = NerdEngine.getInstance();
                     List<NerdEntity> disambiguatedEntities = disambiguator.disambiguate(nerdQuery);
                     nerdQuery.setEntities(disambiguatedEntities);
+                    startStage = NerdMetrics.start();
                     nerdQuery = NerdCategories.addCategoryDistribution(nerdQuery);
+                    NerdMetrics.stop(Stage.enrichment, startStage);
                 } else {
                     for (NerdEntity entity : nerdQuery.getEntities()) {
                         entity.setNerdScore(entity.getNer_conf());
@@ -223,19 +264,16 @@ public class NerdRestProcessQuery {
 
             long end = System.currentTimeMillis();
             nerdQuery.setRuntime(end - start);
-            System.out.println("runtime: " + (end - start));
+            LOGGER.debug("runtime: " + (end - start));
+            nerdQuery.setTrace(NerdMetrics.getTrace());
 
             Collections.sort(nerdQuery.getEntities());
-            String json = nerdQuery.toJSONClean(null);
-            if (json == null) {
-                response = Response.status(Status.INTERNAL_SERVER_ERROR).build();
-            } else {
-                response = Response.status(Status.OK).entity(json)
-                        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON + "; charset=UTF-8")
-                        .header("Access-Control-Allow-Origin", "*")
-                        .header("Access-Control-Allow-Methods", "GET, POST, DELETE, PUT")
-                        .build();
-            }
+            // the response is serialised when written to the client
+            response = Response.status(Status.OK).entity(nerdQuery.toStreamingJSONClean(null))
+                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON + "; charset=UTF-8")
+                    .header("Access-Control-Allow-Origin", "*")
+                    .header("Access-Control-Allow-Methods", "GET, POST, DELETE, PUT")
+                    .build();
         } catch (Exception e) {
             LOGGER.error("An unexpected exception occurs. ", e);
             response = Response.status(Status.INTERNAL_SERVER_ERROR).build();
@@ -269,6 +307,7 @@ public class NerdRestProcessQuery {
             String text = textContent.toString();
             Language lang = nerdQuery.getLanguage();
             if ((lang == null) || (lang.getLang() == null)) {
+                long startStage = NerdMetrics.start();
                 LanguageUtilities languageUtilities = LanguageUtilities.getInstance();
                 try {
                     lang = languageUtilities.runLanguageId(text);
@@ -276,6 +315,7 @@ public class NerdRestProcessQuery {
                     LOGGER.debug("exception language identifier for: " + text);
                     //e.printStackTrace();
                 }
+                NerdMetrics.stop(Stage.languageIdentification, startStage);
                 if ((lang != null) && (lang.getLang() != null)) {
                     nerdQuery.setLanguage(lang);
                     LOGGER.debug(">> identified language: " + lang.toString());
@@ -292,11 +332,17 @@ public class NerdRestProcessQuery {
                 return response;
             } else {
                 String theLang = lang.getLang();
-                if (!theLang.equals("en") && !theLang.equals("de") && !theLang.equals("fr")) {
+                if (!UpperKnowledgeBase.getInstance().getLanguages().contains(theLang)) {
                     response = Response.status(Status.NOT_ACCEPTABLE).build();
                     LOGGER.debug(methodLogOut());
                     return response;
                 }
+                // a served language whose KB cannot be opened currently, its opening is retried later
+                if (UpperKnowledgeBase.getInstance().getWikipediaConf(theLang) == null) {
+                    response = Response.status(Status.SERVICE_UNAVAILABLE).build();
+                    LOGGER.debug(methodLogOut());
+                    return response;
+                }
             }
 
             NerdEngine disambiguator = NerdEngine.getInstance();
@@ -306,23 +352,21 @@ public class NerdRestProcessQuery {
             // is successful
             disambiguator.disambiguateWeightedTerms(nerdQuery);
 //System.out.println(nerdQuery.toJSONClean(null));	
+            long startStage = NerdMetrics.start();
             nerdQuery = NerdCategories.addCategoryDistribution(nerdQuery);
+            NerdMetrics.stop(Stage.enrichment, startStage);
 
             long end = System.currentTimeMillis();
             nerdQuery.setRuntime(end - start);
+            nerdQuery.setTrace(NerdMetrics.getTrace());
 
             //Collections.sort(nerdQuery.getEntities());
-            String json = nerdQuery.toJSONClean(null);
-            if (json == null) {
-                response = Response.status(Status.INTERNAL_SERVER_ERROR).build();
-            } else {
-                //TODO: move this somewhere at higher level
-                response = Response.status(Status.OK).entity(json)
-                        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON + "; charset=UTF-8")
-                        .header("Access-Control-Allow-Origin", "*")
-                        .header("Access-Control-Allow-Methods", "GET, POST, DELETE, PUT")
-                        .build();
-            }
+            // the response is serialised when written to the client
+            response = Response.status(Status.OK).entity(nerdQuery.toStreamingJSONClean(null))
+                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON + "; charset=UTF-8")
+                    .header("Access-Control-Allow-Origin", "*")
+                    .header("Access-Control-Allow-Methods", "GET, POST, DELETE, PUT")
+                    .build();
         } catch (NoSuchElementException nseExp) {
             LOGGER.error("Could not get an engine from the pool within configured time. Sending service unavailable.");
             response = Response.status(Status.SERVICE_UNAVAILABLE).build();
@@ -335,12 +379,49 @@ public class NerdRestProcessQuery {
     }
 
     /**
-     * Disambiguation of the terms of a seach query.
+     * Disambiguation of the terms of a seach query. The responses are cached, the same
+     * search queries being frequently repeated.
      *
      * @param nerdQuery POJO query object with the search query and additional optional contextual information
      * @return a response JSON object containing the search terms with the resolved entities.
      */
-    public static Response processSearchQuery(NerdQuery nerdQuery) {
+    public static Response processSearchQuery(final NerdQuery nerdQuery) {
+        String key = NerdResponseCache.getShortTextKey(nerdQuery);
+        if (key == null)
+            return searchQuery(nerdQuery);
+
+        long start = System.currentTimeMillis();
+        final Response[] computed = new Response[1];
+        byte[] json = NerdResponseCache.getInstance().get(NerdResponseCache.SHORT_TEXT, key, new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                computed[0] = searchQuery(nerdQuery);
+                // a response degraded by the time budget is not kept
+                TimeBudget budget = nerdQuery.getBudget();
+                if ((budget != null) && !budget.getDegradations().isEmpty())
+                    return null;
+                return NerdResponseCache.getCacheableEntity(computed[0]);
+            }
+        });
+
+        if (json != null) {
+            // the cached response gives the runtime of the query which computed it
+            if (computed[0] == null)
+                json = NerdResponseCache.withRuntime(json, System.currentTimeMillis() - start);
+            return Response.status(Status.OK).entity(json)
+                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON + "; charset=UTF-8")
+                    .header("Access-Control-Allow-Origin", "*")
+                    .header("Access-Control-Allow-Methods", "GET, POST, DELETE, PUT")
+                    .build();
+        } else if (computed[0] != null) {
+            return computed[0];
+        } else {
+            // the response computed by a concurrent identical query has not been cached
+            return searchQuery(nerdQuery);
+        }
+    }
+
+    private static Response searchQuery(NerdQuery nerdQuery) {
         LOGGER.debug(methodLogIn());
         Response response = null;
         try {
@@ -352,6 +433,7 @@ public class NerdRestProcessQuery {
             // test first if the language is already indicated in the query structure
             Language lang = nerdQuery.getLanguage();
             if ((lang == null) || (lang.getLang() == null)) {
+                long startStage = NerdMetrics.start();
                 LanguageUtilities languageUtilities = LanguageUtilities.getInstance();
                 try {
                     lang = languageUtilities.runLanguageId(nerdQuery.getShortText());
@@ -359,6 +441,7 @@ public class NerdRestProcessQuery {
                     LOGGER.debug("exception language identifier for: " + nerdQuery.getShortText());
                     //e.printStackTrace();
                 }
+                NerdMetrics.stop(Stage.languageIdentification, startStage);
                 if ((lang != null) && (lang.getLang() != null)) {
                     nerdQuery.setLanguage(lang);
                     LOGGER.debug(">> identified language: " + lang.toString());
@@ -374,11 +457,17 @@ public class NerdRestProcessQuery {
                 return response;
             } else {
                 String theLang = lang.getLang();
-                if (!theLang.equals("en") && !theLang.equals("de") && !theLang.equals("fr")) {
+                if (!UpperKnowledgeBase.getInstance().getLanguages().contains(theLang)) {
                     response = Response.status(Status.NOT_ACCEPTABLE).build();
                     LOGGER.debug(methodLogOut());
                     return response;
                 }
+                // a served language whose KB cannot be opened currently, its opening is retried later
+                if (UpperKnowledgeBase.getInstance().getWikipediaConf(theLang) == null) {
+                    response = Response.status(Status.SERVICE_UNAVAILABLE).build();
+                    LOGGER.debug(methodLogOut());
+                    return response;
+                }
             }
 
             // entities originally from the query are marked as such
@@ -404,7 +493,9 @@ public class NerdRestProcessQuery {
 				sentences = processText.sentenceSegmentation(nerdQuery.getText());
 				nerdQuery.setSentences(sentences);
 			}*/
+            long startStage = NerdMetrics.start();
             List<Entity> entities = processText.processBrutal(nerdQuery);
+            NerdMetrics.stop(Stage.processBrutal, startStage);
             List<NerdEntity> newEntities = new ArrayList<NerdEntity>();
 
             if (entities != null) {
@@ -468,25 +559,23 @@ public class NerdRestProcessQuery {
                 List<NerdEntity> disambiguatedEntities = disambiguator.disambiguate(nerdQuery);
                 nerdQuery.setEntities(disambiguatedEntities);
                 // calculate the global categories
+                startStage = NerdMetrics.start();
                 nerdQuery = NerdCategories.addCategoryDistribution(nerdQuery);
+                NerdMetrics.stop(Stage.enrichment, startStage);
             }
 
             long end = System.currentTimeMillis();
             nerdQuery.setRuntime(end - start);
+            nerdQuery.setTrace(NerdMetrics.getTrace());
 
             if (nerdQuery.getEntities() != null)
                 Collections.sort(nerdQuery.getEntities());
-            String json = nerdQuery.toJSONClean(null);
-
-            if (json == null) {
-                response = Response.status(Status.INTERNAL_SERVER_ERROR).build();
-            } else {
-                response = Response.status(Status.OK).entity(json)
-                        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON + "; charset=UTF-8")
-                        .header("Access-Control-Allow-Origin", "*")
-                        .header("Access-Control-Allow-Methods", "GET, POST, DELETE, PUT")
-                        .build();
-            }
+            // the response is serialised when written to the client
+            response = Response.status(Status.OK).entity(nerdQuery.toStreamingJSONClean(null))
+                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON + "; charset=UTF-8")
+                    .header("Access-Control-Allow-Origin", "*")
+                    .header("Access-Control-Allow-Methods", "GET, POST, DELETE, PUT")
+                    .build();
         } catch (NoSuchElementException nseExp) {
             LOGGER.error("Could not get an engine from the pool within configured time. Sending service unavailable.");
             response = Response.status(Status.SERVICE_UNAVAILABLE).build();
@@ -40,6 +40,13 @@ public class NerdRestService implements NerdPaths {
     private static final String SENTENCE = "sentence";
     private static final String FORMAT = "format";
     private static final String CUSTOMISATION = "customisation";
+    private static final String ORDERED = "ordered";
+    private static final String VERSION = "version";
+    private static final String PROPERTY = "property";
+    private static final String PROPERTIES = "properties";
+    private static final String CURSOR = "cursor";
+    private static final String LIMIT = "limit";
+    private static final String VALUE_TYPE = "type";
 
     public NerdRestService() {
         LOGGER.info("Init Servlet NerdRestService.");
@@ -53,6 +60,11 @@ public class NerdRestService implements NerdPaths {
         LOGGER.info("Init KB resources.");
         UpperKnowledgeBase.getInstance();
         LOGGER.info("Init KB resources finished.");
+
+        // restore the hot state of the KB caches in the background
+        WarmStart.getInstance().start();
+        // close the languages no longer used
+        IdleLanguageUnloader.start();
     }
 
     /**
@@ -142,6 +154,19 @@ public class NerdRestService implements NerdPaths {
         return NerdRestProcessQuery.processQuery(query);
     }
 
+    /**
+     * Process a batch of queries sent as a JSON array or as NDJSON, the results are streamed
+     * back as NDJSON, one line per query
+     */
+    @POST
+    @Path(DISAMBIGUATE_BATCH)
+    @Consumes({MediaType.APPLICATION_JSON, NerdRestProcessBatch.APPLICATION_NDJSON})
+    @Produces(NerdRestProcessBatch.APPLICATION_NDJSON)
+    public Response processBatch(@DefaultValue("true") @QueryParam(ORDERED) boolean ordered,
+                                 String queries) {
+        return NerdRestProcessBatch.processBatch(queries, ordered);
+    }
+
     /*@POST
     @Path(DISAMBIGUATE)
     @Consumes(MediaType.MULTIPART_FORM_DATA)
@@ -185,6 +210,39 @@ public class NerdRestService implements NerdPaths {
         return NerdRestProcessAdmin.getAllPropertiesValues(sha1);
     }
 
+    @Path(ADMIN_METRICS)
+    @Produces(MediaType.APPLICATION_JSON)
+    @GET
+    public Response getMetrics(@QueryParam(SHA1) String sha1) {
+        return NerdRestProcessAdmin.getMetrics(sha1);
+    }
+
+    @Path(ADMIN_METRICS)
+    @DELETE
+    public Response resetMetrics(@QueryParam(SHA1) String sha1) {
+        return NerdRestProcessAdmin.resetMetrics(sha1);
+    }
+
+    @Path(ADMIN_CACHE)
+    @DELETE
+    public Response clearResponseCache(@QueryParam(SHA1) String sha1) {
+        return NerdRestProcessAdmin.clearResponseCache(sha1);
+    }
+
+    @Path(ADMIN_KB)
+    @Produces(MediaType.APPLICATION_JSON)
+    @GET
+    public Response getKBVersion(@QueryParam(SHA1) String sha1) {
+        return NerdRestProcessAdmin.getKBVersion(sha1);
+    }
+
+    @Path(ADMIN_KB + "/{version}")
+    @Produces(MediaType.APPLICATION_JSON)
+    @PUT
+    public Response switchKBVersion(@QueryParam(SHA1) String sha1, @PathParam(VERSION) String version) {
+        return NerdRestProcessAdmin.switchKBVersion(sha1, version);
+    }
+
     @Path(ADMIN + "/property/{name}")
     @Produces(MediaType.APPLICATION_JSON)
     @GET
@@ -211,8 +269,20 @@ public class NerdRestService implements NerdPaths {
     @Produces(MediaType.APPLICATION_JSON)
     @GET
     public Response getConceptInformation(@PathParam(ID) String identifier,
-                                          @DefaultValue("en") @QueryParam(LANG) String lang) {
-        return NerdRestKB.getConceptInfo(identifier, lang);
+                                          @DefaultValue("en") @QueryParam(LANG) String lang,
+                                          @QueryParam(PROPERTIES) String properties) {
+        return NerdRestKB.getConceptInfo(identifier, lang, properties);
+    }
+
+    @GET
+    @Path(KB + "/" + CONCEPTS)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getConceptsByStatement(@QueryParam(PROPERTY) String property,
+                                           @QueryParam(VALUE) String value,
+                                           @QueryParam(VALUE_TYPE) String type,
+                                           @QueryParam(CURSOR) String cursor,
+                                           @DefaultValue("100") @QueryParam(LIMIT) int limit) {
+        return NerdRestKB.getConceptsByStatement(property, value, type, cursor, limit);
     }
 
     @GET
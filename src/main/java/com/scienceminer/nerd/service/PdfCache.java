@@ -0,0 +1,266 @@
+package com.scienceminer.nerd.service;
+
+import com.scienceminer.nerd.kb.Customisations;
+import com.scienceminer.nerd.utilities.NerdMetrics;
+import com.scienceminer.nerd.utilities.NerdProperties;
+import com.scienceminer.nerd.utilities.SHA1;
+import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Disk cache of the processed PDF, keyed by the SHA-1 of their content. For each PDF, the
+ * cache keeps the result of the GROBID processing (see PdfSegments) and, separately, the
+ * final responses for the sets of query parameters already used. Annotating again a known
+ * PDF with other parameters or another customisation only runs the disambiguation, without
+ * GROBID.
+ *
+ * Each PDF has its own directory, the least recently used directories being removed when
+ * there are more PDF than the maximum number. Files are written in a temporary file and then
+ * moved, so that a concurrent reader never sees a partial file. The responses are removed
+ * when the KB changes, the segmentation remaining valid.
+ */
+public class PdfCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PdfCache.class);
+
+    public static final String SEGMENTS = "pdfSegments";
+    public static final String RESULT = "pdfResult";
+
+    private static final String SEGMENTS_FILE = "segments.bin";
+    private static final String RESULT_PREFIX = "result-";
+    private static final String RESULT_SUFFIX = ".json";
+
+    private static final char SEPARATOR = '\u0001';
+
+    private static volatile PdfCache instance = null;
+
+    private final File directory;
+    private final int maxDocuments;
+
+    public static PdfCache getInstance() {
+        if (instance == null)
+            getNewInstance();
+        return instance;
+    }
+
+    private static synchronized void getNewInstance() {
+        if (instance != null)
+            return;
+        instance = new PdfCache(NerdProperties.getPdfCachePath(), NerdProperties.getPdfCacheMaxDocuments());
+    }
+
+    /**
+     * @param directory directory of the cache, created if needed
+     * @param maxDocuments maximum number of cached PDF, 0 to disable the cache
+     */
+    protected PdfCache(File directory, int maxDocuments) {
+        this.directory = directory;
+        this.maxDocuments = maxDocuments;
+        if ((maxDocuments > 0) && !directory.exists() && !directory.mkdirs())
+            LOGGER.warn("Cannot create the PDF cache directory " + directory.getPath());
+    }
+
+    public boolean isEnabled() {
+        return (maxDocuments > 0) && directory.isDirectory();
+    }
+
+    /**
+     * @return the cached result of the GROBID processing of the PDF, or null if the PDF is
+     * not known
+     */
+    public PdfSegments getSegments(String sha1) {
+        if (!isEnabled())
+            return null;
+        File file = new File(getDocumentDirectory(sha1), SEGMENTS_FILE);
+        PdfSegments segments = null;
+        if (file.exists()) {
+            try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                segments = PdfSegments.read(input);
+            } catch (IOException e) {
+                LOGGER.warn("Cannot read the cached segmentation of " + sha1, e);
+            }
+        }
+        if (segments != null) {
+            NerdMetrics.countCacheHit(SEGMENTS);
+            touch(sha1);
+        } else
+            NerdMetrics.countCacheMiss(SEGMENTS);
+        return segments;
+    }
+
+    public void putSegments(String sha1, PdfSegments segments) {
+        if (!isEnabled())
+            return;
+        File documentDirectory = getDocumentDirectory(sha1);
+        documentDirectory.mkdirs();
+        File tmpFile = null;
+        try {
+            tmpFile = File.createTempFile(SEGMENTS_FILE, ".tmp", documentDirectory);
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+                segments.write(output);
+            }
+            move(tmpFile, new File(documentDirectory, SEGMENTS_FILE));
+        } catch (IOException e) {
+            LOGGER.warn("Cannot write the segmentation of " + sha1 + " in the PDF cache", e);
+            FileUtils.deleteQuietly(tmpFile);
+        }
+        evict();
+    }
+
+    /**
+     * @param key the result key of the query, see getResultKey()
+     * @return the cached response for the PDF and the query parameters, or null
+     */
+    public byte[] getResult(String sha1, String key) {
+        if (!isEnabled() || (key == null))
+            return null;
+        File file = getResultFile(sha1, key);
+        byte[] result = null;
+        if (file.exists()) {
+            try {
+                result = FileUtils.readFileToByteArray(file);
+            } catch (IOException e) {
+                LOGGER.warn("Cannot read the cached result of " + sha1, e);
+            }
+        }
+        if (result != null) {
+            NerdMetrics.countCacheHit(RESULT);
+            touch(sha1);
+        } else
+            NerdMetrics.countCacheMiss(RESULT);
+        return result;
+    }
+
+    public void putResult(String sha1, String key, byte[] result) {
+        if (!isEnabled() || (key == null) || (result == null))
+            return;
+        File documentDirectory = getDocumentDirectory(sha1);
+        documentDirectory.mkdirs();
+        File tmpFile = null;
+        try {
+            tmpFile = File.createTempFile(RESULT_PREFIX, ".tmp", documentDirectory);
+            FileUtils.writeByteArrayToFile(tmpFile, result);
+            move(tmpFile, getResultFile(sha1, key));
+        } catch (IOException e) {
+            LOGGER.warn("Cannot write the result of " + sha1 + " in the PDF cache", e);
+            FileUtils.deleteQuietly(tmpFile);
+        }
+        evict();
+    }
+
+    /**
+     * Remove all the cached responses, for instance after a change of the KB. The cached
+     * segmentations are kept.
+     */
+    public void invalidateResults() {
+        if (!isEnabled())
+            return;
+        File[] documentDirectories = directory.listFiles();
+        if (documentDirectories == null)
+            return;
+        for (File documentDirectory : documentDirectories) {
+            File[] files = documentDirectory.listFiles();
+            if (files == null)
+                continue;
+            for (File file : files) {
+                if (file.getName().startsWith(RESULT_PREFIX))
+                    FileUtils.deleteQuietly(file);
+            }
+        }
+    }
+
+    /**
+     * @return the number of cached PDF
+     */
+    public int size() {
+        File[] documentDirectories = directory.listFiles();
+        return (documentDirectories == null) ? 0 : documentDirectories.length;
+    }
+
+    private File getDocumentDirectory(String sha1) {
+        return new File(directory, sha1);
+    }
+
+    private File getResultFile(String sha1, String key) {
+        return new File(getDocumentDirectory(sha1), RESULT_PREFIX + SHA1.getSHA1(key) + RESULT_SUFFIX);
+    }
+
+    private static void move(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // the modification time of the directory of a PDF is its last use
+    private void touch(String sha1) {
+        getDocumentDirectory(sha1).setLastModified(System.currentTimeMillis());
+    }
+
+    /**
+     * Remove the least recently used PDF when there are more PDF than the maximum number.
+     */
+    private synchronized void evict() {
+        File[] documentDirectories = directory.listFiles();
+        if ((documentDirectories == null) || (documentDirectories.length <= maxDocuments))
+            return;
+        final Map<File, Long> lastModified = new HashMap<>();
+        for (File documentDirectory : documentDirectories)
+            lastModified.put(documentDirectory, documentDirectory.lastModified());
+        Arrays.sort(documentDirectories, new Comparator<File>() {
+            @Override
+            public int compare(File file1, File file2) {
+                return Long.compare(lastModified.get(file1), lastModified.get(file2));
+            }
+        });
+        for (int i = 0; i < documentDirectories.length - maxDocuments; i++)
+            FileUtils.deleteQuietly(documentDirectories[i]);
+    }
+
+    /**
+     * @return the canonical form of the parameters of a PDF query, or null if the response
+     * cannot be cached (entities given in the query, filter, per-query timings)
+     */
+    public static String getResultKey(NerdQuery nerdQuery) {
+        if (CollectionUtils.isNotEmpty(nerdQuery.getEntities()) || (nerdQuery.getFilter() != null) ||
+                nerdQuery.getTimings())
+            return null;
+
+        StringBuilder key = new StringBuilder();
+        // a request ending with the previous KB version after a switch must not store its
+        // response for the new version
+        key.append(NerdResponseCache.getKBVersion()).append(SEPARATOR);
+        if ((nerdQuery.getLanguage() != null) && (nerdQuery.getLanguage().getLang() != null))
+            key.append(nerdQuery.getLanguage().getLang());
+        key.append(SEPARATOR).append(nerdQuery.getCustomisation());
+        // the customisation can be updated under the same name
+        if (nerdQuery.getCustomisation() != null) {
+            String customisation = Customisations.getInstance().getCustomisation(nerdQuery.getCustomisation());
+            if (customisation != null)
+                key.append(SEPARATOR).append(SHA1.getSHA1(customisation));
+        }
+        key.append(SEPARATOR).append(nerdQuery.getNbest());
+        key.append(SEPARATOR).append(nerdQuery.getOnlyNER());
+        key.append(SEPARATOR).append(nerdQuery.getFull());
+        key.append(SEPARATOR).append(nerdQuery.getProperties());
+        key.append(SEPARATOR).append(nerdQuery.getSentence());
+        key.append(SEPARATOR).append(nerdQuery.getMinSelectorScore());
+        key.append(SEPARATOR).append(nerdQuery.getMinRankerScore());
+        key.append(SEPARATOR).append(nerdQuery.getFormat());
+        key.append(SEPARATOR);
+        if (nerdQuery.getResultLanguages() != null) {
+            List<String> languages = new ArrayList<>(new TreeSet<>(nerdQuery.getResultLanguages()));
+            key.append(languages);
+        }
+        return key.toString();
+    }
+}
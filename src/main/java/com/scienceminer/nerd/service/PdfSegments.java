@@ -0,0 +1,250 @@
+package com.scienceminer.nerd.service;
+
+import org.grobid.core.lang.Language;
+import org.grobid.core.layout.LayoutToken;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result of the GROBID processing of a PDF used by the disambiguation: the layout token
+ * sequences of the document parts to be annotated, the language identified from the header
+ * and the page sizes. This is what is kept in the PDF cache, so that a known PDF can be
+ * annotated again without GROBID.
+ *
+ * Only the token attributes used for the annotation (text, font and coordinates) are kept.
+ */
+public class PdfSegments {
+
+    // incremented when the binary format changes, cached segments of another version are ignored
+    private static final int VERSION = 1;
+
+    // true if the header has been labelled, even if no title, abstract or keywords were found
+    private boolean header = false;
+    private List<LayoutToken> title = null;
+    private List<LayoutToken> abstract_ = null;
+    private List<LayoutToken> keywords = null;
+
+    // language identified from the header, null if not identified
+    private Language language = null;
+
+    // body token sequences (paragraphs, items, sections, figures and tables)
+    private List<List<LayoutToken>> body = null;
+
+    private List<LayoutToken> acknowledgement = null;
+    private List<LayoutToken> annex = null;
+    private List<LayoutToken> footnotes = null;
+
+    // height and width of the pages
+    private double[][] pageSizes = null;
+
+    public boolean hasHeader() {
+        return header;
+    }
+
+    public void setHeader(boolean header) {
+        this.header = header;
+    }
+
+    public List<LayoutToken> getTitle() {
+        return title;
+    }
+
+    public void setTitle(List<LayoutToken> title) {
+        this.title = title;
+    }
+
+    public List<LayoutToken> getAbstract() {
+        return abstract_;
+    }
+
+    public void setAbstract(List<LayoutToken> abstract_) {
+        this.abstract_ = abstract_;
+    }
+
+    public List<LayoutToken> getKeywords() {
+        return keywords;
+    }
+
+    public void setKeywords(List<LayoutToken> keywords) {
+        this.keywords = keywords;
+    }
+
+    public Language getLanguage() {
+        return language;
+    }
+
+    public void setLanguage(Language language) {
+        this.language = language;
+    }
+
+    public List<List<LayoutToken>> getBody() {
+        return body;
+    }
+
+    public void setBody(List<List<LayoutToken>> body) {
+        this.body = body;
+    }
+
+    public List<LayoutToken> getAcknowledgement() {
+        return acknowledgement;
+    }
+
+    public void setAcknowledgement(List<LayoutToken> acknowledgement) {
+        this.acknowledgement = acknowledgement;
+    }
+
+    public List<LayoutToken> getAnnex() {
+        return annex;
+    }
+
+    public void setAnnex(List<LayoutToken> annex) {
+        this.annex = annex;
+    }
+
+    public List<LayoutToken> getFootnotes() {
+        return footnotes;
+    }
+
+    public void setFootnotes(List<LayoutToken> footnotes) {
+        this.footnotes = footnotes;
+    }
+
+    public double[][] getPageSizes() {
+        return pageSizes;
+    }
+
+    public void setPageSizes(double[][] pageSizes) {
+        this.pageSizes = pageSizes;
+    }
+
+    public void write(DataOutputStream output) throws IOException {
+        output.writeInt(VERSION);
+        output.writeBoolean(header);
+        writeTokens(output, title);
+        writeTokens(output, abstract_);
+        writeTokens(output, keywords);
+
+        output.writeBoolean(language != null);
+        if (language != null) {
+            output.writeUTF(language.getLang());
+            output.writeDouble(language.getConf());
+        }
+
+        output.writeInt((body == null) ? -1 : body.size());
+        if (body != null) {
+            for (List<LayoutToken> tokens : body)
+                writeTokens(output, tokens);
+        }
+
+        writeTokens(output, acknowledgement);
+        writeTokens(output, annex);
+        writeTokens(output, footnotes);
+
+        output.writeInt((pageSizes == null) ? -1 : pageSizes.length);
+        if (pageSizes != null) {
+            for (double[] size : pageSizes) {
+                output.writeDouble(size[0]);
+                output.writeDouble(size[1]);
+            }
+        }
+    }
+
+    /**
+     * @return the segments, or null if they have been written with another version
+     */
+    public static PdfSegments read(DataInputStream input) throws IOException {
+        if (input.readInt() != VERSION)
+            return null;
+        PdfSegments segments = new PdfSegments();
+        segments.header = input.readBoolean();
+        segments.title = readTokens(input);
+        segments.abstract_ = readTokens(input);
+        segments.keywords = readTokens(input);
+
+        if (input.readBoolean()) {
+            String lang = input.readUTF();
+            segments.language = new Language(lang, input.readDouble());
+        }
+
+        int nbSequences = input.readInt();
+        if (nbSequences >= 0) {
+            segments.body = new ArrayList<List<LayoutToken>>(nbSequences);
+            for (int i = 0; i < nbSequences; i++)
+                segments.body.add(readTokens(input));
+        }
+
+        segments.acknowledgement = readTokens(input);
+        segments.annex = readTokens(input);
+        segments.footnotes = readTokens(input);
+
+        int nbPages = input.readInt();
+        if (nbPages >= 0) {
+            segments.pageSizes = new double[nbPages][2];
+            for (int i = 0; i < nbPages; i++) {
+                segments.pageSizes[i][0] = input.readDouble();
+                segments.pageSizes[i][1] = input.readDouble();
+            }
+        }
+        return segments;
+    }
+
+    private static void writeTokens(DataOutputStream output, List<LayoutToken> tokens) throws IOException {
+        output.writeInt((tokens == null) ? -1 : tokens.size());
+        if (tokens == null)
+            return;
+        for (LayoutToken token : tokens) {
+            writeString(output, token.getText());
+            output.writeInt(token.getOffset());
+            writeString(output, token.getFont());
+            output.writeDouble(token.getFontSize());
+            output.writeBoolean(token.getBold());
+            output.writeBoolean(token.getItalic());
+            writeString(output, token.getColorFont());
+            output.writeBoolean(token.getRotation());
+            output.writeInt(token.getPage());
+            output.writeDouble(token.getX());
+            output.writeDouble(token.getY());
+            output.writeDouble(token.getWidth());
+            output.writeDouble(token.getHeight());
+        }
+    }
+
+    private static List<LayoutToken> readTokens(DataInputStream input) throws IOException {
+        int size = input.readInt();
+        if (size < 0)
+            return null;
+        List<LayoutToken> tokens = new ArrayList<LayoutToken>(size);
+        for (int i = 0; i < size; i++) {
+            LayoutToken token = new LayoutToken();
+            token.setText(readString(input));
+            token.setOffset(input.readInt());
+            token.setFont(readString(input));
+            token.setFontSize(input.readDouble());
+            token.setBold(input.readBoolean());
+            token.setItalic(input.readBoolean());
+            token.setColorFont(readString(input));
+            token.setRotation(input.readBoolean());
+            token.setPage(input.readInt());
+            token.setX(input.readDouble());
+            token.setY(input.readDouble());
+            token.setWidth(input.readDouble());
+            token.setHeight(input.readDouble());
+            tokens.add(token);
+        }
+        return tokens;
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null)
+            output.writeUTF(value);
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+}
@@ -0,0 +1,392 @@
+package com.scienceminer.nerd.service;
+
+import com.scienceminer.nerd.disambiguation.NerdEngine;
+import com.scienceminer.nerd.disambiguation.Relatedness;
+import com.scienceminer.nerd.kb.LowerKnowledgeBase;
+import com.scienceminer.nerd.kb.UpperKnowledgeBase;
+import com.scienceminer.nerd.kb.db.KBLowerEnvironment;
+import com.scienceminer.nerd.utilities.NerdProperties;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Warm-start of the service: the hot state of the KB caches is saved in a binary snapshot
+ * at shutdown and periodically, and restored when the service starts, so that a restarted
+ * service does not stay slow while its caches refill.
+ *
+ * The snapshot contains, for each language, the most accessed labels and pages, the
+ * relatedness cache and whether the ranker and selector models were loaded. At startup, the
+ * relatedness scores are restored immediately, then the models are loaded and the LMDB
+ * entries of the hot labels and pages are read in the background, which brings their pages
+ * in the OS page cache. The progress of this warm-up is reported by the isAlive service.
+ *
+ * The relatedness scores of a language are only restored if the size of its KB did not
+ * change since the snapshot. Only the languages loaded at startup (the preloaded ones) are
+ * restored: the snapshot does not cause the loading of the other languages.
+ */
+public class WarmStart {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WarmStart.class);
+
+    private static final int VERSION = 1;
+
+    // longer labels are not saved in the snapshot
+    private static final int MAX_LABEL_LENGTH = 1000;
+
+    private static volatile WarmStart instance = null;
+
+    private final File file;
+    private final int maxEntries;
+    private final long interval;
+
+    private ScheduledExecutorService scheduler = null;
+
+    // progress of the warm-up, in number of models, labels and pages
+    private volatile long total = 0;
+    private final AtomicLong done = new AtomicLong();
+    private volatile boolean running = false;
+
+    /**
+     * State of a language in the snapshot
+     */
+    protected static class LanguageState {
+        protected String lang;
+        protected long articleCount;
+        protected boolean models;
+        protected Map<String, Integer> labels = new LinkedHashMap<>();
+        protected Map<Integer, Integer> pages = new LinkedHashMap<>();
+        protected Map<Long, Double> relatedness = new HashMap<>();
+    }
+
+    public static WarmStart getInstance() {
+        if (instance == null)
+            getNewInstance();
+        return instance;
+    }
+
+    private static synchronized void getNewInstance() {
+        if (instance != null)
+            return;
+        instance = new WarmStart(NerdProperties.getWarmStartPath(), NerdProperties.getWarmStartMaxEntries(),
+            NerdProperties.getWarmStartInterval());
+    }
+
+    /**
+     * @param file the snapshot file
+     * @param maxEntries maximum number of labels, pages and relatedness scores per language,
+     *                   0 to disable the snapshot
+     * @param interval interval between two snapshots in minutes, 0 for a snapshot only at
+     *                 shutdown
+     */
+    protected WarmStart(File file, int maxEntries, long interval) {
+        this.file = file;
+        this.maxEntries = maxEntries;
+        this.interval = interval;
+    }
+
+    public boolean isEnabled() {
+        return maxEntries > 0;
+    }
+
+    /**
+     * Restore the snapshot, if any, in the background and schedule the next snapshots. To be
+     * called once the KB is initialised.
+     */
+    public synchronized void start() {
+        if (!isEnabled() || (scheduler != null))
+            return;
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "nerd-warm-start");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        final List<LanguageState> states = read();
+        if (states != null) {
+            running = true;
+            scheduler.execute(new Runnable() {
+                @Override
+                public void run() {
+                    restore(states);
+                }
+            });
+        }
+
+        if (interval > 0) {
+            scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    snapshot();
+                }
+            }, interval, interval, TimeUnit.MINUTES);
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread("nerd-warm-start-snapshot") {
+            @Override
+            public void run() {
+                snapshot();
+            }
+        });
+    }
+
+    /**
+     * @return true if the snapshot is being restored
+     */
+    public boolean isWarmingUp() {
+        return running;
+    }
+
+    /**
+     * @return the progress of the warm-up between 0 and 1, 1 when there is nothing to restore
+     */
+    public double getProgress() {
+        if (!running || (total == 0))
+            return 1.0;
+        return Math.min(1.0, (double) done.get() / total);
+    }
+
+    /**
+     * Save the current hot state of the KB caches in the snapshot file
+     */
+    public synchronized void snapshot() {
+        if (!isEnabled())
+            return;
+        // the state being restored is not complete yet
+        if (running)
+            return;
+        List<LanguageState> states = null;
+        try {
+            states = getStates();
+        } catch (Exception e) {
+            LOGGER.warn("Cannot get the state of the KB caches for the warm-start snapshot", e);
+            return;
+        }
+
+        File tmpFile = null;
+        try {
+            File directory = file.getAbsoluteFile().getParentFile();
+            if ((directory != null) && !directory.exists())
+                directory.mkdirs();
+            tmpFile = File.createTempFile(file.getName(), ".tmp", directory);
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+                write(states, output);
+            }
+            try {
+                Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            LOGGER.info("Warm-start snapshot saved in " + file.getPath());
+        } catch (IOException e) {
+            LOGGER.warn("Cannot write the warm-start snapshot " + file.getPath(), e);
+            FileUtils.deleteQuietly(tmpFile);
+        }
+    }
+
+    /**
+     * @return the current hot state of the KB caches
+     */
+    private List<LanguageState> getStates() {
+        List<LanguageState> states = new ArrayList<>();
+        Set<String> modelLanguages = NerdEngine.getModelLanguages();
+        for (Map.Entry<String, LowerKnowledgeBase> entry : UpperKnowledgeBase.getInstance().getWikipediaConfs().entrySet()) {
+            String lang = entry.getKey();
+            KBLowerEnvironment env = entry.getValue().getEnvironment();
+            LanguageState state = new LanguageState();
+            state.lang = lang;
+            state.articleCount = entry.getValue().getArticleCount();
+            state.models = modelLanguages.contains(lang);
+            for (Map.Entry<String, Integer> label : env.getHotLabels().getTop(maxEntries)) {
+                if (label.getKey().length() <= MAX_LABEL_LENGTH)
+                    state.labels.put(label.getKey(), label.getValue());
+            }
+            for (Map.Entry<Integer, Integer> page : env.getHotPages().getTop(maxEntries))
+                state.pages.put(page.getKey(), page.getValue());
+            state.relatedness = Relatedness.getInstance().getCacheEntries(lang, maxEntries);
+            states.add(state);
+        }
+        return states;
+    }
+
+    /**
+     * Warm a new KB version before switching to it: the models loaded for the current 
+     * version are loaded for the new one, and the entries of the new version corresponding 
+     * to the hot labels and pages of the current version are read. The relatedness scores 
+     * are not kept, as they depend on the KB.
+     */
+    public void warm(UpperKnowledgeBase kb) {
+        long start = System.currentTimeMillis();
+        List<LanguageState> states = getStates();
+        for (LanguageState state : states) {
+            LowerKnowledgeBase wikipedia = kb.getWikipediaConf(state.lang);
+            if (wikipedia == null)
+                continue;
+            if (state.models) {
+                try {
+                    NerdEngine.getInstance().loadModels(wikipedia);
+                } catch (Exception e) {
+                    LOGGER.warn("Cannot load the models for " + state.lang, e);
+                }
+            }
+            prefetch(wikipedia.getEnvironment(), state);
+        }
+        LOGGER.info("KB version " + kb.getVersion() + " warmed in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Read the LMDB entries of the hot labels and pages of a language, which brings their
+     * pages in the OS page cache, and count them again as hot
+     */
+    private void prefetch(KBLowerEnvironment env, LanguageState state) {
+        for (Map.Entry<String, Integer> label : state.labels.entrySet()) {
+            env.getDbLabel().retrieve(label.getKey());
+            env.getDbCandidates().retrieve(label.getKey());
+            env.getHotLabels().add(label.getKey(), label.getValue());
+            done.incrementAndGet();
+        }
+        for (Map.Entry<Integer, Integer> page : state.pages.entrySet()) {
+            env.getDbPage().retrieve(page.getKey());
+            env.getDbPageLinkInNoSentences().retrieve(page.getKey());
+            env.getDbPageLinkOutNoSentences().retrieve(page.getKey());
+            env.getHotPages().add(page.getKey(), page.getValue());
+            done.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return the states of the snapshot file, or null if there is no valid snapshot
+     */
+    private List<LanguageState> read() {
+        if (!file.exists())
+            return null;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            List<LanguageState> states = read(input);
+            if (states == null)
+                LOGGER.info("Warm-start snapshot " + file.getPath() + " ignored, written by another version");
+            return states;
+        } catch (IOException e) {
+            LOGGER.warn("Cannot read the warm-start snapshot " + file.getPath(), e);
+        }
+        return null;
+    }
+
+    private void restore(List<LanguageState> states) {
+        long start = System.currentTimeMillis();
+        try {
+            // only the languages loaded at startup are warmed up, the other ones are loaded at
+            // their first request
+            Map<String, LowerKnowledgeBase> wikipedias =
+                new HashMap<>(UpperKnowledgeBase.getInstance().getWikipediaConfs());
+            long toRestore = 0;
+            for (LanguageState state : states) {
+                if (!wikipedias.containsKey(state.lang))
+                    continue;
+                toRestore += (state.models ? 1 : 0) + state.labels.size() + state.pages.size();
+            }
+            total = toRestore;
+
+            for (LanguageState state : states) {
+                LowerKnowledgeBase wikipedia = wikipedias.get(state.lang);
+                if (wikipedia == null)
+                    continue;
+                if (wikipedia.getArticleCount() == state.articleCount)
+                    Relatedness.getInstance().putCacheEntries(state.lang, state.relatedness);
+                else
+                    LOGGER.info("Relatedness scores of the warm-start snapshot ignored for " + state.lang + ", the KB changed");
+                if (state.models) {
+                    try {
+                        NerdEngine.getInstance().loadModels(wikipedia);
+                    } catch (Exception e) {
+                        LOGGER.warn("Cannot load the models for " + state.lang, e);
+                    }
+                    done.incrementAndGet();
+                }
+            }
+
+            for (LanguageState state : states) {
+                LowerKnowledgeBase wikipedia = wikipedias.get(state.lang);
+                if (wikipedia != null)
+                    prefetch(wikipedia.getEnvironment(), state);
+            }
+            LOGGER.info("Warm-start snapshot restored in " + (System.currentTimeMillis() - start) + " ms");
+        } catch (Exception e) {
+            LOGGER.warn("Error when restoring the warm-start snapshot", e);
+        } finally {
+            // the languages used for the warm-up can be unloaded when idle
+            UpperKnowledgeBase.releaseLanguages();
+            running = false;
+        }
+    }
+
+    protected static void write(List<LanguageState> states, DataOutputStream output) throws IOException {
+        output.writeInt(VERSION);
+        output.writeInt(states.size());
+        for (LanguageState state : states) {
+            output.writeUTF(state.lang);
+            output.writeLong(state.articleCount);
+            output.writeBoolean(state.models);
+            output.writeInt(state.labels.size());
+            for (Map.Entry<String, Integer> label : state.labels.entrySet()) {
+                output.writeUTF(label.getKey());
+                output.writeInt(label.getValue());
+            }
+            output.writeInt(state.pages.size());
+            for (Map.Entry<Integer, Integer> page : state.pages.entrySet()) {
+                output.writeInt(page.getKey());
+                output.writeInt(page.getValue());
+            }
+            output.writeInt(state.relatedness.size());
+            for (Map.Entry<Long, Double> score : state.relatedness.entrySet()) {
+                output.writeLong(score.getKey());
+                output.writeDouble(score.getValue());
+            }
+        }
+    }
+
+    /**
+     * @return the states of the snapshot, or null if the snapshot has another version
+     */
+    protected static List<LanguageState> read(DataInputStream input) throws IOException {
+        if (input.readInt() != VERSION)
+            return null;
+        int nbLanguages = input.readInt();
+        List<LanguageState> states = new ArrayList<>(nbLanguages);
+        for (int i = 0; i < nbLanguages; i++) {
+            LanguageState state = new LanguageState();
+            state.lang = input.readUTF();
+            state.articleCount = input.readLong();
+            state.models = input.readBoolean();
+            int nbLabels = input.readInt();
+            for (int j = 0; j < nbLabels; j++) {
+                String label = input.readUTF();
+                state.labels.put(label, input.readInt());
+            }
+            int nbPages = input.readInt();
+            for (int j = 0; j < nbPages; j++) {
+                int page = input.readInt();
+                state.pages.put(page, input.readInt());
+            }
+            int nbScores = input.readInt();
+            state.relatedness = new HashMap<>(2 * nbScores);
+            for (int j = 0; j < nbScores; j++) {
+                long key = input.readLong();
+                state.relatedness.put(key, input.readDouble());
+            }
+            states.add(state);
+        }
+        return states;
+    }
+}
@@ -0,0 +1,52 @@
+package com.scienceminer.nerd.utilities;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Shared JSON resources. An ObjectMapper is expensive to create but thread-safe
+ * once configured, so the mappers are created once and shared by all the requests.
+ */
+public class JsonUtils {
+
+	private static final ObjectMapper mapper = new ObjectMapper();
+
+	// lenient reading (single quotes) but strict on unknown fields, as used for the queries
+	private static final ObjectMapper queryMapper = new ObjectMapper();
+	static {
+		queryMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, true);
+		queryMapper.configure(JsonParser.Feature.ALLOW_SINGLE_QUOTES, true);
+		queryMapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+		queryMapper.setSerializationInclusion(JsonInclude.Include.NON_DEFAULT);
+	}
+
+	/**
+	 * @return a default ObjectMapper, which must not be reconfigured by the caller
+	 */
+	public static ObjectMapper getMapper() {
+		return mapper;
+	}
+
+	/**
+	 * @return the ObjectMapper for reading and writing queries, which must not
+	 * be reconfigured by the caller
+	 */
+	public static ObjectMapper getQueryMapper() {
+		return queryMapper;
+	}
+
+	/**
+	 * Write a string escaped for being used as JSON string value (without the
+	 * surrounding quotes)
+	 */
+	public static void writeEscaped(Writer writer, String value) throws IOException {
+		writer.write(JsonStringEncoder.getInstance().quoteAsString(value));
+	}
+}
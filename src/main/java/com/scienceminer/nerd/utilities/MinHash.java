@@ -0,0 +1,109 @@
+package com.scienceminer.nerd.utilities;
+
+import java.util.*;
+
+/**
+ * b-bit MinHash sketches of sets of integers (page identifiers), used to estimate the
+ * Jaccard similarity, and thus the intersection size, of two large sets in constant time.
+ *
+ * A sketch is an int array: the first element is the size of the set, followed by the
+ * lowest BITS bits of the minimum hash value of the set for each of the NUM_HASHES hash
+ * functions, packed two by two. The hash functions are fixed, so sketches built at KB
+ * creation time can be compared with any later sketch.
+ *
+ * See Li and König, "b-Bit Minwise Hashing", WWW 2010.
+ */
+public class MinHash {
+
+	// number of hash functions, i.e. number of minimum values kept in a sketch
+	public static final int NUM_HASHES = 128;
+
+	// number of bits kept for each minimum value
+	public static final int BITS = 16;
+
+	private static final int MASK = (1 << BITS) - 1;
+
+	// probability of two different minimum values having the same lowest bits
+	private static final double COLLISION = 1.0 / (1 << BITS);
+
+	// Mersenne prime 2^31-1 for the universal hash functions (a*x + b) mod P
+	private static final long PRIME = (1L << 31) - 1;
+
+	private static final long[] A = new long[NUM_HASHES];
+	private static final long[] B = new long[NUM_HASHES];
+	static {
+		// fixed seed: the hash functions must be the same when building and using the sketches
+		Random random = new Random(4243L);
+		for(int i=0; i<NUM_HASHES; i++) {
+			A[i] = 1 + (long)(random.nextDouble() * (PRIME - 2));
+			B[i] = (long)(random.nextDouble() * (PRIME - 1));
+		}
+	}
+
+	/**
+	 * @return the sketch of the given set of non-negative integers, without duplicates
+	 */
+	public static int[] sketch(List<Integer> values) {
+		long[] minima = new long[NUM_HASHES];
+		Arrays.fill(minima, Long.MAX_VALUE);
+		for(Integer value : values) {
+			long x = value.intValue() & 0x7fffffffL;
+			for(int i=0; i<NUM_HASHES; i++) {
+				long hash = (A[i] * x + B[i]) % PRIME;
+				if (hash < minima[i])
+					minima[i] = hash;
+			}
+		}
+
+		int[] sketch = new int[1 + NUM_HASHES/2];
+		sketch[0] = values.size();
+		for(int i=0; i<NUM_HASHES; i+=2) {
+			sketch[1 + i/2] = (int)(((minima[i] & MASK) << BITS) | (minima[i+1] & MASK));
+		}
+		return sketch;
+	}
+
+	/**
+	 * @return the size of the set summarized by the sketch
+	 */
+	public static int getSetSize(int[] sketch) {
+		return sketch[0];
+	}
+
+	/**
+	 * @return the estimated Jaccard similarity of the two sets summarized by the sketches
+	 */
+	public static double estimateJaccard(int[] sketchA, int[] sketchB) {
+		int matches = 0;
+		for(int i=1; i<sketchA.length; i++) {
+			int a = sketchA[i];
+			int b = sketchB[i];
+			if ((a >>> BITS) == (b >>> BITS))
+				matches++;
+			if ((a & MASK) == (b & MASK))
+				matches++;
+		}
+		double proportion = (double)matches / NUM_HASHES;
+		// correction of the random collisions of the lowest bits
+		double jaccard = (proportion - COLLISION) / (1.0 - COLLISION);
+		return Math.max(0.0, Math.min(1.0, jaccard));
+	}
+
+	/**
+	 * @return the standard error of a Jaccard similarity estimated with the sketches
+	 */
+	public static double getStandardError(double jaccard) {
+		double p = COLLISION + (1.0 - COLLISION) * jaccard;
+		// with a floor, so that a similarity of 0 or 1 is not considered as certain
+		double variance = Math.max(p * (1.0 - p), 1.0 / NUM_HASHES);
+		return Math.sqrt(variance / NUM_HASHES) / (1.0 - COLLISION);
+	}
+
+	/**
+	 * @return the intersection size of two sets of the given sizes with the given
+	 * Jaccard similarity
+	 */
+	public static double getIntersectionSize(int sizeA, int sizeB, double jaccard) {
+		return jaccard * (sizeA + sizeB) / (1.0 + jaccard);
+	}
+}
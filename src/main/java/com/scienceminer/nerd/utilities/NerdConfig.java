@@ -1,5 +1,6 @@
 package com.scienceminer.nerd.utilities;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -45,6 +46,46 @@ public class NerdConfig {
 	// in principle)
 	private boolean useLinkOut = false;
 
+	// if true, the relatedness between two entities with many links is 
+	// approximated with precomputed MinHash sketches of their links, 
+	// instead of intersecting the complete link lists
+	private boolean useRelatednessSketches = false;
+
+	// maximum uncertainty of an approximated relatedness, above which the 
+	// exact relatedness is computed
+	private double relatednessExactMargin = 0.05;
+
+	// if true, the candidates of the mentions are read from an index of 
+	// pre-filtered senses per label, built together with the KB
+	private boolean useCandidateIndex = false;
+
+	// if true, the concepts can be looked up by the property and value of their 
+	// statements, with a reverse index of the statements built together with the KB
+	private boolean useStatementIndex = false;
+
+	// number of threads used for loading the databases from the dump files 
+	// when the KB is built, 0 for the number of available processors
+	private int loadingThreads = 0;
+
+	// compression of the markup of the pages, for the first paragraphs (markup) 
+	// and for the complete articles (markupFull) written when the KB is built: 
+	// "none", or "deflate" for a compression with a dictionary trained on the 
+	// markup of the first pages
+	private String markupCompression = "none";
+	private String markupFullCompression = "deflate";
+
+	// languages of the lower KBs served with the upper KB, each described by its 
+	// wikipedia-xx.yaml file, null for the default languages (en, fr, de)
+	private List<String> languages = null;
+
+	// languages whose lower KB is opened at startup and never unloaded, the other 
+	// ones being opened at their first use, null for all the languages
+	private List<String> preloadLanguages = null;
+
+	// time in minutes after which a language not used is unloaded (its LMDB 
+	// environments closed), 0 for never unloading the languages
+	private int languageIdleTimeout = 0;
+
 	// minimum score produced by the selector model under which the entity 
 	// will be pruned
 	private double minSelectorScore = 0.5; 
@@ -141,4 +182,84 @@ public class NerdConfig {
 		this.useLinkOut = useLinkOut;
 	}
 
-}
\ No newline at end of file
+	public boolean getUseRelatednessSketches() {
+		return useRelatednessSketches;
+	}
+
+	public void setUseRelatednessSketches(boolean useRelatednessSketches) {
+		this.useRelatednessSketches = useRelatednessSketches;
+	}
+
+	public double getRelatednessExactMargin() {
+		return relatednessExactMargin;
+	}
+
+	public void setRelatednessExactMargin(double relatednessExactMargin) {
+		this.relatednessExactMargin = relatednessExactMargin;
+	}
+
+	public boolean getUseCandidateIndex() {
+		return useCandidateIndex;
+	}
+
+	public void setUseCandidateIndex(boolean useCandidateIndex) {
+		this.useCandidateIndex = useCandidateIndex;
+	}
+
+	public boolean getUseStatementIndex() {
+		return useStatementIndex;
+	}
+
+	public void setUseStatementIndex(boolean useStatementIndex) {
+		this.useStatementIndex = useStatementIndex;
+	}
+
+	public int getLoadingThreads() {
+		return loadingThreads;
+	}
+
+	public void setLoadingThreads(int loadingThreads) {
+		this.loadingThreads = loadingThreads;
+	}
+
+	public String getMarkupCompression() {
+		return markupCompression;
+	}
+
+	public void setMarkupCompression(String markupCompression) {
+		this.markupCompression = markupCompression;
+	}
+
+	public String getMarkupFullCompression() {
+		return markupFullCompression;
+	}
+
+	public void setMarkupFullCompression(String markupFullCompression) {
+		this.markupFullCompression = markupFullCompression;
+	}
+
+	public List<String> getLanguages() {
+		return languages;
+	}
+
+	public void setLanguages(List<String> languages) {
+		this.languages = languages;
+	}
+
+	public List<String> getPreloadLanguages() {
+		return preloadLanguages;
+	}
+
+	public void setPreloadLanguages(List<String> preloadLanguages) {
+		this.preloadLanguages = preloadLanguages;
+	}
+
+	public int getLanguageIdleTimeout() {
+		return languageIdleTimeout;
+	}
+
+	public void setLanguageIdleTimeout(int languageIdleTimeout) {
+		this.languageIdleTimeout = languageIdleTimeout;
+	}
+
+}
@@ -0,0 +1,267 @@
+package com.scienceminer.nerd.utilities;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Instrumentation of the processing pipeline: timers per processing stage, LMDB read
+ * counts per database and cache hit/miss counters.
+ *
+ * Global values are accumulated since the start of the service (or the last reset) and
+ * exposed by the admin API. In addition, a trace can be opened for the current thread in
+ * order to get the timings of a single request.
+ *
+ * Usage:
+ *     long start = NerdMetrics.start();
+ *     ...
+ *     NerdMetrics.stop(NerdMetrics.Stage.ranking, start);
+ */
+public class NerdMetrics {
+
+	/**
+	 * Processing stages. The model stages measure only the inference of the
+	 * ranker and selector models, they are included respectively in the ranking
+	 * and selection stages.
+	 */
+	public enum Stage {
+		languageIdentification,
+		ner,
+		processBrutal,
+		acronyms,
+		candidateGeneration,
+		context,
+		ranking,
+		rankerModel,
+		selection,
+		selectorModel,
+		pruning,
+		enrichment
+	}
+
+	private static final StageStatistics[] stages = new StageStatistics[Stage.values().length];
+	static {
+		for(int i=0; i<stages.length; i++)
+			stages[i] = new StageStatistics();
+	}
+
+	private static final ConcurrentMap<String, AtomicLong> reads = new ConcurrentHashMap<String, AtomicLong>();
+	private static final ConcurrentMap<String, AtomicLong> cacheHits = new ConcurrentHashMap<String, AtomicLong>();
+	private static final ConcurrentMap<String, AtomicLong> cacheMisses = new ConcurrentHashMap<String, AtomicLong>();
+	private static final AtomicLong requests = new AtomicLong();
+	private static volatile long since = System.currentTimeMillis();
+
+	private static final ThreadLocal<Trace> trace = new ThreadLocal<Trace>();
+
+	/**
+	 * @return the start time to be passed to stop()
+	 */
+	public static long start() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * Record the time spent in a stage since the given start time
+	 */
+	public static void stop(Stage stage, long start) {
+		long elapsed = System.nanoTime() - start;
+		stages[stage.ordinal()].add(elapsed);
+		Trace current = trace.get();
+		if (current != null)
+			current.nanos[stage.ordinal()] += elapsed;
+	}
+
+	/**
+	 * Count a read access to the database of the given name
+	 */
+	public static void countRead(String database) {
+		increment(reads, database);
+		Trace current = trace.get();
+		if (current != null) {
+			Long nb = current.reads.get(database);
+			current.reads.put(database, (nb == null) ? 1L : nb+1);
+		}
+	}
+
+	public static void countCacheHit(String cache) {
+		increment(cacheHits, cache);
+	}
+
+	public static void countCacheMiss(String cache) {
+		increment(cacheMisses, cache);
+	}
+
+	private static void increment(ConcurrentMap<String, AtomicLong> counters, String key) {
+		AtomicLong counter = counters.get(key);
+		if (counter == null) {
+			counters.putIfAbsent(key, new AtomicLong());
+			counter = counters.get(key);
+		}
+		counter.incrementAndGet();
+	}
+
+	/**
+	 * Open a trace for the request processed by the current thread
+	 */
+	public static void startTrace() {
+		requests.incrementAndGet();
+		trace.set(new Trace());
+	}
+
+	/**
+	 * @return the trace opened for the current thread or null if no trace was opened
+	 */
+	public static Trace getTrace() {
+		return trace.get();
+	}
+
+	/**
+	 * Close the trace of the current thread
+	 *
+	 * @return the trace of the request or null if no trace was opened
+	 */
+	public static Trace stopTrace() {
+		Trace current = trace.get();
+		trace.remove();
+		return current;
+	}
+
+	/**
+	 * Reset all the global metrics
+	 */
+	public static void reset() {
+		for(StageStatistics stage : stages)
+			stage.reset();
+		reads.clear();
+		cacheHits.clear();
+		cacheMisses.clear();
+		requests.set(0);
+		since = System.currentTimeMillis();
+	}
+
+	/**
+	 * @return a JSON representation of the global metrics, times in milliseconds
+	 */
+	public static String toJson() {
+		StringBuilder json = new StringBuilder();
+		json.append("{\"since\": " + since);
+		json.append(", \"requests\": " + requests.get());
+
+		json.append(", \"stages\": {");
+		boolean first = true;
+		for(Stage stage : Stage.values()) {
+			StageStatistics statistics = stages[stage.ordinal()];
+			long count = statistics.count.get();
+			if (count == 0)
+				continue;
+			if (first)
+				first = false;
+			else
+				json.append(", ");
+			long total = statistics.total.get();
+			json.append("\"" + stage.name() + "\": {\"count\": " + count);
+			json.append(", \"total\": " + toMillis(total));
+			json.append(", \"mean\": " + toMillis(total / count));
+			json.append(", \"max\": " + toMillis(statistics.max.get()) + "}");
+		}
+		json.append("}");
+
+		json.append(", \"reads\": ");
+		appendCounters(json, reads);
+
+		json.append(", \"caches\": {");
+		first = true;
+		Set<String> caches = new TreeSet<String>(cacheHits.keySet());
+		caches.addAll(cacheMisses.keySet());
+		for(String cache : caches) {
+			long hits = cacheHits.containsKey(cache) ? cacheHits.get(cache).get() : 0;
+			long misses = cacheMisses.containsKey(cache) ? cacheMisses.get(cache).get() : 0;
+			if (first)
+				first = false;
+			else
+				json.append(", ");
+			json.append("\"" + cache + "\": {\"hits\": " + hits + ", \"misses\": " + misses);
+			json.append(", \"ratio\": " + ((hits+misses == 0) ? 0.0 : (double)hits / (hits+misses)) + "}");
+		}
+		json.append("}}");
+
+		return json.toString();
+	}
+
+	private static void appendCounters(StringBuilder json, Map<String, ? extends Number> counters) {
+		json.append("{");
+		boolean first = true;
+		for(String key : new TreeSet<String>(counters.keySet())) {
+			if (first)
+				first = false;
+			else
+				json.append(", ");
+			json.append("\"" + key + "\": " + counters.get(key).longValue());
+		}
+		json.append("}");
+	}
+
+	private static double toMillis(long nanos) {
+		return nanos / 1000L / 1000.0;
+	}
+
+	/**
+	 * Accumulated time for one stage
+	 */
+	private static class StageStatistics {
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong total = new AtomicLong();
+		private final AtomicLong max = new AtomicLong();
+
+		private void add(long nanos) {
+			count.incrementAndGet();
+			total.addAndGet(nanos);
+			long currentMax = max.get();
+			while (nanos > currentMax && !max.compareAndSet(currentMax, nanos))
+				currentMax = max.get();
+		}
+
+		private void reset() {
+			count.set(0);
+			total.set(0);
+			max.set(0);
+		}
+	}
+
+	/**
+	 * Timings and database reads of a single request
+	 */
+	public static class Trace {
+		private final long[] nanos = new long[Stage.values().length];
+		private final Map<String, Long> reads = new TreeMap<String, Long>();
+
+		/**
+		 * @return time spent in the given stage in milliseconds
+		 */
+		public double getTime(Stage stage) {
+			return toMillis(nanos[stage.ordinal()]);
+		}
+
+		public Map<String, Long> getReads() {
+			return reads;
+		}
+
+		/**
+		 * @return a JSON representation of the trace, only the stages actually
+		 * executed are present, times in milliseconds
+		 */
+		public String toJson() {
+			StringBuilder json = new StringBuilder();
+			json.append("{");
+			for(Stage stage : Stage.values()) {
+				if (nanos[stage.ordinal()] == 0)
+					continue;
+				json.append("\"" + stage.name() + "\": " + getTime(stage) + ", ");
+			}
+			json.append("\"reads\": ");
+			appendCounters(json, reads);
+			json.append("}");
+			return json.toString();
+		}
+	}
+}
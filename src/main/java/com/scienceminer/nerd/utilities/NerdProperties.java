@@ -534,6 +534,178 @@ public class NerdProperties {
 		return numb;
 	}
 	
+	/**
+	 * Returns the number of threads used to process the documents of a batch query,
+	 * given in the Nerd.property file, by default the number of available processors.
+	 * 
+	 * @return number of threads for batch processing
+	 */
+	public static int getBatchThreads() {
+		int defaultNumb = Runtime.getRuntime().availableProcessors();
+		String numb = getPropertyValue(NerdPropertyKeys.PROP_BATCH_THREADS, Integer.toString(defaultNumb));
+		try {
+			int threads = Integer.parseInt(numb.trim());
+			if (threads > 0)
+				return threads;
+		}
+		catch(Exception e) {
+			LOGGER.debug("number of batch threads is not a valid integer");
+		}
+		return defaultNumb;
+	}
+
+	/**
+	 * Returns the maximum number of documents of a batch query, given in the Nerd.property
+	 * file, by default 10000.
+	 * 
+	 * @return maximum size of a batch
+	 */
+	public static int getBatchMaxSize() {
+		String numb = getPropertyValue(NerdPropertyKeys.PROP_BATCH_MAX_SIZE, "10000");
+		try {
+			return Integer.parseInt(numb.trim());
+		}
+		catch(Exception e) {
+			LOGGER.debug("maximum batch size is not a valid integer");
+		}
+		return 10000;
+	}
+
+	/**
+	 * Returns the default time budget of a query in milliseconds, given in the Nerd.property
+	 * file, by default 0 (no budget).
+	 * 
+	 * @return default time budget of a query
+	 */
+	public static long getTimeBudget() {
+		String numb = getPropertyValue(NerdPropertyKeys.PROP_TIME_BUDGET, "0");
+		try {
+			return Long.parseLong(numb.trim());
+		}
+		catch(Exception e) {
+			LOGGER.debug("time budget is not a valid integer");
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns the memory budget of the response cache in MB, given in the Nerd.property
+	 * file, by default 64. The cache is disabled with 0.
+	 * 
+	 * @return memory budget of the response cache
+	 */
+	public static long getResponseCacheSize() {
+		String numb = getPropertyValue(NerdPropertyKeys.PROP_RESPONSE_CACHE_SIZE, "64");
+		try {
+			return Long.parseLong(numb.trim());
+		}
+		catch(Exception e) {
+			LOGGER.debug("response cache size is not a valid integer");
+		}
+		return 64;
+	}
+
+	/**
+	 * Returns the time to live of the cached responses in seconds, given in the Nerd.property
+	 * file, by default 3600.
+	 * 
+	 * @return time to live of the cached responses
+	 */
+	public static long getResponseCacheTtl() {
+		String numb = getPropertyValue(NerdPropertyKeys.PROP_RESPONSE_CACHE_TTL, "3600");
+		try {
+			return Long.parseLong(numb.trim());
+		}
+		catch(Exception e) {
+			LOGGER.debug("response cache time to live is not a valid integer");
+		}
+		return 3600;
+	}
+
+	/**
+	 * Returns the directory of the PDF cache, given in the Nerd.property file, by default 
+	 * the directory nerd-pdf-cache in the temporary path.
+	 * 
+	 * @return directory of the PDF cache
+	 */
+	public static File getPdfCachePath() {
+		return new File(getPropertyValue(NerdPropertyKeys.PROP_PDF_CACHE_PATH, 
+			new File(getTempPath(), "nerd-pdf-cache").getPath()));
+	}
+
+	/**
+	 * Returns the maximum number of PDF kept in the PDF cache, given in the Nerd.property
+	 * file, by default 1000. The cache is disabled with 0.
+	 * 
+	 * @return maximum number of cached PDF
+	 */
+	public static int getPdfCacheMaxDocuments() {
+		String numb = getPropertyValue(NerdPropertyKeys.PROP_PDF_CACHE_MAX_DOCUMENTS, "1000");
+		try {
+			return Integer.parseInt(numb.trim());
+		}
+		catch(Exception e) {
+			LOGGER.debug("PDF cache maximum number of documents is not a valid integer");
+		}
+		return 1000;
+	}
+
+	/**
+	 * Returns the file of the warm-start snapshot, given in the Nerd.property file, by 
+	 * default the file nerd-warm-start.bin in the temporary path.
+	 * 
+	 * @return file of the warm-start snapshot
+	 */
+	public static File getWarmStartPath() {
+		return new File(getPropertyValue(NerdPropertyKeys.PROP_WARM_START_PATH, 
+			new File(getTempPath(), "nerd-warm-start.bin").getPath()));
+	}
+
+	/**
+	 * Returns the maximum number of labels, pages and relatedness scores per language kept 
+	 * in the warm-start snapshot, given in the Nerd.property file, by default 100000. The 
+	 * snapshot is disabled with 0.
+	 * 
+	 * @return maximum number of entries of each kind in the snapshot
+	 */
+	public static int getWarmStartMaxEntries() {
+		String numb = getPropertyValue(NerdPropertyKeys.PROP_WARM_START_MAX_ENTRIES, "100000");
+		try {
+			return Integer.parseInt(numb.trim());
+		}
+		catch(Exception e) {
+			LOGGER.debug("warm-start maximum number of entries is not a valid integer");
+		}
+		return 100000;
+	}
+
+	/**
+	 * Returns the interval in minutes between two warm-start snapshots, given in the 
+	 * Nerd.property file, by default 60. With 0, the snapshot is only done at shutdown.
+	 * 
+	 * @return interval between two snapshots
+	 */
+	public static long getWarmStartInterval() {
+		String numb = getPropertyValue(NerdPropertyKeys.PROP_WARM_START_INTERVAL, "60");
+		try {
+			return Long.parseLong(numb.trim());
+		}
+		catch(Exception e) {
+			LOGGER.debug("warm-start snapshot interval is not a valid integer");
+		}
+		return 60;
+	}
+
+	/**
+	 * Returns the version of the KB opened at startup, given in the Nerd.property file, by 
+	 * default none (the KB directly in the KB configuration directory).
+	 * 
+	 * @return name of the KB version, or null
+	 */
+	public static String getKBVersion() {
+		return getPropertyValue(NerdPropertyKeys.PROP_KB_VERSION, null);
+	}
+
 	/**
 	 * Returns the host of the MySQL instance to be used, given in the Nerd.property
 	 * file.
@@ -43,6 +43,71 @@ public interface NerdPropertyKeys {
 
 	String PROP_MAPDB_PATH = "com.scienceminer.nerd.mapdb.path";
 	String PROP_MAPS_PATH = "com.scienceminer.nerd.maps.path";
+
+	/**
+	 * The name of the system property, via which the directory containing the 
+	 * KB configuration files (kb.yaml, wikipedia-xx.yaml) can be set. 
+	 */
+	String PROP_KB_CONFIG = "com.scienceminer.nerd.kb.config";
+
+	/**
+	 * Number of threads used for processing the documents of a batch query, 
+	 * default is the number of available processors.
+	 */
+	String PROP_BATCH_THREADS = "com.scienceminer.nerd.batch.threads";
+
+	/**
+	 * Maximum number of documents accepted in a batch query.
+	 */
+	String PROP_BATCH_MAX_SIZE = "com.scienceminer.nerd.batch.max_size";
+
+	/**
+	 * Default time budget in milliseconds for the processing of a query, 0 for no budget.
+	 */
+	String PROP_TIME_BUDGET = "com.scienceminer.nerd.time_budget";
+
+	/**
+	 * Memory budget in MB of the cache of the responses to short text and term lookup 
+	 * queries, 0 to disable the cache.
+	 */
+	String PROP_RESPONSE_CACHE_SIZE = "com.scienceminer.nerd.response_cache.size";
+
+	/**
+	 * Time to live in seconds of the cached responses.
+	 */
+	String PROP_RESPONSE_CACHE_TTL = "com.scienceminer.nerd.response_cache.ttl";
+
+	/**
+	 * Directory of the cache of the processed PDF.
+	 */
+	String PROP_PDF_CACHE_PATH = "com.scienceminer.nerd.pdf_cache.path";
+
+	/**
+	 * Maximum number of PDF kept in the cache, 0 to disable the cache.
+	 */
+	String PROP_PDF_CACHE_MAX_DOCUMENTS = "com.scienceminer.nerd.pdf_cache.max_documents";
+
+	/**
+	 * File of the warm-start snapshot of the KB caches.
+	 */
+	String PROP_WARM_START_PATH = "com.scienceminer.nerd.warm_start.path";
+
+	/**
+	 * Maximum number of labels, pages and relatedness scores per language saved in the 
+	 * warm-start snapshot, 0 to disable the snapshot.
+	 */
+	String PROP_WARM_START_MAX_ENTRIES = "com.scienceminer.nerd.warm_start.max_entries";
+
+	/**
+	 * Interval in minutes between two warm-start snapshots, 0 for a snapshot only at shutdown.
+	 */
+	String PROP_WARM_START_INTERVAL = "com.scienceminer.nerd.warm_start.interval";
+
+	/**
+	 * Version of the KB opened at startup, i.e. directory under the versions directory of 
+	 * the KB configuration directory. Empty for the KB directly in the configuration directory.
+	 */
+	String PROP_KB_VERSION = "com.scienceminer.nerd.kb.version";
 	
 	/**
 	 * Path to wordnet domain file.
@@ -0,0 +1,240 @@
+package com.scienceminer.nerd.utilities;
+
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.*;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Decompression of a bzip2 file made of several concatenated bzip2 streams, as produced by
+ * the parallel compressors (pbzip2, lbzip2) or for the multistream Wikipedia dumps, with the
+ * streams decompressed in parallel and read back in their order.
+ *
+ * The streams are found by their header, which is byte-aligned (the "BZh" signature, the
+ * block size and the magic number of the first block), and are grouped in segments of about
+ * the segment size, each decompressed by a task of a pool of threads. Only a few segments
+ * are decompressed in advance, so the memory used stays bounded. When no stream header is
+ * found in the maximum segment size, for instance for a file with a single stream, the rest
+ * of the file is decompressed sequentially when read.
+ */
+public class ParallelBZip2InputStream extends InputStream {
+
+	private static final int SEGMENT_SIZE = 1024 * 1024;
+	private static final int MAX_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+	// "BZh", block size, magic number of a block
+	private static final int HEADER_LENGTH = 10;
+	private static final byte[] BLOCK_MAGIC = {0x31, 0x41, 0x59, 0x26, 0x53, 0x59};
+
+	private final InputStream input;
+	private final ExecutorService executor;
+	private final int ahead;
+	private final int segmentSize;
+	private final int maxSegmentSize;
+
+	// compressed data read and not yet submitted, starting with a stream header
+	private byte[] buffer;
+	private int length = 0;
+	// position of the buffer from which a stream header is still to be searched
+	private int searched = 0;
+	private boolean exhausted = false;
+
+	private final Deque<Future<InputStream>> segments = new ArrayDeque<Future<InputStream>>();
+	private InputStream current = null;
+
+	/**
+	 * @param input the compressed input, closed with this stream
+	 * @param threads the number of threads for the decompression
+	 */
+	public ParallelBZip2InputStream(InputStream input, int threads) throws IOException {
+		this(input, threads, SEGMENT_SIZE, MAX_SEGMENT_SIZE);
+	}
+
+	ParallelBZip2InputStream(InputStream input, int threads, int segmentSize, int maxSegmentSize) throws IOException {
+		this.input = input;
+		this.segmentSize = segmentSize;
+		this.maxSegmentSize = maxSegmentSize;
+		this.ahead = 2 * Math.max(1, threads);
+		this.buffer = new byte[segmentSize + HEADER_LENGTH];
+		this.executor = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "nerd-bzip2");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		fill(HEADER_LENGTH);
+		if ( (length < HEADER_LENGTH) || !isStreamHeader(0) ) {
+			close();
+			throw new IOException("Not a bzip2 input");
+		}
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		int n = read(b, 0, 1);
+		return (n == -1) ? -1 : (b[0] & 0xFF);
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+		while (true) {
+			if (current == null) {
+				current = nextSegment();
+				if (current == null)
+					return -1;
+			}
+			int n = current.read(b, off, len);
+			if (n > 0)
+				return n;
+			current.close();
+			current = null;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		for (Future<InputStream> segment : segments)
+			segment.cancel(true);
+		segments.clear();
+		executor.shutdownNow();
+		if (current != null)
+			current.close();
+		input.close();
+	}
+
+	/**
+	 * @return the decompressed data of the next segment, null at the end of the input
+	 */
+	private InputStream nextSegment() throws IOException {
+		while (!exhausted && (segments.size() < ahead))
+			submit();
+		Future<InputStream> segment = segments.poll();
+		if (segment == null)
+			return null;
+		try {
+			return segment.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+	}
+
+	/**
+	 * Read the next segment of compressed streams and submit its decompression
+	 */
+	private void submit() throws IOException {
+		while (true) {
+			int start = Math.max(searched, segmentSize);
+			for (int i = start; i + HEADER_LENGTH <= length; i++) {
+				if (isStreamHeader(i)) {
+					byte[] segment = new byte[i];
+					System.arraycopy(buffer, 0, segment, 0, i);
+					System.arraycopy(buffer, i, buffer, 0, length - i);
+					length -= i;
+					searched = 0;
+					segments.add(executor.submit(decompression(segment)));
+					return;
+				}
+			}
+			searched = Math.max(start, length - HEADER_LENGTH + 1);
+
+			if (length >= maxSegmentSize) {
+				// no stream boundary, the rest is decompressed when read
+				final InputStream rest = new SequenceInputStream(new ByteArrayInputStream(buffer, 0, length), input);
+				FutureTask<InputStream> task = new FutureTask<InputStream>(new Callable<InputStream>() {
+					@Override
+					public InputStream call() throws IOException {
+						return new BZip2CompressorInputStream(new BufferedInputStream(rest), true);
+					}
+				});
+				task.run();
+				segments.add(task);
+				buffer = null;
+				exhausted = true;
+				return;
+			}
+
+			if (!fill(length + segmentSize)) {
+				byte[] segment = new byte[length];
+				System.arraycopy(buffer, 0, segment, 0, length);
+				buffer = null;
+				exhausted = true;
+				if (segment.length > 0)
+					segments.add(executor.submit(decompression(segment)));
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Read the input until the buffer holds the given number of bytes
+	 *
+	 * @return false if the end of the input is reached
+	 */
+	private boolean fill(int size) throws IOException {
+		if (buffer.length < size) {
+			byte[] larger = new byte[Math.max(size, 2 * buffer.length)];
+			System.arraycopy(buffer, 0, larger, 0, length);
+			buffer = larger;
+		}
+		while (length < size) {
+			int n = input.read(buffer, length, size - length);
+			if (n == -1)
+				return false;
+			length += n;
+		}
+		return true;
+	}
+
+	private boolean isStreamHeader(int pos) {
+		if ( (buffer[pos] != 'B') || (buffer[pos+1] != 'Z') || (buffer[pos+2] != 'h') )
+			return false;
+		if ( (buffer[pos+3] < '1') || (buffer[pos+3] > '9') )
+			return false;
+		for (int i = 0; i < BLOCK_MAGIC.length; i++) {
+			if (buffer[pos+4+i] != BLOCK_MAGIC[i])
+				return false;
+		}
+		return true;
+	}
+
+	private static Callable<InputStream> decompression(final byte[] segment) {
+		return new Callable<InputStream>() {
+			@Override
+			public InputStream call() throws IOException {
+				InputStream in = new BZip2CompressorInputStream(new ByteArrayInputStream(segment), true);
+				Output out = new Output(segment.length * 8);
+				try {
+					IOUtils.copy(in, out);
+				} finally {
+					in.close();
+				}
+				return out.toInputStream();
+			}
+		};
+	}
+
+	// avoids the copy of the decompressed data
+	private static class Output extends ByteArrayOutputStream {
+		Output(int size) {
+			super(size);
+		}
+
+		InputStream toInputStream() {
+			return new ByteArrayInputStream(buf, 0, count);
+		}
+	}
+}
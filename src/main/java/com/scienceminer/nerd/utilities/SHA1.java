@@ -1,5 +1,10 @@
 package com.scienceminer.nerd.utilities;
 
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -46,6 +51,26 @@ public class SHA1 {
 		return sha1;
 	}
 
+	/**
+	 * Return the hash value of the content of a file using SHA1 algorithm.
+	 * 
+	 * @param file the file to hash.
+	 * @return The hashed value.
+	 */
+	public static String getSHA1(File file) throws IOException {
+		try (InputStream input = new BufferedInputStream(new FileInputStream(file))) {
+			MessageDigest crypt = MessageDigest.getInstance("SHA-1");
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = input.read(buffer)) != -1) {
+				crypt.update(buffer, 0, read);
+			}
+			return byteToHex(crypt.digest());
+		} catch (NoSuchAlgorithmException exp) {
+			throw new IOException(ERROR_WHILE_EXECUTING_SHA1 + exp, exp);
+		}
+	}
+
 	/**
 	 * Convert from byte to hexa.
 	 * @param hash the input in bytes.
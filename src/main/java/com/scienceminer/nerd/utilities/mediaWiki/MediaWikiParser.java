@@ -4,6 +4,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Pattern;
 
 import org.sweble.wikitext.engine.PageId;
 import org.sweble.wikitext.engine.PageTitle;
@@ -16,19 +18,54 @@ import static org.apache.commons.lang3.StringUtils.trim;
 
 /**
  * Handler for the parser of mediawiki format able, in particular, to modify
- * the mediawiki articles into simpler text formats. 
+ * the mediawiki articles into simpler text formats.
  * Based on the Sweble parsing framework.
+ *
+ * The parser can be used by several threads at the same time: the configurations of the
+ * languages are shared, but each thread has its own parser engines and converters, created
+ * at its first conversion for a language. Many pages can be converted at once with
+ * convert(List, String, Format), on a pool of threads shared by all the callers.
  */
 public class MediaWikiParser {
 	private static final Logger LOGGER = LoggerFactory.getLogger(MediaWikiParser.class);
 
     private static volatile MediaWikiParser instance;
-    
-    // map giving the config following a language code
-    private Map<String,WikiConfig> configs = null;
 
-    // map giving a parser engine following a language code
-    private Map<String,WtEngineImpl> engines = null;
+    /**
+     * The conversions of the wiki text
+     */
+    public enum Format {
+        // all markup removed
+        TEXT_ONLY,
+        // all markup removed except internal links
+        INTERNAL_LINKS,
+        // all markup removed except internal links to articles
+        INTERNAL_LINKS_ARTICLES,
+        // all markup removed except internal links and emphasis
+        INTERNAL_LINKS_EMPHASIS,
+        // first paragraph, with internal links and emphasis
+        FIRST_PARAGRAPH,
+        // full content on a single line, with internal links and emphasis
+        ALL_TEXT
+    };
+
+    private static final Pattern SECTION_HEADING = Pattern.compile("={2,}(.+)={2,}");
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+    private static final Pattern SPACE_COMMA = Pattern.compile("\\s,");
+
+    // map giving the config following a language code, shared by all the threads
+    private final ConcurrentMap<String,WikiConfig> configs = new ConcurrentHashMap<String,WikiConfig>();
+
+    // map giving the parser engine of the current thread following a language code
+    private final ThreadLocal<Map<String,Engine>> engines = new ThreadLocal<Map<String,Engine>>() {
+        @Override
+        protected Map<String,Engine> initialValue() {
+            return new HashMap<String,Engine>();
+        }
+    };
+
+    // threads for the conversion of batches of pages, created at the first batch
+    private volatile ExecutorService executor = null;
 
     public static MediaWikiParser getInstance() {
         if (instance == null) {
@@ -41,6 +78,8 @@ public class MediaWikiParser {
      * Creates a new instance.
      */
 	private static synchronized void getNewInstance() {
+		if (instance != null)
+			return;
 		LOGGER.debug("Get new instance of MediaWikiParser");
 		instance = new MediaWikiParser();
 	}
@@ -49,144 +88,162 @@ public class MediaWikiParser {
      * Hidden constructor
      */
     private MediaWikiParser() {
-        // set-up simple wiki configurations
-        configs = new HashMap<String,WikiConfig>();
-
-        // set-up language specific parsers
-        engines = new HashMap<String,WtEngineImpl>();
-
-        WikiConfig config = DefaultConfigEnWp.generate();
-        configs.put("en", config);
-        WtEngineImpl engine = new WtEngineImpl(config);        
-        engines.put("en", engine);
+        // set-up simple wiki configurations of the main languages, the others are
+        // created when first used
+        getConfig("en");
+        getConfig("fr");
+        getConfig("de");
+    }
 
-        config = DefaultConfigFrWp.generate();
-        configs.put("fr", config);
-        engine = new WtEngineImpl(config);        
-        engines.put("fr", engine);
+    /**
+     * @return the configuration of a language, or null if the language is not supported
+     */
+    private WikiConfig getConfig(String lang) {
+        WikiConfig config = configs.get(lang);
+        if (config == null) {
+            synchronized(configs) {
+                config = configs.get(lang);
+                if (config == null) {
+                    config = generateConfig(lang);
+                    if (config != null)
+                        configs.put(lang, config);
+                }
+            }
+        }
+        return config;
+    }
 
-        config = DefaultConfigDeWp.generate();
-        configs.put("de", config);
-        engine = new WtEngineImpl(config);        
-        engines.put("de", engine);
+    private static WikiConfig generateConfig(String lang) {
+        if (lang == null)
+            return null;
+        switch (lang) {
+            case "en": return DefaultConfigEnWp.generate();
+            case "fr": return DefaultConfigFrWp.generate();
+            case "de": return DefaultConfigDeWp.generate();
+            case "es": return DefaultConfigEsWp.generate();
+            case "it": return DefaultConfigItWp.generate();
+            default: return null;
+        }
     }
 
     /**
-     * @return the content of the wiki text fragment with all markup removed
+     * @return the parser engine of the current thread for a language, or null if the
+     * language is not supported
      */
-    public String toTextOnly(String wikitext, String lang) {
-        String result = "";
-
-        // get a compiler for wiki pages
-        //WtEngineImpl engine = new WtEngineImpl(config);        
-        WtEngineImpl engine = engines.get(lang);
+    private Engine getEngine(String lang) throws Exception {
+        Map<String,Engine> threadEngines = engines.get();
+        Engine engine = threadEngines.get(lang);
+        if (engine == null) {
+            WikiConfig config = getConfig(lang);
+            if (config == null)
+                return null;
+            engine = new Engine(config);
+            threadEngines.put(lang, engine);
+        }
+        return engine;
+    }
 
-        try {
-            // Retrieve a page 
+    /**
+     * A parser engine for a language and its converters, used by a single thread
+     */
+    private static class Engine {
+        private final WikiConfig config;
+        private final WtEngineImpl engine;
+        private final PageId pageId;
+        private final Map<Format,WikiTextConverter> converters = new EnumMap<Format,WikiTextConverter>(Format.class);
+
+        Engine(WikiConfig config) throws Exception {
+            this.config = config;
+            this.engine = new WtEngineImpl(config);
             // PL: no clue what is this??
-            PageTitle pageTitle = PageTitle.make(configs.get(lang), "crap");
-            PageId pageId = new PageId(pageTitle, -1);
+            PageTitle pageTitle = PageTitle.make(config, "crap");
+            this.pageId = new PageId(pageTitle, -1);
+        }
 
-            // Compile the retrieved page
-            EngProcessedPage cp = engine.postprocess(pageId, wikitext, null);
-            WikiTextConverter converter = new WikiTextConverter(configs.get(lang));
-            result = (String)converter.go(cp.getPage());
-        } catch(Exception e) {
-            LOGGER.warn("Fail to parse MediaWiki text", e);
+        /**
+         * @return the converter of the page to the given format, a converter being reset at
+         * each conversion
+         */
+        WikiTextConverter getConverter(Format format) {
+            WikiTextConverter converter = converters.get(format);
+            if (converter == null) {
+                converter = new WikiTextConverter(config);
+                switch (format) {
+                    case INTERNAL_LINKS:
+                        converter.addToKeep(WikiTextConverter.INTERNAL_LINKS);
+                        break;
+                    case INTERNAL_LINKS_ARTICLES:
+                        converter.addToKeep(WikiTextConverter.INTERNAL_LINKS_ARTICLES);
+                        break;
+                    case INTERNAL_LINKS_EMPHASIS:
+                        converter.addToKeep(WikiTextConverter.INTERNAL_LINKS);
+                        converter.addToKeep(WikiTextConverter.BOLD);
+                        converter.addToKeep(WikiTextConverter.ITALICS);
+                        break;
+                    default:
+                        break;
+                }
+                converters.put(format, converter);
+            }
+            return converter;
         }
 
-        return trim(result);
+        String convert(String wikitext, Format format) throws Exception {
+            EngProcessedPage cp = engine.postprocess(pageId, wikitext, null);
+            return (String)getConverter(format).go(cp.getPage());
+        }
     }
 
     /**
-     * @return the content of the wiki text fragment with all markup removed except links 
-     * to internal wikipedia pages: external links to the internet are removed
+     * @return the wiki text fragment converted with one of the basic formats (text only,
+     * with links, with links and emphasis)
      */
-    public String toTextWithInternalLinksOnly(String wikitext, String lang) {
+    private String toText(String wikitext, String lang, Format format) {
         String result = "";
-
-        // Instantiate a compiler for wiki pages
-        //WtEngineImpl engine = new WtEngineImpl(config);        
-        WtEngineImpl engine = engines.get(lang);
-
         try {
-            // Retrieve a page 
-            // PL: no clue what is this??
-            PageTitle pageTitle = PageTitle.make(configs.get(lang), "crap");
-            PageId pageId = new PageId(pageTitle, -1);
-
-            // Compile the retrieved page
-            EngProcessedPage cp = engine.postprocess(pageId, wikitext, null);
-            WikiTextConverter converter = new WikiTextConverter(configs.get(lang));
-            converter.addToKeep(WikiTextConverter.INTERNAL_LINKS);
-            result = (String)converter.go(cp.getPage());
+            Engine engine = getEngine(lang);
+            if (engine == null)
+                LOGGER.warn("Unsupported language for MediaWiki text: " + lang);
+            else
+                result = engine.convert(wikitext, format);
         } catch(Exception e) {
             LOGGER.warn("Fail to parse MediaWiki text", e);
         }
 
         return trim(result);
-    }   
+    }
+
+    /**
+     * @return the content of the wiki text fragment with all markup removed
+     */
+    public String toTextOnly(String wikitext, String lang) {
+        return toText(wikitext, lang, Format.TEXT_ONLY);
+    }
+
+    /**
+     * @return the content of the wiki text fragment with all markup removed except links
+     * to internal wikipedia pages: external links to the internet are removed
+     */
+    public String toTextWithInternalLinksOnly(String wikitext, String lang) {
+        return toText(wikitext, lang, Format.INTERNAL_LINKS);
+    }
 
     /**
-     * @return the content of the wiki text fragment with all markup removed except links 
+     * @return the content of the wiki text fragment with all markup removed except links
      * to internal wikipedia articles : external links to the internet are removed, as well as
      * internal link not to an article (e.g. redirection, disambiguation page, category, ...)
      */
     public String toTextWithInternalLinksArticlesOnly(String wikitext, String lang) {
-        String result = "";
-
-        // Instantiate a compiler for wiki pages
-        //WtEngineImpl engine = new WtEngineImpl(config);        
-        WtEngineImpl engine = engines.get(lang);
-
-        try {
-            // Retrieve a page 
-            // PL: no clue what is this??
-            PageTitle pageTitle = PageTitle.make(configs.get(lang), "crap");
-            PageId pageId = new PageId(pageTitle, -1);
-
-            // Compile the retrieved page
-            EngProcessedPage cp = engine.postprocess(pageId, wikitext, null);
-            WikiTextConverter converter = new WikiTextConverter(configs.get(lang));
-            converter.addToKeep(WikiTextConverter.INTERNAL_LINKS_ARTICLES);
-            result = (String)converter.go(cp.getPage());
-        } catch(Exception e) {
-            LOGGER.warn("Fail to parse MediaWiki text", e);
-        }
-
-        return trim(result);
-    }   
+        return toText(wikitext, lang, Format.INTERNAL_LINKS_ARTICLES);
+    }
 
     /**
-     * @return the content of the wiki text fragment with all markup removed except links 
-     * to internal wikipedia (external links to the internet are removed) and except emphasis 
+     * @return the content of the wiki text fragment with all markup removed except links
+     * to internal wikipedia (external links to the internet are removed) and except emphasis
      * (bold and italics)
      */
     public String toTextWithInternalLinksEmphasisOnly(String wikitext, String lang) {
-        String result = "";
-
-        // Instantiate a compiler for wiki pages
-        //WtEngineImpl engine = new WtEngineImpl(config);
-        WtEngineImpl engine = engines.get(lang);    
-
-        try {
-            // Retrieve a page 
-            // PL: no clue what is this??
-            PageTitle pageTitle = PageTitle.make(configs.get(lang), "crap");
-            PageId pageId = new PageId(pageTitle, -1);
-
-            // Compile the retrieved page
-            EngProcessedPage cp = engine.postprocess(pageId, wikitext, null);
-            WikiTextConverter converter = new WikiTextConverter(configs.get(lang));
-            converter.addToKeep(WikiTextConverter.INTERNAL_LINKS);
-            converter.addToKeep(WikiTextConverter.BOLD);
-            converter.addToKeep(WikiTextConverter.ITALICS);
-            result = (String)converter.go(cp.getPage());
-        } catch(Exception e) {
-            LOGGER.warn("Fail to parse MediaWiki text", e);
-        }
-
-        return trim(result);
+        return toText(wikitext, lang, Format.INTERNAL_LINKS_EMPHASIS);
     }
 
     /**
@@ -194,9 +251,9 @@ public class MediaWikiParser {
      * preserving all links and style markup
      */
     public String formatFirstParagraphWikiText(String wikitext, String lang) {
-        wikitext = wikitext.replaceAll("={2,}(.+)={2,}", "\n"); 
-        // clear section headings completely          
-        
+        // clear section headings completely
+        wikitext = SECTION_HEADING.matcher(wikitext).replaceAll("\n");
+
         wikitext = toTextWithInternalLinksEmphasisOnly(wikitext, lang);
 
         String firstParagraph = "";
@@ -208,12 +265,7 @@ public class MediaWikiParser {
             pos = wikitext.indexOf("\n\n", pos+2);
         }
 
-        firstParagraph = firstParagraph.replaceAll("\n", " ");
-        firstParagraph = firstParagraph.replaceAll("\\[\\]", "");  
-        firstParagraph = firstParagraph.replaceAll("\\s+", " "); 
-        firstParagraph = firstParagraph.replaceAll("\\s,", ",");
-
-        return trim(firstParagraph);
+        return trim(clean(firstParagraph));
     }
 
     /**
@@ -221,18 +273,89 @@ public class MediaWikiParser {
      * preserving all links and style markup
      */
     public String formatAllWikiText(String wikitext, String lang) {
-        wikitext = wikitext.replaceAll("={2,}(.+)={2,}", "\n"); 
         // clear section headings completely
+        wikitext = SECTION_HEADING.matcher(wikitext).replaceAll("\n");
 
         wikitext = toTextWithInternalLinksEmphasisOnly(wikitext, lang);
-        wikitext = wikitext.replaceAll("\n", " ");
-        wikitext = wikitext.replaceAll("\\[\\]", "");  
-        wikitext = wikitext.replaceAll("\\s+", " ");  
-        wikitext = wikitext.replaceAll("\\s,", ",");
 
-        return trim(wikitext);
-    }    
-}
+        return trim(clean(wikitext));
+    }
 
+    // on a single line, without empty links and extra spaces
+    private static String clean(String text) {
+        text = text.replace('\n', ' ');
+        text = text.replace("[]", "");
+        text = SPACES.matcher(text).replaceAll(" ");
+        return SPACE_COMMA.matcher(text).replaceAll(",");
+    }
 
+    /**
+     * @return the wiki text fragment converted to the given format
+     */
+    public String convert(String wikitext, String lang, Format format) {
+        switch (format) {
+            case FIRST_PARAGRAPH:
+                return formatFirstParagraphWikiText(wikitext, lang);
+            case ALL_TEXT:
+                return formatAllWikiText(wikitext, lang);
+            default:
+                return toText(wikitext, lang, format);
+        }
+    }
 
+    /**
+     * Converts many wiki text fragments at once, in parallel.
+     *
+     * @return the converted fragments, in the order of the given fragments, null for a null
+     * fragment
+     */
+    public List<String> convert(List<String> wikitexts, final String lang, final Format format)
+            throws InterruptedException {
+        List<String> results = new ArrayList<String>(wikitexts.size());
+        if (wikitexts.size() <= 1) {
+            for (String wikitext : wikitexts)
+                results.add((wikitext == null) ? null : convert(wikitext, lang, format));
+            return results;
+        }
+
+        List<Future<String>> conversions = new ArrayList<Future<String>>(wikitexts.size());
+        ExecutorService executor = getExecutor();
+        for (final String wikitext : wikitexts) {
+            conversions.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() {
+                    return (wikitext == null) ? null : convert(wikitext, lang, format);
+                }
+            }));
+        }
+        try {
+            for (Future<String> conversion : conversions)
+                results.add(conversion.get());
+        } catch(ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            for (Future<String> conversion : conversions)
+                conversion.cancel(true);
+        }
+        return results;
+    }
+
+    private ExecutorService getExecutor() {
+        if (executor == null) {
+            synchronized(this) {
+                if (executor == null) {
+                    executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                        new ThreadFactory() {
+                            @Override
+                            public Thread newThread(Runnable runnable) {
+                                Thread thread = new Thread(runnable, "nerd-mediawiki");
+                                thread.setDaemon(true);
+                                return thread;
+                            }
+                        });
+                }
+            }
+        }
+        return executor;
+    }
+}
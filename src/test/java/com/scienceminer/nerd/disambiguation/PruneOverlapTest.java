@@ -0,0 +1,176 @@
+package com.scienceminer.nerd.disambiguation;
+
+import org.grobid.core.lexicon.NERLexicon;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Differential test of the overlap pruning: the sweep of NerdEngine.removeOverlaps() must
+ * take exactly the decisions of the original comparison of all the pairs of entities, kept
+ * below as reference.
+ */
+public class PruneOverlapTest {
+
+    private static final String[] WORDS = {"paris", "new", "york", "city", "university", "of", "texas"};
+
+    @Test
+    public void testTouchingAndNullEntities() throws Exception {
+        List<NerdEntity> entities = new ArrayList<>();
+        entities.add(entity("new york", 0, 8, null, 12, 0.5));
+        entities.add(entity("york", 4, 8, null, 13, 0.9));
+        entities.add(entity("york city", 8, 17, NERLexicon.NER_Type.MEASURE, -1, 0.0));
+        entities.add(entity(null, 2, 3, null, -1, 0.0));
+        entities.add(entity("paris", 30, 35, null, 14, 0.3));
+
+        List<NerdEntity> result = NerdEngine.removeOverlaps(entities, false);
+
+        assertThat(result.size(), is(2));
+        assertThat(result.get(0).getRawName(), is("new york"));
+        assertThat(result.get(1).getRawName(), is("paris"));
+    }
+
+    @Test
+    public void testSameDecisionsAsAllPairs() throws Exception {
+        for (long seed = 0; seed < 2000; seed++) {
+            for (boolean shortText : new boolean[]{false, true}) {
+                List<NerdEntity> expectedEntities = randomEntities(seed);
+                List<NerdEntity> actualEntities = randomEntities(seed);
+
+                List<NerdEntity> expected = referencePruneOverlap(expectedEntities, shortText);
+                List<NerdEntity> actual = NerdEngine.removeOverlaps(actualEntities, shortText);
+
+                assertThat("seed " + seed, actual.size(), is(expected.size()));
+                for (int i = 0; i < expected.size(); i++) {
+                    assertThat("seed " + seed, positionOf(actualEntities, actual.get(i)),
+                        is(positionOf(expectedEntities, expected.get(i))));
+                    assertThat("seed " + seed, actual.get(i).getNerdScore(), is(expected.get(i).getNerdScore()));
+                }
+            }
+        }
+    }
+
+    private static int positionOf(List<NerdEntity> entities, NerdEntity entity) {
+        for (int i = 0; i < entities.size(); i++) {
+            if (entities.get(i) == entity)
+                return i;
+        }
+        return -1;
+    }
+
+    private static NerdEntity entity(String rawName, int start, int end,
+                                     NERLexicon.NER_Type type, int wikipediaExternalRef, double nerdScore) {
+        NerdEntity entity = new NerdEntity();
+        entity.setRawName(rawName);
+        entity.setOffsetStart(start);
+        entity.setOffsetEnd(end);
+        entity.setType(type);
+        entity.setWikipediaExternalRef(wikipediaExternalRef);
+        entity.setNerdScore(nerdScore);
+        return entity;
+    }
+
+    /**
+     * Dense mentions over a short text, with few distinct references and scores so that
+     * ties and same-reference cases are frequent.
+     */
+    private static List<NerdEntity> randomEntities(long seed) {
+        Random random = new Random(seed);
+        int textLength = 20 + random.nextInt(200);
+        int size = random.nextInt(60);
+        double[] scores = {0.0, 0.1, 0.2, 0.3, 0.5, 0.9};
+        List<NerdEntity> entities = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            int start = random.nextInt(textLength);
+            int length = (random.nextInt(10) == 0) ? random.nextInt(80) : random.nextInt(15);
+            String rawName = null;
+            if (random.nextInt(20) != 0) {
+                StringBuilder name = new StringBuilder();
+                int arity = 1 + random.nextInt(4);
+                for (int j = 0; j < arity; j++) {
+                    if (j > 0)
+                        name.append(' ');
+                    name.append(WORDS[random.nextInt(WORDS.length)]);
+                }
+                rawName = name.toString();
+            }
+            NERLexicon.NER_Type type = (random.nextInt(3) == 0) ? NERLexicon.NER_Type.MEASURE : null;
+            int wikipediaExternalRef = (random.nextInt(3) == 0) ? -1 : random.nextInt(5);
+            entities.add(entity(rawName, start, start + length, type, wikipediaExternalRef,
+                scores[random.nextInt(scores.length)]));
+        }
+        return entities;
+    }
+
+    /**
+     * The original pruning, comparing each entity with all the others.
+     */
+    private static List<NerdEntity> referencePruneOverlap(List<NerdEntity> entities, boolean shortText) {
+        List<Integer> toRemove = new ArrayList<Integer>();
+        for (int pos1 = 0; pos1 < entities.size(); pos1++) {
+            if (toRemove.contains(pos1))
+                continue;
+            NerdEntity entity1 = entities.get(pos1);
+            if (entity1.getRawName() == null) {
+                toRemove.add(pos1);
+                continue;
+            }
+            int arity1 = entity1.getNormalisedName().length() - entity1.getNormalisedName().replaceAll("\\s", "").length() + 1;
+            for (int pos2 = 0; pos2 < entities.size(); pos2++) {
+                if (pos1 == pos2)
+                    continue;
+                NerdEntity entity2 = entities.get(pos2);
+                if (entity2.getOffsetEnd() < entity1.getOffsetStart())
+                    continue;
+                if (entity1.getOffsetEnd() < entity2.getOffsetStart())
+                    continue;
+                if (toRemove.contains(pos2))
+                    continue;
+                if (entity2.getRawName() == null) {
+                    toRemove.add(pos2);
+                    continue;
+                }
+                if ((entity2.getType() != null) && (entity2.getWikipediaExternalRef() == -1)) {
+                    if ((entity1.getWikipediaExternalRef() != -1) && (entity1.getNerdScore() > 0.2)) {
+                        toRemove.add(pos2);
+                        continue;
+                    }
+                }
+                if ((entity1.getType() != null) && (entity1.getWikipediaExternalRef() == -1)) {
+                    if ((entity2.getWikipediaExternalRef() != -1) && (entity2.getNerdScore() > 0.2)) {
+                        toRemove.add(pos1);
+                        break;
+                    }
+                }
+                if (entity1.getWikipediaExternalRef() == entity2.getWikipediaExternalRef()) {
+                    if ((entity1.getType() != null) && (entity2.getType() == null)) {
+                        toRemove.add(pos2);
+                        continue;
+                    }
+                }
+                int arity2 = entity2.getNormalisedName().length() - entity2.getNormalisedName().replaceAll("\\s", "").length() + 1;
+                if (arity2 < arity1) {
+                    toRemove.add(pos2);
+                } else if ((arity2 == arity1) && (entity2.getNerdScore() < entity1.getNerdScore())) {
+                    toRemove.add(pos2);
+                }
+            }
+        }
+
+        List<NerdEntity> newEntities = new ArrayList<NerdEntity>();
+        for (int i = 0; i < entities.size(); i++) {
+            if (!toRemove.contains(i)) {
+                newEntities.add(entities.get(i));
+            } else if (shortText) {
+                entities.get(i).setNerdScore(entities.get(i).getNerdScore() / 2);
+                newEntities.add(entities.get(i));
+            }
+        }
+        return newEntities;
+    }
+}
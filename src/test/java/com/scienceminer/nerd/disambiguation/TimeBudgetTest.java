@@ -0,0 +1,75 @@
+package com.scienceminer.nerd.disambiguation;
+
+import com.scienceminer.nerd.disambiguation.TimeBudget.Degradation;
+import org.junit.Test;
+
+import java.util.EnumSet;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class TimeBudgetTest {
+
+    // budget with a clock driven by the tests, starting at 0
+    private static class TestBudget extends TimeBudget {
+        private long time;
+
+        TestBudget(long budget) {
+            super(budget);
+        }
+
+        @Override
+        protected long now() {
+            return time;
+        }
+
+        void advance(long millis) {
+            time += millis * 1000000L;
+        }
+    }
+
+    @Test
+    public void testNoBudget() throws Exception {
+        assertThat(TimeBudget.degrade(null, Degradation.candidates), is(false));
+        assertThat(TimeBudget.degrade(null, Degradation.commonnessRanking), is(false));
+    }
+
+    @Test
+    public void testBudgetNotConsumed() throws Exception {
+        TestBudget budget = new TestBudget(2000);
+        budget.advance(499);
+
+        assertThat(budget.getConsumed() < 0.25, is(true));
+        for (Degradation degradation : Degradation.values())
+            assertThat(TimeBudget.degrade(budget, degradation), is(false));
+        assertThat(budget.getDegradations().isEmpty(), is(true));
+    }
+
+    @Test
+    public void testBudgetExceeded() throws Exception {
+        TestBudget budget = new TestBudget(1);
+        budget.advance(5);
+
+        assertThat(budget.getConsumed(), is(5.0));
+        assertThat(budget.degrade(Degradation.context), is(true));
+        assertThat(budget.degrade(Degradation.commonnessRanking), is(true));
+        // only the checked degradations are reported
+        assertThat(budget.getDegradations(), is(EnumSet.of(Degradation.context, Degradation.commonnessRanking)));
+    }
+
+    @Test
+    public void testThresholds() throws Exception {
+        TestBudget budget = new TestBudget(2000);
+        budget.advance(700);
+
+        // between a quarter and half of the budget consumed
+        assertThat(budget.degrade(Degradation.candidates), is(true));
+        assertThat(budget.degrade(Degradation.selectorFeatures), is(false));
+        assertThat(budget.getDegradations(), is(EnumSet.of(Degradation.candidates)));
+
+        // an applied degradation stays applied, the others follow the clock
+        budget.advance(300);
+        assertThat(budget.degrade(Degradation.selectorFeatures), is(true));
+        assertThat(budget.getDegradations(), is(EnumSet.of(Degradation.candidates, Degradation.selectorFeatures)));
+    }
+}
@@ -0,0 +1,80 @@
+package com.scienceminer.nerd.disambiguation;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class TokenArenaTest {
+
+    private static final String TEXT = "The Maven is here, with us. Paris is here.";
+
+    private static TokenArena arena() {
+        // tokenisation with the separators, as done by the GROBID analyzer
+        List<String> tokens = Arrays.asList("The", " ", "Maven", " ", "is", " ", "here", ",", " ", "with", " ",
+            "us", ".", " ", "Paris", " ", "is", " ", "here", ".");
+        return new TokenArena(TEXT, tokens);
+    }
+
+    private static Sentence sentence(int start, int end) {
+        Sentence sentence = new Sentence();
+        sentence.setOffsetStart(start);
+        sentence.setOffsetEnd(end);
+        return sentence;
+    }
+
+    @Test
+    public void testOffsets() throws Exception {
+        TokenArena arena = arena();
+
+        assertThat(arena.size(), is(20));
+        assertThat(arena.getToken(2), is("Maven"));
+        assertThat(arena.getStart(2), is(4));
+        assertThat(arena.getEnd(2), is(9));
+        assertThat(arena.getNormalised(arena.getStart(0), arena.getEnd(2)), is("the maven"));
+        // the second occurrence of a token is found at its own position
+        assertThat(arena.getStart(18), is(37));
+        assertThat(arena.getTokenIndex(28), is(14));
+    }
+
+    @Test
+    public void testNormalisedOffsets() throws Exception {
+        // lower casing "İ" gives two characters, the normalised text keeps the offsets
+        TokenArena arena = new TokenArena("İzmir Paris", Arrays.asList("İzmir", " ", "Paris"));
+
+        assertThat(arena.getNormalised(arena.getStart(2), arena.getEnd(2)), is("paris"));
+        assertThat(arena.getNormalised(0, 5), is("izmir"));
+    }
+
+    @Test
+    public void testMentionTokens() throws Exception {
+        TokenArena arena = arena();
+
+        assertThat(arena.getTokens(4, 12, "Maven is"), is(Arrays.asList("Maven", " ", "is")));
+        // not aligned with the tokens
+        assertThat(arena.getTokens(5, 12, "aven is"), is(nullValue()));
+        assertThat(arena.getTokens(4, 11, "Maven i"), is(nullValue()));
+        // not matching the text
+        assertThat(arena.getTokens(4, 12, "Paris is"), is(nullValue()));
+    }
+
+    @Test
+    public void testSentences() throws Exception {
+        TokenArena arena = arena();
+        List<Sentence> sentences = new ArrayList<>();
+        sentences.add(sentence(0, 27));
+        sentences.add(sentence(28, 42));
+        arena.setSentences(sentences);
+
+        assertThat(arena.getSentenceNumber(), is(2));
+        assertThat(arena.getSentenceStart(0), is(0));
+        assertThat(arena.getSentenceEnd(0), is(13));
+        assertThat(arena.getSentenceStart(1), is(14));
+        assertThat(arena.getSentenceEnd(1), is(20));
+    }
+}
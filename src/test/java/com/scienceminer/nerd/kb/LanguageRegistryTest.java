@@ -0,0 +1,173 @@
+package com.scienceminer.nerd.kb;
+
+import com.scienceminer.nerd.utilities.NerdConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class LanguageRegistryTest {
+
+    private static final long TIMEOUT = 60000;
+
+    // resources opened and closed, with a clock driven by the tests
+    private static class TestRegistry extends LanguageRegistry<String> {
+        private long time = 1000;
+        private int failures = 0;
+        private final List<String> opened = new ArrayList<>();
+        private final List<String> closed = new ArrayList<>();
+
+        TestRegistry(long idleTimeout) {
+            super(idleTimeout);
+        }
+
+        @Override
+        protected String open(String lang, NerdConfig conf) throws Exception {
+            if (failures > 0) {
+                failures--;
+                throw new Exception("cannot open " + lang);
+            }
+            String resource = lang + "-" + opened.size();
+            opened.add(resource);
+            return resource;
+        }
+
+        @Override
+        protected void close(String lang, String resource) {
+            closed.add(resource);
+        }
+
+        @Override
+        protected long now() {
+            return time;
+        }
+    }
+
+    private TestRegistry registry;
+
+    @Before
+    public void setUp() throws Exception {
+        registry = new TestRegistry(TIMEOUT);
+        registry.add("en", new NerdConfig(), true);
+        registry.add("fr", new NerdConfig(), false);
+        registry.preload();
+    }
+
+    @After
+    public void tearDown() {
+        LanguageRegistry.release();
+    }
+
+    @Test
+    public void testLoadedAtFirstUse() throws Exception {
+        assertThat(registry.getLanguages(), is(Arrays.asList("en", "fr")));
+        assertThat(registry.getLoaded().keySet(), is(Collections.singleton("en")));
+
+        assertThat(registry.get("fr"), is("fr-1"));
+        assertThat(registry.get("fr"), is("fr-1"));
+        assertThat(new ArrayList<>(registry.getLoaded().keySet()), is(Arrays.asList("en", "fr")));
+        assertThat(registry.get("de"), is(nullValue()));
+        assertThat(registry.contains("de"), is(false));
+    }
+
+    @Test
+    public void testIdleLanguageUnloaded() throws Exception {
+        registry.get("fr");
+        LanguageRegistry.release();
+        registry.time += TIMEOUT - 1;
+        assertThat(registry.unloadIdle().isEmpty(), is(true));
+
+        // the preloaded language stays loaded
+        registry.time += 1;
+        assertThat(registry.unloadIdle(), is(Collections.singletonList("fr-1")));
+        assertThat(registry.closed, is(Collections.singletonList("fr-1")));
+        assertThat(registry.getLoaded().keySet(), is(Collections.singleton("en")));
+        assertThat(registry.unloadIdle().isEmpty(), is(true));
+    }
+
+    @Test
+    public void testReferencedLanguageNotUnloaded() throws Exception {
+        registry.get("fr");
+        registry.get("fr");
+        registry.time += 2 * TIMEOUT;
+        assertThat(registry.unloadIdle().isEmpty(), is(true));
+        assertThat(registry.closed.isEmpty(), is(true));
+
+        // one reference per thread, released at once
+        LanguageRegistry.release();
+        assertThat(registry.unloadIdle(), is(Collections.singletonList("fr-1")));
+    }
+
+    @Test
+    public void testReferenceOfAnotherThread() throws Exception {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                registry.get("fr");
+            }
+        });
+        thread.start();
+        thread.join();
+        registry.time += 2 * TIMEOUT;
+
+        // the reference is only released by the thread holding it
+        LanguageRegistry.release();
+        assertThat(registry.unloadIdle().isEmpty(), is(true));
+        assertThat(registry.getLoaded().get("fr"), is("fr-1"));
+    }
+
+    @Test
+    public void testUnloadedLanguageLoadedAgain() throws Exception {
+        registry.get("fr");
+        LanguageRegistry.release();
+        registry.time += TIMEOUT;
+        registry.unloadIdle();
+
+        assertThat(registry.get("fr"), is("fr-2"));
+        assertThat(registry.opened, is(Arrays.asList("en-0", "fr-1", "fr-2")));
+        assertThat(registry.getLoaded().get("fr"), is("fr-2"));
+    }
+
+    @Test
+    public void testNoIdleTimeout() throws Exception {
+        TestRegistry neverUnloaded = new TestRegistry(0);
+        neverUnloaded.add("fr", new NerdConfig(), false);
+        neverUnloaded.get("fr");
+        LanguageRegistry.release();
+        neverUnloaded.time += 1000 * TIMEOUT;
+
+        assertThat(neverUnloaded.unloadIdle().isEmpty(), is(true));
+    }
+
+    @Test
+    public void testFailedOpeningRetried() throws Exception {
+        registry.failures = 2;
+        assertThat(registry.get("fr"), is(nullValue()));
+
+        // not attempted again before the retry delay
+        registry.time += LanguageRegistry.MIN_RETRY_DELAY - 1;
+        assertThat(registry.get("fr"), is(nullValue()));
+        assertThat(registry.failures, is(1));
+
+        // second failure, the delay is doubled
+        registry.time += 1;
+        assertThat(registry.get("fr"), is(nullValue()));
+        registry.time += LanguageRegistry.MIN_RETRY_DELAY;
+        assertThat(registry.get("fr"), is(nullValue()));
+        registry.time += LanguageRegistry.MIN_RETRY_DELAY;
+        assertThat(registry.get("fr"), is("fr-1"));
+    }
+
+    @Test(expected = Exception.class)
+    public void testPreloadFailure() throws Exception {
+        TestRegistry failing = new TestRegistry(TIMEOUT);
+        failing.failures = 1;
+        failing.add("en", new NerdConfig(), true);
+        failing.preload();
+    }
+}
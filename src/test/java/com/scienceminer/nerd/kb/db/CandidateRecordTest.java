@@ -0,0 +1,44 @@
+package com.scienceminer.nerd.kb.db;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class CandidateRecordTest {
+
+    @Test
+    public void testReadInPlace() throws Exception {
+        CandidateRecord record = new CandidateRecord(0.25,
+            new int[] {22989, 75, 3000},
+            new double[] {0.9, 0.07, 0.03},
+            new int[] {WikidataIds.encode("Q90"), WikidataIds.NONE, WikidataIds.encode("Q123456789")},
+            Arrays.asList(new int[] {12, 7}, new int[0], new int[] {5}));
+        CandidateRecord read = new CandidateRecord(record.getBytes());
+
+        assertThat(read.getLinkProbability(), is(0.25));
+        assertThat(read.getCandidateCount(), is(3));
+        assertThat(read.getPageId(1), is(75));
+        assertThat(read.getPriorProbability(0), is(0.9));
+        assertThat(read.getPriorProbability(2), is(0.03));
+        assertThat(read.getWikidataId(0), is("Q90"));
+        assertThat(read.getWikidataId(1), is(nullValue()));
+        assertThat(read.getWikidataId(2), is("Q123456789"));
+        assertThat(read.getCategoryIds(0), is(new int[] {12, 7}));
+        assertThat(read.getCategoryIds(1).length, is(0));
+        assertThat(read.getCategoryIds(2), is(new int[] {5}));
+    }
+
+    @Test
+    public void testFixedWidthEntries() throws Exception {
+        CandidateRecord one = new CandidateRecord(1.0, new int[] {1}, new double[] {1.0}, new int[] {1},
+            Collections.singletonList(new int[0]));
+        CandidateRecord two = new CandidateRecord(1.0, new int[] {1, 2}, new double[] {0.5, 0.5}, new int[] {1, 2},
+            Arrays.asList(new int[0], new int[0]));
+
+        assertThat(two.getBytes().length - one.getBytes().length, is(one.getBytes().length - 12));
+    }
+}
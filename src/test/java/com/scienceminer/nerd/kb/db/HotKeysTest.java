@@ -0,0 +1,54 @@
+package com.scienceminer.nerd.kb.db;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class HotKeysTest {
+
+    @Test
+    public void testTop() throws Exception {
+        HotKeys<String> hotKeys = new HotKeys<>(10);
+        hotKeys.hit("b");
+        hotKeys.hit("a");
+        hotKeys.hit("b");
+        hotKeys.add("c", 5);
+
+        List<Map.Entry<String, Integer>> top = hotKeys.getTop(2);
+
+        assertThat(top.size(), is(2));
+        assertThat(top.get(0).getKey(), is("c"));
+        assertThat(top.get(0).getValue(), is(5));
+        assertThat(top.get(1).getKey(), is("b"));
+        assertThat(top.get(1).getValue(), is(2));
+    }
+
+    @Test
+    public void testPrune() throws Exception {
+        HotKeys<Integer> hotKeys = new HotKeys<>(2);
+        hotKeys.add(1, 5);
+        hotKeys.add(2, 2);
+        hotKeys.add(3, 1);
+        hotKeys.add(4, 1);
+        // the least accessed keys are removed and the counts of the others are halved
+        hotKeys.hit(5);
+
+        assertThat(hotKeys.size(), is(3));
+        List<Map.Entry<Integer, Integer>> top = hotKeys.getTop(3);
+        assertThat(top.get(0).getKey(), is(1));
+        assertThat(top.get(0).getValue(), is(3));
+        assertThat(top.get(2).getKey(), is(5));
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        HotKeys<String> hotKeys = new HotKeys<>(0);
+        hotKeys.hit("a");
+
+        assertThat(hotKeys.size(), is(0));
+    }
+}
@@ -0,0 +1,38 @@
+package com.scienceminer.nerd.kb.db;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class IntListCodecTest {
+
+    @Test
+    public void testEncodeDecode() throws Exception {
+        int[] values = {-31, -1, 5, 42, 43, 1000000, Integer.MAX_VALUE};
+
+        assertThat(IntListCodec.decode(IntListCodec.encode(values)), is(values));
+        assertThat(IntListCodec.decode(IntListCodec.encode(values, 2, 3)), is(new int[] {5, 42, 43}));
+        assertThat(IntListCodec.decode(IntListCodec.encode(new int[0])), is(new int[0]));
+        // count, first value, one byte per small gap
+        assertThat(IntListCodec.encode(new int[] {5, 6, 8}).length, is(4));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotIncreasing() throws Exception {
+        IntListCodec.encode(new int[] {5, 5});
+    }
+
+    @Test
+    public void testWikidataIds() throws Exception {
+        assertThat(WikidataIds.encode("Q42"), is(42));
+        assertThat(WikidataIds.encode("P31"), is(-31));
+        assertThat(WikidataIds.decode(42), is("Q42"));
+        assertThat(WikidataIds.decode(-31), is("P31"));
+        assertThat(WikidataIds.decode(WikidataIds.NONE), is(nullValue()));
+        assertThat(WikidataIds.encode("L42"), is(WikidataIds.NONE));
+        assertThat(WikidataIds.encode("Q"), is(WikidataIds.NONE));
+        assertThat(WikidataIds.encode("Q99999999999"), is(WikidataIds.NONE));
+    }
+}
@@ -0,0 +1,68 @@
+package com.scienceminer.nerd.kb.db;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class MarkupCodecTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<String> samples() {
+        List<String> samples = new ArrayList<String>();
+        for (int i = 0; i < 200; i++) {
+            samples.add("'''Town " + i + "''' is a commune in the [[Departments of France|department]] of [[Region " +
+                (i % 7) + "]] in northern [[France]]. The population of the commune was " + (i * 37) +
+                " inhabitants in 2012. {{Infobox settlement|name=Town " + i + "|country=France}}");
+        }
+        return samples;
+    }
+
+    @Test
+    public void testCompression() throws Exception {
+        File dictionaryFile = new File(folder.getRoot(), MarkupCodec.DICTIONARY_FILE);
+        MarkupCodec codec = new MarkupCodec(dictionaryFile, true);
+        assertThat(codec.needsDictionary(), is(true));
+        codec.train(samples());
+        assertThat(codec.needsDictionary(), is(false));
+
+        String markup = "'''Ville-sur-Mer''' is a commune in the [[Departments of France|department]] of " +
+            "[[Region 3]] in northern [[France]]. The population of the commune was 1234 inhabitants in 2012.";
+        byte[] compressed = codec.encode(markup);
+        assertThat(codec.decode(compressed), is(markup));
+        assertTrue(compressed.length < markup.length() / 2);
+
+        // the dictionary is read back with the database
+        assertThat(new MarkupCodec(dictionaryFile, false).decode(compressed), is(markup));
+    }
+
+    @Test
+    public void testUncompressed() throws Exception {
+        MarkupCodec codec = new MarkupCodec(new File(folder.getRoot(), MarkupCodec.DICTIONARY_FILE), false);
+        String markup = "Zoë, ''[[Saint-Étienne]]''";
+        byte[] data = codec.encode(markup);
+
+        assertThat(data.length, is(markup.getBytes("UTF-8").length + 1));
+        assertThat(codec.decode(data), is(markup));
+    }
+
+    @Test(expected = IOException.class)
+    public void testMissingDictionary() throws Exception {
+        File dictionaryFile = new File(folder.getRoot(), MarkupCodec.DICTIONARY_FILE);
+        MarkupCodec codec = new MarkupCodec(dictionaryFile, true);
+        codec.train(samples());
+        byte[] compressed = codec.encode(samples().get(0));
+        dictionaryFile.delete();
+
+        new MarkupCodec(dictionaryFile, true).decode(compressed);
+    }
+}
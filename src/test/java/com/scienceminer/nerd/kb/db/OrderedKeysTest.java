@@ -0,0 +1,52 @@
+package com.scienceminer.nerd.kb.db;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class OrderedKeysTest {
+
+    @Test
+    public void testEncodeDecode() throws Exception {
+        assertThat(OrderedKeys.decode(OrderedKeys.encode(-7)), is((Object) (-7)));
+        assertThat(OrderedKeys.decode(OrderedKeys.encode(Integer.MAX_VALUE)), is((Object) Integer.MAX_VALUE));
+        assertThat(OrderedKeys.decode(OrderedKeys.encode(1L << 40)), is((Object) (1L << 40)));
+        assertThat(OrderedKeys.decode(OrderedKeys.encode("Élan vital")), is((Object) "Élan vital"));
+    }
+
+    @Test
+    public void testOrder() throws Exception {
+        int[] values = {Integer.MIN_VALUE, -256, -1, 0, 1, 255, 256, 70000, Integer.MAX_VALUE};
+        for (int i = 1; i < values.length; i++) {
+            assertTrue(KBSpliterator.compare(OrderedKeys.encode(values[i - 1]), OrderedKeys.encode(values[i])) < 0);
+        }
+        String[] labels = {"", "Paris", "Paris Hilton", "Parisian", "paris", "Été"};
+        for (int i = 1; i < labels.length; i++) {
+            assertTrue(KBSpliterator.compare(OrderedKeys.encode(labels[i - 1]), OrderedKeys.encode(labels[i])) < 0);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnsupportedType() throws Exception {
+        OrderedKeys.encode(1.5);
+    }
+
+    @Test
+    public void testMiddle() throws Exception {
+        byte[] low = OrderedKeys.encode(1000);
+        byte[] high = OrderedKeys.encode(3000);
+        byte[] middle = KBSpliterator.middle(low, high);
+        assertTrue(KBSpliterator.compare(low, middle) < 0);
+        assertTrue(KBSpliterator.compare(middle, high) < 0);
+        assertThat(KBSpliterator.compare(middle, OrderedKeys.encode(2000)), is(0));
+
+        // there is a key between two consecutive keys
+        middle = KBSpliterator.middle(OrderedKeys.encode(5), OrderedKeys.encode(6));
+        assertTrue(KBSpliterator.compare(OrderedKeys.encode(5), middle) < 0);
+        assertTrue(KBSpliterator.compare(middle, OrderedKeys.encode(6)) < 0);
+    }
+}
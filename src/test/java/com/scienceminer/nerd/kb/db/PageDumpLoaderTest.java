@@ -0,0 +1,114 @@
+package com.scienceminer.nerd.kb.db;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class PageDumpLoaderTest {
+
+    private static final String HEADER = "<mediawiki xmlns=\"http://www.mediawiki.org/xml/export-0.10/\">\n" +
+        "  <siteinfo>\n    <sitename>Wikipedia</sitename>\n  </siteinfo>\n";
+    private static final String FOOTER = "</mediawiki>\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String page(int id) {
+        return "  <page>\n    <title>Page " + id + "</title>\n    <ns>0</ns>\n    <id>" + id + "</id>\n" +
+            "    <revision>\n      <id>" + (id + 100000) + "</id>\n" +
+            "      <text xml:space=\"preserve\">'''Page " + id + "''' &amp; [[Page " + (id + 1) + "]]</text>\n" +
+            "    </revision>\n  </page>\n";
+    }
+
+    // a multistream dump with 100 pages per stream and its index
+    private File multistreamDump(int nbPages) throws IOException {
+        File dump = new File(folder.getRoot(), "xxwiki-pages-articles-multistream.xml.bz2");
+        StringBuilder index = new StringBuilder();
+        OutputStream out = new FileOutputStream(dump);
+        try {
+            writeStream(out, HEADER);
+            for (int first = 1; first <= nbPages; first += 100) {
+                long offset = dump.length();
+                StringBuilder stream = new StringBuilder();
+                for (int id = first; id < Math.min(first + 100, nbPages + 1); id++) {
+                    stream.append(page(id));
+                    index.append(offset).append(':').append(id).append(":Page ").append(id).append('\n');
+                }
+                writeStream(out, stream.toString());
+            }
+            writeStream(out, FOOTER);
+        } finally {
+            out.close();
+        }
+        FileUtils.writeStringToFile(new File(folder.getRoot(), "xxwiki-pages-articles-multistream-index.txt"),
+            index.toString(), "UTF-8");
+        return dump;
+    }
+
+    private static void writeStream(OutputStream out, String text) throws IOException {
+        BZip2CompressorOutputStream stream = new BZip2CompressorOutputStream(out);
+        stream.write(text.getBytes("UTF-8"));
+        stream.finish();
+        out.flush();
+    }
+
+    private static List<String> load(File dump) throws Exception {
+        final List<String> pages = new ArrayList<String>();
+        long nbPages = new PageDumpLoader(4).load(dump, new PageDumpLoader.PageConverter<String>() {
+            @Override
+            public String convert(int id, String wikitext) {
+                return (id % 10 == 0) ? null : id + " " + wikitext;
+            }
+        }, new PageDumpLoader.BatchHandler<String>() {
+            @Override
+            public void handle(List<String> batch) {
+                pages.addAll(batch);
+            }
+        });
+        assertThat(nbPages, is(1234L));
+        return pages;
+    }
+
+    private static void checkPages(List<String> pages) {
+        assertThat(pages.size(), is(1234 - 123));
+        assertThat(pages.get(0), is("1 '''Page 1''' & [[Page 2]]"));
+        int previous = 0;
+        for (String page : pages) {
+            int id = Integer.parseInt(page.substring(0, page.indexOf(' ')));
+            assertThat(id > previous, is(true));
+            previous = id;
+        }
+        assertThat(previous, is(1234));
+    }
+
+    @Test
+    public void testMultistreamIndex() throws Exception {
+        File dump = multistreamDump(1234);
+        assertThat(PageDumpLoader.getIndexFile(dump).getName(), is("xxwiki-pages-articles-multistream-index.txt"));
+        checkPages(load(dump));
+    }
+
+    @Test
+    public void testPlainDump() throws Exception {
+        StringBuilder text = new StringBuilder(HEADER);
+        for (int id = 1; id <= 1234; id++)
+            text.append(page(id));
+        text.append(FOOTER);
+        File dump = new File(folder.getRoot(), "xxwiki-pages-articles.xml");
+        FileUtils.writeStringToFile(dump, text.toString(), "UTF-8");
+
+        checkPages(load(dump));
+    }
+}
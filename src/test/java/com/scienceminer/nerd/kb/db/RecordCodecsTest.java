@@ -0,0 +1,65 @@
+package com.scienceminer.nerd.kb.db;
+
+import com.scienceminer.nerd.kb.model.hadoop.*;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class RecordCodecsTest {
+
+    @Test
+    public void testPage() throws Exception {
+        DbPage page = new DbPage("Zoë Saldaña", 1, -1);
+        DbPage decoded = RecordCodecs.PAGE.decode(RecordCodecs.PAGE.encode(page));
+
+        assertThat(decoded, is(page));
+        assertThat(RecordCodecs.PAGE.decode(RecordCodecs.PAGE.encode(new DbPage(null, 0, 0))).getTitle(), is(nullValue()));
+    }
+
+    @Test
+    public void testLabel() throws Exception {
+        ArrayList<DbSenseForLabel> senses = new ArrayList<DbSenseForLabel>();
+        senses.add(new DbSenseForLabel(22989, 3000000000L, 12, true, false));
+        senses.add(new DbSenseForLabel(75, 40, 39, false, true));
+        DbLabel label = new DbLabel(3000000040L, 51, 8000000000L, 100, senses);
+        DbLabel decoded = RecordCodecs.LABEL.decode(RecordCodecs.LABEL.encode(label));
+
+        assertThat(decoded, is(label));
+        assertThat(decoded.getSenses().get(1).getFromRedirect(), is(true));
+    }
+
+    @Test
+    public void testIntList() throws Exception {
+        DbIntList increasing = new DbIntList(new ArrayList<Integer>(Arrays.asList(12, 13, 1000, 1000000)));
+        DbIntList unordered = new DbIntList(new ArrayList<Integer>(Arrays.asList(1000, 12, -3, 12)));
+
+        assertThat(RecordCodecs.INT_LIST.decode(RecordCodecs.INT_LIST.encode(increasing)), is(increasing));
+        assertThat(RecordCodecs.INT_LIST.decode(RecordCodecs.INT_LIST.encode(unordered)), is(unordered));
+        // format, count, first value and one byte per small gap
+        assertThat(RecordCodecs.INT_LIST.encode(new DbIntList(new ArrayList<Integer>(Arrays.asList(5, 6, 8)))).length, is(5));
+    }
+
+    @Test
+    public void testTranslationsAndCounts() throws Exception {
+        TreeMap<String,String> byLang = new TreeMap<String,String>();
+        byLang.put("de", "Köln");
+        byLang.put("fr", "Cologne");
+        DbTranslations translations = new DbTranslations(byLang);
+        DbPageLinkCounts counts = new DbPageLinkCounts(120, 80, 300, 150);
+
+        assertThat(RecordCodecs.TRANSLATIONS.decode(RecordCodecs.TRANSLATIONS.encode(translations)), is(translations));
+        assertThat(RecordCodecs.PAGE_LINK_COUNTS.decode(RecordCodecs.PAGE_LINK_COUNTS.encode(counts)), is(counts));
+        assertTrue(RecordCodecs.PAGE_LINK_COUNTS.encode(counts).length < KBEnvironment.serialize(counts).length);
+    }
+
+    @Test
+    public void testWikidataId() throws Exception {
+        assertThat(RecordCodecs.WIKIDATA_ID.decode(RecordCodecs.WIKIDATA_ID.encode("Q5")), is("Q5"));
+        assertThat(RecordCodecs.WIKIDATA_ID.decode(RecordCodecs.WIKIDATA_ID.encode("Q123456789")), is("Q123456789"));
+    }
+}
@@ -0,0 +1,132 @@
+package com.scienceminer.nerd.kb.db;
+
+import com.scienceminer.nerd.kb.Statement;
+import com.scienceminer.nerd.utilities.NerdConfig;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class StatementDatabaseTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // statements of Q42 with interleaved properties, item values and JSON values
+    private static List<Statement> statements() {
+        List<Statement> statements = new ArrayList<Statement>();
+        statements.add(new Statement("Q42", "P31", "Q5"));
+        statements.add(new Statement("Q42", "P735", "\"Zoë Saldaña\""));
+        statements.add(new Statement("Q42", "P31", "Q123456789"));
+        statements.add(new Statement("Q42", "P569", "{\"time\":\"+1952-03-11T00:00:00Z\",\"precision\":11}"));
+        statements.add(new Statement("Q42", "P735", "\"\""));
+        return statements;
+    }
+
+    private static List<String> toStrings(List<Statement> statements) {
+        List<String> result = new ArrayList<String>();
+        for (Statement statement : statements)
+            result.add(statement.getConceptId() + " " + statement.getPropertyId() + " " + statement.getValue());
+        return result;
+    }
+
+    private static int[] codes(String... propertyIds) {
+        int[] codes = new int[propertyIds.length];
+        for (int i = 0; i < propertyIds.length; i++)
+            codes[i] = WikidataIds.encode(propertyIds[i]);
+        Arrays.sort(codes);
+        return codes;
+    }
+
+    @Test
+    public void testGroupedByProperty() throws Exception {
+        byte[] data = StatementDatabase.encodeStatements(statements());
+        List<Statement> decoded = StatementDatabase.decodeStatements(WikidataIds.encode("Q42"), data, null);
+
+        // the statements come grouped by property, in the order of the first statement of each property
+        assertThat(toStrings(decoded), is(Arrays.asList(
+            "Q42 P31 Q5",
+            "Q42 P31 Q123456789",
+            "Q42 P735 \"Zoë Saldaña\"",
+            "Q42 P735 \"\"",
+            "Q42 P569 {\"time\":\"+1952-03-11T00:00:00Z\",\"precision\":11}")));
+        assertThat(decoded.get(0).getValueCode(), is(WikidataIds.encode("Q5")));
+        assertThat(decoded.get(2).getValueCode(), is(WikidataIds.NONE));
+
+        assertThat(StatementDatabase.decodeStatements(WikidataIds.encode("Q1"),
+            StatementDatabase.encodeStatements(new ArrayList<Statement>()), null).isEmpty(), is(true));
+    }
+
+    @Test
+    public void testProjection() throws Exception {
+        byte[] data = StatementDatabase.encodeStatements(statements());
+        int code = WikidataIds.encode("Q42");
+
+        assertThat(toStrings(StatementDatabase.decodeStatements(code, data, codes("P569", "P31"))), is(Arrays.asList(
+            "Q42 P31 Q5",
+            "Q42 P31 Q123456789",
+            "Q42 P569 {\"time\":\"+1952-03-11T00:00:00Z\",\"precision\":11}")));
+        assertThat(toStrings(StatementDatabase.decodeStatements(code, data, codes("P735"))), is(Arrays.asList(
+            "Q42 P735 \"Zoë Saldaña\"",
+            "Q42 P735 \"\"")));
+        assertThat(StatementDatabase.decodeStatements(code, data, codes("P17")).isEmpty(), is(true));
+    }
+
+    @Test
+    public void testLazyValues() throws Exception {
+        byte[] data = StatementDatabase.encodeStatements(statements());
+        List<Statement> decoded = StatementDatabase.decodeStatements(WikidataIds.encode("Q42"), data, codes("P735"));
+
+        // the JSON value is read from the record when first accessed, then kept
+        byte[] value = "Zoë".getBytes(StandardCharsets.UTF_8);
+        byte[] other = "Zoé".getBytes(StandardCharsets.UTF_8);
+        int offset = indexOf(data, value);
+        System.arraycopy(other, 0, data, offset, other.length);
+        assertThat(decoded.get(0).getValue(), is("\"Zoé Saldaña\""));
+        System.arraycopy(value, 0, data, offset, value.length);
+        assertThat(decoded.get(0).getValue(), is("\"Zoé Saldaña\""));
+    }
+
+    @Test(expected = java.io.IOException.class)
+    public void testTruncated() throws Exception {
+        byte[] data = StatementDatabase.encodeStatements(statements());
+        StatementDatabase.decodeStatements(WikidataIds.encode("Q42"), Arrays.copyOf(data, data.length - 3), null);
+    }
+
+    @Test
+    public void testRetrieveProperties() throws Exception {
+        NerdConfig conf = new NerdConfig();
+        conf.setDbDirectory(folder.getRoot().getPath());
+        KBUpperEnvironment env = new KBUpperEnvironment(conf);
+        try {
+            StatementDatabase database = env.getDbStatements();
+            Map<String, List<Statement>> entries = new HashMap<String, List<Statement>>();
+            entries.put("Q42", statements());
+            database.storeEntries(entries);
+
+            assertThat(database.retrieve("Q42").size(), is(5));
+            assertThat(toStrings(database.retrieve("Q42", Arrays.asList("P735", "P1", "invalid"))), is(Arrays.asList(
+                "Q42 P735 \"Zoë Saldaña\"",
+                "Q42 P735 \"\"")));
+            assertThat(database.retrieve("Q42", new ArrayList<String>()).isEmpty(), is(true));
+            assertThat(toStrings(database.retrieve("Q42", null)), is(toStrings(database.retrieve("Q42"))));
+            assertThat(database.retrieve("Q43", Arrays.asList("P31")), is(nullValue()));
+        } finally {
+            env.close();
+        }
+    }
+
+    private static int indexOf(byte[] data, byte[] bytes) {
+        for (int i = 0; i + bytes.length <= data.length; i++) {
+            if (Arrays.equals(Arrays.copyOfRange(data, i, i + bytes.length), bytes))
+                return i;
+        }
+        return -1;
+    }
+}
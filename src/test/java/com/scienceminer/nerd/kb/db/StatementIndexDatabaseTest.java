@@ -0,0 +1,100 @@
+package com.scienceminer.nerd.kb.db;
+
+import com.scienceminer.nerd.kb.Statement;
+import com.scienceminer.nerd.utilities.NerdConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.*;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+public class StatementIndexDatabaseTest {
+
+    // more concepts than in a chunk of the index
+    private static final int NB_CONCEPTS = 10000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private KBUpperEnvironment env;
+
+    @Before
+    public void setUp() throws Exception {
+        NerdConfig conf = new NerdConfig();
+        conf.setDbDirectory(folder.getRoot().getPath());
+        env = new KBUpperEnvironment(conf);
+
+        // all the concepts are humans, every third one has the string "Q5" as P1 value
+        Map<String, List<Statement>> statements = new HashMap<String, List<Statement>>();
+        for (int i = 1; i <= NB_CONCEPTS; i++) {
+            List<Statement> conceptStatements = new ArrayList<Statement>();
+            conceptStatements.add(new Statement("Q" + i, "P31", "Q5"));
+            if (i % 3 == 0)
+                conceptStatements.add(new Statement("Q" + i, "P1", "\"Q5\""));
+            statements.put("Q" + i, conceptStatements);
+        }
+        env.getDbStatements().storeEntries(statements);
+        env.getDbStatementsByValue().loadFromStatements(env.getDbStatements(), true);
+    }
+
+    @After
+    public void tearDown() {
+        env.close();
+    }
+
+    private static List<String> conceptIds(int first, int last, int step) {
+        List<String> ids = new ArrayList<String>();
+        for (int i = first; i <= last; i += step)
+            ids.add("Q" + i);
+        return ids;
+    }
+
+    @Test
+    public void testPagesAcrossChunks() throws Exception {
+        StatementIndexDatabase index = env.getDbStatementsByValue();
+        assertThat(index.isLoaded(), is(true));
+
+        // pages of 1000 concepts, some of them spanning two chunks
+        List<String> all = new ArrayList<String>();
+        String after = null;
+        while (true) {
+            List<String> page = index.getConceptIds("P31", "Q5", true, after, 1000);
+            all.addAll(page);
+            if (page.size() < 1000)
+                break;
+            after = page.get(page.size() - 1);
+        }
+        assertThat(all, is(conceptIds(1, NB_CONCEPTS, 1)));
+    }
+
+    @Test
+    public void testPageAtChunkBoundary() throws Exception {
+        StatementIndexDatabase index = env.getDbStatementsByValue();
+
+        // the second chunk starts with Q4097
+        assertThat(index.getConceptIds("P31", "Q5", true, "Q4096", 3), is(conceptIds(4097, 4099, 1)));
+        assertThat(index.getConceptIds("P31", "Q5", true, "Q4095", 3), is(conceptIds(4096, 4098, 1)));
+        assertThat(index.getConceptIds("P31", "Q5", true, "Q4097", 3), is(conceptIds(4098, 4100, 1)));
+        assertThat(index.getConceptIds("P31", "Q5", true, "Q8191", 3), is(conceptIds(8192, 8194, 1)));
+        assertThat(index.getConceptIds("P31", "Q5", true, "Q" + NB_CONCEPTS, 3).isEmpty(), is(true));
+        // a concept which is not indexed
+        assertThat(index.getConceptIds("P31", "Q5", true, "Q20000", 3).isEmpty(), is(true));
+    }
+
+    @Test
+    public void testItemAndStringValues() throws Exception {
+        StatementIndexDatabase index = env.getDbStatementsByValue();
+
+        assertThat(index.getConceptIds("P1", "Q5", false, null, NB_CONCEPTS), is(conceptIds(3, NB_CONCEPTS, 3)));
+        assertThat(index.getConceptIds("P1", "Q5", true, null, NB_CONCEPTS).isEmpty(), is(true));
+        assertThat(index.getConceptIds("P31", "Q5", false, null, NB_CONCEPTS).isEmpty(), is(true));
+
+        assertThat(StatementIndexDatabase.getIndexValue("Q5"), is(not(StatementIndexDatabase.getIndexValue("\"Q5\""))));
+    }
+}
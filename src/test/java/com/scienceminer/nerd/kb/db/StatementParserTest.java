@@ -0,0 +1,60 @@
+package com.scienceminer.nerd.kb.db;
+
+import com.scienceminer.nerd.kb.Statement;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class StatementParserTest {
+
+    private static final String ENTITY = "{\"type\":\"item\",\"id\":\"Q42\"," +
+        "\"labels\":{\"en\":{\"language\":\"en\",\"value\":\"Douglas Adams\"}}," +
+        "\"claims\":{" +
+        // first claim of a property only
+        "\"P31\":[{\"mainsnak\":{\"snaktype\":\"value\",\"property\":\"P31\",\"datavalue\":{\"value\":" +
+        "{\"entity-type\":\"item\",\"numeric-id\":5,\"id\":\"Q5\"},\"type\":\"wikibase-entityid\"}},\"type\":\"statement\"}," +
+        "{\"mainsnak\":{\"snaktype\":\"value\",\"property\":\"P31\",\"datavalue\":{\"value\":" +
+        "{\"entity-type\":\"item\",\"numeric-id\":6,\"id\":\"Q6\"},\"type\":\"wikibase-entityid\"}},\"type\":\"statement\"}]," +
+        // no id in the item value of older dumps
+        "\"P27\":[{\"mainsnak\":{\"snaktype\":\"value\",\"property\":\"P27\",\"datavalue\":{\"value\":" +
+        "{\"entity-type\":\"item\",\"numeric-id\":145},\"type\":\"wikibase-entityid\"}},\"type\":\"statement\"}]," +
+        // the value of a qualifier is not the value of the claim
+        "\"P40\":[{\"mainsnak\":{\"snaktype\":\"somevalue\",\"property\":\"P40\"},\"type\":\"statement\"," +
+        "\"qualifiers\":{\"P580\":[{\"snaktype\":\"value\",\"property\":\"P580\",\"datavalue\":{\"value\":\"x\",\"type\":\"string\"}}]}}]," +
+        "\"P1477\":[{\"mainsnak\":{\"snaktype\":\"value\",\"property\":\"P1477\",\"datavalue\":{\"value\":" +
+        "{\"text\":\"Douglas Noël Adams\",\"language\":\"en\"},\"type\":\"monolingualtext\"}},\"type\":\"statement\"}]," +
+        "\"P18\":[{\"mainsnak\":{\"snaktype\":\"value\",\"property\":\"P18\",\"datavalue\":{\"value\":" +
+        "\"Douglas adams portrait.jpg\",\"type\":\"string\"}},\"type\":\"statement\"}]}," +
+        "\"sitelinks\":{\"enwiki\":{\"site\":\"enwiki\",\"title\":\"Douglas Adams\"}}},";
+
+    @Test
+    public void testStatements() throws Exception {
+        KBEntry<String, List<Statement>> entry = new StatementParser().parse(ENTITY);
+
+        assertThat(entry.getKey(), is("Q42"));
+        List<Statement> statements = entry.getValue();
+        assertThat(statements.size(), is(4));
+        assertThat(statements.get(0).getConceptId(), is("Q42"));
+        assertThat(statements.get(0).getPropertyId(), is("P31"));
+        assertThat(statements.get(0).getValue(), is("Q5"));
+        assertThat(statements.get(1).getPropertyId(), is("P27"));
+        assertThat(statements.get(1).getValue(), is("Q145"));
+        assertThat(statements.get(2).getPropertyId(), is("P1477"));
+        assertThat(statements.get(2).getValue(), is("{\"text\":\"Douglas Noël Adams\",\"language\":\"en\"}"));
+        assertThat(statements.get(3).getPropertyId(), is("P18"));
+        assertThat(statements.get(3).getValue(), is("\"Douglas adams portrait.jpg\""));
+    }
+
+    @Test
+    public void testNoStatement() throws Exception {
+        StatementParser parser = new StatementParser();
+
+        assertThat(parser.parse("["), is(nullValue()));
+        assertThat(parser.parse("]"), is(nullValue()));
+        assertThat(parser.parse("{\"type\":\"item\",\"id\":\"Q1\",\"claims\":[]},"), is(nullValue()));
+    }
+}
@@ -0,0 +1,128 @@
+package com.scienceminer.nerd.service;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class NerdResponseCacheTest {
+
+    private static Callable<byte[]> response(final String value, final AtomicInteger calls) {
+        return new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+                calls.incrementAndGet();
+                return value.getBytes(StandardCharsets.UTF_8);
+            }
+        };
+    }
+
+    @Test
+    public void testHitAndInvalidation() throws Exception {
+        NerdResponseCache cache = new NerdResponseCache(10000, 60000);
+        AtomicInteger calls = new AtomicInteger();
+
+        cache.get("test", "a", response("{}", calls));
+        byte[] result = cache.get("test", "a", response("{}", calls));
+
+        assertThat(new String(result, StandardCharsets.UTF_8), is("{}"));
+        assertThat(calls.get(), is(1));
+
+        cache.invalidate();
+        cache.get("test", "a", response("{}", calls));
+        assertThat(calls.get(), is(2));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() throws Exception {
+        // room for two entries only
+        NerdResponseCache cache = new NerdResponseCache(2 * (100 + 2 + 96) + 50, 60000);
+        AtomicInteger calls = new AtomicInteger();
+        String value = new String(new char[100]).replace('\0', 'x');
+
+        cache.get("test", "a", response(value, calls));
+        cache.get("test", "b", response(value, calls));
+        // a is now more recently used than b
+        cache.get("test", "a", response(value, calls));
+        cache.get("test", "c", response(value, calls));
+        assertThat(calls.get(), is(3));
+        assertThat(cache.size(), is(2));
+
+        cache.get("test", "a", response(value, calls));
+        assertThat(calls.get(), is(3));
+        cache.get("test", "b", response(value, calls));
+        assertThat(calls.get(), is(4));
+    }
+
+    @Test
+    public void testUncachedResponse() throws Exception {
+        NerdResponseCache cache = new NerdResponseCache(10000, 60000);
+        byte[] result = cache.get("test", "a", new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+                return null;
+            }
+        });
+
+        assertThat(result, is(nullValue()));
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void testConcurrentMissesCoalesced() throws Exception {
+        final NerdResponseCache cache = new NerdResponseCache(10000, 60000);
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<byte[]> slow = new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                calls.incrementAndGet();
+                started.countDown();
+                release.await();
+                return "{}".getBytes(StandardCharsets.UTF_8);
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<byte[]> first = executor.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() {
+                    return cache.get("test", "a", slow);
+                }
+            });
+            started.await();
+            Future<byte[]> second = executor.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() {
+                    return cache.get("test", "a", slow);
+                }
+            });
+            // let the second query reach the cache before the response is computed
+            Thread.sleep(100);
+            release.countDown();
+
+            assertThat(new String(first.get(), StandardCharsets.UTF_8), is("{}"));
+            assertThat(new String(second.get(), StandardCharsets.UTF_8), is("{}"));
+            assertThat(calls.get(), is(1));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRuntimeOfCachedResponse() throws Exception {
+        byte[] response = "{\"runtime\": 1234, \"onlyNER\": false}".getBytes(StandardCharsets.UTF_8);
+        assertThat(new String(NerdResponseCache.withRuntime(response, 2), StandardCharsets.UTF_8),
+            is("{\"runtime\": 2, \"onlyNER\": false}"));
+
+        byte[] other = "{\"term\": \"runtime\"}".getBytes(StandardCharsets.UTF_8);
+        assertThat(NerdResponseCache.withRuntime(other, 2) == other, is(true));
+    }
+}
@@ -0,0 +1,131 @@
+package com.scienceminer.nerd.service;
+
+import org.grobid.core.lang.Language;
+import org.grobid.core.layout.LayoutToken;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class PdfCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testResultsPerParameters() throws Exception {
+        PdfCache cache = new PdfCache(new File(folder.getRoot(), "cache"), 10);
+
+        cache.putResult("a", "en\u0001generic", bytes("{\"nbest\": false}"));
+        cache.putResult("a", "en\u0001other", bytes("{\"nbest\": true}"));
+
+        assertThat(new String(cache.getResult("a", "en\u0001generic"), StandardCharsets.UTF_8), is("{\"nbest\": false}"));
+        assertThat(new String(cache.getResult("a", "en\u0001other"), StandardCharsets.UTF_8), is("{\"nbest\": true}"));
+        assertThat(cache.getResult("a", "fr\u0001generic"), is(nullValue()));
+        assertThat(cache.getResult("b", "en\u0001generic"), is(nullValue()));
+        assertThat(cache.getResult("a", null), is(nullValue()));
+    }
+
+    @Test
+    public void testInvalidateResults() throws Exception {
+        PdfCache cache = new PdfCache(new File(folder.getRoot(), "cache"), 10);
+        cache.putResult("a", "key", bytes("{}"));
+
+        cache.invalidateResults();
+
+        assertThat(cache.getResult("a", "key"), is(nullValue()));
+        // the directory of the PDF, with its segmentation, is kept
+        assertThat(cache.size(), is(1));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() throws Exception {
+        File directory = new File(folder.getRoot(), "cache");
+        PdfCache cache = new PdfCache(directory, 2);
+
+        cache.putResult("a", "key", bytes("{}"));
+        cache.putResult("b", "key", bytes("{}"));
+        // modification times with a resolution of one second on some file systems
+        new File(directory, "a").setLastModified(System.currentTimeMillis() - 20000);
+        new File(directory, "b").setLastModified(System.currentTimeMillis() - 10000);
+        cache.putResult("c", "key", bytes("{}"));
+
+        assertThat(cache.size(), is(2));
+        assertThat(cache.getResult("a", "key"), is(nullValue()));
+        assertThat(new String(cache.getResult("b", "key"), StandardCharsets.UTF_8), is("{}"));
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        PdfCache cache = new PdfCache(new File(folder.getRoot(), "cache"), 0);
+        cache.putResult("a", "key", bytes("{}"));
+
+        assertThat(cache.getResult("a", "key"), is(nullValue()));
+        assertThat(cache.size(), is(0));
+    }
+
+    private static LayoutToken token(String text, int offset, boolean bold) {
+        LayoutToken token = new LayoutToken();
+        token.setText(text);
+        token.setOffset(offset);
+        token.setFont("Times-Roman");
+        token.setFontSize(10.5);
+        token.setBold(bold);
+        token.setPage(2);
+        token.setX(72.0);
+        token.setY(144.25);
+        token.setWidth(30.5);
+        token.setHeight(11.0);
+        return token;
+    }
+
+    @Test
+    public void testSegmentsRoundTrip() throws Exception {
+        PdfCache cache = new PdfCache(new File(folder.getRoot(), "cache"), 10);
+        PdfSegments segments = new PdfSegments();
+        segments.setHeader(true);
+        segments.setTitle(Arrays.asList(token("Zoë", 0, true), token(" ", 3, true)));
+        segments.setLanguage(new Language("fr", 0.9));
+        List<List<LayoutToken>> body = new ArrayList<List<LayoutToken>>();
+        body.add(Arrays.asList(token("Paris", 120, false)));
+        body.add(new ArrayList<LayoutToken>());
+        segments.setBody(body);
+        segments.setPageSizes(new double[][] {{842.0, 595.0}, {842.0, 595.0}});
+
+        cache.putSegments("a", segments);
+        PdfSegments read = cache.getSegments("a");
+
+        assertThat(read.hasHeader(), is(true));
+        assertThat(read.getTitle().size(), is(2));
+        LayoutToken title = read.getTitle().get(0);
+        assertThat(title.getText(), is("Zoë"));
+        assertThat(title.getFont(), is("Times-Roman"));
+        assertThat(title.getFontSize(), is(10.5));
+        assertThat(title.getBold(), is(true));
+        assertThat(title.getColorFont(), is(nullValue()));
+        assertThat(title.getPage(), is(2));
+        assertThat(title.getY(), is(144.25));
+        assertThat(title.getHeight(), is(11.0));
+        assertThat(read.getAbstract(), is(nullValue()));
+        assertThat(read.getLanguage().getLang(), is("fr"));
+        assertThat(read.getBody().size(), is(2));
+        assertThat(read.getBody().get(0).get(0).getOffset(), is(120));
+        assertThat(read.getBody().get(1).size(), is(0));
+        assertThat(read.getFootnotes(), is(nullValue()));
+        assertThat(read.getPageSizes()[1][0], is(842.0));
+        assertThat(cache.getSegments("b"), is(nullValue()));
+    }
+}
@@ -0,0 +1,87 @@
+package com.scienceminer.nerd.utilities;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ParallelBZip2InputStreamTest {
+
+    private static String text(int lines) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines; i++)
+            text.append("{\"id\":\"Q").append(i).append("\",\"claims\":{}},\n");
+        return text.toString();
+    }
+
+    // one bzip2 stream per piece of the text, as written by the parallel compressors
+    private static byte[] compress(String text, int pieces) throws IOException {
+        byte[] data = text.getBytes("UTF-8");
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        int size = (data.length + pieces - 1) / pieces;
+        for (int start = 0; start < data.length; start += size) {
+            BZip2CompressorOutputStream out = new BZip2CompressorOutputStream(new UncloseableStream(compressed));
+            out.write(data, start, Math.min(size, data.length - start));
+            out.close();
+        }
+        return compressed.toByteArray();
+    }
+
+    private static String decompress(byte[] compressed, int segmentSize, int maxSegmentSize) throws IOException {
+        InputStream in = new ParallelBZip2InputStream(new ByteArrayInputStream(compressed), 4, segmentSize, maxSegmentSize);
+        try {
+            return IOUtils.toString(in, "UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testMultistream() throws Exception {
+        String text = text(20000);
+        byte[] compressed = compress(text, 50);
+
+        // several streams per segment and one stream per segment
+        assertThat(decompress(compressed, 10000, 1000000), is(text));
+        assertThat(decompress(compressed, 1, 1000000), is(text));
+    }
+
+    @Test
+    public void testSingleStream() throws Exception {
+        String text = text(20000);
+        byte[] compressed = compress(text, 1);
+
+        // decompressed sequentially past the maximum segment size
+        assertThat(decompress(compressed, 1000, 5000), is(text));
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotBZip2() throws Exception {
+        decompress(text(10).getBytes("UTF-8"), 1000, 5000);
+    }
+
+    private static class UncloseableStream extends FilterOutputStream {
+        UncloseableStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
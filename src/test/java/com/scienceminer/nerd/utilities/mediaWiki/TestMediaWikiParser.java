@@ -8,6 +8,8 @@ import org.junit.After;
 import org.junit.Ignore;
 
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.hamcrest.CoreMatchers.*;
@@ -182,6 +184,23 @@ public class TestMediaWikiParser {
 
         assertThat(result, startsWith("An acropolis"));
     }
+
+    @Test
+    public void testBatchConversion() throws Exception {
+        List<String> inputs = new ArrayList<String>();
+        for (String file : new String[] {"acropolis.txt", "cantal.fr.txt", "japan.fr.txt"}) {
+            InputStream is = this.getClass().getResourceAsStream(file);
+            inputs.add(IOUtils.toString(is, UTF_8));
+        }
+        inputs.add(null);
+
+        List<String> results = mediaWikiParser.convert(inputs, "fr", MediaWikiParser.Format.FIRST_PARAGRAPH);
+
+        assertThat(results, hasSize(4));
+        for (int i = 0; i < 3; i++)
+            assertThat(results.get(i), is(mediaWikiParser.formatFirstParagraphWikiText(inputs.get(i), "fr")));
+        assertThat(results.get(3), is(nullValue()));
+    }
     
 
 